@@ -1,10 +1,14 @@
 package com.microsoft.appcenter.analytics;
 
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
 import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PagePerformanceLog;
 import com.microsoft.appcenter.analytics.ingestion.models.StartSessionLog;
 import com.microsoft.appcenter.analytics.ingestion.models.json.EventLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.MetricLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.PageLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.PagePerformanceLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFactory;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -21,7 +25,9 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @SuppressWarnings("unused")
@@ -69,6 +75,45 @@ public class AnalyticsSerializerTest {
             }});
             logs.add(pageLog);
         }
+        {
+            PagePerformanceLog pagePerformanceLog = new PagePerformanceLog();
+            pagePerformanceLog.setTimestamp(new Date());
+            pagePerformanceLog.setName("home");
+            pagePerformanceLog.setDuration(5000L);
+            logs.add(pagePerformanceLog);
+        }
+        {
+            PagePerformanceLog pagePerformanceLog = new PagePerformanceLog();
+            pagePerformanceLog.setTimestamp(new Date());
+            pagePerformanceLog.setName("settings");
+            pagePerformanceLog.setLaunchDuration(350L);
+            pagePerformanceLog.setResumeDuration(120L);
+            pagePerformanceLog.setDuration(8000L);
+            pagePerformanceLog.setFrameCount(480);
+            pagePerformanceLog.setJankyFrameCount(3);
+            logs.add(pagePerformanceLog);
+        }
+        {
+            MetricLog metricLog = new MetricLog();
+            metricLog.setTimestamp(new Date());
+            metricLog.setName("cacheHits");
+            metricLog.setMetricType("counter");
+            metricLog.setValue(42L);
+            logs.add(metricLog);
+        }
+        {
+            MetricLog metricLog = new MetricLog();
+            metricLog.setTimestamp(new Date());
+            metricLog.setName("requestDuration");
+            metricLog.setMetricType("histogram");
+            metricLog.setCount(3L);
+            metricLog.setSum(700L);
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            buckets.put("128", 2L);
+            buckets.put("256", 1L);
+            metricLog.setBuckets(buckets);
+            logs.add(metricLog);
+        }
         {
             EventLog eventLog = new EventLog();
             eventLog.setTimestamp(new Date());
@@ -95,7 +140,9 @@ public class AnalyticsSerializerTest {
         LogSerializer serializer = new DefaultLogSerializer();
         serializer.addLogFactory(StartSessionLog.TYPE, new StartSessionLogFactory());
         serializer.addLogFactory(PageLog.TYPE, new PageLogFactory());
+        serializer.addLogFactory(PagePerformanceLog.TYPE, new PagePerformanceLogFactory());
         serializer.addLogFactory(EventLog.TYPE, new EventLogFactory());
+        serializer.addLogFactory(MetricLog.TYPE, new MetricLogFactory());
         String payload = serializer.serializeContainer(expectedContainer);
         android.util.Log.v(TAG, payload);
         LogContainer actualContainer = serializer.deserializeContainer(payload);
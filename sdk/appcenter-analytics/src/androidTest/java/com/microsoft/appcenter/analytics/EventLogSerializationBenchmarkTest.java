@@ -0,0 +1,109 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.json.EventLogFactory;
+import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.UUIDUtils;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares serialization time per event log when device properties are written every time
+ * versus when the cached device JSON is spliced.
+ */
+@SuppressWarnings("unused")
+public class EventLogSerializationBenchmarkTest {
+
+    private static final String TAG = "TestRunner";
+
+    private static final int WARM_UP_ITERATIONS = 1000;
+
+    private static final int ITERATIONS = 10000;
+
+    private static EventLog generateEventLog() {
+        Device device = new Device();
+        device.setSdkName("appcenter.android");
+        device.setSdkVersion("1.2.3");
+        device.setModel("S5");
+        device.setOemName("HTC");
+        device.setOsName("Android");
+        device.setOsVersion("4.0.3");
+        device.setOsBuild("LMY47X");
+        device.setOsApiLevel(15);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(120);
+        device.setScreenSize("800x600");
+        device.setAppVersion("3.2.1");
+        device.setAppBuild("42");
+        device.setAppNamespace("com.microsoft.appcenter.analytics.test");
+        device.setCarrierName("mock-carrier");
+        device.setCarrierCountry("us");
+        EventLog eventLog = new EventLog();
+        eventLog.setTimestamp(new Date());
+        eventLog.setSid(UUIDUtils.randomUUID());
+        eventLog.setId(UUIDUtils.randomUUID());
+        eventLog.setName("click");
+        eventLog.setProperties(new HashMap<String, String>() {{
+            put("x", "1");
+            put("y", "2");
+        }});
+        eventLog.setDevice(device);
+        return eventLog;
+    }
+
+    /**
+     * Serialize the way it was done before device JSON was cached.
+     */
+    private static String serializeWithoutCache(Log log) throws JSONException {
+        JSONStringer writer = new JSONStringer();
+        writer.object();
+        log.write(writer);
+        writer.key(AbstractLog.DEVICE).object();
+        log.getDevice().write(writer);
+        writer.endObject();
+        writer.endObject();
+        return writer.toString();
+    }
+
+    @Test
+    public void serializeEventLog() throws JSONException {
+        EventLog eventLog = generateEventLog();
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(EventLog.TYPE, new EventLogFactory());
+
+        /* Both ways produce the same log. */
+        assertEquals(eventLog, serializer.deserializeLog(serializeWithoutCache(eventLog)));
+        assertEquals(eventLog, serializer.deserializeLog(serializer.serializeLog(eventLog)));
+
+        /* Warm up. */
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            serializeWithoutCache(eventLog);
+            serializer.serializeLog(eventLog);
+        }
+
+        /* Measure. */
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializeWithoutCache(eventLog);
+        }
+        long before = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.serializeLog(eventLog);
+        }
+        long after = (System.nanoTime() - start) / ITERATIONS;
+        android.util.Log.i(TAG, String.format(Locale.ENGLISH, "EventLog serialization: %dns before, %dns after device cache.", before, after));
+    }
+}
@@ -1,6 +1,9 @@
 package com.microsoft.appcenter.analytics;
 
 import android.app.Activity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 
@@ -8,20 +11,31 @@ import com.microsoft.appcenter.AbstractAppCenterService;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
 import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PagePerformanceLog;
 import com.microsoft.appcenter.analytics.ingestion.models.StartSessionLog;
 import com.microsoft.appcenter.analytics.ingestion.models.json.EventLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.MetricLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.PageLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.PagePerformanceLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFactory;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.StringInterner;
 import com.microsoft.appcenter.utils.UUIDUtils;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -49,6 +63,12 @@ public class Analytics extends AbstractAppCenterService {
      */
     private static final String ACTIVITY_SUFFIX = "Activity";
 
+    /**
+     * Time to live of analytics logs not sent yet, stale analytics are discarded.
+     */
+    @VisibleForTesting
+    static final long LOG_TIME_TO_LIVE = 30L * 24 * 60 * 60 * 1000;
+
     /**
      * Max number of properties.
      */
@@ -66,11 +86,22 @@ public class Analytics extends AbstractAppCenterService {
     @VisibleForTesting
     static final int MAX_PROPERTY_ITEM_LENGTH = 64;
 
+    /**
+     * Interval between 2 metric flushes.
+     */
+    @VisibleForTesting
+    static final long METRICS_FLUSH_INTERVAL = 60 * 1000;
+
     /**
      * Shared instance.
      */
     private static Analytics sInstance = null;
 
+    /**
+     * Last valid properties, unmodifiable so that they can be shared by events tracked with equal properties.
+     */
+    private static volatile Map<String, String> sLastValidatedProperties;
+
     /**
      * Log factories managed by this service.
      */
@@ -97,6 +128,33 @@ public class Analytics extends AbstractAppCenterService {
      */
     private boolean mAutoPageTrackingEnabled = false;
 
+    /**
+     * Page performance tracker, null when page performance tracking is disabled.
+     */
+    private PagePerformanceTracker mPagePerformanceTracker;
+
+    /**
+     * Metrics recorded by the application.
+     */
+    private final MetricRegistry mMetricRegistry = new MetricRegistry();
+
+    /**
+     * Periodic metric flush, scheduled on the main thread to post the flush in background.
+     */
+    private final Runnable mFlushMetricsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            post(new Runnable() {
+
+                @Override
+                public void run() {
+                    flushMetrics();
+                }
+            });
+        }
+    };
+
     /**
      * Init.
      */
@@ -104,7 +162,9 @@ public class Analytics extends AbstractAppCenterService {
         mFactories = new HashMap<>();
         mFactories.put(StartSessionLog.TYPE, new StartSessionLogFactory());
         mFactories.put(PageLog.TYPE, new PageLogFactory());
+        mFactories.put(PagePerformanceLog.TYPE, new PagePerformanceLogFactory());
         mFactories.put(EventLog.TYPE, new EventLogFactory());
+        mFactories.put(MetricLog.TYPE, new MetricLogFactory());
     }
 
     /**
@@ -185,6 +245,32 @@ public class Analytics extends AbstractAppCenterService {
         getInstance().setInstanceAutoPageTrackingEnabled(autoPageTrackingEnabled);
     }
 
+    /**
+     * Check if page performance tracking is enabled.
+     * <p>
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @return true if page performance tracking is enabled. false otherwise.
+     * @see #setPagePerformanceTrackingEnabled(boolean)
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected static boolean isPagePerformanceTrackingEnabled() {
+        return getInstance().isInstancePagePerformanceTrackingEnabled();
+    }
+
+    /**
+     * If enabled (disabled by default), a page performance log is sent every time an activity is paused,
+     * with the time to draw the first frame and the number of janky frames while the activity was resumed.
+     * <p>
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @param pagePerformanceTrackingEnabled true to measure page performance, false otherwise.
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected static void setPagePerformanceTrackingEnabled(boolean pagePerformanceTrackingEnabled) {
+        getInstance().setInstancePagePerformanceTrackingEnabled(pagePerformanceTrackingEnabled);
+    }
+
     /**
      * Track a custom page with name.
      * <p>
@@ -251,6 +337,93 @@ public class Analytics extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Track custom events in a single batch, for example to replay events collected while offline.
+     * Each event is validated like in {@link #trackEvent(String, Map)}, events with an invalid name are skipped.
+     * Events are persisted at once instead of one by one.
+     *
+     * @param events Events to track.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static void trackEvents(Collection<Event> events) {
+        if (events == null) {
+            AppCenterLog.error(Analytics.LOG_TAG, "Events cannot be null.");
+            return;
+        }
+        final String logType = "Event";
+        List<Event> validatedEvents = new ArrayList<>(events.size());
+        for (Event event : events) {
+            if (event == null) {
+                AppCenterLog.error(Analytics.LOG_TAG, "Event cannot be null.");
+                continue;
+            }
+            String name = validateName(event.getName(), logType);
+            if (name != null) {
+                validatedEvents.add(new Event(name, validateProperties(event.getProperties(), name, logType)));
+            }
+        }
+        if (validatedEvents.size() > 0) {
+            getInstance().trackEventsAsync(validatedEvents);
+        }
+    }
+
+    /**
+     * Get a counter to add values to, the sum of values added is sent once per minute.
+     * The name parameter can not be null or empty. Maximum allowed length = 256.
+     * Counters with the same name are the same counter. If the name is invalid
+     * or there are already 100 counters, values of the returned counter are not sent.
+     * <p>
+     * Keep the counter to record values: recording never blocks, from any thread.
+     * <p>
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @param name A counter name.
+     * @return counter.
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected static Counter getCounter(String name) {
+        String validName = validateName(name, "Metric");
+        return validName == null ? new Counter(name) : getInstance().mMetricRegistry.getCounter(validName);
+    }
+
+    /**
+     * Get a gauge to set values to, the last value set is sent once per minute if it was set during that minute.
+     * The name parameter can not be null or empty. Maximum allowed length = 256.
+     * Gauges with the same name are the same gauge. If the name is invalid
+     * or there are already 100 gauges, values of the returned gauge are not sent.
+     * <p>
+     * Keep the gauge to record values: recording never blocks, from any thread.
+     * <p>
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @param name A gauge name.
+     * @return gauge.
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected static Gauge getGauge(String name) {
+        String validName = validateName(name, "Metric");
+        return validName == null ? new Gauge(name) : getInstance().mMetricRegistry.getGauge(validName);
+    }
+
+    /**
+     * Get a histogram to record values to, the distribution of values recorded is sent once per minute.
+     * The name parameter can not be null or empty. Maximum allowed length = 256.
+     * Histograms with the same name are the same histogram. If the name is invalid
+     * or there are already 100 histograms, values of the returned histogram are not sent.
+     * <p>
+     * Keep the histogram to record values: recording never blocks, from any thread.
+     * <p>
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @param name A histogram name.
+     * @return histogram.
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected static Histogram getHistogram(String name) {
+        String validName = validateName(name, "Metric");
+        return validName == null ? new Histogram(name) : getInstance().mMetricRegistry.getHistogram(validName);
+    }
+
     /**
      * Generate a page name for an activity.
      *
@@ -283,7 +456,27 @@ public class Analytics extends AbstractAppCenterService {
             AppCenterLog.warn(Analytics.LOG_TAG, String.format("%s '%s' : name length cannot be longer than %s characters. Name will be truncated.", logType, name, MAX_NAME_LENGTH));
             name = name.substring(0, MAX_NAME_LENGTH);
         }
-        return name;
+        return StringInterner.intern(name);
+    }
+
+    /**
+     * Check if properties can be used without any change.
+     *
+     * @param properties properties to check.
+     * @return true if properties are within limits and have no null or empty key and no null value.
+     */
+    private static boolean arePropertiesValid(Map<String, String> properties) {
+        if (properties.size() > MAX_PROPERTY_COUNT) {
+            return false;
+        }
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            String key = property.getKey();
+            String value = property.getValue();
+            if (key == null || key.isEmpty() || key.length() > MAX_PROPERTY_ITEM_LENGTH || value == null || value.length() > MAX_PROPERTY_ITEM_LENGTH) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -298,6 +491,21 @@ public class Analytics extends AbstractAppCenterService {
         if (properties == null) {
             return null;
         }
+
+        /* Fast path: events tracked repeatedly with the same valid properties share the same map. */
+        if (arePropertiesValid(properties)) {
+            Map<String, String> lastValidatedProperties = sLastValidatedProperties;
+            if (properties.equals(lastValidatedProperties)) {
+                return lastValidatedProperties;
+            }
+            Map<String, String> result = new HashMap<>();
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                result.put(StringInterner.intern(property.getKey()), property.getValue());
+            }
+            result = Collections.unmodifiableMap(result);
+            sLastValidatedProperties = result;
+            return result;
+        }
         String message;
         Map<String, String> result = new HashMap<>();
         for (Map.Entry<String, String> property : properties.entrySet()) {
@@ -328,7 +536,7 @@ public class Analytics extends AbstractAppCenterService {
                 AppCenterLog.warn(Analytics.LOG_TAG, message);
                 value = value.substring(0, MAX_PROPERTY_ITEM_LENGTH);
             }
-            result.put(key, value);
+            result.put(StringInterner.intern(key), value);
         }
         return result;
     }
@@ -348,13 +556,28 @@ public class Analytics extends AbstractAppCenterService {
         return LOG_TAG;
     }
 
+    @Override
+    protected long getLogTimeToLive() {
+        return LOG_TIME_TO_LIVE;
+    }
+
     @Override
     public Map<String, LogFactory> getLogFactories() {
         return mFactories;
     }
 
+    @Override
+    public synchronized void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        if (mPagePerformanceTracker != null) {
+            mPagePerformanceTracker.onActivityCreated(activity);
+        }
+    }
+
     @Override
     public synchronized void onActivityResumed(final Activity activity) {
+        if (mPagePerformanceTracker != null) {
+            mPagePerformanceTracker.onActivityResumed(activity, generatePageName(activity.getClass()));
+        }
         final Runnable updateCurrentActivityRunnable = new Runnable() {
 
             @Override
@@ -387,6 +610,9 @@ public class Analytics extends AbstractAppCenterService {
 
     @Override
     public synchronized void onActivityPaused(Activity activity) {
+        if (mPagePerformanceTracker != null) {
+            mPagePerformanceTracker.onActivityPaused();
+        }
         final Runnable updateCurrentActivityRunnable = new Runnable() {
 
             @Override
@@ -404,9 +630,23 @@ public class Analytics extends AbstractAppCenterService {
         }, updateCurrentActivityRunnable, updateCurrentActivityRunnable);
     }
 
+    @Override
+    public synchronized void onActivityDestroyed(Activity activity) {
+        if (mPagePerformanceTracker != null) {
+            mPagePerformanceTracker.onActivityDestroyed(activity);
+        }
+    }
+
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.SelectiveGroupListener() {
+
+            @Override
+            public boolean shouldNotify(@NonNull Log log) {
+
+                /* Avoid decoding logs read from persistence when nobody listens. */
+                return mAnalyticsListener != null;
+            }
 
             @Override
             public void onBeforeSending(Log log) {
@@ -457,6 +697,44 @@ public class Analytics extends AbstractAppCenterService {
             mSessionTracker.clearSessions();
             mSessionTracker = null;
         }
+
+        /* Flush metrics periodically while enabled, discard values recorded so far when disabled. */
+        if (enabled) {
+            scheduleMetricsFlush();
+        } else {
+            HandlerUtils.getMainHandler().removeCallbacks(mFlushMetricsRunnable);
+            mMetricRegistry.flush();
+        }
+    }
+
+    /**
+     * Schedule next metric flush, replacing any flush already scheduled.
+     */
+    private void scheduleMetricsFlush() {
+        Handler handler = HandlerUtils.getMainHandler();
+        handler.removeCallbacks(mFlushMetricsRunnable);
+        handler.postDelayed(mFlushMetricsRunnable, METRICS_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Send values recorded by metrics since last flush, one log per metric, and schedule next flush.
+     */
+    @WorkerThread
+    private void flushMetrics() {
+        List<Log> logs = mMetricRegistry.flush();
+        if (logs.size() > 0) {
+
+            /*
+             * Timestamp logs now so that the session tracker correlates them with the current session
+             * instead of starting a new session when flushing in background.
+             */
+            Date timestamp = new Date();
+            for (Log log : logs) {
+                log.setTimestamp(timestamp);
+            }
+            mChannel.enqueueAll(logs, ANALYTICS_GROUP);
+        }
+        scheduleMetricsFlush();
     }
 
     /**
@@ -506,6 +784,29 @@ public class Analytics extends AbstractAppCenterService {
         });
     }
 
+    /**
+     * Send events in a single batch.
+     *
+     * @param events validated events.
+     */
+    private synchronized void trackEventsAsync(final List<Event> events) {
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                List<Log> eventLogs = new ArrayList<>(events.size());
+                for (Event event : events) {
+                    EventLog eventLog = new EventLog();
+                    eventLog.setId(UUIDUtils.randomUUID());
+                    eventLog.setName(event.getName());
+                    eventLog.setProperties(event.getProperties());
+                    eventLogs.add(eventLog);
+                }
+                mChannel.enqueueAll(eventLogs, ANALYTICS_GROUP);
+            }
+        });
+    }
+
     /**
      * Implements {@link #isAutoPageTrackingEnabled()}.
      */
@@ -520,6 +821,46 @@ public class Analytics extends AbstractAppCenterService {
         mAutoPageTrackingEnabled = autoPageTrackingEnabled;
     }
 
+    /**
+     * Implements {@link #isPagePerformanceTrackingEnabled()}.
+     */
+    private synchronized boolean isInstancePagePerformanceTrackingEnabled() {
+        return mPagePerformanceTracker != null;
+    }
+
+    /**
+     * Implements {@link #setPagePerformanceTrackingEnabled(boolean)}.
+     */
+    private synchronized void setInstancePagePerformanceTrackingEnabled(boolean pagePerformanceTrackingEnabled) {
+        if (pagePerformanceTrackingEnabled && mPagePerformanceTracker == null) {
+            mPagePerformanceTracker = new PagePerformanceTracker(new PagePerformanceTracker.Listener() {
+
+                @Override
+                public void onPageMeasured(final PagePerformanceLog log) {
+                    post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            mChannel.enqueue(log, ANALYTICS_GROUP);
+                        }
+                    });
+                }
+            });
+        } else if (!pagePerformanceTrackingEnabled && mPagePerformanceTracker != null) {
+
+            /* Stop frame callbacks on the UI thread where they run. */
+            final PagePerformanceTracker tracker = mPagePerformanceTracker;
+            mPagePerformanceTracker = null;
+            HandlerUtils.runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    tracker.stop();
+                }
+            });
+        }
+    }
+
     /**
      * Implements {@link #setListener(AnalyticsListener)}.
      */
@@ -0,0 +1,55 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+
+/**
+ * Metric reporting the sum of values added during each interval, like a number of cache hits.
+ */
+public class Counter extends Metric {
+
+    /**
+     * Metric type in logs.
+     */
+    static final String TYPE = "counter";
+
+    /**
+     * Sum of values added since last flush.
+     */
+    private final StripedAccumulator mAccumulator = new StripedAccumulator(1);
+
+    /**
+     * Init.
+     *
+     * @param name metric name.
+     */
+    Counter(String name) {
+        super(name);
+    }
+
+    /**
+     * Add 1 to the counter.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Add a value to the counter.
+     *
+     * @param delta value to add.
+     */
+    public void add(long delta) {
+        mAccumulator.add(0, delta);
+    }
+
+    @Override
+    MetricLog flush() {
+        long sum = mAccumulator.sumThenReset(0);
+        if (sum == 0) {
+            return null;
+        }
+        MetricLog log = createLog(TYPE);
+        log.setValue(sum);
+        return log;
+    }
+}
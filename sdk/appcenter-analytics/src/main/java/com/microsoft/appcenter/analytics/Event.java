@@ -0,0 +1,57 @@
+package com.microsoft.appcenter.analytics;
+
+import java.util.Map;
+
+/**
+ * Custom event to track in a batch with {@link Analytics#trackEvents(java.util.Collection)}.
+ */
+public class Event {
+
+    /**
+     * Event name.
+     */
+    private final String mName;
+
+    /**
+     * Optional event properties.
+     */
+    private final Map<String, String> mProperties;
+
+    /**
+     * Init an event without properties.
+     *
+     * @param name An event name.
+     */
+    public Event(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Init an event.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties.
+     */
+    public Event(String name, Map<String, String> properties) {
+        mName = name;
+        mProperties = properties;
+    }
+
+    /**
+     * Get the event name.
+     *
+     * @return The event name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get the event properties.
+     *
+     * @return The event properties, can be null.
+     */
+    public Map<String, String> getProperties() {
+        return mProperties;
+    }
+}
@@ -0,0 +1,56 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+
+/**
+ * Metric reporting the last value set during each interval, like a cache size.
+ */
+public class Gauge extends Metric {
+
+    /**
+     * Metric type in logs.
+     */
+    static final String TYPE = "gauge";
+
+    /**
+     * Last value.
+     */
+    private volatile long mValue;
+
+    /**
+     * True if a value was set since last flush.
+     */
+    private volatile boolean mUpdated;
+
+    /**
+     * Init.
+     *
+     * @param name metric name.
+     */
+    Gauge(String name) {
+        super(name);
+    }
+
+    /**
+     * Set the current value.
+     *
+     * @param value current value.
+     */
+    public void set(long value) {
+        mValue = value;
+        mUpdated = true;
+    }
+
+    @Override
+    MetricLog flush() {
+        if (!mUpdated) {
+            return null;
+        }
+
+        /* Reset flag before reading value: a concurrent update is reported again next time at worst. */
+        mUpdated = false;
+        MetricLog log = createLog(TYPE);
+        log.setValue(mValue);
+        return log;
+    }
+}
@@ -0,0 +1,110 @@
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metric reporting the distribution of values recorded during each interval, like request durations.
+ * Values are counted in buckets bounded by powers of 2.
+ */
+public class Histogram extends Metric {
+
+    /**
+     * Metric type in logs.
+     */
+    static final String TYPE = "histogram";
+
+    /**
+     * Number of buckets: one for values lower than 1 and one per power of 2 a positive long can start with.
+     */
+    @VisibleForTesting
+    static final int BUCKET_COUNT = Long.SIZE;
+
+    /**
+     * Index of the sum in the accumulator.
+     */
+    private static final int SUM_INDEX = 0;
+
+    /**
+     * Index of the first bucket in the accumulator.
+     */
+    private static final int FIRST_BUCKET_INDEX = 1;
+
+    /**
+     * Sum and buckets of values recorded since last flush, the count being the total of the buckets.
+     */
+    private final StripedAccumulator mAccumulator = new StripedAccumulator(FIRST_BUCKET_INDEX + BUCKET_COUNT);
+
+    /**
+     * Init.
+     *
+     * @param name metric name.
+     */
+    Histogram(String name) {
+        super(name);
+    }
+
+    /**
+     * Get the bucket of a value.
+     *
+     * @param value value.
+     * @return 0 for values lower than 1, otherwise n for values in [2^(n-1), 2^n).
+     */
+    @VisibleForTesting
+    static int getBucket(long value) {
+        return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Get the lower bound of a bucket.
+     *
+     * @param bucket bucket.
+     * @return smallest value of the bucket, 0 for the bucket of values lower than 1.
+     */
+    @VisibleForTesting
+    static long getBucketLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value value to record.
+     */
+    public void record(long value) {
+
+        /* Sum first: a flush that sees this value in a bucket also sees it in the sum. */
+        mAccumulator.add(SUM_INDEX, value);
+        mAccumulator.add(FIRST_BUCKET_INDEX + getBucket(value), 1);
+    }
+
+    /**
+     * Build a log with the values recorded since last flush.
+     * The count is the total of the buckets, but values recorded during the flush
+     * can be in the sum of this interval and in the buckets of the next one.
+     */
+    @Override
+    MetricLog flush() {
+        long count = 0;
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            long bucketCount = mAccumulator.sumThenReset(FIRST_BUCKET_INDEX + bucket);
+            if (bucketCount != 0) {
+                buckets.put(String.valueOf(getBucketLowerBound(bucket)), bucketCount);
+                count += bucketCount;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        MetricLog log = createLog(TYPE);
+        log.setCount(count);
+        log.setSum(mAccumulator.sumThenReset(SUM_INDEX));
+        log.setBuckets(buckets);
+        return log;
+    }
+}
@@ -0,0 +1,56 @@
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.WorkerThread;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+
+/**
+ * Numeric measurement aggregated locally and sent periodically by the Analytics service.
+ * Values can be recorded from any thread without blocking.
+ */
+public abstract class Metric {
+
+    /**
+     * Metric name.
+     */
+    private final String mName;
+
+    /**
+     * Init.
+     *
+     * @param name metric name.
+     */
+    Metric(String name) {
+        mName = name;
+    }
+
+    /**
+     * Get metric name.
+     *
+     * @return metric name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get values recorded since last flush and reset them.
+     *
+     * @return aggregated log or null if nothing was recorded.
+     */
+    @WorkerThread
+    abstract MetricLog flush();
+
+    /**
+     * Create a log for this metric.
+     *
+     * @param metricType metric type.
+     * @return new log.
+     */
+    MetricLog createLog(String metricType) {
+        MetricLog log = new MetricLog();
+        log.setName(mName);
+        log.setMetricType(metricType);
+        return log;
+    }
+}
@@ -0,0 +1,101 @@
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics by type and name.
+ */
+class MetricRegistry {
+
+    /**
+     * Max number of metrics of each type.
+     */
+    @VisibleForTesting
+    static final int MAX_METRIC_COUNT = 100;
+
+    /**
+     * Counters by name.
+     */
+    private final ConcurrentMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Gauges by name.
+     */
+    private final ConcurrentMap<String, Gauge> mGauges = new ConcurrentHashMap<>();
+
+    /**
+     * Histograms by name.
+     */
+    private final ConcurrentMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * Register a metric unless one with the same name is already registered.
+     *
+     * @param metrics metrics of the same type.
+     * @param metric  metric to register.
+     * @param <T>     metric type.
+     * @return registered metric, or the new metric without registering it if there are too many metrics.
+     */
+    private static <T extends Metric> T register(ConcurrentMap<String, T> metrics, T metric) {
+        if (metrics.size() >= MAX_METRIC_COUNT) {
+            AppCenterLog.error(Analytics.LOG_TAG, String.format("Metric '%s' : cannot have more than %s metrics of the same type. Values will not be sent.", metric.getName(), MAX_METRIC_COUNT));
+            return metric;
+        }
+        T registeredMetric = metrics.putIfAbsent(metric.getName(), metric);
+        return registeredMetric != null ? registeredMetric : metric;
+    }
+
+    /**
+     * Flush metrics of the same type.
+     *
+     * @param metrics metrics to flush.
+     * @param logs    list to add logs to.
+     */
+    private static void flush(ConcurrentMap<String, ? extends Metric> metrics, List<Log> logs) {
+        for (Metric metric : metrics.values()) {
+            MetricLog log = metric.flush();
+            if (log != null) {
+                logs.add(log);
+            }
+        }
+    }
+
+    Counter getCounter(String name) {
+        Counter counter = mCounters.get(name);
+        return counter != null ? counter : register(mCounters, new Counter(name));
+    }
+
+    Gauge getGauge(String name) {
+        Gauge gauge = mGauges.get(name);
+        return gauge != null ? gauge : register(mGauges, new Gauge(name));
+    }
+
+    Histogram getHistogram(String name) {
+        Histogram histogram = mHistograms.get(name);
+        return histogram != null ? histogram : register(mHistograms, new Histogram(name));
+    }
+
+    /**
+     * Get values recorded by all metrics since last flush and reset them.
+     *
+     * @return one log per metric that recorded values.
+     */
+    @WorkerThread
+    List<Log> flush() {
+        List<Log> logs = new ArrayList<>();
+        flush(mCounters, logs);
+        flush(mGauges, logs);
+        flush(mHistograms, logs);
+        return logs;
+    }
+}
@@ -0,0 +1,293 @@
+package com.microsoft.appcenter.analytics;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.UiThread;
+import android.support.annotation.VisibleForTesting;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.microsoft.appcenter.analytics.ingestion.models.PagePerformanceLog;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Measures how fast pages render their first frame and how smooth they are while in foreground.
+ * All methods must be called from the UI thread.
+ */
+class PagePerformanceTracker {
+
+    /**
+     * A frame taking longer than this ratio of the display refresh interval is considered janky.
+     */
+    @VisibleForTesting
+    static final float JANKY_FRAME_RATIO = 1.5f;
+
+    /**
+     * Display refresh rate used if the display does not report one.
+     */
+    @VisibleForTesting
+    static final float DEFAULT_REFRESH_RATE = 60f;
+
+    /**
+     * Listener for page measurements.
+     */
+    interface Listener {
+
+        /**
+         * Called when a page is left.
+         *
+         * @param log page measurements.
+         */
+        void onPageMeasured(PagePerformanceLog log);
+    }
+
+    /**
+     * Measurement listener.
+     */
+    private final Listener mListener;
+
+    /**
+     * Creation time of activities not resumed yet.
+     */
+    private final Map<Activity, Long> mCreationTimes = new WeakHashMap<>();
+
+    /**
+     * Page being measured, null if none.
+     */
+    private Page mCurrentPage;
+
+    /**
+     * Init.
+     *
+     * @param listener measurement listener.
+     */
+    PagePerformanceTracker(Listener listener) {
+        mListener = listener;
+    }
+
+    @UiThread
+    void onActivityCreated(Activity activity) {
+        mCreationTimes.put(activity, SystemClock.elapsedRealtime());
+    }
+
+    @UiThread
+    void onActivityResumed(Activity activity, String name) {
+        if (mCurrentPage != null) {
+            mCurrentPage.cancel();
+        }
+        mCurrentPage = new Page(activity, name, mCreationTimes.remove(activity));
+    }
+
+    @UiThread
+    void onActivityPaused() {
+        if (mCurrentPage != null) {
+            PagePerformanceLog log = mCurrentPage.finish();
+            mCurrentPage = null;
+            mListener.onPageMeasured(log);
+        }
+    }
+
+    @UiThread
+    void onActivityDestroyed(Activity activity) {
+        mCreationTimes.remove(activity);
+    }
+
+    /**
+     * Stop measuring without reporting the current page.
+     */
+    @UiThread
+    void stop() {
+        if (mCurrentPage != null) {
+            mCurrentPage.cancel();
+            mCurrentPage = null;
+        }
+        mCreationTimes.clear();
+    }
+
+    /**
+     * Measurements of a page in foreground.
+     */
+    private static class Page implements ViewTreeObserver.OnPreDrawListener, Runnable {
+
+        /**
+         * Page name.
+         */
+        private final String mName;
+
+        /**
+         * Activity creation time, null if the activity was created before tracking or resumed again.
+         */
+        private final Long mCreationTime;
+
+        /**
+         * Resume time.
+         */
+        private final long mResumeTime;
+
+        /**
+         * Activity root view.
+         */
+        private final View mDecorView;
+
+        /**
+         * Frame counter, null if not supported on this device.
+         */
+        private final FrameCounter mFrameCounter;
+
+        /**
+         * First frame time, null until drawn.
+         */
+        private Long mFirstFrameTime;
+
+        /**
+         * True when measurement stopped.
+         */
+        private boolean mFinished;
+
+        /**
+         * Start measuring a page.
+         *
+         * @param activity     resumed activity.
+         * @param name         page name.
+         * @param creationTime activity creation time, can be null.
+         */
+        Page(Activity activity, String name, Long creationTime) {
+            mName = name;
+            mCreationTime = creationTime;
+            mResumeTime = SystemClock.elapsedRealtime();
+            mDecorView = activity.getWindow().getDecorView();
+            mDecorView.getViewTreeObserver().addOnPreDrawListener(this);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+                if (refreshRate <= 0) {
+                    refreshRate = DEFAULT_REFRESH_RATE;
+                }
+                mFrameCounter = new FrameCounter((long) (1e9 / refreshRate * JANKY_FRAME_RATIO));
+                mFrameCounter.start();
+            } else {
+                mFrameCounter = null;
+            }
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            mDecorView.getViewTreeObserver().removeOnPreDrawListener(this);
+
+            /* The frame is drawn in the same traversal right after this call, measure once done. */
+            mDecorView.post(this);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (!mFinished) {
+                mFirstFrameTime = SystemClock.elapsedRealtime();
+            }
+        }
+
+        /**
+         * Stop measuring.
+         */
+        void cancel() {
+            mFinished = true;
+            mDecorView.getViewTreeObserver().removeOnPreDrawListener(this);
+            mDecorView.removeCallbacks(this);
+            if (mFrameCounter != null) {
+                mFrameCounter.stop();
+            }
+        }
+
+        /**
+         * Stop measuring and get the result.
+         *
+         * @return page measurements.
+         */
+        PagePerformanceLog finish() {
+            cancel();
+            PagePerformanceLog log = new PagePerformanceLog();
+            log.setName(mName);
+            log.setDuration(SystemClock.elapsedRealtime() - mResumeTime);
+            if (mFirstFrameTime != null) {
+                log.setResumeDuration(mFirstFrameTime - mResumeTime);
+                if (mCreationTime != null) {
+                    log.setLaunchDuration(mFirstFrameTime - mCreationTime);
+                }
+            }
+            if (mFrameCounter != null) {
+                log.setFrameCount(mFrameCounter.mFrameCount);
+                log.setJankyFrameCount(mFrameCounter.mJankyFrameCount);
+            }
+            return log;
+        }
+    }
+
+    /**
+     * Counts frames and janky frames using display refresh callbacks.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameCounter implements Choreographer.FrameCallback {
+
+        /**
+         * Minimum interval between 2 frames for the last one to be janky.
+         */
+        private final long mJankyFrameNanos;
+
+        /**
+         * Previous frame time, 0 before first frame.
+         */
+        private long mLastFrameTimeNanos;
+
+        /**
+         * Number of frames.
+         */
+        private int mFrameCount;
+
+        /**
+         * Number of janky frames.
+         */
+        private int mJankyFrameCount;
+
+        /**
+         * True when stopped.
+         */
+        private boolean mStopped;
+
+        /**
+         * Init.
+         *
+         * @param jankyFrameNanos minimum interval between 2 frames for the last one to be janky.
+         */
+        FrameCounter(long jankyFrameNanos) {
+            mJankyFrameNanos = jankyFrameNanos;
+        }
+
+        void start() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mStopped = true;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mStopped) {
+                return;
+            }
+            if (mLastFrameTimeNanos > 0) {
+                mFrameCount++;
+                if (frameTimeNanos - mLastFrameTimeNanos > mJankyFrameNanos) {
+                    mJankyFrameCount++;
+                }
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size array of sums that any thread can add to without locking.
+ * Each thread adds to its own stripe, chosen from its identifier, and stripes are kept on distinct
+ * cache lines so that threads recording at the same time do not contend.
+ * Reading a sum adds up all stripes.
+ */
+class StripedAccumulator {
+
+    /**
+     * Max number of stripes.
+     */
+    @VisibleForTesting
+    static final int MAX_STRIPE_COUNT = 16;
+
+    /**
+     * Number of longs in a cache line, used to pad stripes.
+     */
+    private static final int CACHE_LINE_LONGS = 8;
+
+    /**
+     * Number of stripes, a power of 2 so that a stripe can be selected with a mask.
+     */
+    @VisibleForTesting
+    static final int STRIPE_COUNT = getStripeCount(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Sums of all stripes, each stripe followed by a cache line of padding.
+     */
+    private final AtomicLongArray mCells;
+
+    /**
+     * Number of cells between the start of 2 consecutive stripes.
+     */
+    private final int mStripeLength;
+
+    /**
+     * Init.
+     *
+     * @param size number of sums.
+     */
+    StripedAccumulator(int size) {
+        mStripeLength = size + CACHE_LINE_LONGS;
+        mCells = new AtomicLongArray(STRIPE_COUNT * mStripeLength);
+    }
+
+    /**
+     * Get the number of stripes to use.
+     *
+     * @param processorCount number of processors.
+     * @return smallest power of 2 greater than or equal to the number of processors, within limits.
+     */
+    @VisibleForTesting
+    static int getStripeCount(int processorCount) {
+        int stripeCount = 1;
+        while (stripeCount < processorCount && stripeCount < MAX_STRIPE_COUNT) {
+            stripeCount <<= 1;
+        }
+        return stripeCount;
+    }
+
+    /**
+     * Add to a sum.
+     *
+     * @param index sum index.
+     * @param delta value to add.
+     */
+    void add(int index, long delta) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+        mCells.getAndAdd(stripe * mStripeLength + index, delta);
+    }
+
+    /**
+     * Get a sum and reset it to 0.
+     * Values added concurrently are either included or kept for the next call.
+     *
+     * @param index sum index.
+     * @return sum of values added since last reset.
+     */
+    long sumThenReset(int index) {
+        long sum = 0;
+        for (int i = index; i < mCells.length(); i += mStripeLength) {
+            sum += mCells.getAndSet(i, 0);
+        }
+        return sum;
+    }
+}
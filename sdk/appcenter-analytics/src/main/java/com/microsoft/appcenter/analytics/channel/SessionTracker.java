@@ -15,6 +15,7 @@ import com.microsoft.appcenter.utils.UUIDUtils;
 
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Decorator for channel, adding session semantic to logs.
@@ -37,26 +38,9 @@ public class SessionTracker extends AbstractChannelListener {
     private final String mGroupName;
 
     /**
-     * Current session identifier.
+     * Current session state, replaced atomically so that logs can be decorated without locking.
      */
-    private UUID mSid;
-
-    /**
-     * Timestamp of the last log queued to channel.
-     */
-    private long mLastQueuedLogTime;
-
-    /**
-     * Timestamp of the last time the application went to foreground.
-     * This value is null when the application resume event has not yet been seen.
-     */
-    private Long mLastResumedTime;
-
-    /**
-     * Timestamp of the last time the application went to background.
-     * This value is null when the application pause event has not yet been seen.
-     */
-    private Long mLastPausedTime;
+    private final AtomicReference<State> mState = new AtomicReference<>(new State(null, 0, null, null));
 
     /**
      * Init.
@@ -95,46 +79,72 @@ public class SessionTracker extends AbstractChannelListener {
 
         /* If the log does not have a timestamp yet, then we just correlate with current session. */
         else {
+            log.setSid(useSession(true));
+        }
+    }
 
-            /* Send a new start session log if needed. */
-            sendStartSessionIfNeeded();
-
-            /* Set current session identifier. */
-            log.setSid(mSid);
-
-            /* Record queued time only if the log is using current session. */
-            mLastQueuedLogTime = SystemClock.elapsedRealtime();
+    /**
+     * Get current session identifier, starting a new session if the current one has timed out.
+     * Does not block unless a new session has to be started: if another thread changes the state concurrently,
+     * the state is read again.
+     *
+     * @param queuingLog true to record that a log using the session is being queued now.
+     * @return current session identifier.
+     */
+    private UUID useSession(boolean queuingLog) {
+        while (true) {
+            State state = mState.get();
+            long now = SystemClock.elapsedRealtime();
+            if (state.mSid == null || hasSessionTimedOut(state, now)) {
+                return startSession();
+            }
+            if (!queuingLog || state.mLastQueuedLogTime == now) {
+                return state.mSid;
+            }
+            if (mState.compareAndSet(state, new State(state.mSid, now, state.mLastResumedTime, state.mLastPausedTime))) {
+                return state.mSid;
+            }
         }
     }
 
     /**
-     * Generate a new session identifier if the first time or
-     * we went in background for more X seconds or
-     * if enough time has elapsed since the last background usage of the API.
-     * <p>
-     * Indeed the API can be used for events or crashes only for example, we need to renew
-     * the session even when no pages are triggered but at the same time we want to keep using
-     * the same session as long as the current activity is not paused (long video for example).
+     * Record and send a new session unless another thread already did it.
+     * The start session log is queued before the new identifier is published,
+     * so that no other log of the session can be queued before it.
+     *
+     * @return current session identifier.
      */
-    private void sendStartSessionIfNeeded() {
-        if (mSid == null || hasSessionTimedOut()) {
+    private UUID startSession() {
+
+        /*
+         * The channel is already locked when it calls listeners: locking it here as well serializes session starts
+         * without lock order inversion when the start session log is queued.
+         */
+        synchronized (mChannel) {
+            State state = mState.get();
+            long now = SystemClock.elapsedRealtime();
+            if (state.mSid != null && !hasSessionTimedOut(state, now)) {
+                return state.mSid;
+            }
 
-            /* New session: generate a new identifier. */
-            mSid = UUIDUtils.randomUUID();
+            /* New session: generate a new identifier and update session storage. */
+            UUID sid = UUIDUtils.randomUUID();
+            SessionContext.getInstance().addSession(sid);
 
-            /* Update session storage. */
-            SessionContext.getInstance().addSession(mSid);
+            /* Enqueue a start session log. */
+            StartSessionLog startSessionLog = new StartSessionLog();
+            startSessionLog.setSid(sid);
+            mChannel.enqueue(startSessionLog, mGroupName);
 
             /*
+             * Publish the new session, keeping resume and pause times that changed concurrently.
              * Record queued time for the session log itself to avoid double log if resuming
              * from background after timeout and sending a log at same time we resume like a page.
              */
-            mLastQueuedLogTime = SystemClock.elapsedRealtime();
-
-            /* Enqueue a start session log. */
-            StartSessionLog startSessionLog = new StartSessionLog();
-            startSessionLog.setSid(mSid);
-            mChannel.enqueue(startSessionLog, mGroupName);
+            do {
+                state = mState.get();
+            } while (!mState.compareAndSet(state, new State(sid, now, state.mLastResumedTime, state.mLastPausedTime)));
+            return sid;
         }
     }
 
@@ -145,8 +155,13 @@ public class SessionTracker extends AbstractChannelListener {
 
         /* Record resume time for session timeout management. */
         AppCenterLog.debug(Analytics.LOG_TAG, "onActivityResumed");
-        mLastResumedTime = SystemClock.elapsedRealtime();
-        sendStartSessionIfNeeded();
+        State state;
+        do {
+            state = mState.get();
+        } while (!mState.compareAndSet(state, new State(state.mSid, state.mLastQueuedLogTime, SystemClock.elapsedRealtime(), state.mLastPausedTime)));
+
+        /* Send a new start session log if needed. */
+        useSession(false);
     }
 
     /**
@@ -156,7 +171,10 @@ public class SessionTracker extends AbstractChannelListener {
 
         /* Record pause time for session timeout management. */
         AppCenterLog.debug(Analytics.LOG_TAG, "onActivityPaused");
-        mLastPausedTime = SystemClock.elapsedRealtime();
+        State state;
+        do {
+            state = mState.get();
+        } while (!mState.compareAndSet(state, new State(state.mSid, state.mLastQueuedLogTime, state.mLastResumedTime, SystemClock.elapsedRealtime())));
     }
 
     /**
@@ -169,32 +187,76 @@ public class SessionTracker extends AbstractChannelListener {
     /**
      * Check if current session has timed out.
      *
+     * @param state session state.
+     * @param now   current time.
      * @return true if current session has timed out, false otherwise.
      */
-    private boolean hasSessionTimedOut() {
+    private static boolean hasSessionTimedOut(State state, long now) {
 
         /* Compute how long we have not sent a log. */
-        long now = SystemClock.elapsedRealtime();
-        boolean noLogSentForLong = now - mLastQueuedLogTime >= SESSION_TIMEOUT;
+        boolean noLogSentForLong = now - state.mLastQueuedLogTime >= SESSION_TIMEOUT;
 
         /* Corner case: we have not been paused yet, typically we stayed on the first activity or we are called from background (for example a broadcast intent that wakes up application, new process). */
-        if (mLastPausedTime == null) {
+        if (state.mLastPausedTime == null) {
 
             /* If we saw a resume in event, we are in foreground, so no expiration. If we are in background, check how long. */
-            return mLastResumedTime == null && noLogSentForLong;
+            return state.mLastResumedTime == null && noLogSentForLong;
         }
 
         /* Corner case 2: we saw a pause but not a resume event: we are in background, check how long. */
-        if (mLastResumedTime == null) {
+        if (state.mLastResumedTime == null) {
 
             /* Note that this corner case is likely an integration issue. It's not supposed to happen. Likely the SDK has been configured too late. */
             return noLogSentForLong;
         }
 
         /* Normal case: we saw both resume and paused events, compare all times. */
-        boolean isBackgroundForLong = mLastPausedTime >= mLastResumedTime && now - mLastPausedTime >= SESSION_TIMEOUT;
-        boolean wasBackgroundForLong = mLastResumedTime - Math.max(mLastPausedTime, mLastQueuedLogTime) >= SESSION_TIMEOUT;
+        boolean isBackgroundForLong = state.mLastPausedTime >= state.mLastResumedTime && now - state.mLastPausedTime >= SESSION_TIMEOUT;
+        boolean wasBackgroundForLong = state.mLastResumedTime - Math.max(state.mLastPausedTime, state.mLastQueuedLogTime) >= SESSION_TIMEOUT;
         AppCenterLog.debug(Analytics.LOG_TAG, "noLogSentForLong=" + noLogSentForLong + " isBackgroundForLong=" + isBackgroundForLong + " wasBackgroundForLong=" + wasBackgroundForLong);
         return noLogSentForLong && (isBackgroundForLong || wasBackgroundForLong);
     }
+
+    /**
+     * Immutable session state.
+     */
+    private static class State {
+
+        /**
+         * Current session identifier, null before the first session.
+         */
+        private final UUID mSid;
+
+        /**
+         * Timestamp of the last log queued to channel.
+         */
+        private final long mLastQueuedLogTime;
+
+        /**
+         * Timestamp of the last time the application went to foreground.
+         * This value is null when the application resume event has not yet been seen.
+         */
+        private final Long mLastResumedTime;
+
+        /**
+         * Timestamp of the last time the application went to background.
+         * This value is null when the application pause event has not yet been seen.
+         */
+        private final Long mLastPausedTime;
+
+        /**
+         * Init.
+         *
+         * @param sid               current session identifier.
+         * @param lastQueuedLogTime timestamp of the last log queued to channel.
+         * @param lastResumedTime   timestamp of the last resume, can be null.
+         * @param lastPausedTime    timestamp of the last pause, can be null.
+         */
+        State(UUID sid, long lastQueuedLogTime, Long lastResumedTime, Long lastPausedTime) {
+            mSid = sid;
+            mLastQueuedLogTime = lastQueuedLogTime;
+            mLastResumedTime = lastResumedTime;
+            mLastPausedTime = lastPausedTime;
+        }
+    }
 }
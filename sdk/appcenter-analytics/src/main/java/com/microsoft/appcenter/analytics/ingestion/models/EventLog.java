@@ -1,11 +1,16 @@
 package com.microsoft.appcenter.analytics.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.utils.StringInterner;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
@@ -14,7 +19,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
 /**
  * Event log.
  */
-public class EventLog extends LogWithProperties {
+public class EventLog extends LogWithProperties implements StreamingModel {
 
     public static final String TYPE = "event";
 
@@ -72,10 +77,26 @@ public class EventLog extends LogWithProperties {
     }
 
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        setId(UUID.fromString(object.getString(ID)));
-        setName(object.getString(NAME));
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case ID:
+                setId(UUID.fromString(reader.nextString()));
+                return true;
+
+            case NAME:
+                setName(StringInterner.intern(reader.nextString()));
+                return true;
+
+            default:
+                return super.readProperty(name, reader);
+        }
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONUtils.checkRequired(ID, id);
+        JSONUtils.checkRequired(NAME, name);
     }
 
     @Override
@@ -0,0 +1,284 @@
+package com.microsoft.appcenter.analytics.ingestion.models;
+
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
+
+/**
+ * Values recorded by a metric during one flush interval.
+ */
+public class MetricLog extends AbstractLog implements StreamingModel {
+
+    public static final String TYPE = "metric";
+
+    private static final String METRIC_TYPE = "metricType";
+
+    private static final String VALUE = "value";
+
+    private static final String COUNT = "count";
+
+    private static final String SUM = "sum";
+
+    private static final String BUCKETS = "buckets";
+
+    /**
+     * Name of the metric.
+     */
+    private String name;
+
+    /**
+     * Kind of metric: counter, gauge or histogram.
+     */
+    private String metricType;
+
+    /**
+     * Sum of counter increments or last gauge value, null for histograms.
+     */
+    private Long value;
+
+    /**
+     * Number of values recorded in a histogram, null for other metrics.
+     */
+    private Long count;
+
+    /**
+     * Sum of values recorded in a histogram, null for other metrics.
+     */
+    private Long sum;
+
+    /**
+     * Number of values recorded in a histogram per bucket, keyed by bucket lower bound.
+     * A bucket holds values from its lower bound up to the next power of 2 (excluded),
+     * bucket 0 holds values lower than 1. Empty buckets are omitted. Null for other metrics.
+     */
+    private Map<String, Long> buckets;
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * Get the name value.
+     *
+     * @return the name value
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Set the name value.
+     *
+     * @param name the name value to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the metricType value.
+     *
+     * @return the metricType value
+     */
+    public String getMetricType() {
+        return this.metricType;
+    }
+
+    /**
+     * Set the metricType value.
+     *
+     * @param metricType the metricType value to set
+     */
+    public void setMetricType(String metricType) {
+        this.metricType = metricType;
+    }
+
+    /**
+     * Get the value value.
+     *
+     * @return the value value
+     */
+    public Long getValue() {
+        return this.value;
+    }
+
+    /**
+     * Set the value value.
+     *
+     * @param value the value value to set
+     */
+    public void setValue(Long value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the count value.
+     *
+     * @return the count value
+     */
+    public Long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Set the count value.
+     *
+     * @param count the count value to set
+     */
+    public void setCount(Long count) {
+        this.count = count;
+    }
+
+    /**
+     * Get the sum value.
+     *
+     * @return the sum value
+     */
+    public Long getSum() {
+        return this.sum;
+    }
+
+    /**
+     * Set the sum value.
+     *
+     * @param sum the sum value to set
+     */
+    public void setSum(Long sum) {
+        this.sum = sum;
+    }
+
+    /**
+     * Get the buckets value.
+     *
+     * @return the buckets value
+     */
+    public Map<String, Long> getBuckets() {
+        return this.buckets;
+    }
+
+    /**
+     * Set the buckets value.
+     *
+     * @param buckets the buckets value to set
+     */
+    public void setBuckets(Map<String, Long> buckets) {
+        this.buckets = buckets;
+    }
+
+    @Override
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case NAME:
+                setName(reader.nextString());
+                return true;
+
+            case METRIC_TYPE:
+                setMetricType(reader.nextString());
+                return true;
+
+            case VALUE:
+                setValue(JSONUtils.readLong(reader));
+                return true;
+
+            case COUNT:
+                setCount(JSONUtils.readLong(reader));
+                return true;
+
+            case SUM:
+                setSum(JSONUtils.readLong(reader));
+                return true;
+
+            case BUCKETS:
+                Map<String, Long> buckets = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    buckets.put(reader.nextName(), reader.nextLong());
+                }
+                reader.endObject();
+                setBuckets(buckets);
+                return true;
+
+            default:
+                return super.readProperty(name, reader);
+        }
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONUtils.checkRequired(NAME, name);
+        JSONUtils.checkRequired(METRIC_TYPE, metricType);
+    }
+
+    @Override
+    public void write(JSONStringer writer) throws JSONException {
+        super.write(writer);
+        writer.key(NAME).value(getName());
+        writer.key(METRIC_TYPE).value(getMetricType());
+        JSONUtils.write(writer, VALUE, getValue());
+        JSONUtils.write(writer, COUNT, getCount());
+        JSONUtils.write(writer, SUM, getSum());
+        if (buckets != null) {
+            writer.key(BUCKETS).object();
+            for (Map.Entry<String, Long> bucket : buckets.entrySet()) {
+                writer.key(bucket.getKey()).value(bucket.getValue());
+            }
+            writer.endObject();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("SimplifiableIfStatement")
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+        MetricLog that = (MetricLog) o;
+        if (name != null ? !name.equals(that.name) : that.name != null) {
+            return false;
+        }
+        if (metricType != null ? !metricType.equals(that.metricType) : that.metricType != null) {
+            return false;
+        }
+        if (value != null ? !value.equals(that.value) : that.value != null) {
+            return false;
+        }
+        if (count != null ? !count.equals(that.count) : that.count != null) {
+            return false;
+        }
+        if (sum != null ? !sum.equals(that.sum) : that.sum != null) {
+            return false;
+        }
+        return buckets != null ? buckets.equals(that.buckets) : that.buckets == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + (metricType != null ? metricType.hashCode() : 0);
+        result = 31 * result + (value != null ? value.hashCode() : 0);
+        result = 31 * result + (count != null ? count.hashCode() : 0);
+        result = 31 * result + (sum != null ? sum.hashCode() : 0);
+        result = 31 * result + (buckets != null ? buckets.hashCode() : 0);
+        return result;
+    }
+}
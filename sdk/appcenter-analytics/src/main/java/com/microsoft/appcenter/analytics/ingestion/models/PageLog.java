@@ -1,17 +1,22 @@
 package com.microsoft.appcenter.analytics.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
 
 /**
  * Page log.
  */
-public class PageLog extends LogWithProperties {
+public class PageLog extends LogWithProperties implements StreamingModel {
 
     public static final String TYPE = "page";
 
@@ -44,9 +49,18 @@ public class PageLog extends LogWithProperties {
     }
 
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        setName(object.getString(NAME));
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        if (NAME.equals(name)) {
+            setName(reader.nextString());
+            return true;
+        }
+        return super.readProperty(name, reader);
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONUtils.checkRequired(NAME, name);
     }
 
     @Override
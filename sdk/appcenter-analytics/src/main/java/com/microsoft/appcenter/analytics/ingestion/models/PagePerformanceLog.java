@@ -0,0 +1,267 @@
+package com.microsoft.appcenter.analytics.ingestion.models;
+
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+
+import java.io.IOException;
+
+import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
+
+/**
+ * Rendering performance of a page, sent when the page is left.
+ */
+public class PagePerformanceLog extends AbstractLog implements StreamingModel {
+
+    public static final String TYPE = "pagePerformance";
+
+    private static final String LAUNCH_DURATION = "launchDuration";
+
+    private static final String RESUME_DURATION = "resumeDuration";
+
+    private static final String DURATION = "duration";
+
+    private static final String FRAME_COUNT = "frameCount";
+
+    private static final String JANKY_FRAME_COUNT = "jankyFrameCount";
+
+    /**
+     * Name of the page.
+     */
+    private String name;
+
+    /**
+     * Time in milliseconds from page creation to its first frame, null if the page was not created for this visit.
+     */
+    private Long launchDuration;
+
+    /**
+     * Time in milliseconds from page resume to its first frame, null if no frame was drawn.
+     */
+    private Long resumeDuration;
+
+    /**
+     * Time in milliseconds the page was in foreground.
+     */
+    private Long duration;
+
+    /**
+     * Number of frames while page was in foreground, null if not supported on this device.
+     */
+    private Integer frameCount;
+
+    /**
+     * Number of frames that missed at least one display refresh, null if not supported on this device.
+     */
+    private Integer jankyFrameCount;
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * Get the name value.
+     *
+     * @return the name value
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Set the name value.
+     *
+     * @param name the name value to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the launchDuration value.
+     *
+     * @return the launchDuration value
+     */
+    public Long getLaunchDuration() {
+        return this.launchDuration;
+    }
+
+    /**
+     * Set the launchDuration value.
+     *
+     * @param launchDuration the launchDuration value to set
+     */
+    public void setLaunchDuration(Long launchDuration) {
+        this.launchDuration = launchDuration;
+    }
+
+    /**
+     * Get the resumeDuration value.
+     *
+     * @return the resumeDuration value
+     */
+    public Long getResumeDuration() {
+        return this.resumeDuration;
+    }
+
+    /**
+     * Set the resumeDuration value.
+     *
+     * @param resumeDuration the resumeDuration value to set
+     */
+    public void setResumeDuration(Long resumeDuration) {
+        this.resumeDuration = resumeDuration;
+    }
+
+    /**
+     * Get the duration value.
+     *
+     * @return the duration value
+     */
+    public Long getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * Set the duration value.
+     *
+     * @param duration the duration value to set
+     */
+    public void setDuration(Long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Get the frameCount value.
+     *
+     * @return the frameCount value
+     */
+    public Integer getFrameCount() {
+        return this.frameCount;
+    }
+
+    /**
+     * Set the frameCount value.
+     *
+     * @param frameCount the frameCount value to set
+     */
+    public void setFrameCount(Integer frameCount) {
+        this.frameCount = frameCount;
+    }
+
+    /**
+     * Get the jankyFrameCount value.
+     *
+     * @return the jankyFrameCount value
+     */
+    public Integer getJankyFrameCount() {
+        return this.jankyFrameCount;
+    }
+
+    /**
+     * Set the jankyFrameCount value.
+     *
+     * @param jankyFrameCount the jankyFrameCount value to set
+     */
+    public void setJankyFrameCount(Integer jankyFrameCount) {
+        this.jankyFrameCount = jankyFrameCount;
+    }
+
+    @Override
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case NAME:
+                setName(reader.nextString());
+                return true;
+
+            case LAUNCH_DURATION:
+                setLaunchDuration(JSONUtils.readLong(reader));
+                return true;
+
+            case RESUME_DURATION:
+                setResumeDuration(JSONUtils.readLong(reader));
+                return true;
+
+            case DURATION:
+                setDuration(JSONUtils.readLong(reader));
+                return true;
+
+            case FRAME_COUNT:
+                setFrameCount(JSONUtils.readInteger(reader));
+                return true;
+
+            case JANKY_FRAME_COUNT:
+                setJankyFrameCount(JSONUtils.readInteger(reader));
+                return true;
+
+            default:
+                return super.readProperty(name, reader);
+        }
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONUtils.checkRequired(NAME, name);
+    }
+
+    @Override
+    public void write(JSONStringer writer) throws JSONException {
+        super.write(writer);
+        writer.key(NAME).value(getName());
+        JSONUtils.write(writer, LAUNCH_DURATION, getLaunchDuration());
+        JSONUtils.write(writer, RESUME_DURATION, getResumeDuration());
+        JSONUtils.write(writer, DURATION, getDuration());
+        JSONUtils.write(writer, FRAME_COUNT, getFrameCount());
+        JSONUtils.write(writer, JANKY_FRAME_COUNT, getJankyFrameCount());
+    }
+
+    @Override
+    @SuppressWarnings("SimplifiableIfStatement")
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+        PagePerformanceLog that = (PagePerformanceLog) o;
+        if (name != null ? !name.equals(that.name) : that.name != null) {
+            return false;
+        }
+        if (launchDuration != null ? !launchDuration.equals(that.launchDuration) : that.launchDuration != null) {
+            return false;
+        }
+        if (resumeDuration != null ? !resumeDuration.equals(that.resumeDuration) : that.resumeDuration != null) {
+            return false;
+        }
+        if (duration != null ? !duration.equals(that.duration) : that.duration != null) {
+            return false;
+        }
+        if (frameCount != null ? !frameCount.equals(that.frameCount) : that.frameCount != null) {
+            return false;
+        }
+        return jankyFrameCount != null ? jankyFrameCount.equals(that.jankyFrameCount) : that.jankyFrameCount == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + (launchDuration != null ? launchDuration.hashCode() : 0);
+        result = 31 * result + (resumeDuration != null ? resumeDuration.hashCode() : 0);
+        result = 31 * result + (duration != null ? duration.hashCode() : 0);
+        result = 31 * result + (frameCount != null ? frameCount.hashCode() : 0);
+        result = 31 * result + (jankyFrameCount != null ? jankyFrameCount.hashCode() : 0);
+        return result;
+    }
+}
@@ -1,11 +1,12 @@
 package com.microsoft.appcenter.analytics.ingestion.models;
 
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 
 /**
  * Start session log.
  */
-public class StartSessionLog extends AbstractLog {
+public class StartSessionLog extends AbstractLog implements StreamingModel {
 
     public static final String TYPE = "startSession";
 
@@ -0,0 +1,12 @@
+package com.microsoft.appcenter.analytics.ingestion.models.json;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+
+public class MetricLogFactory implements LogFactory {
+
+    @Override
+    public MetricLog create() {
+        return new MetricLog();
+    }
+}
@@ -0,0 +1,12 @@
+package com.microsoft.appcenter.analytics.ingestion.models.json;
+
+import com.microsoft.appcenter.analytics.ingestion.models.PagePerformanceLog;
+import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+
+public class PagePerformanceLogFactory implements LogFactory {
+
+    @Override
+    public PagePerformanceLog create() {
+        return new PagePerformanceLog();
+    }
+}
@@ -1,17 +1,24 @@
 package com.microsoft.appcenter.analytics;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.os.Handler;
 import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.AppCenterHandler;
+import com.microsoft.appcenter.SessionContext;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
 import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PagePerformanceLog;
 import com.microsoft.appcenter.analytics.ingestion.models.StartSessionLog;
 import com.microsoft.appcenter.analytics.ingestion.models.json.EventLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.MetricLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.PageLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.PagePerformanceLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFactory;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -38,6 +45,9 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -45,12 +55,16 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.test.TestUtils.generateString;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
@@ -65,11 +79,13 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @SuppressWarnings("unused")
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({SystemClock.class, StorageHelper.PreferencesStorage.class, AppCenterLog.class, AppCenter.class, HandlerUtils.class})
+@PrepareForTest({Analytics.class, SystemClock.class, StorageHelper.PreferencesStorage.class, StorageHelper.DatabaseStorage.class, AppCenterLog.class, AppCenter.class, HandlerUtils.class})
 public class AnalyticsTest {
 
     private static final String ANALYTICS_ENABLED_KEY = PrefStorageConstants.KEY_ENABLED + "_" + Analytics.getInstance().getServiceName();
@@ -80,6 +96,9 @@ public class AnalyticsTest {
     @Mock
     private AppCenterHandler mAppCenterHandler;
 
+    @Mock
+    private Handler mMainHandler;
+
     @Before
     public void setUp() {
         Analytics.unsetInstance();
@@ -100,6 +119,7 @@ public class AnalyticsTest {
         mockStatic(HandlerUtils.class);
         doAnswer(runNow).when(HandlerUtils.class);
         HandlerUtils.runOnUiThread(any(Runnable.class));
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
 
         /* First call to com.microsoft.appcenter.AppCenter.isEnabled shall return true, initial state. */
         mockStatic(StorageHelper.PreferencesStorage.class);
@@ -135,7 +155,9 @@ public class AnalyticsTest {
         assertNotNull(factories);
         assertTrue(factories.remove(StartSessionLog.TYPE) instanceof StartSessionLogFactory);
         assertTrue(factories.remove(PageLog.TYPE) instanceof PageLogFactory);
+        assertTrue(factories.remove(PagePerformanceLog.TYPE) instanceof PagePerformanceLogFactory);
         assertTrue(factories.remove(EventLog.TYPE) instanceof EventLogFactory);
+        assertTrue(factories.remove(MetricLog.TYPE) instanceof MetricLogFactory);
         assertTrue(factories.isEmpty());
     }
 
@@ -203,6 +225,53 @@ public class AnalyticsTest {
         activityResumed("Activity", new Activity());
     }
 
+    @Test
+    public void pagePerformanceTracking() throws Exception {
+        PagePerformanceTracker tracker = mock(PagePerformanceTracker.class);
+        ArgumentCaptor<PagePerformanceTracker.Listener> listener = ArgumentCaptor.forClass(PagePerformanceTracker.Listener.class);
+        whenNew(PagePerformanceTracker.class).withArguments(listener.capture()).thenReturn(tracker);
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), "", channel);
+
+        /* Disabled by default. */
+        assertFalse(Analytics.isPagePerformanceTrackingEnabled());
+        android.app.Activity activity = new MyActivity();
+        analytics.onActivityCreated(activity, null);
+        analytics.onActivityResumed(activity);
+        analytics.onActivityPaused(activity);
+        analytics.onActivityDestroyed(activity);
+        verifyNew(PagePerformanceTracker.class, never()).withArguments(any(PagePerformanceTracker.Listener.class));
+
+        /* Enable: activity callbacks are forwarded. */
+        Analytics.setPagePerformanceTrackingEnabled(true);
+        Analytics.setPagePerformanceTrackingEnabled(true);
+        assertTrue(Analytics.isPagePerformanceTrackingEnabled());
+        verifyNew(PagePerformanceTracker.class).withArguments(any(PagePerformanceTracker.Listener.class));
+        analytics.onActivityCreated(activity, null);
+        verify(tracker).onActivityCreated(activity);
+        analytics.onActivityResumed(activity);
+        verify(tracker).onActivityResumed(activity, "My");
+        analytics.onActivityPaused(activity);
+        verify(tracker).onActivityPaused();
+        analytics.onActivityDestroyed(activity);
+        verify(tracker).onActivityDestroyed(activity);
+
+        /* Measurements are enqueued. */
+        PagePerformanceLog log = new PagePerformanceLog();
+        listener.getValue().onPageMeasured(log);
+        verify(channel).enqueue(log, analytics.getGroupName());
+
+        /* Disable stops tracker. */
+        Analytics.setPagePerformanceTrackingEnabled(false);
+        Analytics.setPagePerformanceTrackingEnabled(false);
+        assertFalse(Analytics.isPagePerformanceTrackingEnabled());
+        verify(tracker).stop();
+        analytics.onActivityResumed(activity);
+        verify(tracker).onActivityResumed(any(android.app.Activity.class), anyString());
+    }
+
     @Test
     public void disableAutomaticPageTracking() {
         Analytics analytics = Analytics.getInstance();
@@ -243,6 +312,151 @@ public class AnalyticsTest {
         }), eq(analytics.getGroupName()));
     }
 
+    @Test
+    public void trackEventWithSameValidProperties() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), "", channel);
+
+        /* Track 2 events with equal names and properties but different instances. */
+        Map<String, String> properties = new HashMap<>();
+        String value = new String("value".toCharArray());
+        properties.put(new String("key".toCharArray()), value);
+        Analytics.trackEvent(new String("eventName".toCharArray()), properties);
+        Map<String, String> otherProperties = new HashMap<>();
+        otherProperties.put(new String("key".toCharArray()), "value");
+        Analytics.trackEvent(new String("eventName".toCharArray()), otherProperties);
+        ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
+        verify(channel, times(2)).enqueue(log.capture(), anyString());
+        EventLog first = (EventLog) log.getAllValues().get(0);
+        EventLog second = (EventLog) log.getAllValues().get(1);
+
+        /* Events share canonical instances and are not affected by changes to caller maps. */
+        assertSame(first.getName(), second.getName());
+        assertSame(first.getProperties(), second.getProperties());
+        assertEquals(properties, first.getProperties());
+
+        /* Property values are free-form so they are not canonicalized. */
+        assertSame(value, first.getProperties().get("key"));
+        properties.put("other", "value");
+        assertEquals(1, first.getProperties().size());
+        try {
+            first.getProperties().put("other", "value");
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackEvents() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), "", channel);
+
+        /* Null collection. */
+        Analytics.trackEvents(null);
+        verify(channel, never()).enqueueAll(anyCollection(), anyString());
+
+        /* Only invalid events. */
+        Analytics.trackEvents(Arrays.asList(null, new Event(null), new Event("")));
+        verify(channel, never()).enqueueAll(anyCollection(), anyString());
+
+        /* Valid events are validated like single events and enqueued at once. */
+        final String maxName = generateString(Analytics.MAX_NAME_LENGTH, '*');
+        Map<String, String> properties = new HashMap<>();
+        properties.put("key", "value");
+        properties.put("", "value");
+        Analytics.trackEvents(Arrays.asList(new Event("one"), new Event(null), new Event(maxName + "*", properties)));
+        ArgumentCaptor<Collection> logs = ArgumentCaptor.forClass(Collection.class);
+        verify(channel).enqueueAll(logs.capture(), eq(analytics.getGroupName()));
+        verify(channel, never()).enqueue(any(Log.class), anyString());
+        Object[] eventLogs = logs.getValue().toArray();
+        assertEquals(2, eventLogs.length);
+        assertEquals("one", ((EventLog) eventLogs[0]).getName());
+        assertNull(((EventLog) eventLogs[0]).getProperties());
+        assertEquals(maxName, ((EventLog) eventLogs[1]).getName());
+        assertEquals(Collections.singletonMap("key", "value"), ((EventLog) eventLogs[1]).getProperties());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void metrics() {
+
+        /* Mock session history storage. */
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class), anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(databaseStorage);
+        SessionContext.unsetInstance();
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+
+        /* Values can be recorded before start, metrics with the same name and type are the same. */
+        Counter counter = Analytics.getCounter("counter");
+        assertSame(counter, Analytics.getCounter("counter"));
+        counter.increment();
+        Analytics.getGauge("gauge").set(3);
+        Analytics.getHistogram("histogram").record(5);
+
+        /* Values of metrics with invalid names are not sent. */
+        Analytics.getCounter(null).increment();
+        Analytics.getGauge("").set(1);
+        Analytics.getHistogram(null).record(1);
+
+        /* Start schedules a flush. */
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), "", channel);
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flush.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+
+        /* Flush sends one timestamped log per metric at once and schedules next flush. */
+        flush.getValue().run();
+        ArgumentCaptor<Collection> logs = ArgumentCaptor.forClass(Collection.class);
+        verify(channel).enqueueAll(logs.capture(), eq(analytics.getGroupName()));
+        verify(mMainHandler, times(2)).postDelayed(flush.getValue(), Analytics.METRICS_FLUSH_INTERVAL);
+        Object[] metricLogs = logs.getValue().toArray();
+        assertEquals(3, metricLogs.length);
+        MetricLog counterLog = (MetricLog) metricLogs[0];
+        assertEquals("counter", counterLog.getName());
+        assertEquals(Counter.TYPE, counterLog.getMetricType());
+        assertEquals(Long.valueOf(1), counterLog.getValue());
+        assertNotNull(counterLog.getTimestamp());
+        MetricLog gaugeLog = (MetricLog) metricLogs[1];
+        assertEquals("gauge", gaugeLog.getName());
+        assertEquals(Gauge.TYPE, gaugeLog.getMetricType());
+        assertEquals(Long.valueOf(3), gaugeLog.getValue());
+        assertNotNull(gaugeLog.getTimestamp());
+        MetricLog histogramLog = (MetricLog) metricLogs[2];
+        assertEquals("histogram", histogramLog.getName());
+        assertEquals(Histogram.TYPE, histogramLog.getMetricType());
+        assertEquals(Long.valueOf(1), histogramLog.getCount());
+        assertEquals(Long.valueOf(5), histogramLog.getSum());
+        assertNotNull(histogramLog.getTimestamp());
+
+        /* Nothing recorded since last flush: nothing to send. */
+        flush.getValue().run();
+        verify(channel).enqueueAll(anyCollection(), anyString());
+
+        /* Disabling stops flushing and discards values. */
+        counter.increment();
+        Analytics.setEnabled(false);
+        verify(mMainHandler, times(4)).removeCallbacks(flush.getValue());
+        flush.getValue().run();
+        verify(mMainHandler, times(3)).postDelayed(flush.getValue(), Analytics.METRICS_FLUSH_INTERVAL);
+
+        /* Enabling schedules flushes again. */
+        Analytics.setEnabled(true);
+        verify(mMainHandler, times(4)).postDelayed(flush.getValue(), Analytics.METRICS_FLUSH_INTERVAL);
+        flush.getValue().run();
+        verify(channel).enqueueAll(anyCollection(), anyString());
+        counter.add(2);
+        flush.getValue().run();
+        verify(channel, times(2)).enqueueAll(logs.capture(), eq(analytics.getGroupName()));
+        assertEquals(Long.valueOf(2), ((MetricLog) logs.getValue().iterator().next()).getValue());
+    }
+
     @Test
     public void testTrackEvent() {
         Analytics analytics = Analytics.getInstance();
@@ -424,6 +638,12 @@ public class AnalyticsTest {
     @Test
     public void setEnabled() throws InterruptedException {
 
+        /* Mock session history storage. */
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class), anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(databaseStorage);
+        SessionContext.unsetInstance();
+
         /* Before start it does not work to change state, it's disabled. */
         Analytics analytics = Analytics.getInstance();
         Analytics.setEnabled(true);
@@ -448,8 +668,7 @@ public class AnalyticsTest {
         verify(channel).removeListener(any(SessionTracker.class));
         verify(channel, times(2)).removeGroup(analytics.getGroupName());
         verify(channel).clear(analytics.getGroupName());
-        verifyStatic();
-        StorageHelper.PreferencesStorage.remove("sessions");
+        verify(databaseStorage).clear();
 
         Analytics.trackEvent("test");
         Analytics.trackPage("test");
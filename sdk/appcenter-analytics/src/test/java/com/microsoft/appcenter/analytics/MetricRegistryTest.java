@@ -0,0 +1,81 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@SuppressWarnings("unused")
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(AppCenterLog.class)
+public class MetricRegistryTest {
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void sameNameSameMetric() {
+        MetricRegistry registry = new MetricRegistry();
+        assertSame(registry.getCounter("a"), registry.getCounter("a"));
+        assertSame(registry.getGauge("a"), registry.getGauge("a"));
+        assertSame(registry.getHistogram("a"), registry.getHistogram("a"));
+        assertNotSame(registry.getCounter("a"), registry.getCounter("b"));
+    }
+
+    @Test
+    public void flush() {
+        MetricRegistry registry = new MetricRegistry();
+        assertTrue(registry.flush().isEmpty());
+
+        /* Metrics without values are not reported. */
+        registry.getCounter("a").increment();
+        registry.getCounter("b");
+        registry.getGauge("a").set(1);
+        registry.getHistogram("a").record(1);
+        List<Log> logs = registry.flush();
+        assertEquals(3, logs.size());
+        assertEquals(Counter.TYPE, ((MetricLog) logs.get(0)).getMetricType());
+        assertEquals(Gauge.TYPE, ((MetricLog) logs.get(1)).getMetricType());
+        assertEquals(Histogram.TYPE, ((MetricLog) logs.get(2)).getMetricType());
+        assertTrue(registry.flush().isEmpty());
+    }
+
+    @Test
+    public void tooManyMetrics() {
+        MetricRegistry registry = new MetricRegistry();
+        for (int i = 0; i < MetricRegistry.MAX_METRIC_COUNT; i++) {
+            registry.getCounter("counter" + i).increment();
+        }
+
+        /* Existing counters can still be used. */
+        assertSame(registry.getCounter("counter0"), registry.getCounter("counter0"));
+
+        /* New counters are not reported, other types are still accepted. */
+        Counter counter = registry.getCounter("extra");
+        counter.increment();
+        assertNotSame(counter, registry.getCounter("extra"));
+        verifyStatic(times(2));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+        registry.getGauge("extra").set(1);
+        assertEquals(MetricRegistry.MAX_METRIC_COUNT + 1, registry.flush().size());
+    }
+}
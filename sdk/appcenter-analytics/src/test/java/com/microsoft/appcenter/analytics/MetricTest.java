@@ -0,0 +1,95 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.analytics.ingestion.models.MetricLog;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@SuppressWarnings("unused")
+public class MetricTest {
+
+    @Test
+    public void counter() {
+        Counter counter = new Counter("test");
+        assertEquals("test", counter.getName());
+        assertNull(counter.flush());
+        counter.increment();
+        counter.add(41);
+        MetricLog log = counter.flush();
+        assertEquals("test", log.getName());
+        assertEquals(Counter.TYPE, log.getMetricType());
+        assertEquals(Long.valueOf(42), log.getValue());
+        assertNull(log.getCount());
+        assertNull(log.getSum());
+        assertNull(log.getBuckets());
+        assertNull(counter.flush());
+
+        /* Nothing to report if increments cancel out. */
+        counter.add(2);
+        counter.add(-2);
+        assertNull(counter.flush());
+    }
+
+    @Test
+    public void gauge() {
+        Gauge gauge = new Gauge("test");
+        assertNull(gauge.flush());
+        gauge.set(1);
+        gauge.set(3);
+        MetricLog log = gauge.flush();
+        assertEquals("test", log.getName());
+        assertEquals(Gauge.TYPE, log.getMetricType());
+        assertEquals(Long.valueOf(3), log.getValue());
+        assertNull(gauge.flush());
+
+        /* Setting the same value is reported again. */
+        gauge.set(3);
+        assertEquals(Long.valueOf(3), gauge.flush().getValue());
+    }
+
+    @Test
+    public void histogramBuckets() {
+        assertEquals(0, Histogram.getBucket(Long.MIN_VALUE));
+        assertEquals(0, Histogram.getBucket(0));
+        assertEquals(1, Histogram.getBucket(1));
+        assertEquals(2, Histogram.getBucket(2));
+        assertEquals(2, Histogram.getBucket(3));
+        assertEquals(3, Histogram.getBucket(4));
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucket(Long.MAX_VALUE));
+        assertEquals(0, Histogram.getBucketLowerBound(0));
+        assertEquals(1, Histogram.getBucketLowerBound(1));
+        assertEquals(2, Histogram.getBucketLowerBound(2));
+        assertEquals(4, Histogram.getBucketLowerBound(3));
+        assertEquals(1L << 62, Histogram.getBucketLowerBound(Histogram.BUCKET_COUNT - 1));
+        for (int bucket = 0; bucket < Histogram.BUCKET_COUNT; bucket++) {
+            assertEquals(bucket, Histogram.getBucket(Histogram.getBucketLowerBound(bucket)));
+        }
+    }
+
+    @Test
+    public void histogram() {
+        Histogram histogram = new Histogram("test");
+        assertNull(histogram.flush());
+        histogram.record(-1);
+        histogram.record(5);
+        histogram.record(6);
+        histogram.record(100);
+        MetricLog log = histogram.flush();
+        assertEquals("test", log.getName());
+        assertEquals(Histogram.TYPE, log.getMetricType());
+        assertNull(log.getValue());
+        assertEquals(Long.valueOf(4), log.getCount());
+        assertEquals(Long.valueOf(110), log.getSum());
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        buckets.put("0", 1L);
+        buckets.put("4", 2L);
+        buckets.put("64", 1L);
+        assertEquals(buckets, log.getBuckets());
+        assertNull(histogram.flush());
+    }
+}
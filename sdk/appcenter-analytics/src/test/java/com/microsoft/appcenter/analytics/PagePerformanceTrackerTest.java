@@ -0,0 +1,212 @@
+package com.microsoft.appcenter.analytics;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+import android.view.WindowManager;
+
+import com.microsoft.appcenter.analytics.ingestion.models.PagePerformanceLog;
+import com.microsoft.appcenter.test.TestUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@SuppressWarnings("unused")
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({SystemClock.class, Choreographer.class})
+public class PagePerformanceTrackerTest {
+
+    private static final long FRAME_NANOS = 16666667L;
+
+    @Mock
+    private Activity mActivity;
+
+    @Mock
+    private View mDecorView;
+
+    @Mock
+    private ViewTreeObserver mViewTreeObserver;
+
+    @Mock
+    private Display mDisplay;
+
+    @Mock
+    private Choreographer mChoreographer;
+
+    @Mock
+    private PagePerformanceTracker.Listener mListener;
+
+    private static void mockTime(long time) {
+        when(SystemClock.elapsedRealtime()).thenReturn(time);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(SystemClock.class);
+        mockStatic(Choreographer.class);
+        when(Choreographer.getInstance()).thenReturn(mChoreographer);
+        Window window = mock(Window.class);
+        when(mActivity.getWindow()).thenReturn(window);
+        when(window.getDecorView()).thenReturn(mDecorView);
+        when(mDecorView.getViewTreeObserver()).thenReturn(mViewTreeObserver);
+        WindowManager windowManager = mock(WindowManager.class);
+        when(mActivity.getWindowManager()).thenReturn(windowManager);
+        when(windowManager.getDefaultDisplay()).thenReturn(mDisplay);
+        when(mDisplay.getRefreshRate()).thenReturn(60f);
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.JELLY_BEAN);
+    }
+
+    private PagePerformanceLog getMeasuredLog() {
+        ArgumentCaptor<PagePerformanceLog> log = ArgumentCaptor.forClass(PagePerformanceLog.class);
+        verify(mListener).onPageMeasured(log.capture());
+        return log.getValue();
+    }
+
+    @Test
+    public void measurePage() {
+        PagePerformanceTracker tracker = new PagePerformanceTracker(mListener);
+
+        /* Create and resume. */
+        mockTime(1000);
+        tracker.onActivityCreated(mActivity);
+        mockTime(1100);
+        tracker.onActivityResumed(mActivity, "My");
+        ArgumentCaptor<ViewTreeObserver.OnPreDrawListener> preDrawListener = ArgumentCaptor.forClass(ViewTreeObserver.OnPreDrawListener.class);
+        verify(mViewTreeObserver).addOnPreDrawListener(preDrawListener.capture());
+        ArgumentCaptor<Choreographer.FrameCallback> frameCallback = ArgumentCaptor.forClass(Choreographer.FrameCallback.class);
+        verify(mChoreographer).postFrameCallback(frameCallback.capture());
+
+        /* Render frames, the last one missed a refresh. */
+        long frameTime = 1000 * FRAME_NANOS;
+        frameCallback.getValue().doFrame(frameTime);
+        frameCallback.getValue().doFrame(frameTime += FRAME_NANOS);
+        frameCallback.getValue().doFrame(frameTime + 2 * FRAME_NANOS);
+        verify(mChoreographer, times(4)).postFrameCallback(frameCallback.getValue());
+
+        /* First frame is measured after it's drawn. */
+        mockTime(1250);
+        assertTrue(preDrawListener.getValue().onPreDraw());
+        verify(mViewTreeObserver).removeOnPreDrawListener(preDrawListener.getValue());
+        ArgumentCaptor<Runnable> drawn = ArgumentCaptor.forClass(Runnable.class);
+        verify(mDecorView).post(drawn.capture());
+        mockTime(1300);
+        drawn.getValue().run();
+
+        /* Pause reports measurements. */
+        mockTime(2100);
+        tracker.onActivityPaused();
+        verify(mChoreographer).removeFrameCallback(frameCallback.getValue());
+        PagePerformanceLog log = getMeasuredLog();
+        assertEquals("My", log.getName());
+        assertEquals(Long.valueOf(300), log.getLaunchDuration());
+        assertEquals(Long.valueOf(200), log.getResumeDuration());
+        assertEquals(Long.valueOf(1000), log.getDuration());
+        assertEquals(Integer.valueOf(2), log.getFrameCount());
+        assertEquals(Integer.valueOf(1), log.getJankyFrameCount());
+
+        /* Late frames are ignored. */
+        frameCallback.getValue().doFrame(frameTime + 10 * FRAME_NANOS);
+        verify(mChoreographer, times(4)).postFrameCallback(frameCallback.getValue());
+
+        /* Pause without page does nothing. */
+        tracker.onActivityPaused();
+        verify(mListener).onPageMeasured(any(PagePerformanceLog.class));
+
+        /* Resuming again has no launch duration. */
+        tracker.onActivityResumed(mActivity, "My");
+        tracker.onActivityPaused();
+        verify(mListener, times(2)).onPageMeasured(any(PagePerformanceLog.class));
+    }
+
+    @Test
+    public void pausedBeforeFirstFrame() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1);
+        PagePerformanceTracker tracker = new PagePerformanceTracker(mListener);
+        mockTime(1000);
+        tracker.onActivityCreated(mActivity);
+        tracker.onActivityResumed(mActivity, "My");
+        ArgumentCaptor<ViewTreeObserver.OnPreDrawListener> preDrawListener = ArgumentCaptor.forClass(ViewTreeObserver.OnPreDrawListener.class);
+        verify(mViewTreeObserver).addOnPreDrawListener(preDrawListener.capture());
+        preDrawListener.getValue().onPreDraw();
+        ArgumentCaptor<Runnable> drawn = ArgumentCaptor.forClass(Runnable.class);
+        verify(mDecorView).post(drawn.capture());
+
+        /* Pause before frame is done. */
+        mockTime(1500);
+        tracker.onActivityPaused();
+        verify(mDecorView).removeCallbacks(drawn.getValue());
+        drawn.getValue().run();
+        PagePerformanceLog log = getMeasuredLog();
+        assertEquals(Long.valueOf(500), log.getDuration());
+        assertNull(log.getLaunchDuration());
+        assertNull(log.getResumeDuration());
+
+        /* No frame counting on old devices. */
+        assertNull(log.getFrameCount());
+        assertNull(log.getJankyFrameCount());
+        verify(mChoreographer, never()).postFrameCallback(any(Choreographer.FrameCallback.class));
+    }
+
+    @Test
+    public void unknownRefreshRate() {
+        when(mDisplay.getRefreshRate()).thenReturn(0f);
+        PagePerformanceTracker tracker = new PagePerformanceTracker(mListener);
+        tracker.onActivityResumed(mActivity, "My");
+        ArgumentCaptor<Choreographer.FrameCallback> frameCallback = ArgumentCaptor.forClass(Choreographer.FrameCallback.class);
+        verify(mChoreographer).postFrameCallback(frameCallback.capture());
+
+        /* Default refresh rate is used: 1.4 refresh interval is not janky but 1.6 is. */
+        long frameTime = 1000 * FRAME_NANOS;
+        frameCallback.getValue().doFrame(frameTime);
+        frameCallback.getValue().doFrame(frameTime += FRAME_NANOS * 14 / 10);
+        frameCallback.getValue().doFrame(frameTime + FRAME_NANOS * 16 / 10);
+        tracker.onActivityPaused();
+        PagePerformanceLog log = getMeasuredLog();
+        assertEquals(Integer.valueOf(2), log.getFrameCount());
+        assertEquals(Integer.valueOf(1), log.getJankyFrameCount());
+    }
+
+    @Test
+    public void stopWithoutReporting() {
+        PagePerformanceTracker tracker = new PagePerformanceTracker(mListener);
+
+        /* Stop without page does nothing. */
+        tracker.stop();
+
+        /* Resume twice cancels first page. */
+        Activity otherActivity = mock(Activity.class);
+        tracker.onActivityCreated(mActivity);
+        tracker.onActivityCreated(otherActivity);
+        tracker.onActivityDestroyed(otherActivity);
+        tracker.onActivityResumed(mActivity, "My");
+        tracker.onActivityResumed(mActivity, "My");
+        verify(mChoreographer).removeFrameCallback(any(Choreographer.FrameCallback.class));
+
+        /* Stop cancels second page. */
+        tracker.stop();
+        verify(mChoreographer, times(2)).removeFrameCallback(any(Choreographer.FrameCallback.class));
+        tracker.onActivityPaused();
+        verify(mListener, never()).onPageMeasured(any(PagePerformanceLog.class));
+    }
+}
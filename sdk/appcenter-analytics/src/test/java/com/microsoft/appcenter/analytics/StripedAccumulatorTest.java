@@ -0,0 +1,74 @@
+package com.microsoft.appcenter.analytics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class StripedAccumulatorTest {
+
+    @Test
+    public void stripeCount() {
+        assertEquals(1, StripedAccumulator.getStripeCount(0));
+        assertEquals(1, StripedAccumulator.getStripeCount(1));
+        assertEquals(2, StripedAccumulator.getStripeCount(2));
+        assertEquals(4, StripedAccumulator.getStripeCount(3));
+        assertEquals(8, StripedAccumulator.getStripeCount(8));
+        assertEquals(StripedAccumulator.MAX_STRIPE_COUNT, StripedAccumulator.getStripeCount(1000));
+        int stripeCount = StripedAccumulator.STRIPE_COUNT;
+        assertTrue(stripeCount > 0 && (stripeCount & (stripeCount - 1)) == 0);
+    }
+
+    @Test
+    public void sumThenReset() {
+        StripedAccumulator accumulator = new StripedAccumulator(2);
+        accumulator.add(0, 1);
+        accumulator.add(0, 2);
+        accumulator.add(1, -5);
+        assertEquals(3, accumulator.sumThenReset(0));
+        assertEquals(0, accumulator.sumThenReset(0));
+        assertEquals(-5, accumulator.sumThenReset(1));
+        assertEquals(0, accumulator.sumThenReset(1));
+    }
+
+    @Test
+    public void concurrentAdds() throws InterruptedException {
+        final int threadCount = StripedAccumulator.MAX_STRIPE_COUNT * 2;
+        final int addCount = 10000;
+        final StripedAccumulator accumulator = new StripedAccumulator(1);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < addCount; j++) {
+                        accumulator.add(0, 1);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        /* Read while adding: values are either read now or on next read, never lost. */
+        start.countDown();
+        long sum = accumulator.sumThenReset(0);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sum += accumulator.sumThenReset(0);
+        assertEquals((long) threadCount * addCount, sum);
+    }
+}
@@ -1,5 +1,6 @@
 package com.microsoft.appcenter.analytics.channel;
 
+import android.content.ContentValues;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
@@ -21,10 +22,20 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
@@ -34,6 +45,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anySetOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
@@ -48,9 +62,10 @@ import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.spy;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @SuppressWarnings("unused")
-@PrepareForTest({SessionTracker.class, SessionContext.class, StorageHelper.PreferencesStorage.class, SystemClock.class})
+@PrepareForTest({SessionTracker.class, SessionContext.class, StorageHelper.PreferencesStorage.class, StorageHelper.DatabaseStorage.class, SystemClock.class})
 public class SessionTrackerTest {
 
     private final static String TEST_GROUP = "group_test";
@@ -62,6 +77,12 @@ public class SessionTrackerTest {
     private Channel mChannel;
     private SessionTracker mSessionTracker;
 
+    private StorageHelper.DatabaseStorage mDatabaseStorage;
+
+    private final List<Map<String, Object>> mStoredSessions = new ArrayList<>();
+
+    private int mMaxStoredSessions;
+
     @NonNull
     private static EventLog newEvent() {
         EventLog eventLog = new EventLog();
@@ -76,8 +97,125 @@ public class SessionTrackerTest {
         when(System.currentTimeMillis()).thenReturn(mMockTime);
     }
 
+    /**
+     * Get stored sessions in the format used by shared preferences in previous versions.
+     */
+    private Set<String> getStoredSessions() {
+        Set<String> sessions = new LinkedHashSet<>();
+        for (Map<String, Object> session : mStoredSessions) {
+            Object sid = session.get("sid");
+            sessions.add(session.get("timestamp") + "/" + (sid == null ? "" : sid) + "/" + session.get("app_launch_timestamp"));
+        }
+        return sessions;
+    }
+
+    private static ContentValues mockContentValues(final Map<String, Object> map) {
+        ContentValues values = mock(ContentValues.class);
+        Answer<Void> put = new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                map.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        };
+        Answer<Object> get = new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return map.get(invocation.getArguments()[0]);
+            }
+        };
+        doAnswer(put).when(values).put(anyString(), any(Long.class));
+        doAnswer(put).when(values).put(anyString(), anyString());
+        when(values.getAsLong(anyString())).thenAnswer(get);
+        when(values.getAsString(anyString())).thenAnswer(get);
+        when(values.valueSet()).thenReturn(map.entrySet());
+        return values;
+    }
+
+    private void mockDatabaseStorage() throws Exception {
+
+        /* Back content values by a map. */
+        whenNew(ContentValues.class).withNoArguments().thenAnswer(new Answer<ContentValues>() {
+
+            @Override
+            public ContentValues answer(InvocationOnMock invocation) {
+                return mockContentValues(new HashMap<String, Object>());
+            }
+        });
+
+        /* Simulate database with sessions list. */
+        mStoredSessions.clear();
+        mDatabaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class), anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenAnswer(new Answer<StorageHelper.DatabaseStorage>() {
+
+            @Override
+            public StorageHelper.DatabaseStorage answer(InvocationOnMock invocation) {
+                mMaxStoredSessions = (Integer) invocation.getArguments()[4];
+                return mDatabaseStorage;
+            }
+        });
+        when(mDatabaseStorage.put(any(ContentValues.class))).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                storeSession((ContentValues) invocation.getArguments()[0]);
+                return 0L;
+            }
+        });
+        when(mDatabaseStorage.put(anyListOf(ContentValues.class))).thenAnswer(new Answer<long[]>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public long[] answer(InvocationOnMock invocation) {
+                Collection<ContentValues> valuesList = (Collection<ContentValues>) invocation.getArguments()[0];
+                for (ContentValues values : valuesList) {
+                    storeSession(values);
+                }
+                return new long[valuesList.size()];
+            }
+        });
+        when(mDatabaseStorage.getFloor(anyString(), anyLong())).thenAnswer(new Answer<ContentValues>() {
+
+            @Override
+            public ContentValues answer(InvocationOnMock invocation) {
+                String key = (String) invocation.getArguments()[0];
+                long maxValue = (Long) invocation.getArguments()[1];
+                Map<String, Object> floor = null;
+                for (Map<String, Object> session : mStoredSessions) {
+                    long value = (Long) session.get(key);
+                    if (value <= maxValue && (floor == null || value >= (Long) floor.get(key))) {
+                        floor = session;
+                    }
+                }
+                return floor == null ? null : mockContentValues(floor);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mStoredSessions.clear();
+                return null;
+            }
+        }).when(mDatabaseStorage).clear();
+    }
+
+    private void storeSession(ContentValues values) {
+        Map<String, Object> session = new HashMap<>();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            session.put(entry.getKey(), entry.getValue());
+        }
+        mStoredSessions.add(session);
+        if (mStoredSessions.size() > mMaxStoredSessions) {
+            mStoredSessions.remove(0);
+        }
+    }
+
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         mockStatic(System.class);
         mockStatic(SystemClock.class);
         mockStatic(StorageHelper.PreferencesStorage.class);
@@ -96,6 +234,7 @@ public class SessionTrackerTest {
         }).when(StorageHelper.PreferencesStorage.class);
         StorageHelper.PreferencesStorage.putStringSet(anyString(), anySetOf(String.class));
         when(StorageHelper.PreferencesStorage.getStringSet(anyString())).thenReturn(null);
+        mockDatabaseStorage();
         SessionContext.unsetInstance();
         spendTime(1000);
         mChannel = mock(Channel.class);
@@ -413,26 +552,30 @@ public class SessionTrackerTest {
 
     @Test
     public void maxOutStoredSessions() {
+
+        /* Invalid value is ignored. */
+        SessionContext.setMaxSessions(0);
+        SessionContext.setMaxSessions(10);
         SessionContext.getInstance();
         spendTime(1000);
-        Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        Set<String> sessions = getStoredSessions();
         assertNotNull(sessions);
         assertEquals(1, sessions.size());
         String firstSession = sessions.iterator().next();
         mSessionTracker.onEnqueuingLog(newEvent(), TEST_GROUP);
-        sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        sessions = getStoredSessions();
         assertNotNull(sessions);
         assertEquals(2, sessions.size());
         spendTime(30000);
         for (int i = 3; i <= 10; i++) {
             mSessionTracker.onEnqueuingLog(newEvent(), TEST_GROUP);
-            Set<String> intermediateSessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> intermediateSessions = getStoredSessions();
             assertNotNull(intermediateSessions);
             assertEquals(i, intermediateSessions.size());
             spendTime(30000);
         }
         mSessionTracker.onEnqueuingLog(newEvent(), TEST_GROUP);
-        Set<String> finalSessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        Set<String> finalSessions = getStoredSessions();
         assertNotNull(finalSessions);
         assertEquals(10, finalSessions.size());
         assertFalse(finalSessions.contains(firstSession));
@@ -473,9 +616,11 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(firstSessionTime + 1));
             mSessionTracker.onEnqueuingLog(log, TEST_GROUP);
             assertEquals(currentSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
-            assertEquals(1, sessions.size());
+
+            /* Launch session started at the same time is also stored as storage only appends. */
+            assertEquals(2, sessions.size());
         }
 
         /* Trigger a second session. */
@@ -483,9 +628,9 @@ public class SessionTrackerTest {
             Log log = newEvent();
             mSessionTracker.onEnqueuingLog(log, TEST_GROUP);
             assertNotEquals(currentSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
-            assertEquals(2, sessions.size());
+            assertEquals(3, sessions.size());
         }
 
         /* Correlate log to previous. */
@@ -495,9 +640,9 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(firstSessionTime + 1));
             mSessionTracker.onEnqueuingLog(log, TEST_GROUP);
             assertEquals(firstSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
-            assertEquals(2, sessions.size());
+            assertEquals(3, sessions.size());
         }
 
         /* Re-test with persistence now, no current session but same correlation will work and no session will be triggered on the new instance. */
@@ -507,9 +652,9 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(firstSessionTime + 1));
             mSessionTracker.onEnqueuingLog(log, TEST_GROUP);
             assertEquals(firstSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
-            assertEquals(2, sessions.size());
+            assertEquals(3, sessions.size());
         }
 
         /* Failed correlation without an active session will not start a new session. */
@@ -518,15 +663,15 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(1));
             mSessionTracker.onEnqueuingLog(log, TEST_GROUP);
             assertNull(log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
-            assertEquals(2, sessions.size());
+            assertEquals(3, sessions.size());
         }
 
         /* Clear sessions. */
         mSessionTracker.clearSessions();
-        verifyStatic();
-        StorageHelper.PreferencesStorage.remove("sessions");
+        verify(mDatabaseStorage).clear();
+        assertTrue(getStoredSessions().isEmpty());
     }
 
     @Test
@@ -548,10 +693,12 @@ public class SessionTrackerTest {
         /* Generate a current session. */
         mSessionTracker.onEnqueuingLog(newEvent(), TEST_GROUP);
 
-        /* Check sessions in store. */
-        sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        /* Check sessions moved from shared preferences to the database. */
+        verifyStatic();
+        StorageHelper.PreferencesStorage.remove("sessions");
+        sessions = getStoredSessions();
         assertNotNull(sessions);
-        assertEquals(6, sessions.size());
+        assertEquals(7, sessions.size());
         assertTrue(sessions.contains("100/10abd355-40a5-4b51-8071-cb5a4c338531/99"));
         assertFalse(sessions.contains("200/invalid"));
 
@@ -580,6 +727,16 @@ public class SessionTrackerTest {
         assertFalse(sessions.contains("999//"));
     }
 
+    @Test
+    public void invalidSessionInDatabase() {
+        Map<String, Object> session = new HashMap<>();
+        session.put("timestamp", 100L);
+        session.put("sid", "invalid");
+        session.put("app_launch_timestamp", 99L);
+        mStoredSessions.add(session);
+        assertNull(SessionContext.getInstance().getSessionAt(100L));
+    }
+
     @Test
     public void ignoreStartService() {
         Log startServiceLog = spy(new StartServiceLog());
@@ -622,4 +779,108 @@ public class SessionTrackerTest {
         assertNotEquals(log.getSid(), log2.getSid());
         assertNull(log2.getSid());
     }
+
+    @Test
+    public void concurrentEnqueueWhileActivitiesCycle() throws InterruptedException {
+
+        /* Use a clock that can be advanced while other threads read it. */
+        final AtomicLong clock = new AtomicLong(mMockTime);
+        Answer<Long> currentTime = new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return clock.get();
+            }
+        };
+        when(SystemClock.elapsedRealtime()).thenAnswer(currentTime);
+        when(System.currentTimeMillis()).thenAnswer(currentTime);
+        SessionContext.getInstance();
+
+        /* Record started sessions. */
+        final Queue<UUID> startedSessions = new ConcurrentLinkedQueue<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Log log = (Log) invocation.getArguments()[0];
+                if (log instanceof StartSessionLog) {
+                    startedSessions.add(log.getSid());
+                }
+                return null;
+            }
+        }).when(mChannel).enqueue(any(Log.class), anyString());
+
+        /* Enqueue logs from many threads, with and without timestamps. */
+        final int threadCount = 8;
+        final int logCount = 1000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Queue<Log> logs = new ConcurrentLinkedQueue<>();
+        final Queue<Log> timestampedLogs = new ConcurrentLinkedQueue<>();
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < logCount; j++) {
+                            Log log = newEvent();
+                            if (j % 2 == 0) {
+                                logs.add(log);
+                            } else {
+                                log.setTimestamp(new Date(clock.get()));
+                                timestampedLogs.add(log);
+                            }
+                            mSessionTracker.onEnqueuingLog(log, TEST_GROUP);
+
+                            /* A session is never used before its start log is queued. */
+                            if (log.getTimestamp() == null && !startedSessions.contains(log.getSid())) {
+                                errors.add(new AssertionError("Session used before being started: " + log.getSid()));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        /* Meanwhile, cycle activities, sometimes staying in background long enough to time out. */
+        start.countDown();
+        for (int i = 0; i < 200; i++) {
+            mSessionTracker.onActivityResumed();
+            clock.addAndGet(100);
+            mSessionTracker.onActivityPaused();
+            clock.addAndGet(i % 10 == 0 ? 30000 : 100);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        /* Each session was started once and recorded. */
+        Set<UUID> sessions = new HashSet<>(startedSessions);
+        assertEquals(startedSessions.size(), sessions.size());
+        assertFalse(sessions.contains(null));
+        for (Map<String, Object> storedSession : mStoredSessions) {
+            Object sid = storedSession.get("sid");
+            if (sid != null) {
+                assertTrue(sessions.remove(UUID.fromString(sid.toString())));
+            }
+        }
+        assertTrue(sessions.isEmpty());
+
+        /* Every log was correlated to a started session. */
+        sessions.addAll(startedSessions);
+        for (Log log : logs) {
+            assertTrue(sessions.contains(log.getSid()));
+        }
+        for (Log log : timestampedLogs) {
+            assertTrue(log.getSid() == null || sessions.contains(log.getSid()));
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.microsoft.appcenter.analytics.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.test.TestUtils;
 
 import org.junit.Test;
@@ -10,6 +12,11 @@ import java.util.UUID;
 
 import static com.microsoft.appcenter.test.TestUtils.checkEquals;
 import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @SuppressWarnings("unused")
 public class EventLogTest {
@@ -57,4 +64,19 @@ public class EventLogTest {
         b.setName("a");
         checkEquals(a, b);
     }
+
+    @Test
+    public void readProperty() throws Exception {
+        UUID id = UUID.randomUUID();
+        JsonReader reader = mock(JsonReader.class);
+        when(reader.nextString()).thenReturn(id.toString(), "a");
+        EventLog log = new EventLog();
+        assertTrue(log.readProperty("id", reader));
+        assertTrue(log.readProperty("name", reader));
+        assertTrue(log.readProperty("properties", reader));
+        assertFalse(log.readProperty("unknown", reader));
+        assertEquals(id, log.getId());
+        assertEquals("a", log.getName());
+        assertEquals(new HashMap<String, String>(), log.getProperties());
+    }
 }
@@ -0,0 +1,76 @@
+package com.microsoft.appcenter.analytics.ingestion.models;
+
+import com.microsoft.appcenter.test.TestUtils;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static com.microsoft.appcenter.test.TestUtils.checkEquals;
+import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
+
+@SuppressWarnings("unused")
+public class MetricLogTest {
+
+    @Test
+    public void compareDifferentType() {
+        TestUtils.compareSelfNullClass(new MetricLog());
+    }
+
+    @Test
+    public void compareLogs() {
+
+        /* Empty objects. */
+        MetricLog a = new MetricLog();
+        MetricLog b = new MetricLog();
+        checkEquals(a, b);
+
+        /* Name. */
+        a.setName("a");
+        checkNotEquals(a, b);
+        b.setName("b");
+        checkNotEquals(a, b);
+        b.setName("a");
+        checkEquals(a, b);
+
+        /* Metric type. */
+        a.setMetricType("a");
+        checkNotEquals(a, b);
+        b.setMetricType("b");
+        checkNotEquals(a, b);
+        b.setMetricType("a");
+        checkEquals(a, b);
+
+        /* Value. */
+        a.setValue(1L);
+        checkNotEquals(a, b);
+        b.setValue(2L);
+        checkNotEquals(a, b);
+        b.setValue(1L);
+        checkEquals(a, b);
+
+        /* Count. */
+        a.setCount(1L);
+        checkNotEquals(a, b);
+        b.setCount(2L);
+        checkNotEquals(a, b);
+        b.setCount(1L);
+        checkEquals(a, b);
+
+        /* Sum. */
+        a.setSum(1L);
+        checkNotEquals(a, b);
+        b.setSum(2L);
+        checkNotEquals(a, b);
+        b.setSum(1L);
+        checkEquals(a, b);
+
+        /* Buckets. */
+        a.setBuckets(Collections.singletonMap("1", 1L));
+        checkNotEquals(a, b);
+        b.setBuckets(Collections.singletonMap("1", 2L));
+        checkNotEquals(a, b);
+        b.setBuckets(Collections.singletonMap("1", 1L));
+        checkEquals(a, b);
+    }
+}
@@ -0,0 +1,74 @@
+package com.microsoft.appcenter.analytics.ingestion.models;
+
+import com.microsoft.appcenter.test.TestUtils;
+
+import org.junit.Test;
+
+import static com.microsoft.appcenter.test.TestUtils.checkEquals;
+import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
+
+@SuppressWarnings("unused")
+public class PagePerformanceLogTest {
+
+    @Test
+    public void compareDifferentType() {
+        TestUtils.compareSelfNullClass(new PagePerformanceLog());
+    }
+
+    @Test
+    public void compareLogs() {
+
+        /* Empty objects. */
+        PagePerformanceLog a = new PagePerformanceLog();
+        PagePerformanceLog b = new PagePerformanceLog();
+        checkEquals(a, b);
+
+        /* Name. */
+        a.setName("a");
+        checkNotEquals(a, b);
+        b.setName("b");
+        checkNotEquals(a, b);
+        b.setName("a");
+        checkEquals(a, b);
+
+        /* Launch duration. */
+        a.setLaunchDuration(1L);
+        checkNotEquals(a, b);
+        b.setLaunchDuration(2L);
+        checkNotEquals(a, b);
+        b.setLaunchDuration(1L);
+        checkEquals(a, b);
+
+        /* Resume duration. */
+        a.setResumeDuration(1L);
+        checkNotEquals(a, b);
+        b.setResumeDuration(2L);
+        checkNotEquals(a, b);
+        b.setResumeDuration(1L);
+        checkEquals(a, b);
+
+        /* Duration. */
+        a.setDuration(1L);
+        checkNotEquals(a, b);
+        b.setDuration(2L);
+        checkNotEquals(a, b);
+        b.setDuration(1L);
+        checkEquals(a, b);
+
+        /* Frame count. */
+        a.setFrameCount(1);
+        checkNotEquals(a, b);
+        b.setFrameCount(2);
+        checkNotEquals(a, b);
+        b.setFrameCount(1);
+        checkEquals(a, b);
+
+        /* Janky frame count. */
+        a.setJankyFrameCount(1);
+        checkNotEquals(a, b);
+        b.setJankyFrameCount(2);
+        checkNotEquals(a, b);
+        b.setJankyFrameCount(1);
+        checkEquals(a, b);
+    }
+}
@@ -494,7 +494,7 @@ public class CrashesAndroidTest {
         thread.join();
         verify(uncaughtExceptionHandler).uncaughtException(thread, exception);
 
-        /* Check there are only 2 files: the throwable and the json one. */
+        /* Check there are only 2 files: the throwable and the crash record. */
         assertEquals(2, ErrorLogHelper.getErrorStorageDirectory().listFiles(mMinidumpFilter).length);
     }
 
@@ -0,0 +1,121 @@
+package com.microsoft.appcenter.crashes;
+
+import android.annotation.SuppressLint;
+import android.app.Application;
+import android.support.test.InstrumentationRegistry;
+
+import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.AppCenterPrivateHelper;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
+import com.microsoft.appcenter.crashes.utils.HandledErrorRateLimiter;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Measures the cost of one trackException call when the error is reported and when it is suppressed by the rate limit.
+ */
+@SuppressWarnings("unused")
+public class TrackExceptionBenchmarkTest {
+
+    private static final String TAG = "TestRunner";
+
+    private static final int FRAME_COUNT = 40;
+
+    private static final int WARM_UP_ITERATIONS = 20;
+
+    private static final int ITERATIONS = 200;
+
+    @SuppressLint("StaticFieldLeak")
+    private static Application sApplication;
+
+    private Channel mChannel;
+
+    /**
+     * Generate an exception with a deep stack trace.
+     */
+    private static RuntimeException generateException(int depth) {
+        if (depth == 0) {
+            return new RuntimeException("mock", new IllegalStateException("cause"));
+        }
+        return generateException(depth - 1);
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        sApplication = (Application) InstrumentationRegistry.getContext().getApplicationContext();
+        StorageHelper.initialize(sApplication);
+        Constants.loadFromContext(sApplication);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        StorageHelper.PreferencesStorage.clear();
+        mChannel = mock(Channel.class);
+
+        /* Configure new instance. */
+        AppCenterPrivateHelper.unsetInstance();
+        Crashes.unsetInstance();
+        AppCenter.configure(sApplication, "a");
+
+        /* Replace channel. */
+        Method method = AppCenter.class.getDeclaredMethod("getInstance");
+        method.setAccessible(true);
+        AppCenter appCenter = (AppCenter) method.invoke(null);
+        method = AppCenter.class.getDeclaredMethod("setChannel", Channel.class);
+        method.setAccessible(true);
+        method.invoke(appCenter, mChannel);
+
+        /* Start crashes and wait for start. */
+        AppCenter.start(Crashes.class);
+        assertTrue(Crashes.isEnabled().get());
+    }
+
+    /**
+     * Track an exception several times and wait for the logs to be built on the background thread.
+     *
+     * @return average time per call in nanoseconds, including background work.
+     */
+    private static long trackException(Throwable throwable, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Crashes.trackException(throwable);
+        }
+        Crashes.isEnabled().get();
+        return (System.nanoTime() - start) / iterations;
+    }
+
+    @Test
+    public void trackExceptionCost() {
+        RuntimeException exception = generateException(FRAME_COUNT);
+
+        /* Every error reported. */
+        Crashes.setHandledErrorRateLimit(Integer.MAX_VALUE, HandledErrorRateLimiter.DEFAULT_INTERVAL);
+        trackException(exception, WARM_UP_ITERATIONS);
+        long reported = trackException(exception, ITERATIONS);
+        verify(mChannel, times(WARM_UP_ITERATIONS + ITERATIONS)).enqueue(any(HandledErrorLog.class), anyString());
+
+        /* Every error suppressed after the first ones. */
+        Crashes.setHandledErrorRateLimit(HandledErrorRateLimiter.DEFAULT_MAX_REPORTS, HandledErrorRateLimiter.DEFAULT_INTERVAL);
+        RuntimeException otherException = generateException(FRAME_COUNT + 1);
+        trackException(otherException, WARM_UP_ITERATIONS);
+        long suppressed = trackException(otherException, ITERATIONS);
+        verify(mChannel, times(WARM_UP_ITERATIONS + ITERATIONS + HandledErrorRateLimiter.DEFAULT_MAX_REPORTS)).enqueue(any(HandledErrorLog.class), anyString());
+        android.util.Log.i(TAG, String.format(Locale.ENGLISH, "trackException (%d frames): %dus reported, %dus suppressed.",
+                exception.getStackTrace().length, reported / 1000, suppressed / 1000));
+    }
+}
@@ -1,9 +1,14 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.support.test.InstrumentationRegistry;
+import android.util.Base64;
+
 import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 
@@ -13,6 +18,11 @@ import org.json.JSONStringer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
 
@@ -23,6 +33,8 @@ import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
 import static com.microsoft.appcenter.test.TestUtils.compareSelfNullClass;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unused")
@@ -503,6 +515,24 @@ public class ErrorModelTest {
             checkEquals(errorLog1, errorLog2);
         }
         checkSerialization(errorLog1, serializer);
+        {
+            Thread thread1 = new Thread();
+            thread1.setId(1L);
+            thread1.setName("1");
+            Thread thread2 = new Thread();
+            thread2.setId(2L);
+            thread2.setName("2");
+
+            errorLog1.setThreads(singletonList(thread1));
+            checkNotEquals(errorLog1, errorLog2);
+
+            errorLog2.setThreads(singletonList(thread2));
+            checkNotEquals(errorLog1, errorLog2);
+
+            errorLog2.setThreads(errorLog1.getThreads());
+            checkEquals(errorLog1, errorLog2);
+        }
+        checkSerialization(errorLog1, serializer);
     }
 
     @Test
@@ -591,6 +621,59 @@ public class ErrorModelTest {
         }
     }
 
+    @Test
+    public void errorAttachmentLogWithFile() throws JSONException, IOException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
+
+        /* Use a size that is not a multiple of the Base64 chunk. */
+        byte[] data = new byte[100 * 1024 + 1];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "attachment.bin");
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(data);
+        } finally {
+            outputStream.close();
+        }
+        try {
+            ErrorAttachmentLog attachmentLog = ErrorAttachmentLog.attachmentWithFile(file, "attachment.bin", "application/octet-stream");
+            attachmentLog.setTimestamp(new Date());
+            attachmentLog.setId(UUID.randomUUID());
+            attachmentLog.setErrorId(UUID.randomUUID());
+
+            /* Only the path is persisted. */
+            String payload = serializer.serializeLog(attachmentLog);
+            assertFalse(new JSONObject(payload).has(DATA));
+            assertEquals(file.getPath(), new JSONObject(payload).getString(FileDataLog.DATA_FILE));
+            Log log = serializer.deserializeLazyLog(payload);
+            checkEquals(attachmentLog, log);
+
+            /* The content is streamed into the request body. */
+            LogContainer container = new LogContainer();
+            container.setLogs(singletonList(log));
+            StringWriter writer = new StringWriter();
+            serializer.serializeContainer(container, writer);
+            JSONObject sent = new JSONObject(writer.toString()).getJSONArray("logs").getJSONObject(0);
+            assertFalse(sent.has(FileDataLog.DATA_FILE));
+            assertEquals(Base64.encodeToString(data, Base64.NO_WRAP), sent.getString(DATA));
+            ErrorAttachmentLog sentLog = (ErrorAttachmentLog) serializer.deserializeLog(sent.toString());
+            assertNull(sentLog.getDataFile());
+            assertTrue(Arrays.equals(data, sentLog.getData()));
+
+            /* Log is left out if the file is gone. */
+            assertTrue(file.delete());
+            writer = new StringWriter();
+            serializer.serializeContainer(container, writer);
+            assertEquals(0, new JSONObject(writer.toString()).getJSONArray("logs").length());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
     @Test
     public void deserializeInvalidBase64forErrorAttachment() throws JSONException {
         ErrorAttachmentLog log = new ErrorAttachmentLog();
@@ -0,0 +1,114 @@
+package com.microsoft.appcenter.crashes.ingestion.models;
+
+import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares decode time of a thread heavy crash log when reading a JSONObject versus streaming.
+ */
+@SuppressWarnings("unused")
+public class ManagedErrorLogDecodeBenchmarkTest {
+
+    private static final String TAG = "TestRunner";
+
+    private static final int THREAD_COUNT = 30;
+
+    private static final int FRAME_COUNT = 40;
+
+    private static final int WARM_UP_ITERATIONS = 20;
+
+    private static final int ITERATIONS = 200;
+
+    private static List<StackFrame> generateFrames() {
+        List<StackFrame> frames = new ArrayList<>();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            StackFrame frame = new StackFrame();
+            frame.setClassName("com.microsoft.appcenter.crashes.Class" + i);
+            frame.setMethodName("method" + i);
+            frame.setFileName("Class" + i + ".java");
+            frame.setLineNumber(i * 10);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static ManagedErrorLog generateErrorLog() {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setTimestamp(new Date());
+        errorLog.setAppLaunchTimestamp(new Date());
+        errorLog.setId(UUID.randomUUID());
+        errorLog.setProcessId(123);
+        errorLog.setProcessName("com.microsoft.appcenter.crashes.test");
+        errorLog.setErrorThreadId(1L);
+        errorLog.setErrorThreadName("main");
+        errorLog.setFatal(true);
+        Exception exception = new Exception();
+        exception.setType(IllegalStateException.class.getName());
+        exception.setMessage("mock");
+        exception.setFrames(generateFrames());
+        errorLog.setException(exception);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            Thread thread = new Thread();
+            thread.setId(i);
+            thread.setName("thread" + i);
+            thread.setFrames(generateFrames());
+            threads.add(thread);
+        }
+        errorLog.setThreads(threads);
+        return errorLog;
+    }
+
+    /**
+     * Decode the way it was done before streaming.
+     */
+    private static ManagedErrorLog decodeObject(String json) throws JSONException {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.read(new JSONObject(json));
+        return errorLog;
+    }
+
+    @Test
+    public void decodeManagedErrorLog() throws JSONException {
+        ManagedErrorLog errorLog = generateErrorLog();
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        String payload = serializer.serializeLog(errorLog);
+
+        /* Both ways produce the same log. */
+        assertEquals(errorLog, decodeObject(payload));
+        assertEquals(errorLog, serializer.deserializeLog(payload));
+
+        /* Warm up. */
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            decodeObject(payload);
+            serializer.deserializeLog(payload);
+        }
+
+        /* Measure. */
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decodeObject(payload);
+        }
+        long before = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.deserializeLog(payload);
+        }
+        long after = (System.nanoTime() - start) / ITERATIONS;
+        android.util.Log.i(TAG, String.format(Locale.ENGLISH, "ManagedErrorLog decode (%d bytes): %dus with JSONObject, %dus streaming.", payload.length(), before / 1000, after / 1000));
+    }
+}
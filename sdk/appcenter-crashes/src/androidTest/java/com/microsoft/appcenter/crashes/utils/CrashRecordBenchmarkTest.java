@@ -0,0 +1,182 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares time spent in the uncaught exception handler when building and serializing the error log
+ * at crash time versus writing a crash record.
+ */
+@SuppressWarnings("unused")
+public class CrashRecordBenchmarkTest {
+
+    private static final String TAG = "TestRunner";
+
+    private static final int THREAD_COUNT = 30;
+
+    private static final int FRAME_COUNT = 40;
+
+    private static final int WARM_UP_ITERATIONS = 20;
+
+    private static final int ITERATIONS = 200;
+
+    private final List<Thread> mThreads = new ArrayList<>();
+
+    private final CountDownLatch mStopLatch = new CountDownLatch(1);
+
+    private Context mContext;
+
+    private File mErrorDirectory;
+
+    /**
+     * Generate an exception with a deep stack trace.
+     */
+    private static RuntimeException generateException(int depth) {
+        if (depth == 0) {
+            return new RuntimeException("mock", new IllegalStateException("cause"));
+        }
+        return generateException(depth - 1);
+    }
+
+    /**
+     * Park a thread with a deep stack to make the thread list realistic.
+     */
+    private void park(int depth) throws InterruptedException {
+        if (depth == 0) {
+            mStopLatch.await();
+        } else {
+            park(depth - 1);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        Constants.loadFromContext(mContext);
+        mErrorDirectory = ErrorLogHelper.getErrorStorageDirectory();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        park(FRAME_COUNT);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            };
+            thread.start();
+            mThreads.add(thread);
+        }
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @After
+    public void tearDown() throws InterruptedException {
+        mStopLatch.countDown();
+        for (Thread thread : mThreads) {
+            thread.join();
+        }
+        File[] files = mErrorDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Save the way it was done before crash records.
+     */
+    private void saveErrorLog(LogSerializer serializer, Thread thread, Throwable throwable, File file) throws Exception {
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, throwable, Thread.getAllStackTraces(), 0);
+        StorageHelper.InternalStorage.write(file, serializer.serializeLog(errorLog));
+    }
+
+    @Test
+    public void timeInHandler() throws Exception {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        Thread thread = Thread.currentThread();
+        RuntimeException exception = generateException(FRAME_COUNT);
+        File errorLogFile = new File(mErrorDirectory, UUID.randomUUID().toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        CrashRecordHelper.CrashContext crashContext = CrashRecordHelper.createCrashContext(mContext, 0);
+
+        /* Both ways produce the same exception and device. */
+        ManagedErrorLog expected = ErrorLogHelper.createErrorLog(mContext, thread, exception, Thread.getAllStackTraces(), 0);
+        UUID id = CrashRecordHelper.writeCrashRecord(crashContext, thread, exception, Thread.getAllStackTraces());
+        File recordFile = new File(mErrorDirectory, id.toString() + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        ManagedErrorLog actual = CrashRecordHelper.readCrashRecord(recordFile);
+        assertEquals(expected.getException(), actual.getException());
+        assertEquals(expected.getDevice(), actual.getDevice());
+        assertEquals(expected.getProcessName(), actual.getProcessName());
+        assertEquals(expected.getArchitecture(), actual.getArchitecture());
+
+        /* Warm up. */
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            saveErrorLog(serializer, thread, exception, errorLogFile);
+            CrashRecordHelper.writeCrashRecord(crashContext, thread, exception, Thread.getAllStackTraces());
+        }
+
+        /* Measure. */
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            saveErrorLog(serializer, thread, exception, errorLogFile);
+        }
+        long before = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            CrashRecordHelper.writeCrashRecord(crashContext, thread, exception, Thread.getAllStackTraces());
+        }
+        long after = (System.nanoTime() - start) / ITERATIONS;
+        android.util.Log.i(TAG, String.format(Locale.ENGLISH, "Time in crash handler (%d threads): %dus with JSON error log (%d bytes), %dus with crash record (%d bytes).",
+                Thread.getAllStackTraces().size(), before / 1000, errorLogFile.length(), after / 1000, recordFile.length()));
+    }
+
+    @Test
+    public void frameDictionaryShrinkRatio() throws Exception {
+        Map<Thread, StackTraceElement[]> allStackTraces = Thread.getAllStackTraces();
+        ByteArrayOutputStream inline = new ByteArrayOutputStream();
+        DataOutputStream inlineOutput = new DataOutputStream(inline);
+        CrashRecordHelper.FrameDictionary dictionary = new CrashRecordHelper.FrameDictionary();
+        Set<StackTraceElement> uniqueFrames = new HashSet<>();
+        Set<Integer> uniqueStacks = new HashSet<>();
+        int frameCount = 0;
+        for (StackTraceElement[] stackTrace : allStackTraces.values()) {
+            CrashRecordHelper.writeFrames(inlineOutput, stackTrace);
+            uniqueStacks.add(dictionary.addStack(stackTrace));
+            uniqueFrames.addAll(Arrays.asList(stackTrace));
+            frameCount += stackTrace.length;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        dictionary.write(new DataOutputStream(encoded));
+        android.util.Log.i(TAG, String.format(Locale.ENGLISH, "Frame dictionary (%d threads, %d/%d unique frames, %d unique stacks): %d bytes inline, %d bytes with dictionary, ratio %.2f.",
+                allStackTraces.size(), uniqueFrames.size(), frameCount, uniqueStacks.size(), inline.size(), encoded.size(), (double) inline.size() / encoded.size()));
+    }
+}
@@ -0,0 +1,110 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares file size and read/write time of throwables persisted with Java serialization
+ * versus {@link ThrowableHelper}.
+ */
+@SuppressWarnings("unused")
+public class ThrowableBenchmarkTest {
+
+    private static final String TAG = "TestRunner";
+
+    private static final int FRAME_COUNT = 40;
+
+    private static final int WARM_UP_ITERATIONS = 20;
+
+    private static final int ITERATIONS = 200;
+
+    private File mSerializedFile;
+
+    private File mCompactFile;
+
+    /**
+     * Generate an exception with a deep stack trace.
+     */
+    private static RuntimeException generateException(int depth) {
+        if (depth == 0) {
+            return new RuntimeException("mock", new IllegalStateException("cause"));
+        }
+        return generateException(depth - 1);
+    }
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mSerializedFile = new File(context.getCacheDir(), "throwable.ser");
+        mCompactFile = new File(context.getCacheDir(), "throwable.bin");
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @After
+    public void tearDown() {
+        mSerializedFile.delete();
+        mCompactFile.delete();
+    }
+
+    @Test
+    public void sizeAndTime() throws Exception {
+        RuntimeException exception = generateException(FRAME_COUNT);
+
+        /* Both ways restore the same throwable. */
+        StorageHelper.InternalStorage.writeObject(mSerializedFile, exception);
+        ThrowableHelper.writeThrowable(mCompactFile, exception);
+        Throwable serialized = StorageHelper.InternalStorage.readObject(mSerializedFile);
+        Throwable compact = ThrowableHelper.readThrowable(mCompactFile);
+        assertEquals(serialized.getClass(), compact.getClass());
+        assertEquals(serialized.getMessage(), compact.getMessage());
+        assertArrayEquals(serialized.getStackTrace(), compact.getStackTrace());
+        assertEquals(serialized.getCause().getClass(), compact.getCause().getClass());
+
+        /* Warm up. */
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            StorageHelper.InternalStorage.writeObject(mSerializedFile, exception);
+            StorageHelper.InternalStorage.readObject(mSerializedFile);
+            ThrowableHelper.writeThrowable(mCompactFile, exception);
+            ThrowableHelper.readThrowable(mCompactFile);
+        }
+
+        /* Measure writes. */
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            StorageHelper.InternalStorage.writeObject(mSerializedFile, exception);
+        }
+        long serializedWrite = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ThrowableHelper.writeThrowable(mCompactFile, exception);
+        }
+        long compactWrite = (System.nanoTime() - start) / ITERATIONS;
+
+        /* Measure reads. */
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            StorageHelper.InternalStorage.readObject(mSerializedFile);
+        }
+        long serializedRead = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ThrowableHelper.readThrowable(mCompactFile);
+        }
+        long compactRead = (System.nanoTime() - start) / ITERATIONS;
+        android.util.Log.i(TAG, String.format(Locale.ENGLISH, "Throwable with %d frames: Java serialization %d bytes, write %dus, read %dus; compact %d bytes, write %dus, read %dus.",
+                exception.getStackTrace().length, mSerializedFile.length(), serializedWrite / 1000, serializedRead / 1000,
+                mCompactFile.length(), compactWrite / 1000, compactRead / 1000));
+    }
+}
@@ -1,7 +1,9 @@
 package com.microsoft.appcenter.crashes;
 
 import android.annotation.SuppressLint;
+import android.app.Activity;
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -18,9 +20,16 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogF
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
+import com.microsoft.appcenter.crashes.model.MainThreadStallException;
 import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.CrashRecordHelper;
+import com.microsoft.appcenter.crashes.utils.CrashSignatureTable;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.HandledErrorRateLimiter;
+import com.microsoft.appcenter.crashes.utils.MinidumpHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableHelper;
+import com.microsoft.appcenter.crashes.utils.WeightedLruCache;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
@@ -43,8 +52,17 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Crashes service.
@@ -94,6 +112,69 @@ public class Crashes extends AbstractAppCenterService {
      */
     private static final int MAX_ATTACHMENT_PER_CRASH = 2;
 
+    /**
+     * Maximum number of threads decoding pending error files.
+     */
+    private static final int MAX_ERROR_LOADER_THREADS = 4;
+
+    /**
+     * Time after which idle error loader threads are stopped.
+     */
+    private static final long ERROR_LOADER_KEEP_ALIVE_TIME = 1000;
+
+    /**
+     * Maximum number of error reports kept decoded in memory.
+     */
+    @VisibleForTesting
+    static final int ERROR_REPORT_CACHE_MAX_SIZE = 16;
+
+    /**
+     * Maximum number of stack frames of error reports kept decoded in memory.
+     */
+    @VisibleForTesting
+    static final int ERROR_REPORT_CACHE_MAX_FRAMES = 4096;
+
+    /**
+     * Default maximum size of a minidump to send, in bytes before compression.
+     */
+    @VisibleForTesting
+    static final long DEFAULT_MAX_MINIDUMP_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Minidump attachment file name.
+     */
+    @VisibleForTesting
+    static final String MINIDUMP_ATTACHMENT_FILE_NAME = "minidump.dmp.gz";
+
+    /**
+     * Minidump attachment content type.
+     */
+    @VisibleForTesting
+    static final String MINIDUMP_ATTACHMENT_CONTENT_TYPE = "application/gzip";
+
+    /**
+     * Name of error loader threads.
+     */
+    private static final String ERROR_LOADER_THREAD_NAME = "AppCenter.Crashes.Loader";
+
+    /**
+     * Property holding the stall duration in milliseconds on main thread stall reports.
+     */
+    @VisibleForTesting
+    static final String STALL_DURATION_PROPERTY = "stallDuration";
+
+    /**
+     * File name of the attachment holding the number of identical crashes not reported.
+     */
+    @VisibleForTesting
+    static final String DUPLICATE_COUNT_ATTACHMENT_FILE_NAME = "duplicates.txt";
+
+    /**
+     * Property holding the number of handled errors not reported on suppressed handled error counts.
+     */
+    @VisibleForTesting
+    static final String SUPPRESSED_COUNT_PROPERTY = "suppressedCount";
+
     /**
      * Default crashes listener.
      */
@@ -111,20 +192,26 @@ public class Crashes extends AbstractAppCenterService {
     private final Map<String, LogFactory> mFactories;
 
     /**
-     * Crash reports not processed yet.
+     * Crash reports not processed yet, kept decoded once loaded until enqueued or discarded.
      */
     private final Map<UUID, ErrorLogReport> mUnprocessedErrorReports;
 
     /**
-     * Cache for reports that are queued to channel but not yet sent.
+     * Cache for decoded reports that are queued to channel but not yet sent.
+     * Evicted reports are decoded again from their files when needed.
      */
-    private final Map<UUID, ErrorLogReport> mErrorReportCache;
+    private final WeightedLruCache<UUID, ErrorLogReport> mErrorReportCache;
 
     /**
      * Log serializer.
      */
     private LogSerializer mLogSerializer;
 
+    /**
+     * Decodes pending error files outside of the background thread, created when first needed.
+     */
+    private Executor mErrorLoaderExecutor;
+
     /**
      * Application context.
      */
@@ -140,6 +227,52 @@ public class Crashes extends AbstractAppCenterService {
      */
     private UncaughtExceptionHandler mUncaughtExceptionHandler;
 
+    /**
+     * Time between main thread pings in milliseconds, 0 when main thread watchdog is disabled.
+     */
+    private long mWatchdogPingInterval;
+
+    /**
+     * Main thread stall threshold in milliseconds.
+     */
+    private long mWatchdogStallThreshold;
+
+    /**
+     * Whether main thread stall reports include all thread stack traces.
+     */
+    private boolean mWatchdogCaptureAllThreads;
+
+    /**
+     * Main thread watchdog, null when not running.
+     */
+    private MainThreadWatchdog mMainThreadWatchdog;
+
+    /**
+     * Serializes watchdog setting changes, each waiting for the previous watchdog thread to exit.
+     */
+    private final Object mMainThreadWatchdogLock = new Object();
+
+    /**
+     * Maximum size of a minidump to send, in bytes before compression.
+     */
+    private volatile long mMaxMinidumpSize = DEFAULT_MAX_MINIDUMP_SIZE;
+
+    /**
+     * State captured ahead of a crash, null when disabled.
+     * Also used by the crash handler to check enabled state without waiting for the background thread.
+     */
+    private volatile CrashRecordHelper.CrashContext mCrashContext;
+
+    /**
+     * Recently reported crash signatures, loaded when first needed.
+     */
+    private CrashSignatureTable mCrashSignatures;
+
+    /**
+     * Limits handled errors reported per exception signature.
+     */
+    private final HandledErrorRateLimiter mHandledErrorRateLimiter;
+
     /**
      * Custom crashes listener.
      */
@@ -172,8 +305,20 @@ public class Crashes extends AbstractAppCenterService {
         mLogSerializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
         mLogSerializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
         mCrashesListener = DEFAULT_ERROR_REPORTING_LISTENER;
+        mHandledErrorRateLimiter = new HandledErrorRateLimiter(new Random());
         mUnprocessedErrorReports = new LinkedHashMap<>();
-        mErrorReportCache = new LinkedHashMap<>();
+        mErrorReportCache = new WeightedLruCache<UUID, ErrorLogReport>(ERROR_REPORT_CACHE_MAX_SIZE, ERROR_REPORT_CACHE_MAX_FRAMES) {
+
+            @Override
+            protected int weightOf(@NonNull ErrorLogReport value) {
+                return value.getWeight();
+            }
+
+            @Override
+            protected void onEvicted(@NonNull UUID key, @NonNull ErrorLogReport value) {
+                value.unload();
+            }
+        };
     }
 
     @NonNull
@@ -237,6 +382,38 @@ public class Crashes extends AbstractAppCenterService {
         getInstance().queueException(throwable, validatedProperties);
     }
 
+    /**
+     * Limit the number of handled errors reported with the same exception type and stack trace.
+     * Errors over the limit are counted and each count is reported as a single handled error
+     * once the interval ends or when an activity is paused.
+     * Main thread stalls are not limited, the watchdog already reports at most one per minute.
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @param maxReports maximum number of reports per signature and interval, must be positive.
+     * @param interval   interval in milliseconds, must be positive.
+     */
+    static void setHandledErrorRateLimit(int maxReports, long interval) {
+        if (maxReports <= 0 || interval <= 0) {
+            AppCenterLog.error(LOG_TAG, "Handled error rate limit and interval must be positive.");
+            return;
+        }
+        getInstance().setInstanceHandledErrorRateLimit(maxReports, interval);
+    }
+
+    /**
+     * Report only a random fraction of handled errors, the others being counted like errors over the rate limit.
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @param samplingRate fraction of handled errors reported, greater than 0 and at most 1.
+     */
+    static void setHandledErrorSamplingRate(float samplingRate) {
+        if (samplingRate <= 0 || samplingRate > 1) {
+            AppCenterLog.error(LOG_TAG, "Handled error sampling rate must be greater than 0 and at most 1.");
+            return;
+        }
+        getInstance().setInstanceHandledErrorSamplingRate(samplingRate);
+    }
+
     /**
      * Generates crash for test purpose.
      */
@@ -257,6 +434,36 @@ public class Crashes extends AbstractAppCenterService {
         getInstance().setInstanceListener(listener);
     }
 
+    /**
+     * Report main thread stalls as handled errors.
+     * <p>
+     * A background thread pings the main thread every {@code pingInterval} milliseconds.
+     * When the main thread does not respond within {@code stallThreshold} milliseconds,
+     * its stack trace is reported with the stall duration.
+     * A stall is reported only once and at most one stall is reported per minute.
+     * Stalls are not reported while a debugger is attached.
+     * TODO the backend does not support handled errors yet, will be public method later.
+     *
+     * @param pingInterval      time between pings in milliseconds, must be positive.
+     * @param stallThreshold    time without response after which the main thread is considered stalled in milliseconds, must be positive.
+     * @param captureAllThreads <code>true</code> to also report the stack traces of all threads.
+     */
+    static void enableMainThreadWatchdog(long pingInterval, long stallThreshold, boolean captureAllThreads) {
+        if (pingInterval <= 0 || stallThreshold <= 0) {
+            AppCenterLog.error(LOG_TAG, "Main thread watchdog ping interval and stall threshold must be positive.");
+            return;
+        }
+        getInstance().setInstanceMainThreadWatchdog(pingInterval, stallThreshold, captureAllThreads);
+    }
+
+    /**
+     * Stop reporting main thread stalls.
+     * TODO the backend does not support handled errors yet, will be public method later.
+     */
+    static void disableMainThreadWatchdog() {
+        getInstance().setInstanceMainThreadWatchdog(0, 0, false);
+    }
+
     /**
      * Get the path where NDK minidump files should be created.
      * <p>
@@ -269,6 +476,23 @@ public class Crashes extends AbstractAppCenterService {
         return getInstance().getNewMinidumpDirectoryAsync();
     }
 
+    /**
+     * Set the maximum size of NDK minidumps to send with native crash reports.
+     * Larger minidumps are deleted and their crash is reported without them.
+     * <p>
+     * TODO this API is yet not public as backend is not ready for this feature.
+     *
+     * @param maxSize maximum size in bytes before compression, must be positive.
+     */
+    @SuppressWarnings("unused")
+    protected static void setMaxMinidumpSize(long maxSize) {
+        if (maxSize <= 0) {
+            AppCenterLog.error(LOG_TAG, "Maximum minidump size must be positive.");
+            return;
+        }
+        getInstance().mMaxMinidumpSize = maxSize;
+    }
+
     /**
      * Notifies SDK with a confirmation to handle the crash report.
      *
@@ -346,6 +570,77 @@ public class Crashes extends AbstractAppCenterService {
         return future;
     }
 
+    /**
+     * Implements {@link #enableMainThreadWatchdog(long, long, boolean)} and {@link #disableMainThreadWatchdog()} at instance level.
+     */
+    private void setInstanceMainThreadWatchdog(long pingInterval, long stallThreshold, boolean captureAllThreads) {
+        synchronized (mMainThreadWatchdogLock) {
+            MainThreadWatchdog previousWatchdog;
+            synchronized (this) {
+                mWatchdogPingInterval = pingInterval;
+                mWatchdogStallThreshold = stallThreshold;
+                mWatchdogCaptureAllThreads = captureAllThreads;
+                previousWatchdog = mMainThreadWatchdog;
+                stopMainThreadWatchdog();
+            }
+
+            /* Wait for the previous thread without holding the lock it needs to report a stall. */
+            if (previousWatchdog != null) {
+                try {
+                    previousWatchdog.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            /* Restart with new settings if it was running. */
+            synchronized (this) {
+                if (mCrashContext != null && mMainThreadWatchdog == null) {
+                    startMainThreadWatchdog();
+                }
+            }
+        }
+    }
+
+    /**
+     * Implements {@link #setHandledErrorRateLimit(int, long)} at instance level.
+     */
+    private synchronized void setInstanceHandledErrorRateLimit(int maxReports, long interval) {
+        mHandledErrorRateLimiter.setRateLimit(maxReports, interval);
+    }
+
+    /**
+     * Implements {@link #setHandledErrorSamplingRate(float)} at instance level.
+     */
+    private synchronized void setInstanceHandledErrorSamplingRate(float samplingRate) {
+        mHandledErrorRateLimiter.setSamplingRate(samplingRate);
+    }
+
+    /**
+     * Start main thread watchdog if enabled.
+     */
+    private void startMainThreadWatchdog() {
+        if (mWatchdogPingInterval > 0) {
+            mMainThreadWatchdog = new MainThreadWatchdog(HandlerUtils.getMainHandler(), mWatchdogPingInterval, mWatchdogStallThreshold, mWatchdogCaptureAllThreads, new MainThreadWatchdog.Listener() {
+
+                @Override
+                public void onMainThreadStall(StackTraceElement[] stackTrace, Map<Thread, StackTraceElement[]> allStackTraces, long stallDuration) {
+                    queueMainThreadStall(stackTrace, allStackTraces, stallDuration);
+                }
+            });
+            mMainThreadWatchdog.start();
+        }
+    }
+
+    /**
+     * Stop main thread watchdog if running.
+     */
+    private void stopMainThreadWatchdog() {
+        if (mMainThreadWatchdog != null) {
+            mMainThreadWatchdog.stop();
+            mMainThreadWatchdog = null;
+        }
+    }
 
     @Override
     protected synchronized void applyEnabledState(boolean enabled) {
@@ -358,6 +653,15 @@ public class Crashes extends AbstractAppCenterService {
                 }
             }
             AppCenterLog.info(LOG_TAG, "Deleted crashes local files");
+            mCrashSignatures = null;
+            CrashSignatureTable.clear();
+
+            /* Pending files were deleted. */
+            mUnprocessedErrorReports.clear();
+            mErrorReportCache.clear();
+
+            /* Errors suppressed while enabled are not reported. */
+            mHandledErrorRateLimiter.removeAll();
         }
     }
 
@@ -372,6 +676,13 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    @Override
+    public synchronized void onActivityPaused(Activity activity) {
+
+        /* The application may be going to background, do not wait for intervals to end. */
+        queueSuppressedCounts(mHandledErrorRateLimiter.removeAll());
+    }
+
     @Override
     public Map<String, LogFactory> getLogFactories() {
         return mFactories;
@@ -399,7 +710,17 @@ public class Crashes extends AbstractAppCenterService {
 
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.SelectiveGroupListener() {
+
+            @Override
+            public boolean shouldNotify(@NonNull Log log) {
+
+                /*
+                 * Only managed error logs have reports, avoid decoding attachments and handled errors.
+                 * Minidump attachments are not encoded as their data is in a file that must be deleted once sent.
+                 */
+                return ManagedErrorLog.TYPE.equals(log.getType()) || (log instanceof ErrorAttachmentLog && MinidumpHelper.isCompressedMinidumpFile(((ErrorAttachmentLog) log).getDataFile()));
+            }
 
             /** Process callback (template method) */
             private void processCallback(final Log log, final CallbackProcessor callbackProcessor) {
@@ -429,7 +750,14 @@ public class Crashes extends AbstractAppCenterService {
                             } else {
                                 AppCenterLog.warn(LOG_TAG, "Cannot find crash report for the error log: " + id);
                             }
-                        } else if (!(log instanceof ErrorAttachmentLog) && !(log instanceof HandledErrorLog)) {
+                        } else if (log instanceof ErrorAttachmentLog) {
+
+                            /* Delete minidump once sent or discarded. */
+                            File dataFile = ((ErrorAttachmentLog) log).getDataFile();
+                            if (callbackProcessor.shouldDeleteThrowable() && MinidumpHelper.isCompressedMinidumpFile(dataFile)) {
+                                MinidumpHelper.deleteCompressedMinidump(dataFile);
+                            }
+                        } else if (!(log instanceof HandledErrorLog)) {
                             AppCenterLog.warn(LOG_TAG, "A different type of log comes to crashes: " + log.getClass().getName());
                         }
                     }
@@ -503,6 +831,9 @@ public class Crashes extends AbstractAppCenterService {
      * @param properties optional properties.
      */
     private synchronized void queueException(@NonNull final Throwable throwable, Map<String, String> properties) {
+        if (!acquireHandledErrorReport(HandledErrorRateLimiter.getSignature(throwable), throwable.getClass().getName())) {
+            return;
+        }
         queueException(new ExceptionModelBuilder() {
 
             @Override
@@ -519,6 +850,9 @@ public class Crashes extends AbstractAppCenterService {
      * @param properties optional properties.
      */
     synchronized void queueException(@NonNull final com.microsoft.appcenter.crashes.ingestion.models.Exception modelException, Map<String, String> properties) {
+        if (!acquireHandledErrorReport(HandledErrorRateLimiter.getSignature(modelException), modelException.getType())) {
+            return;
+        }
         queueException(new ExceptionModelBuilder() {
 
             @Override
@@ -528,7 +862,34 @@ public class Crashes extends AbstractAppCenterService {
         }, properties);
     }
 
+    /**
+     * Apply rate limit and sampling to an handled error before building its log,
+     * and report the errors suppressed during ended intervals.
+     *
+     * @param signature exception signature.
+     * @param type      exception type.
+     * @return true to report the error.
+     */
+    private synchronized boolean acquireHandledErrorReport(String signature, String type) {
+
+        /* Error is discarded anyway, do not count it. */
+        if (!isInstanceEnabled()) {
+            return true;
+        }
+        long now = SystemClock.elapsedRealtime();
+        boolean acquired = mHandledErrorRateLimiter.tryAcquire(signature, type, now);
+        if (!acquired) {
+            AppCenterLog.verbose(LOG_TAG, "Handled error rate limit reached, suppressing " + type);
+        }
+        queueSuppressedCounts(mHandledErrorRateLimiter.removeExpired(now));
+        return acquired;
+    }
+
     private synchronized void queueException(@NonNull final ExceptionModelBuilder exceptionModelBuilder, final Map<String, String> properties) {
+        queueException(exceptionModelBuilder, properties, null);
+    }
+
+    private synchronized void queueException(@NonNull final ExceptionModelBuilder exceptionModelBuilder, final Map<String, String> properties, final Map<Thread, StackTraceElement[]> allStackTraces) {
         post(new Runnable() {
 
             @Override
@@ -537,32 +898,73 @@ public class Crashes extends AbstractAppCenterService {
                 errorLog.setId(UUID.randomUUID());
                 errorLog.setException(exceptionModelBuilder.buildExceptionModel());
                 errorLog.setProperties(properties);
+                if (allStackTraces != null) {
+                    errorLog.setThreads(ErrorLogHelper.getModelThreads(allStackTraces));
+                }
                 mChannel.enqueue(errorLog, ERROR_GROUP);
             }
         });
     }
 
+    /**
+     * Send a main thread stall as an handled exception.
+     *
+     * @param stackTrace     main thread stack trace.
+     * @param allStackTraces all thread stack traces, can be null.
+     * @param stallDuration  stall duration in milliseconds.
+     */
+    @VisibleForTesting
+    synchronized void queueMainThreadStall(StackTraceElement[] stackTrace, Map<Thread, StackTraceElement[]> allStackTraces, long stallDuration) {
+        final MainThreadStallException exception = new MainThreadStallException(stallDuration);
+        exception.setStackTrace(stackTrace);
+        queueException(new ExceptionModelBuilder() {
+
+            @Override
+            public com.microsoft.appcenter.crashes.ingestion.models.Exception buildExceptionModel() {
+                return ErrorLogHelper.getModelExceptionFromThrowable(exception);
+            }
+        }, Collections.singletonMap(STALL_DURATION_PROPERTY, String.valueOf(stallDuration)), allStackTraces);
+    }
+
     private void initialize() {
         boolean enabled = isInstanceEnabled();
         mInitializeTimestamp = enabled ? System.currentTimeMillis() : -1;
         if (!enabled) {
+            mCrashContext = null;
             if (mUncaughtExceptionHandler != null) {
                 mUncaughtExceptionHandler.unregister();
                 mUncaughtExceptionHandler = null;
             }
+            stopMainThreadWatchdog();
+            shutdownErrorLoaderExecutor();
         } else {
 
             /* Register Java crash handler. */
+            mCrashContext = CrashRecordHelper.createCrashContext(mContext, mInitializeTimestamp);
             mUncaughtExceptionHandler = new UncaughtExceptionHandler();
             mUncaughtExceptionHandler.register();
 
-            /* Convert minidump files to App Center crash files. */
+            /* Watch main thread if requested. */
+            stopMainThreadWatchdog();
+            startMainThreadWatchdog();
+
+            /* Convert crash records of previous process to App Center crash files. */
+            for (File recordFile : ErrorLogHelper.getStoredCrashRecordFiles()) {
+                processCrashRecord(recordFile);
+            }
+
+            /*
+             * Convert minidump files to App Center crash files.
+             * Only moving is done here so that the last session crash is known,
+             * minidumps are compressed in background.
+             */
             for (File logFile : ErrorLogHelper.getNewMinidumpFiles()) {
 
                 /* Create missing files from the native crash that we detected. */
                 AppCenterLog.debug(LOG_TAG, "Process pending minidump file: " + logFile);
                 long minidumpDate = logFile.lastModified();
-                File dest = new File(ErrorLogHelper.getPendingMinidumpDirectory(), logFile.getName());
+                UUID errorId = UUID.randomUUID();
+                File dest = MinidumpHelper.getPendingMinidumpFile(errorId);
                 NativeException nativeException = new NativeException();
                 Exception modelException = new Exception();
                 modelException.setType("minidump");
@@ -572,7 +974,7 @@ public class Crashes extends AbstractAppCenterService {
                 errorLog.setException(modelException);
                 errorLog.setTimestamp(new Date(minidumpDate));
                 errorLog.setFatal(true);
-                errorLog.setId(UUID.randomUUID());
+                errorLog.setId(errorId);
 
                 /* Lookup app launch timestamp in session history. */
                 SessionContext.SessionInfo session = SessionContext.getInstance().getSessionAt(minidumpDate);
@@ -618,6 +1020,14 @@ public class Crashes extends AbstractAppCenterService {
                     AppCenterLog.error(LOG_TAG, "Failed to process new minidump file: " + logFile, e);
                 }
             }
+            final long maxMinidumpSize = mMaxMinidumpSize;
+            getErrorLoaderExecutor().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    MinidumpHelper.processPendingMinidumps(maxMinidumpSize);
+                }
+            });
 
             /* Check last session crash. */
             File logFile = ErrorLogHelper.getLastErrorLogFile();
@@ -639,38 +1049,251 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Build and save error log from a crash record, then delete the record.
+     *
+     * @param recordFile crash record file.
+     */
+    private void processCrashRecord(File recordFile) {
+        AppCenterLog.debug(LOG_TAG, "Process crash record file: " + recordFile);
+        UUID id = null;
+        try {
+            ManagedErrorLog errorLog = CrashRecordHelper.readCrashRecord(recordFile);
+            id = errorLog.getId();
+            if (errorLog.getDevice() == null) {
+                errorLog.setDevice(DeviceInfoHelper.getDeviceInfo(mContext));
+            }
+            File errorStorageDirectory = ErrorLogHelper.getErrorStorageDirectory();
+            File errorLogFile = new File(errorStorageDirectory, id.toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+            StorageHelper.InternalStorage.write(errorLogFile, mLogSerializer.serializeLog(errorLog));
+
+            /* The throwable is saved after the record, use placeholder if process died in between. */
+            File throwableFile = new File(errorStorageDirectory, id.toString() + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+            if (!throwableFile.exists() && !throwableFile.createNewFile()) {
+                throw new IOException(throwableFile.getName());
+            }
+        } catch (java.lang.Exception e) {
+            if (id != null) {
+                removeAllStoredErrorLogFiles(id);
+            }
+            AppCenterLog.error(LOG_TAG, "Failed to process crash record file: " + recordFile, e);
+        }
+        StorageHelper.InternalStorage.delete(recordFile);
+    }
+
     private void processPendingErrors() {
+
+        /* Report duplicate crash counts of ended windows. */
+        CrashSignatureTable crashSignatures = getCrashSignatures();
+        List<CrashSignatureTable.Entry> expiredEntries = crashSignatures.removeExpired(System.currentTimeMillis());
+        if (!expiredEntries.isEmpty()) {
+            for (CrashSignatureTable.Entry entry : expiredEntries) {
+                queueDuplicateCount(entry);
+            }
+            crashSignatures.save();
+        }
+
+        /* List pending files, they are decoded on the error loader threads. */
+        final List<ErrorLogReport> pendingErrorLogReports = new ArrayList<>();
         for (File logFile : ErrorLogHelper.getStoredErrorLogFiles()) {
             AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
-            String logfileContents = StorageHelper.InternalStorage.read(logFile);
-            if (logfileContents != null) {
-                try {
-                    ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents);
-                    UUID id = log.getId();
-                    ErrorReport report = buildErrorReport(log);
+            UUID id = getErrorLogId(logFile);
+            if (id == null) {
+                AppCenterLog.error(LOG_TAG, "Invalid error log file name: " + logFile);
+                StorageHelper.InternalStorage.delete(logFile);
+                continue;
+            }
+            ErrorLogReport errorLogReport = mUnprocessedErrorReports.get(id);
+            if (errorLogReport == null) {
+
+                /* Pending reports are not bounded by the cache, they are kept until enqueued. */
+                errorLogReport = mErrorReportCache.remove(id);
+            }
+            if (errorLogReport == null) {
+                errorLogReport = new ErrorLogReport(id, logFile, mLogSerializer);
+            }
+            pendingErrorLogReports.add(errorLogReport);
+        }
+
+        /* Duplicates are counted before any listener or wrapper SDK sees the reports. */
+        loadErrorLogReports(pendingErrorLogReports, new Runnable() {
+
+            @Override
+            public void run() {
+                CrashSignatureTable crashSignatures = getCrashSignatures();
+                for (ErrorLogReport errorLogReport : pendingErrorLogReports) {
+                    UUID id = errorLogReport.id;
+                    ErrorReport report = errorLogReport.getReport();
                     if (report == null) {
                         removeAllStoredErrorLogFiles(id);
-                    } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
-                        if (!mAutomaticProcessing) {
-                            AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
-                        }
-                        mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
-                    } else {
+                    } else if (countDuplicateCrash(crashSignatures, errorLogReport.getLog(), report)) {
+                        AppCenterLog.debug(LOG_TAG, "Identical crash reported recently, counting instead of sending: " + id);
+                        removeAllStoredErrorLogFiles(id);
+                    } else if (mAutomaticProcessing && !mCrashesListener.shouldProcess(report)) {
                         AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
+                        crashSignatures.remove(id);
                         removeAllStoredErrorLogFiles(id);
+                    } else {
+                        mUnprocessedErrorReports.put(id, errorLogReport);
                     }
-                } catch (JSONException e) {
-                    AppCenterLog.error(LOG_TAG, "Error parsing error log", e);
                 }
+                if (!pendingErrorLogReports.isEmpty()) {
+                    crashSignatures.save();
+                }
+
+                /* If automatic processing is enabled, proceed to check if user confirmation is needed. */
+                if (mAutomaticProcessing) {
+                    sendCrashReportsOrAwaitUserConfirmation();
+                }
+            }
+        }, null);
+    }
+
+    /**
+     * Count a crash if an identical one was reported recently, otherwise remember its signature.
+     * Native crashes have no stack trace to compare until the backend processes their minidump.
+     *
+     * @param crashSignatures recent crash signatures.
+     * @param log             error log.
+     * @param report          error report.
+     * @return true if the crash is a duplicate and must not be reported.
+     */
+    private boolean countDuplicateCrash(CrashSignatureTable crashSignatures, ManagedErrorLog log, ErrorReport report) {
+        if (report.getThrowable() instanceof NativeException || log.getException() == null || log.getTimestamp() == null) {
+            return false;
+        }
+
+        /* Crash still pending since a previous launch. */
+        UUID id = log.getId();
+        if (crashSignatures.contains(id)) {
+            return false;
+        }
+        String signature = ErrorLogHelper.getStackSignature(log.getException());
+        long timestamp = log.getTimestamp().getTime();
+        if (crashSignatures.countDuplicate(signature, timestamp)) {
+            return true;
+        }
+        CrashSignatureTable.Entry removedEntry = crashSignatures.add(signature, id, timestamp, log.getException().getType());
+        if (removedEntry != null) {
+            queueDuplicateCount(removedEntry);
+        }
+        return false;
+    }
+
+    /**
+     * Get error log identifier from its file name.
+     *
+     * @param logFile error log file.
+     * @return identifier or null if the file name is not valid.
+     */
+    @Nullable
+    private static UUID getErrorLogId(File logFile) {
+        String name = logFile.getName();
+        if (name != null && name.endsWith(ErrorLogHelper.ERROR_LOG_FILE_EXTENSION)) {
+            try {
+                return UUID.fromString(name.substring(0, name.length() - ErrorLogHelper.ERROR_LOG_FILE_EXTENSION.length()));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decode error logs and reports using the error loader threads,
+     * then run the callback in background once they are all decoded.
+     * Reports are kept decoded during the callback, the ones no longer pending are trimmed to the cache bounds after it.
+     *
+     * @param errorLogReports  entries to decode.
+     * @param loadedCallback   command to run once decoded.
+     * @param disabledCallback optional alternate command if the service was disabled in the mean time.
+     */
+    private void loadErrorLogReports(final Collection<ErrorLogReport> errorLogReports, final Runnable loadedCallback, final Runnable disabledCallback) {
+        final Runnable callback = new Runnable() {
+
+            @Override
+            public void run() {
+                loadedCallback.run();
+                trimErrorReportCache(errorLogReports);
             }
+        };
+        List<ErrorLogReport> encodedErrorLogReports = new ArrayList<>(errorLogReports.size());
+        for (ErrorLogReport errorLogReport : errorLogReports) {
+            if (!errorLogReport.isLoaded()) {
+                encodedErrorLogReports.add(errorLogReport);
+            }
+        }
+        if (encodedErrorLogReports.isEmpty()) {
+            callback.run();
+            return;
         }
+        final AtomicInteger remaining = new AtomicInteger(encodedErrorLogReports.size());
+
+        /* Submit under lock so that the executor is not shut down in the mean time. */
+        synchronized (this) {
+            Executor errorLoaderExecutor = getErrorLoaderExecutor();
+            for (final ErrorLogReport errorLogReport : encodedErrorLogReports) {
+                errorLoaderExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        errorLogReport.load();
+                        if (remaining.decrementAndGet() == 0) {
+                            post(callback, disabledCallback, disabledCallback);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Get the error loader executor, creating its thread pool if needed.
+     * Idle threads are stopped so that the pool costs nothing between uses.
+     *
+     * @return error loader executor.
+     */
+    private Executor getErrorLoaderExecutor() {
+        if (mErrorLoaderExecutor == null) {
+            int threadCount = Math.min(MAX_ERROR_LOADER_THREADS, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor errorLoaderExecutor = new ThreadPoolExecutor(threadCount, threadCount, ERROR_LOADER_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, ERROR_LOADER_THREAD_NAME);
+                }
+            });
+            errorLoaderExecutor.allowCoreThreadTimeOut(true);
+            mErrorLoaderExecutor = errorLoaderExecutor;
+        }
+        return mErrorLoaderExecutor;
+    }
+
+    /**
+     * Shut down the error loader thread pool if created, tasks already submitted still complete.
+     */
+    private void shutdownErrorLoaderExecutor() {
 
-        /* If automatic processing is enabled. */
-        if (mAutomaticProcessing) {
+        /* Executors set for testing are kept. */
+        if (mErrorLoaderExecutor instanceof ExecutorService) {
+            ((ExecutorService) mErrorLoaderExecutor).shutdown();
+            mErrorLoaderExecutor = null;
+        }
+    }
 
-            /* Proceed to check if user confirmation is needed. */
-            sendCrashReportsOrAwaitUserConfirmation();
+    /**
+     * Account for decoded reports in the cache, releasing the least recently used ones beyond its bounds.
+     * Pending reports stay decoded until enqueued.
+     *
+     * @param errorLogReports entries that were decoded.
+     */
+    private void trimErrorReportCache(Collection<ErrorLogReport> errorLogReports) {
+        for (ErrorLogReport errorLogReport : errorLogReports) {
+            UUID id = errorLogReport.id;
+            if (mUnprocessedErrorReports.get(id) != errorLogReport) {
+                mErrorReportCache.refresh(id);
+            }
         }
+        AppCenterLog.verbose(LOG_TAG, "Error report cache: " + mErrorReportCache);
     }
 
     /**
@@ -737,28 +1360,53 @@ public class Crashes extends AbstractAppCenterService {
         mUncaughtExceptionHandler = handler;
     }
 
+    @VisibleForTesting
+    void setErrorLoaderExecutor(Executor executor) {
+        mErrorLoaderExecutor = executor;
+    }
+
+    @VisibleForTesting
+    WeightedLruCache<UUID, ?> getErrorReportCache() {
+        return mErrorReportCache;
+    }
+
     @VisibleForTesting
     @Nullable
     ErrorReport buildErrorReport(ManagedErrorLog log) {
         UUID id = log.getId();
-        if (mErrorReportCache.containsKey(id)) {
-            return mErrorReportCache.get(id).report;
-        } else {
-            File file = ErrorLogHelper.getStoredThrowableFile(id);
-            if (file != null) {
-                try {
-                    Throwable throwable = null;
-                    if (file.length() > 0) {
-                        throwable = StorageHelper.InternalStorage.readObject(file);
-                    }
-                    ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, throwable);
-                    mErrorReportCache.put(id, new ErrorLogReport(log, report));
-                    return report;
-                } catch (ClassNotFoundException ignored) {
-                    AppCenterLog.error(LOG_TAG, "Cannot read throwable file " + file.getName(), ignored);
-                } catch (IOException ignored) {
-                    AppCenterLog.error(LOG_TAG, "Cannot access serialized throwable file " + file.getName(), ignored);
+        ErrorLogReport errorLogReport = mErrorReportCache.get(id);
+        if (errorLogReport != null) {
+            ErrorReport report = errorLogReport.getReport();
+            mErrorReportCache.refresh(id);
+            return report;
+        }
+        ErrorReport report = readErrorReport(log);
+        if (report != null) {
+            mErrorReportCache.put(id, new ErrorLogReport(log, report));
+        }
+        return report;
+    }
+
+    /**
+     * Build an error report using the throwable file of an error log.
+     *
+     * @param log error log.
+     * @return error report or null if the throwable file is missing or cannot be read.
+     */
+    @Nullable
+    private static ErrorReport readErrorReport(ManagedErrorLog log) {
+        File file = ErrorLogHelper.getStoredThrowableFile(log.getId());
+        if (file != null) {
+            try {
+                Throwable throwable = null;
+                if (file.length() > 0) {
+                    throwable = ThrowableHelper.readThrowable(file);
                 }
+                return ErrorLogHelper.getErrorReportFromErrorLog(log, throwable);
+            } catch (ClassNotFoundException ignored) {
+                AppCenterLog.error(LOG_TAG, "Cannot read throwable file " + file.getName(), ignored);
+            } catch (IOException ignored) {
+                AppCenterLog.error(LOG_TAG, "Cannot access serialized throwable file " + file.getName(), ignored);
             }
         }
         return null;
@@ -788,11 +1436,14 @@ public class Crashes extends AbstractAppCenterService {
                 if (userConfirmation == DONT_SEND) {
 
                     /* Clean up all pending error log and throwable files. */
+                    CrashSignatureTable crashSignatures = getCrashSignatures();
                     for (Iterator<UUID> iterator = mUnprocessedErrorReports.keySet().iterator(); iterator.hasNext(); ) {
                         UUID id = iterator.next();
                         iterator.remove();
+                        crashSignatures.remove(id);
                         removeAllStoredErrorLogFiles(id);
                     }
+                    crashSignatures.save();
                 }
 
                 /* We send the crash. */
@@ -803,44 +1454,114 @@ public class Crashes extends AbstractAppCenterService {
                         StorageHelper.PreferencesStorage.putBoolean(PREF_KEY_ALWAYS_SEND, true);
                     }
 
-                    /* Send every pending report. */
-                    Iterator<Map.Entry<UUID, ErrorLogReport>> unprocessedIterator = mUnprocessedErrorReports.entrySet().iterator();
-                    while (unprocessedIterator.hasNext()) {
-
-                        /* If native crash, send dump as attachment and remove the fake stack trace. */
-                        File dumpFile = null;
-                        ErrorAttachmentLog dumpAttachment = null;
-                        Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
-                        ErrorLogReport errorLogReport = unprocessedEntry.getValue();
-                        if (errorLogReport.report.getThrowable() instanceof NativeException) {
-                            Exception exception = errorLogReport.log.getException();
-                            dumpFile = new File(exception.getStackTrace());
-                            exception.setStackTrace(null);
-                            byte[] logfileContents = StorageHelper.InternalStorage.readBytes(dumpFile);
-                            dumpAttachment = ErrorAttachmentLog.attachmentWithBinary(logfileContents, "minidump.dmp", "application/octet-stream");
+                    /* Decode every pending report then send them. */
+                    loadErrorLogReports(new ArrayList<>(mUnprocessedErrorReports.values()), new Runnable() {
+
+                        @Override
+                        public void run() {
+                            sendUnprocessedErrorReports();
                         }
+                    }, null);
+                }
+            }
+        });
+    }
 
-                        /* Send report. */
-                        mChannel.enqueue(errorLogReport.log, ERROR_GROUP);
+    /**
+     * Send every unprocessed report, clean up the ones that cannot be decoded.
+     */
+    private void sendUnprocessedErrorReports() {
+        Iterator<Map.Entry<UUID, ErrorLogReport>> unprocessedIterator = mUnprocessedErrorReports.entrySet().iterator();
+        while (unprocessedIterator.hasNext()) {
+            Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
+            UUID id = unprocessedEntry.getKey();
+            ErrorLogReport errorLogReport = unprocessedEntry.getValue();
+            ErrorReport report = errorLogReport.getReport();
+            if (report == null) {
+                unprocessedIterator.remove();
+                removeAllStoredErrorLogFiles(id);
+                continue;
+            }
+            ManagedErrorLog log = errorLogReport.getLog();
 
-                        /* Send dump attachment and remove file. */
-                        if (dumpAttachment != null) {
-                            sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(dumpAttachment));
+            /*
+             * If native crash, send compressed dump as attachment and remove the fake stack trace.
+             * The dump is streamed from file when sending and deleted once its attachment is sent.
+             */
+            ErrorAttachmentLog dumpAttachment = null;
+            if (report.getThrowable() instanceof NativeException) {
+                Exception exception = log.getException();
+                File dumpFile = MinidumpHelper.compressMinidump(new File(exception.getStackTrace()), mMaxMinidumpSize);
+                exception.setStackTrace(null);
+                if (dumpFile != null) {
+                    MinidumpHelper.markQueued(dumpFile);
+                    dumpAttachment = ErrorAttachmentLog.attachmentWithFile(dumpFile, MINIDUMP_ATTACHMENT_FILE_NAME, MINIDUMP_ATTACHMENT_CONTENT_TYPE);
+                }
+            }
 
-                            //noinspection ResultOfMethodCallIgnored
-                            dumpFile.delete();
-                        }
+            /* Send report, its decoded content is now bounded by the cache until sent. */
+            mChannel.enqueue(log, ERROR_GROUP);
+            mErrorReportCache.put(id, errorLogReport);
 
-                        /* Get attachments from callback in automatic processing. */
-                        if (mAutomaticProcessing) {
-                            Iterable<ErrorAttachmentLog> attachments = mCrashesListener.getErrorAttachments(errorLogReport.report);
-                            sendErrorAttachment(errorLogReport.log.getId(), attachments);
-                        }
+            /* Send dump attachment. */
+            if (dumpAttachment != null) {
+                sendErrorAttachment(id, Collections.singleton(dumpAttachment));
+            }
 
-                        /* Clean up an error log file and map entry. */
-                        unprocessedIterator.remove();
-                        ErrorLogHelper.removeStoredErrorLogFile(unprocessedEntry.getKey());
-                    }
+            /* Get attachments from callback in automatic processing. */
+            if (mAutomaticProcessing) {
+                Iterable<ErrorAttachmentLog> attachments = mCrashesListener.getErrorAttachments(report);
+                sendErrorAttachment(id, attachments);
+            }
+
+            /* Clean up an error log file and map entry. */
+            unprocessedIterator.remove();
+            ErrorLogHelper.removeStoredErrorLogFile(id);
+        }
+    }
+
+    /**
+     * Get recently reported crash signatures, loading them if needed.
+     */
+    private CrashSignatureTable getCrashSignatures() {
+        if (mCrashSignatures == null) {
+            mCrashSignatures = CrashSignatureTable.load();
+        }
+        return mCrashSignatures;
+    }
+
+    /**
+     * Send the number of identical crashes that were not sent as a text attachment of the reported crash.
+     *
+     * @param entry reported crash with its duplicate count.
+     */
+    private void queueDuplicateCount(CrashSignatureTable.Entry entry) {
+        String text = entry.getCount() + " identical crashes not reported: " + entry.getType();
+        sendErrorAttachment(entry.getErrorId(), Collections.singleton(ErrorAttachmentLog.attachmentWithText(text, DUPLICATE_COUNT_ATTACHMENT_FILE_NAME)));
+    }
+
+    /**
+     * Send the numbers of handled errors that were not reported, each as a lightweight handled error.
+     *
+     * @param windows ended rate limiter windows with suppressed errors.
+     */
+    private synchronized void queueSuppressedCounts(final List<HandledErrorRateLimiter.Window> windows) {
+        if (windows.isEmpty()) {
+            return;
+        }
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                for (HandledErrorRateLimiter.Window window : windows) {
+                    Exception exception = new Exception();
+                    exception.setType(window.getType());
+                    exception.setMessage(window.getSuppressedCount() + " handled errors not reported");
+                    HandledErrorLog errorLog = new HandledErrorLog();
+                    errorLog.setId(UUID.randomUUID());
+                    errorLog.setException(exception);
+                    errorLog.setProperties(Collections.singletonMap(SUPPRESSED_COUNT_PROPERTY, String.valueOf(window.getSuppressedCount())));
+                    mChannel.enqueue(errorLog, ERROR_GROUP);
                 }
             }
         });
@@ -886,10 +1607,24 @@ public class Crashes extends AbstractAppCenterService {
      * @param throwable uncaught exception or error.
      */
     void saveUncaughtException(Thread thread, Throwable throwable) {
+
+        /* Ignore call if Crash is disabled. */
+        CrashRecordHelper.CrashContext crashContext = mCrashContext;
+        if (crashContext == null || mSavedUncaughtException) {
+            return;
+        }
+        mSavedUncaughtException = true;
+
+        /*
+         * Only write raw data while the process is dying,
+         * error log is built and serialized to JSON after restart.
+         */
         try {
-            saveUncaughtException(thread, throwable, ErrorLogHelper.getModelExceptionFromThrowable(throwable));
-        } catch (JSONException e) {
-            AppCenterLog.error(Crashes.LOG_TAG, "Error serializing error log to JSON", e);
+            UUID errorLogId = CrashRecordHelper.writeCrashRecord(crashContext, thread, throwable, Thread.getAllStackTraces());
+            AppCenterLog.debug(Crashes.LOG_TAG, "Saved crash record for " + errorLogId);
+            File throwableFile = new File(ErrorLogHelper.getErrorStorageDirectory(), errorLogId.toString() + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+            ThrowableHelper.writeThrowable(throwableFile, throwable);
+            AppCenterLog.debug(Crashes.LOG_TAG, "Saved Throwable for client side inspection in " + throwableFile + " throwable:", throwable);
         } catch (IOException e) {
             AppCenterLog.error(Crashes.LOG_TAG, "Error writing error log to file", e);
         }
@@ -908,7 +1643,7 @@ public class Crashes extends AbstractAppCenterService {
     UUID saveUncaughtException(Thread thread, Throwable throwable, com.microsoft.appcenter.crashes.ingestion.models.Exception modelException) throws JSONException, IOException {
 
         /* Ignore call if Crash is disabled. */
-        if (!Crashes.isEnabled().get()) {
+        if (mCrashContext == null) {
             return null;
         }
 
@@ -938,8 +1673,8 @@ public class Crashes extends AbstractAppCenterService {
         AppCenterLog.debug(Crashes.LOG_TAG, "Saved JSON content for ingestion into " + errorLogFile);
         File throwableFile = new File(errorStorageDirectory, filename + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
         if (throwable != null) {
-            StorageHelper.InternalStorage.writeObject(throwableFile, throwable);
-            AppCenterLog.debug(Crashes.LOG_TAG, "Saved Throwable as is for client side inspection in " + throwableFile + " throwable:", throwable);
+            ThrowableHelper.writeThrowable(throwableFile, throwable);
+            AppCenterLog.debug(Crashes.LOG_TAG, "Saved Throwable for client side inspection in " + throwableFile + " throwable:", throwable);
         } else {
 
             /*
@@ -970,11 +1705,31 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void run() {
-                Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
-                for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
-                    reports.add(entry.report);
-                }
-                future.complete(reports);
+                loadErrorLogReports(new ArrayList<>(mUnprocessedErrorReports.values()), new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
+                        Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
+                        while (iterator.hasNext()) {
+                            Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
+                            ErrorReport report = entry.getValue().getReport();
+                            if (report == null) {
+                                iterator.remove();
+                                removeAllStoredErrorLogFiles(entry.getKey());
+                            } else {
+                                reports.add(report);
+                            }
+                        }
+                        future.complete(reports);
+                    }
+                }, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        future.complete(Collections.<ErrorReport>emptyList());
+                    }
+                });
             }
         }, future, Collections.<ErrorReport>emptyList());
         return future;
@@ -991,19 +1746,22 @@ public class Crashes extends AbstractAppCenterService {
             public void run() {
 
                 /* Apply the filtering. */
+                CrashSignatureTable crashSignatures = getCrashSignatures();
                 Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
                 while (iterator.hasNext()) {
                     Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
                     UUID id = entry.getKey();
-                    String idString = entry.getValue().report.getId();
+                    String idString = id.toString();
                     if (filteredReportIds != null && filteredReportIds.contains(idString)) {
                         AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
                     } else {
                         AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + idString);
+                        crashSignatures.remove(id);
                         removeAllStoredErrorLogFiles(id);
                         iterator.remove();
                     }
                 }
+                crashSignatures.save();
 
                 /* Proceed to check if user confirmation is needed. */
                 future.complete(sendCrashReportsOrAwaitUserConfirmation());
@@ -1077,16 +1835,100 @@ public class Crashes extends AbstractAppCenterService {
 
     /**
      * Class holding an error log and its corresponding error report.
+     * When created from a pending file, both are decoded on first access and can be released to be decoded again later.
      */
     private static class ErrorLogReport {
 
-        private final ManagedErrorLog log;
+        private final UUID id;
+
+        /**
+         * File to decode, null if created from decoded content.
+         */
+        private final File file;
 
-        private final ErrorReport report;
+        private final LogSerializer logSerializer;
+
+        /**
+         * Whether the file was decoded since created or released.
+         */
+        private boolean loaded;
+
+        private ManagedErrorLog log;
+
+        private ErrorReport report;
 
         private ErrorLogReport(ManagedErrorLog log, ErrorReport report) {
+            this.id = log.getId();
+            this.file = null;
+            this.logSerializer = null;
+            this.loaded = true;
             this.log = log;
             this.report = report;
         }
+
+        private ErrorLogReport(UUID id, File file, LogSerializer logSerializer) {
+            this.id = id;
+            this.file = file;
+            this.logSerializer = logSerializer;
+        }
+
+        private synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        /**
+         * Decode error log and report if not already done.
+         * Both remain null if the files are missing or corrupted.
+         */
+        private synchronized void load() {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            String logFileContents = StorageHelper.InternalStorage.read(file);
+            if (logFileContents != null) {
+                try {
+                    ManagedErrorLog errorLog = (ManagedErrorLog) logSerializer.deserializeLog(logFileContents);
+                    if (errorLog == null || !id.equals(errorLog.getId())) {
+                        AppCenterLog.error(LOG_TAG, "Error log does not match its file name: " + file);
+                    } else {
+                        report = readErrorReport(errorLog);
+                        if (report != null) {
+                            log = errorLog;
+                        }
+                    }
+                } catch (JSONException e) {
+                    AppCenterLog.error(LOG_TAG, "Error parsing error log", e);
+                }
+            }
+        }
+
+        /**
+         * Release decoded content if it can be decoded again from file.
+         */
+        private synchronized void unload() {
+            if (file != null) {
+                loaded = false;
+                log = null;
+                report = null;
+            }
+        }
+
+        /**
+         * Get memory weight as the number of decoded stack frames, at least 1.
+         */
+        private synchronized int getWeight() {
+            return log != null ? 1 + ErrorLogHelper.getFrameCount(log) : 1;
+        }
+
+        private synchronized ManagedErrorLog getLog() {
+            load();
+            return log;
+        }
+
+        private synchronized ErrorReport getReport() {
+            load();
+            return report;
+        }
     }
 }
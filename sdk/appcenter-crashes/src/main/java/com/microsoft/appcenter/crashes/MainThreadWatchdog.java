@@ -0,0 +1,221 @@
+package com.microsoft.appcenter.crashes;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.Map;
+
+import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
+
+/**
+ * Detects main thread stalls by pinging the main looper from a background thread.
+ * While the main thread is healthy, the only cost is one message posted per ping interval.
+ */
+class MainThreadWatchdog implements Runnable {
+
+    /**
+     * Watchdog thread name.
+     */
+    @VisibleForTesting
+    static final String THREAD_NAME = "AppCenter.Crashes.Watchdog";
+
+    /**
+     * Minimum time between 2 stall reports in milliseconds.
+     */
+    @VisibleForTesting
+    static final long MIN_REPORT_INTERVAL = 60 * 1000;
+
+    /**
+     * Main thread handler.
+     */
+    private final Handler mMainHandler;
+
+    /**
+     * Main thread.
+     */
+    private final Thread mMainThread;
+
+    /**
+     * Time between pings in milliseconds.
+     */
+    private final long mPingInterval;
+
+    /**
+     * Time without response after which the main thread is considered stalled, in milliseconds.
+     */
+    private final long mStallThreshold;
+
+    /**
+     * Whether to capture all thread stack traces in addition to the main thread one.
+     */
+    private final boolean mCaptureAllThreads;
+
+    /**
+     * Stall listener.
+     */
+    private final Listener mListener;
+
+    /**
+     * Answers the ping on the main thread.
+     */
+    private final Runnable mPong = new Runnable() {
+
+        @Override
+        public void run() {
+            mPending = false;
+        }
+    };
+
+    /**
+     * Whether the last ping is waiting for the main thread.
+     */
+    private volatile boolean mPending;
+
+    /**
+     * Uptime when the last ping was posted.
+     */
+    private long mPingTime;
+
+    /**
+     * Whether the current stall was already handled.
+     */
+    private boolean mStallHandled;
+
+    /**
+     * Uptime before which no new stall is reported.
+     */
+    private long mNextReportTime;
+
+    /**
+     * Watchdog thread, null when stopped.
+     */
+    private Thread mThread;
+
+    /**
+     * Last stopped watchdog thread, to wait for its exit.
+     */
+    private Thread mStoppedThread;
+
+    MainThreadWatchdog(Handler mainHandler, long pingInterval, long stallThreshold, boolean captureAllThreads, Listener listener) {
+        mMainHandler = mainHandler;
+        mMainThread = mainHandler.getLooper().getThread();
+        mPingInterval = pingInterval;
+        mStallThreshold = stallThreshold;
+        mCaptureAllThreads = captureAllThreads;
+        mListener = listener;
+    }
+
+    /**
+     * Start watching the main thread.
+     */
+    synchronized void start() {
+        if (mThread == null) {
+            mPending = false;
+            mThread = new Thread(this, THREAD_NAME);
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stop watching the main thread.
+     */
+    synchronized void stop() {
+        if (mThread != null) {
+            mThread.interrupt();
+            mStoppedThread = mThread;
+            mThread = null;
+            mMainHandler.removeCallbacks(mPong);
+        }
+    }
+
+    /**
+     * Wait for the watchdog thread to exit after {@link #stop()}.
+     * The thread may be calling the listener, so the caller must not hold a lock the listener needs.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void join() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = mStoppedThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                tick();
+                Thread.sleep(mPingInterval);
+            }
+        } catch (InterruptedException ignored) {
+
+            /* Stopped. */
+        }
+    }
+
+    /**
+     * Ping the main thread if it answered the last ping, otherwise check whether it is stalled.
+     */
+    @VisibleForTesting
+    void tick() {
+        long now = SystemClock.uptimeMillis();
+        if (!mPending) {
+            mStallHandled = false;
+            mPending = true;
+            mPingTime = now;
+            mMainHandler.post(mPong);
+            return;
+        }
+        long stallDuration = now - mPingTime;
+        if (mStallHandled || stallDuration < mStallThreshold) {
+            return;
+        }
+
+        /* Report at most once per stall and once per interval. */
+        mStallHandled = true;
+        if (now < mNextReportTime) {
+            AppCenterLog.debug(LOG_TAG, "Main thread stalled for " + stallDuration + "ms, not reported as a stall was reported recently.");
+            return;
+        }
+
+        /* Pausing the main thread on a breakpoint is not a stall. */
+        if (Debug.isDebuggerConnected() || Debug.waitingForDebugger()) {
+            AppCenterLog.debug(LOG_TAG, "Main thread stalled for " + stallDuration + "ms, ignored while debugging.");
+            return;
+        }
+        mNextReportTime = now + MIN_REPORT_INTERVAL;
+        AppCenterLog.warn(LOG_TAG, "Main thread did not respond for " + stallDuration + "ms.");
+        StackTraceElement[] stackTrace = mMainThread.getStackTrace();
+        Map<Thread, StackTraceElement[]> allStackTraces = mCaptureAllThreads ? Thread.getAllStackTraces() : null;
+
+        /* Settings may have changed while capturing. */
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        mListener.onMainThreadStall(stackTrace, allStackTraces, stallDuration);
+    }
+
+    /**
+     * Listener for main thread stalls, called from the watchdog thread.
+     */
+    interface Listener {
+
+        /**
+         * Called when the main thread did not respond within the stall threshold.
+         *
+         * @param stackTrace     main thread stack trace.
+         * @param allStackTraces all thread stack traces, null if not captured.
+         * @param stallDuration  how long the main thread has not been responding in milliseconds.
+         */
+        void onMainThreadStall(StackTraceElement[] stackTrace, Map<Thread, StackTraceElement[]> allStackTraces, long stallDuration);
+    }
+}
@@ -1,13 +1,15 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.UUID;
 
@@ -269,18 +271,58 @@ public abstract class AbstractErrorLog extends AbstractLog {
     }
 
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        setId(UUID.fromString(object.getString(ID)));
-        setProcessId(JSONUtils.readInteger(object, PROCESS_ID));
-        setProcessName(object.optString(PROCESS_NAME, null));
-        setParentProcessId(JSONUtils.readInteger(object, PARENT_PROCESS_ID));
-        setParentProcessName(object.optString(PARENT_PROCESS_NAME, null));
-        setErrorThreadId(JSONUtils.readLong(object, ERROR_THREAD_ID));
-        setErrorThreadName(object.optString(ERROR_THREAD_NAME, null));
-        setFatal(JSONUtils.readBoolean(object, FATAL));
-        setAppLaunchTimestamp(JSONDateUtils.toDate(object.getString(APP_LAUNCH_TIMESTAMP)));
-        setArchitecture(object.optString(ARCHITECTURE, null));
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case ID:
+                setId(UUID.fromString(reader.nextString()));
+                return true;
+
+            case PROCESS_ID:
+                setProcessId(JSONUtils.readInteger(reader));
+                return true;
+
+            case PROCESS_NAME:
+                setProcessName(JSONUtils.readString(reader));
+                return true;
+
+            case PARENT_PROCESS_ID:
+                setParentProcessId(JSONUtils.readInteger(reader));
+                return true;
+
+            case PARENT_PROCESS_NAME:
+                setParentProcessName(JSONUtils.readString(reader));
+                return true;
+
+            case ERROR_THREAD_ID:
+                setErrorThreadId(JSONUtils.readLong(reader));
+                return true;
+
+            case ERROR_THREAD_NAME:
+                setErrorThreadName(JSONUtils.readString(reader));
+                return true;
+
+            case FATAL:
+                setFatal(JSONUtils.readBoolean(reader));
+                return true;
+
+            case APP_LAUNCH_TIMESTAMP:
+                setAppLaunchTimestamp(JSONDateUtils.toDate(reader.nextString()));
+                return true;
+
+            case ARCHITECTURE:
+                setArchitecture(JSONUtils.readString(reader));
+                return true;
+
+            default:
+                return super.readProperty(name, reader);
+        }
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONUtils.checkRequired(ID, id);
+        JSONUtils.checkRequired(APP_LAUNCH_TIMESTAMP, appLaunchTimestamp);
     }
 
     @Override
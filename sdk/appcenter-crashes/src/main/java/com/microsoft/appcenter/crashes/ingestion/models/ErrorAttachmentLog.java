@@ -4,12 +4,14 @@ import android.support.annotation.VisibleForTesting;
 import android.util.Base64;
 
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.UUID;
@@ -19,7 +21,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Error attachment log.
  */
-public class ErrorAttachmentLog extends AbstractLog {
+public class ErrorAttachmentLog extends AbstractLog implements FileDataLog {
 
     /**
      * Plain text mime type.
@@ -39,7 +41,7 @@ public class ErrorAttachmentLog extends AbstractLog {
     static final Charset CHARSET = Charset.forName("UTF-8");
 
     @VisibleForTesting
-    static final String DATA = "data";
+    static final String DATA = FileDataLog.DATA;
 
     /**
      * Error attachment identifier.
@@ -66,6 +68,11 @@ public class ErrorAttachmentLog extends AbstractLog {
      */
     private byte[] data;
 
+    /**
+     * File holding the data, used instead of {@link #data} for large attachments.
+     */
+    private File dataFile;
+
     /**
      * Build an error attachment log with text suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
      *
@@ -93,6 +100,25 @@ public class ErrorAttachmentLog extends AbstractLog {
         return attachmentLog;
     }
 
+    /**
+     * Build an error attachment log referencing a file suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
+     * The file is not loaded in memory: only its path is persisted and its content is streamed when sending.
+     * The file must not be modified or deleted until the attachment is sent,
+     * an attachment whose file cannot be read when sending is dropped and reported as failed.
+     *
+     * @param dataFile    file to attach.
+     * @param fileName    file name to use in error attachment log.
+     * @param contentType file MIME type.
+     * @return ErrorAttachmentLog built attachment.
+     */
+    public static ErrorAttachmentLog attachmentWithFile(File dataFile, String fileName, String contentType) {
+        ErrorAttachmentLog attachmentLog = new ErrorAttachmentLog();
+        attachmentLog.setDataFile(dataFile);
+        attachmentLog.setFileName(fileName);
+        attachmentLog.setContentType(contentType);
+        return attachmentLog;
+    }
+
     @Override
     public String getType() {
         return TYPE;
@@ -190,13 +216,28 @@ public class ErrorAttachmentLog extends AbstractLog {
         this.data = data;
     }
 
+    @Override
+    public File getDataFile() {
+        return this.dataFile;
+    }
+
+    /**
+     * Set the data file value.
+     *
+     * @param dataFile the data file value to set
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void setDataFile(File dataFile) {
+        this.dataFile = dataFile;
+    }
+
     /**
      * Checks if the log's values are valid.
      *
      * @return true if validation succeeded, otherwise false.
      */
     public boolean isValid() {
-        return getId() != null && getErrorId() != null && getContentType() != null && getData() != null;
+        return getId() != null && getErrorId() != null && getContentType() != null && (getData() != null || (getDataFile() != null && getDataFile().canRead()));
     }
 
     @Override
@@ -206,6 +247,10 @@ public class ErrorAttachmentLog extends AbstractLog {
         setErrorId(UUID.fromString(object.getString(ERROR_ID)));
         setContentType(object.getString(CONTENT_TYPE));
         setFileName(object.optString(FILE_NAME, null));
+        if (object.has(DATA_FILE)) {
+            setDataFile(new File(object.getString(DATA_FILE)));
+            return;
+        }
         try {
             setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
         } catch (IllegalArgumentException e) {
@@ -220,7 +265,11 @@ public class ErrorAttachmentLog extends AbstractLog {
         JSONUtils.write(writer, ERROR_ID, getErrorId());
         JSONUtils.write(writer, CONTENT_TYPE, getContentType());
         JSONUtils.write(writer, FILE_NAME, getFileName());
-        JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+
+        /* The serializer writes either the path or the content of the data file. */
+        if (getDataFile() == null) {
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        }
     }
 
     @SuppressWarnings("SimplifiableIfStatement")
@@ -248,6 +297,9 @@ public class ErrorAttachmentLog extends AbstractLog {
         if (fileName != null ? !fileName.equals(that.fileName) : that.fileName != null) {
             return false;
         }
+        if (dataFile != null ? !dataFile.equals(that.dataFile) : that.dataFile != null) {
+            return false;
+        }
         return Arrays.equals(data, that.data);
 
     }
@@ -259,6 +311,7 @@ public class ErrorAttachmentLog extends AbstractLog {
         result = 31 * result + (errorId != null ? errorId.hashCode() : 0);
         result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
         result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
+        result = 31 * result + (dataFile != null ? dataFile.hashCode() : 0);
         result = 31 * result + Arrays.hashCode(data);
         return result;
     }
@@ -1,11 +1,17 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.crashes.ingestion.models.json.ThreadFactory;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
@@ -13,7 +19,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Handled Error log for managed platforms (such as Xamarin, Unity, Android Dalvik/ART).
  */
-public class HandledErrorLog extends LogWithProperties {
+public class HandledErrorLog extends LogWithProperties implements StreamingModel {
 
     /**
      * Log type.
@@ -25,6 +31,11 @@ public class HandledErrorLog extends LogWithProperties {
      */
     private static final String EXCEPTION = "exception";
 
+    /**
+     * Thread stack frames associated to the error.
+     */
+    private static final String THREADS = "threads";
+
     /**
      * Unique identifier for this error.
      */
@@ -35,6 +46,11 @@ public class HandledErrorLog extends LogWithProperties {
      */
     private Exception exception;
 
+    /**
+     * Thread stack frames associated to the error, optional.
+     */
+    private List<Thread> threads;
+
     @Override
     public String getType() {
         return TYPE;
@@ -77,18 +93,52 @@ public class HandledErrorLog extends LogWithProperties {
         this.exception = exception;
     }
 
+    /**
+     * Get the threads value.
+     *
+     * @return the threads value
+     */
+    public List<Thread> getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Set the threads value.
+     *
+     * @param threads the threads value to set
+     */
+    public void setThreads(List<Thread> threads) {
+        this.threads = threads;
+    }
+
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        setId(UUID.fromString(object.getString(ID)));
-        if (object.has(EXCEPTION)) {
-            JSONObject jException = object.getJSONObject(EXCEPTION);
-            Exception exception = new Exception();
-            exception.read(jException);
-            setException(exception);
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case ID:
+                setId(UUID.fromString(reader.nextString()));
+                return true;
+
+            case EXCEPTION:
+                Exception exception = new Exception();
+                JSONUtils.readObject(reader, exception);
+                setException(exception);
+                return true;
+
+            case THREADS:
+                setThreads(JSONUtils.readArray(reader, ThreadFactory.getInstance()));
+                return true;
+
+            default:
+                return super.readProperty(name, reader);
         }
     }
 
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONUtils.checkRequired(ID, id);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
@@ -98,6 +148,7 @@ public class HandledErrorLog extends LogWithProperties {
             exception.write(writer);
             writer.endObject();
         }
+        JSONUtils.writeArray(writer, THREADS, getThreads());
     }
 
     @Override
@@ -110,7 +161,8 @@ public class HandledErrorLog extends LogWithProperties {
         HandledErrorLog errorLog = (HandledErrorLog) o;
 
         if (id != null ? !id.equals(errorLog.id) : errorLog.id != null) return false;
-        return exception != null ? exception.equals(errorLog.exception) : errorLog.exception == null;
+        if (exception != null ? !exception.equals(errorLog.exception) : errorLog.exception != null) return false;
+        return threads != null ? threads.equals(errorLog.threads) : errorLog.threads == null;
     }
 
     @Override
@@ -118,6 +170,7 @@ public class HandledErrorLog extends LogWithProperties {
         int result = super.hashCode();
         result = 31 * result + (id != null ? id.hashCode() : 0);
         result = 31 * result + (exception != null ? exception.hashCode() : 0);
+        result = 31 * result + (threads != null ? threads.hashCode() : 0);
         return result;
     }
 }
@@ -1,18 +1,21 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.crashes.ingestion.models.json.ThreadFactory;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Error log for managed platforms (such as Android Dalvik).
  */
-public class ManagedErrorLog extends AbstractErrorLog {
+public class ManagedErrorLog extends AbstractErrorLog implements StreamingModel {
 
     /**
      * Log type.
@@ -75,15 +78,21 @@ public class ManagedErrorLog extends AbstractErrorLog {
     }
 
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        if (object.has(EXCEPTION)) {
-            JSONObject jException = object.getJSONObject(EXCEPTION);
-            Exception exception = new Exception();
-            exception.read(jException);
-            setException(exception);
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case EXCEPTION:
+                Exception exception = new Exception();
+                JSONUtils.readObject(reader, exception);
+                setException(exception);
+                return true;
+
+            case THREADS:
+                setThreads(JSONUtils.readArray(reader, ThreadFactory.getInstance()));
+                return true;
+
+            default:
+                return super.readProperty(name, reader);
         }
-        setThreads(JSONUtils.readArray(object, THREADS, ThreadFactory.getInstance()));
     }
 
     @Override
@@ -1,16 +1,20 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The StackFrame model.
  */
-public class StackFrame implements Model {
+public class StackFrame implements StreamingModel {
 
     private static final String CLASS_NAME = "className";
 
@@ -118,10 +122,35 @@ public class StackFrame implements Model {
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        setClassName(object.optString(CLASS_NAME, null));
-        setMethodName(object.optString(METHOD_NAME, null));
-        setLineNumber(JSONUtils.readInteger(object, LINE_NUMBER));
-        setFileName(object.optString(FILE_NAME, null));
+        JSONUtils.readObject(object, this);
+    }
+
+    @Override
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case CLASS_NAME:
+                setClassName(JSONUtils.readString(reader));
+                return true;
+
+            case METHOD_NAME:
+                setMethodName(JSONUtils.readString(reader));
+                return true;
+
+            case LINE_NUMBER:
+                setLineNumber(JSONUtils.readInteger(reader));
+                return true;
+
+            case FILE_NAME:
+                setFileName(JSONUtils.readString(reader));
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void validate() throws JSONException {
     }
 
     @Override
@@ -1,13 +1,16 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.crashes.ingestion.models.json.StackFrameFactory;
-import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.FRAMES;
@@ -17,7 +20,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
 /**
  * The Thread model.
  */
-public class Thread implements Model {
+public class Thread implements StreamingModel {
 
     /**
      * Thread identifier.
@@ -90,9 +93,31 @@ public class Thread implements Model {
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        setId(object.getLong(ID));
-        setName(object.optString(NAME, null));
-        setFrames(JSONUtils.readArray(object, FRAMES, StackFrameFactory.getInstance()));
+        JSONUtils.readObject(object, this);
+    }
+
+    @Override
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case ID:
+                setId(reader.nextLong());
+                return true;
+
+            case NAME:
+                setName(JSONUtils.readString(reader));
+                return true;
+
+            case FRAMES:
+                setFrames(JSONUtils.readArray(reader, StackFrameFactory.getInstance()));
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void validate() throws JSONException {
     }
 
     @Override
@@ -0,0 +1,26 @@
+package com.microsoft.appcenter.crashes.model;
+
+/**
+ * Exception reported when the main thread did not respond in time, its stack trace is the one of the main thread.
+ */
+public class MainThreadStallException extends RuntimeException {
+
+    /**
+     * Stall duration in milliseconds.
+     */
+    private final long mStallDuration;
+
+    public MainThreadStallException(long stallDuration) {
+        super("Main thread did not respond for " + stallDuration + "ms");
+        mStallDuration = stallDuration;
+    }
+
+    /**
+     * Get how long the main thread was not responding when the stall was reported.
+     *
+     * @return stall duration in milliseconds.
+     */
+    public long getStallDuration() {
+        return mStallDuration;
+    }
+}
@@ -0,0 +1,43 @@
+package com.microsoft.appcenter.crashes.model;
+
+/**
+ * Throwable restored in place of the original one when its class cannot be instantiated,
+ * for example when the class was renamed or removed in a newer version of the application.
+ * Message, stack trace, cause and suppressed exceptions are still restored.
+ */
+public class ReconstructedThrowable extends Throwable {
+
+    /**
+     * Class name of the original throwable.
+     */
+    private final String className;
+
+    /**
+     * Init.
+     *
+     * @param className class name of the original throwable.
+     * @param message   message of the original throwable.
+     */
+    public ReconstructedThrowable(String className, String message) {
+        super(message);
+        this.className = className;
+    }
+
+    /**
+     * Get the class name of the original throwable.
+     *
+     * @return class name of the original throwable.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Describe this throwable as the original one would.
+     */
+    @Override
+    public String toString() {
+        String message = getLocalizedMessage();
+        return message != null ? className + ": " + message : className;
+    }
+}
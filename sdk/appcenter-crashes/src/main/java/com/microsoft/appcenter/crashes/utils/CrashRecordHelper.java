@@ -0,0 +1,535 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.content.Context;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.crashes.ingestion.models.Thread;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.DeviceInfoHelper;
+import com.microsoft.appcenter.utils.UUIDUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes crash records from the uncaught exception handler and converts them to error logs after restart.
+ * <p>
+ * A crash record is a compact binary file holding raw frames and thread list.
+ * Everything that does not depend on the crash itself is encoded ahead of time in a {@link CrashContext}.
+ * Distinct frames and stack traces are written once in a dictionary and referenced by index,
+ * as most threads of an application share their stacks.
+ */
+public class CrashRecordHelper {
+
+    /**
+     * Crash record format version.
+     */
+    @VisibleForTesting
+    static final int VERSION = 2;
+
+    /**
+     * Previous format version, frames are written inline for every stack trace.
+     */
+    @VisibleForTesting
+    static final int VERSION_INLINE_FRAMES = 1;
+
+    /**
+     * Length written in place of a null string.
+     */
+    private static final int NULL_STRING_LENGTH = -1;
+
+    /**
+     * Maximum size of a crash record file, larger files are considered corrupted.
+     */
+    @VisibleForTesting
+    static final int MAX_RECORD_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Maximum number of items of any list in a crash record.
+     */
+    @VisibleForTesting
+    static final int MAX_COUNT = 64 * 1024;
+
+    /**
+     * Minimum encoded size of a frame: 3 string lengths and a line number.
+     */
+    private static final int FRAME_MIN_SIZE = 16;
+
+    /**
+     * Minimum encoded size of a dictionary index or a count.
+     */
+    private static final int INT_SIZE = 4;
+
+    /**
+     * Minimum encoded size of an exception: 2 string lengths and a stack.
+     */
+    private static final int EXCEPTION_MIN_SIZE = 12;
+
+    /**
+     * Minimum encoded size of a thread: identifier, name length and a stack.
+     */
+    private static final int THREAD_MIN_SIZE = 16;
+
+    /**
+     * Charset used to encode strings.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
+    /**
+     * Prepare everything a crash record needs before any crash happens.
+     *
+     * @param context             application context.
+     * @param initializeTimestamp application launch time.
+     * @return crash context.
+     */
+    @NonNull
+    public static CrashContext createCrashContext(@NonNull Context context, long initializeTimestamp) {
+        Device device = null;
+        try {
+            device = DeviceInfoHelper.getDeviceInfo(context);
+        } catch (DeviceInfoHelper.DeviceInfoException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Could not snapshot device properties for crash records, will attach at sending time", e);
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        try {
+            output.writeLong(initializeTimestamp);
+            output.writeInt(Process.myPid());
+            writeString(output, ErrorLogHelper.getProcessName(context));
+            writeString(output, ErrorLogHelper.getArchitecture());
+            writeDevice(output, device);
+            output.flush();
+        } catch (IOException e) {
+
+            /* Writing to memory does not fail. */
+            throw new IllegalStateException(e);
+        }
+        return new CrashContext(ErrorLogHelper.getErrorStorageDirectory(), UUIDUtils.randomUUID(), buffer.toByteArray());
+    }
+
+    /**
+     * Write a crash record. This runs in the uncaught exception handler so it only copies raw data.
+     *
+     * @param crashContext   crash context prepared before the crash.
+     * @param thread         thread where crash occurred.
+     * @param throwable      uncaught exception or error.
+     * @param allStackTraces stack traces of all threads.
+     * @return error log identifier.
+     * @throws IOException if an error occurred while writing the file.
+     */
+    @NonNull
+    public static UUID writeCrashRecord(@NonNull CrashContext crashContext, @NonNull java.lang.Thread thread, @NonNull Throwable throwable, @NonNull Map<java.lang.Thread, StackTraceElement[]> allStackTraces) throws IOException {
+        UUID id = crashContext.mId;
+        File file = new File(crashContext.mDirectory, id.toString() + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(VERSION);
+            output.writeLong(id.getMostSignificantBits());
+            output.writeLong(id.getLeastSignificantBits());
+            output.writeLong(System.currentTimeMillis());
+            output.write(crashContext.mEncodedContext);
+
+            /* Thread in error. */
+            output.writeLong(thread.getId());
+            writeString(output, thread.getName());
+
+            /* Frame dictionary. */
+            FrameDictionary dictionary = new FrameDictionary();
+            List<Throwable> causes = new ArrayList<>();
+            for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+                causes.add(cause);
+            }
+            int[] causeStacks = new int[causes.size()];
+            for (int i = 0; i < causeStacks.length; i++) {
+                causeStacks[i] = dictionary.addStack(ErrorLogHelper.getTruncatedStackTrace(causes.get(i)));
+            }
+            List<Map.Entry<java.lang.Thread, StackTraceElement[]>> threads = new ArrayList<>(allStackTraces.entrySet());
+            int[] threadStacks = new int[threads.size()];
+            for (int i = 0; i < threadStacks.length; i++) {
+                threadStacks[i] = dictionary.addStack(threads.get(i).getValue());
+            }
+            dictionary.write(output);
+
+            /* Exception and its causes. */
+            output.writeInt(causeStacks.length);
+            for (int i = 0; i < causeStacks.length; i++) {
+                Throwable cause = causes.get(i);
+                writeString(output, cause.getClass().getName());
+                writeString(output, cause.getMessage());
+                output.writeInt(causeStacks[i]);
+            }
+
+            /* Thread states. */
+            output.writeInt(threadStacks.length);
+            for (int i = 0; i < threadStacks.length; i++) {
+                java.lang.Thread javaThread = threads.get(i).getKey();
+                output.writeLong(javaThread.getId());
+                writeString(output, javaThread.getName());
+                output.writeInt(threadStacks[i]);
+            }
+        } finally {
+            output.close();
+        }
+        return id;
+    }
+
+    /**
+     * Convert a crash record to an error log. Identical frames and stack traces share the same model instances.
+     * Counts and lengths are checked against the bytes left in the record, so that a corrupted record fails
+     * with an {@link IOException} instead of allocating huge arrays.
+     *
+     * @param file crash record file.
+     * @return error log. Device is null if it could not be captured before the crash.
+     * @throws IOException if the file cannot be read, is truncated or corrupted.
+     */
+    @NonNull
+    public static ManagedErrorLog readCrashRecord(@NonNull File file) throws IOException {
+        long length = file.length();
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("Crash record is too large: " + length);
+        }
+
+        /* Read the whole record so that the number of bytes left is known exactly. */
+        byte[] record = new byte[(int) length];
+        DataInputStream fileInput = new DataInputStream(new FileInputStream(file));
+        try {
+            fileInput.readFully(record);
+        } finally {
+            fileInput.close();
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        try {
+            return readCrashRecord(input);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted crash record", e);
+        }
+    }
+
+    @NonNull
+    private static ManagedErrorLog readCrashRecord(@NonNull DataInputStream input) throws IOException {
+        int version = input.readInt();
+        if (version != VERSION && version != VERSION_INLINE_FRAMES) {
+            throw new IOException("Unsupported crash record version: " + version);
+        }
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(new UUID(input.readLong(), input.readLong()));
+        errorLog.setTimestamp(new Date(input.readLong()));
+        errorLog.setAppLaunchTimestamp(new Date(input.readLong()));
+        errorLog.setProcessId(input.readInt());
+        errorLog.setProcessName(readString(input));
+        errorLog.setArchitecture(readString(input));
+        errorLog.setDevice(readDevice(input));
+        errorLog.setErrorThreadId(input.readLong());
+        errorLog.setErrorThreadName(readString(input));
+        errorLog.setFatal(true);
+        List<List<StackFrame>> stacks = version == VERSION ? readFrameDictionary(input) : null;
+
+        /* Exception and its causes. */
+        Exception parentException = null;
+        int causeCount = readCount(input, EXCEPTION_MIN_SIZE);
+        for (int i = 0; i < causeCount; i++) {
+            Exception exception = new Exception();
+            exception.setType(readString(input));
+            exception.setMessage(readString(input));
+            exception.setFrames(readStack(input, stacks));
+            if (parentException == null) {
+                errorLog.setException(exception);
+            } else {
+                parentException.setInnerExceptions(Collections.singletonList(exception));
+            }
+            parentException = exception;
+        }
+
+        /* Thread states. */
+        int threadCount = readCount(input, THREAD_MIN_SIZE);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            Thread javaThread = new Thread();
+            javaThread.setId(input.readLong());
+            javaThread.setName(readString(input));
+            javaThread.setFrames(readStack(input, stacks));
+            threads.add(javaThread);
+        }
+        errorLog.setThreads(threads);
+        return errorLog;
+    }
+
+    static void writeFrames(DataOutputStream output, StackTraceElement[] stackTrace) throws IOException {
+        output.writeInt(stackTrace.length);
+        for (StackTraceElement element : stackTrace) {
+            writeFrame(output, element);
+        }
+    }
+
+    private static void writeFrame(DataOutputStream output, StackTraceElement element) throws IOException {
+        writeString(output, element.getClassName());
+        writeString(output, element.getMethodName());
+        writeString(output, element.getFileName());
+        output.writeInt(element.getLineNumber());
+    }
+
+    private static StackFrame readFrame(DataInputStream input) throws IOException {
+        StackFrame frame = new StackFrame();
+        frame.setClassName(readString(input));
+        frame.setMethodName(readString(input));
+        frame.setFileName(readString(input));
+        frame.setLineNumber(input.readInt());
+        return frame;
+    }
+
+    private static List<List<StackFrame>> readFrameDictionary(DataInputStream input) throws IOException {
+        StackFrame[] frames = new StackFrame[readCount(input, FRAME_MIN_SIZE)];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = readFrame(input);
+        }
+        int stackCount = readCount(input, INT_SIZE);
+        List<List<StackFrame>> stacks = new ArrayList<>(stackCount);
+        for (int i = 0; i < stackCount; i++) {
+            int frameCount = readCount(input, INT_SIZE);
+            List<StackFrame> stack = new ArrayList<>(frameCount);
+            for (int j = 0; j < frameCount; j++) {
+                stack.add(frames[readIndex(input, frames.length)]);
+            }
+            stacks.add(stack);
+        }
+        return stacks;
+    }
+
+    /**
+     * Read a stack trace, either inline or as a reference to the frame dictionary if any.
+     */
+    private static List<StackFrame> readStack(DataInputStream input, List<List<StackFrame>> stacks) throws IOException {
+        if (stacks != null) {
+            return stacks.get(readIndex(input, stacks.size()));
+        }
+        int frameCount = readCount(input, FRAME_MIN_SIZE);
+        List<StackFrame> frames = new ArrayList<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            frames.add(readFrame(input));
+        }
+        return frames;
+    }
+
+    /**
+     * Read a list size, checking that the items can fit in the rest of the record.
+     */
+    private static int readCount(DataInputStream input, int itemMinSize) throws IOException {
+        int count = input.readInt();
+        if (count < 0 || count > MAX_COUNT || count > input.available() / itemMinSize) {
+            throw new IOException("Invalid count: " + count);
+        }
+        return count;
+    }
+
+    private static int readIndex(DataInputStream input, int size) throws IOException {
+        int index = input.readInt();
+        if (index < 0 || index >= size) {
+            throw new IOException("Invalid dictionary index: " + index);
+        }
+        return index;
+    }
+
+    private static void writeDevice(DataOutputStream output, Device device) throws IOException {
+        output.writeBoolean(device != null);
+        if (device != null) {
+            writeString(output, device.getSdkName());
+            writeString(output, device.getSdkVersion());
+            writeString(output, device.getModel());
+            writeString(output, device.getOemName());
+            writeString(output, device.getOsName());
+            writeString(output, device.getOsVersion());
+            writeString(output, device.getOsBuild());
+            writeInteger(output, device.getOsApiLevel());
+            writeString(output, device.getLocale());
+            writeInteger(output, device.getTimeZoneOffset());
+            writeString(output, device.getScreenSize());
+            writeString(output, device.getAppVersion());
+            writeString(output, device.getCarrierName());
+            writeString(output, device.getCarrierCountry());
+            writeString(output, device.getAppBuild());
+            writeString(output, device.getAppNamespace());
+            writeString(output, device.getWrapperSdkVersion());
+            writeString(output, device.getWrapperSdkName());
+            writeString(output, device.getWrapperRuntimeVersion());
+            writeString(output, device.getLiveUpdateReleaseLabel());
+            writeString(output, device.getLiveUpdateDeploymentKey());
+            writeString(output, device.getLiveUpdatePackageHash());
+        }
+    }
+
+    @Nullable
+    private static Device readDevice(DataInputStream input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+        Device device = new Device();
+        device.setSdkName(readString(input));
+        device.setSdkVersion(readString(input));
+        device.setModel(readString(input));
+        device.setOemName(readString(input));
+        device.setOsName(readString(input));
+        device.setOsVersion(readString(input));
+        device.setOsBuild(readString(input));
+        device.setOsApiLevel(readInteger(input));
+        device.setLocale(readString(input));
+        device.setTimeZoneOffset(readInteger(input));
+        device.setScreenSize(readString(input));
+        device.setAppVersion(readString(input));
+        device.setCarrierName(readString(input));
+        device.setCarrierCountry(readString(input));
+        device.setAppBuild(readString(input));
+        device.setAppNamespace(readString(input));
+        device.setWrapperSdkVersion(readString(input));
+        device.setWrapperSdkName(readString(input));
+        device.setWrapperRuntimeVersion(readString(input));
+        device.setLiveUpdateReleaseLabel(readString(input));
+        device.setLiveUpdateDeploymentKey(readString(input));
+        device.setLiveUpdatePackageHash(readString(input));
+        return device;
+    }
+
+    private static void writeInteger(DataOutputStream output, Integer value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readInt() : null;
+    }
+
+    /**
+     * Strings are written as a byte length followed by UTF-8 bytes as {@link DataOutputStream#writeUTF(String)} is limited to 64KB.
+     */
+    static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL_STRING_LENGTH);
+        } else {
+            byte[] bytes = value.getBytes(CHARSET_NAME);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == NULL_STRING_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > input.available()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, CHARSET_NAME);
+    }
+
+    /**
+     * Assigns an index to each distinct frame and each distinct stack trace of a crash record.
+     */
+    @VisibleForTesting
+    static class FrameDictionary {
+
+        /**
+         * Distinct frames in insertion order, mapped to their index.
+         */
+        private final Map<StackTraceElement, Integer> mFrameIndexes = new LinkedHashMap<>();
+
+        /**
+         * Distinct stack traces in insertion order, mapped to their index.
+         */
+        private final Map<List<StackTraceElement>, Integer> mStackIndexes = new LinkedHashMap<>();
+
+        /**
+         * Add a stack trace to the dictionary.
+         *
+         * @param stackTrace stack trace.
+         * @return index of the stack trace.
+         */
+        int addStack(@NonNull StackTraceElement[] stackTrace) {
+            List<StackTraceElement> stack = Arrays.asList(stackTrace);
+            Integer index = mStackIndexes.get(stack);
+            if (index == null) {
+                index = mStackIndexes.size();
+                mStackIndexes.put(stack, index);
+                for (StackTraceElement frame : stackTrace) {
+                    if (!mFrameIndexes.containsKey(frame)) {
+                        mFrameIndexes.put(frame, mFrameIndexes.size());
+                    }
+                }
+            }
+            return index;
+        }
+
+        /**
+         * Write distinct frames followed by distinct stack traces as lists of frame indexes.
+         *
+         * @param output stream to write to.
+         * @throws IOException if an error occurred while writing.
+         */
+        void write(@NonNull DataOutputStream output) throws IOException {
+            output.writeInt(mFrameIndexes.size());
+            for (StackTraceElement frame : mFrameIndexes.keySet()) {
+                writeFrame(output, frame);
+            }
+            output.writeInt(mStackIndexes.size());
+            for (List<StackTraceElement> stack : mStackIndexes.keySet()) {
+                output.writeInt(stack.size());
+                for (StackTraceElement frame : stack) {
+                    output.writeInt(mFrameIndexes.get(frame));
+                }
+            }
+        }
+    }
+
+    /**
+     * State captured ahead of a crash.
+     */
+    public static class CrashContext {
+
+        /**
+         * Directory where to write the crash record.
+         */
+        private final File mDirectory;
+
+        /**
+         * Error log identifier, generated in advance as only one crash is saved per process.
+         */
+        private final UUID mId;
+
+        /**
+         * Launch time, process and device properties already encoded.
+         */
+        private final byte[] mEncodedContext;
+
+        private CrashContext(File directory, UUID id, byte[] encodedContext) {
+            mDirectory = directory;
+            mId = id;
+            mEncodedContext = encodedContext;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
+
+/**
+ * Persisted table of recently reported crash signatures, used to count duplicate crashes instead of sending them.
+ * Not thread safe, used from the Crashes background thread only.
+ */
+public class CrashSignatureTable {
+
+    /**
+     * Preference key for the table.
+     */
+    @VisibleForTesting
+    static final String PREF_KEY_CRASH_SIGNATURES = "com.microsoft.appcenter.crashes.signatures";
+
+    /**
+     * Maximum number of signatures kept, the oldest report is evicted first.
+     */
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 32;
+
+    /**
+     * Time in milliseconds after a reported crash during which identical crashes are counted instead of reported.
+     */
+    public static final long DUPLICATE_WINDOW = 60 * 60 * 1000;
+
+    /**
+     * Separator between entries.
+     */
+    private static final char ENTRY_SEPARATOR = '\n';
+
+    /**
+     * Separator between fields.
+     */
+    private static final String FIELD_SEPARATOR = " ";
+
+    /**
+     * Entries by signature, in report order.
+     */
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+
+    /**
+     * Load the table from preferences.
+     *
+     * @return loaded table, empty if nothing was persisted or data is corrupted.
+     */
+    @NonNull
+    public static CrashSignatureTable load() {
+        CrashSignatureTable table = new CrashSignatureTable();
+        String value = StorageHelper.PreferencesStorage.getString(PREF_KEY_CRASH_SIGNATURES);
+        if (value != null) {
+            try {
+                for (String line : value.split(String.valueOf(ENTRY_SEPARATOR))) {
+                    String[] fields = line.split(FIELD_SEPARATOR, 5);
+                    Entry entry = new Entry(UUID.fromString(fields[1]), Long.parseLong(fields[2]), fields[4]);
+                    entry.count = Integer.parseInt(fields[3]);
+                    table.mEntries.put(fields[0], entry);
+                }
+            } catch (RuntimeException e) {
+                AppCenterLog.warn(LOG_TAG, "Ignoring invalid crash signatures.", e);
+                table.mEntries.clear();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Delete the persisted table.
+     */
+    public static void clear() {
+        StorageHelper.PreferencesStorage.remove(PREF_KEY_CRASH_SIGNATURES);
+    }
+
+    /**
+     * Persist the table in preferences.
+     */
+    public void save() {
+        if (mEntries.isEmpty()) {
+            clear();
+            return;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Entry> mapEntry : mEntries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (builder.length() > 0) {
+                builder.append(ENTRY_SEPARATOR);
+            }
+            builder.append(mapEntry.getKey()).append(FIELD_SEPARATOR)
+                    .append(entry.errorId).append(FIELD_SEPARATOR)
+                    .append(entry.timestamp).append(FIELD_SEPARATOR)
+                    .append(entry.count).append(FIELD_SEPARATOR)
+                    .append(entry.type.replace(ENTRY_SEPARATOR, ' '));
+        }
+        StorageHelper.PreferencesStorage.putString(PREF_KEY_CRASH_SIGNATURES, builder.toString());
+    }
+
+    /**
+     * Count a crash if an identical one was reported within {@link #DUPLICATE_WINDOW}.
+     *
+     * @param signature crash signature.
+     * @param timestamp crash time.
+     * @return true if the crash is a duplicate and was counted, false if it must be reported.
+     */
+    public boolean countDuplicate(@NonNull String signature, long timestamp) {
+        Entry entry = mEntries.get(signature);
+        if (entry != null && Math.abs(timestamp - entry.timestamp) < DUPLICATE_WINDOW) {
+            entry.count++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remember a crash to report.
+     *
+     * @param signature crash signature.
+     * @param errorId   identifier of the reported error log.
+     * @param timestamp crash time.
+     * @param type      exception type of the crash, if any.
+     * @return entry with duplicates to report that was replaced or evicted, or null.
+     */
+    @Nullable
+    public Entry add(@NonNull String signature, @NonNull UUID errorId, long timestamp, @Nullable String type) {
+
+        /* Replacing an entry leaves room for the new one, otherwise evict the oldest if full. */
+        Entry removed = mEntries.remove(signature);
+        if (mEntries.size() >= MAX_ENTRIES) {
+            Iterator<Entry> iterator = mEntries.values().iterator();
+            removed = iterator.next();
+            iterator.remove();
+        }
+        mEntries.put(signature, new Entry(errorId, timestamp, type != null ? type : ""));
+        return removed != null && removed.count > 0 ? removed : null;
+    }
+
+    /**
+     * Check if a crash was already remembered, for crashes still pending after a restart.
+     *
+     * @param errorId identifier of the error log.
+     * @return true if an entry is about this crash.
+     */
+    public boolean contains(@NonNull UUID errorId) {
+        for (Entry entry : mEntries.values()) {
+            if (entry.errorId.equals(errorId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget a crash that was finally not reported, dropping the duplicates counted for it.
+     *
+     * @param errorId identifier of the error log.
+     * @return true if an entry was removed.
+     */
+    public boolean remove(@NonNull UUID errorId) {
+        for (Iterator<Entry> iterator = mEntries.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().errorId.equals(errorId)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove entries whose window ended before the given time.
+     *
+     * @param now current time.
+     * @return removed entries with duplicates to report.
+     */
+    @NonNull
+    public List<Entry> removeExpired(long now) {
+        List<Entry> expired = new ArrayList<>();
+        for (Iterator<Entry> iterator = mEntries.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (now - entry.timestamp >= DUPLICATE_WINDOW) {
+                iterator.remove();
+                if (entry.count > 0) {
+                    expired.add(entry);
+                }
+            }
+        }
+        return expired;
+    }
+
+    @VisibleForTesting
+    int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Reported crash and count of identical crashes since.
+     */
+    public static class Entry {
+
+        /**
+         * Identifier of the reported error log.
+         */
+        private final UUID errorId;
+
+        /**
+         * Time of the reported crash.
+         */
+        private final long timestamp;
+
+        /**
+         * Exception type of the reported crash.
+         */
+        private final String type;
+
+        /**
+         * Number of identical crashes not reported.
+         */
+        private int count;
+
+        Entry(UUID errorId, long timestamp, String type) {
+            this.errorId = errorId;
+            this.timestamp = timestamp;
+            this.type = type;
+        }
+
+        public UUID getErrorId() {
+            return errorId;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
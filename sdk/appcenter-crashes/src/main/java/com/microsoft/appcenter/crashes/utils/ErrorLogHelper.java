@@ -18,12 +18,14 @@ import com.microsoft.appcenter.crashes.ingestion.models.Thread;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
+import com.microsoft.appcenter.utils.HashUtils;
 import com.microsoft.appcenter.utils.UUIDUtils;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -46,6 +48,11 @@ public class ErrorLogHelper {
      */
     public static final String THROWABLE_FILE_EXTENSION = ".throwable";
 
+    /**
+     * Crash record file extension, converted to error log file after restart.
+     */
+    public static final String CRASH_RECORD_FILE_EXTENSION = ".record";
+
     /**
      * Directory under the FILES_PATH containing minidump files.
      */
@@ -105,11 +112,17 @@ public class ErrorLogHelper {
 
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Throwable throwable, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp) {
-        return createErrorLog(context, thread, getModelExceptionFromThrowable(throwable), allStackTraces, initializeTimestamp, true);
+        ModelFrameCache frameCache = new ModelFrameCache();
+        return createErrorLog(context, thread, getModelExceptionFromThrowable(throwable, frameCache), allStackTraces, initializeTimestamp, true, frameCache);
     }
 
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Exception exception, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp, boolean fatal) {
+        return createErrorLog(context, thread, exception, allStackTraces, initializeTimestamp, fatal, new ModelFrameCache());
+    }
+
+    @NonNull
+    private static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Exception exception, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp, boolean fatal, ModelFrameCache frameCache) {
 
         /* Build error log with a unique identifier. */
         ManagedErrorLog errorLog = new ManagedErrorLog();
@@ -127,14 +140,7 @@ public class ErrorLogHelper {
 
         /* Process information. Parent one is not available on Android. */
         errorLog.setProcessId(Process.myPid());
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        if (activityManager != null) {
-            for (ActivityManager.RunningAppProcessInfo info : activityManager.getRunningAppProcesses()) {
-                if (info.pid == Process.myPid()) {
-                    errorLog.setProcessName(info.processName);
-                }
-            }
-        }
+        errorLog.setProcessName(getProcessName(context));
 
         /* CPU architecture. */
         errorLog.setArchitecture(getArchitecture());
@@ -153,21 +159,27 @@ public class ErrorLogHelper {
         errorLog.setException(exception);
 
         /* Attach thread states. */
-        List<Thread> threads = new ArrayList<>(allStackTraces.size());
-        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
-            Thread javaThread = new Thread();
-            javaThread.setId(entry.getKey().getId());
-            javaThread.setName(entry.getKey().getName());
-            javaThread.setFrames(getModelFramesFromStackTrace(entry.getValue()));
-            threads.add(javaThread);
-        }
-        errorLog.setThreads(threads);
+        errorLog.setThreads(getModelThreads(allStackTraces, frameCache));
         return errorLog;
     }
 
+    @Nullable
+    static String getProcessName(@NonNull Context context) {
+        String processName = null;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            for (ActivityManager.RunningAppProcessInfo info : activityManager.getRunningAppProcesses()) {
+                if (info.pid == Process.myPid()) {
+                    processName = info.processName;
+                }
+            }
+        }
+        return processName;
+    }
+
     @SuppressWarnings("deprecation")
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private static String getArchitecture() {
+    static String getArchitecture() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             return Build.SUPPORTED_ABIS[0];
         } else {
@@ -217,6 +229,17 @@ public class ErrorLogHelper {
         return files != null ? files : new File[0];
     }
 
+    @NonNull
+    public static File[] getStoredCrashRecordFiles() {
+        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(CRASH_RECORD_FILE_EXTENSION);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
     @NonNull
     public static File[] getNewMinidumpFiles() {
         File[] files = getNewMinidumpDirectory().listFiles();
@@ -290,13 +313,18 @@ public class ErrorLogHelper {
 
     @NonNull
     public static Exception getModelExceptionFromThrowable(@NonNull Throwable t) {
+        return getModelExceptionFromThrowable(t, new ModelFrameCache());
+    }
+
+    @NonNull
+    private static Exception getModelExceptionFromThrowable(@NonNull Throwable t, ModelFrameCache frameCache) {
         Exception topException = null;
         Exception parentException = null;
         for (Throwable cause = t; cause != null; cause = cause.getCause()) {
             Exception exception = new Exception();
             exception.setType(cause.getClass().getName());
             exception.setMessage(cause.getMessage());
-            exception.setFrames(getModelFramesFromStackTrace(cause));
+            exception.setFrames(frameCache.getFrames(getTruncatedStackTrace(cause)));
             if (topException == null) {
                 topException = exception;
             } else {
@@ -308,7 +336,96 @@ public class ErrorLogHelper {
     }
 
     @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull Throwable throwable) {
+    public static List<Thread> getModelThreads(@NonNull Map<java.lang.Thread, StackTraceElement[]> allStackTraces) {
+        return getModelThreads(allStackTraces, new ModelFrameCache());
+    }
+
+    @NonNull
+    private static List<Thread> getModelThreads(@NonNull Map<java.lang.Thread, StackTraceElement[]> allStackTraces, ModelFrameCache frameCache) {
+        List<Thread> threads = new ArrayList<>(allStackTraces.size());
+        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
+            Thread javaThread = new Thread();
+            javaThread.setId(entry.getKey().getId());
+            javaThread.setName(entry.getKey().getName());
+            javaThread.setFrames(frameCache.getFrames(entry.getValue()));
+            threads.add(javaThread);
+        }
+        return threads;
+    }
+
+    /**
+     * Count stack frames of an error log, including inner exceptions and threads.
+     *
+     * @param errorLog error log.
+     * @return number of frames.
+     */
+    public static int getFrameCount(@NonNull ManagedErrorLog errorLog) {
+        int count = 0;
+        if (errorLog.getException() != null) {
+            count += getFrameCount(errorLog.getException());
+        }
+        if (errorLog.getThreads() != null) {
+            for (Thread thread : errorLog.getThreads()) {
+                if (thread.getFrames() != null) {
+                    count += thread.getFrames().size();
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int getFrameCount(@NonNull Exception exception) {
+        int count = exception.getFrames() != null ? exception.getFrames().size() : 0;
+        if (exception.getInnerExceptions() != null) {
+            for (Exception innerException : exception.getInnerExceptions()) {
+                count += getFrameCount(innerException);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compute a stable signature of an exception to group identical crashes.
+     * Exception types and stack frames of the exception and its inner exceptions are hashed,
+     * messages are ignored as they often contain instance specific values.
+     * Not suitable for native crashes whose stack trace is the path of their minidump.
+     *
+     * @param exception exception model.
+     * @return signature as an hexadecimal string.
+     */
+    @NonNull
+    public static String getStackSignature(@NonNull Exception exception) {
+        StringBuilder builder = new StringBuilder();
+        appendStackSignature(builder, exception);
+        return HashUtils.sha256(builder.toString());
+    }
+
+    private static void appendStackSignature(StringBuilder builder, Exception exception) {
+        builder.append(exception.getType()).append('\n');
+        if (exception.getFrames() != null) {
+            for (StackFrame frame : exception.getFrames()) {
+                builder.append(frame.getClassName()).append('.').append(frame.getMethodName())
+                        .append('(').append(frame.getFileName()).append(':').append(frame.getLineNumber()).append(")\n");
+            }
+        } else if (exception.getStackTrace() != null) {
+            builder.append(exception.getStackTrace()).append('\n');
+        }
+        if (exception.getInnerExceptions() != null) {
+            for (Exception innerException : exception.getInnerExceptions()) {
+                builder.append("Caused by: ");
+                appendStackSignature(builder, innerException);
+            }
+        }
+    }
+
+    /**
+     * Get stack trace of a throwable, truncating it in place if it exceeds {@link #FRAME_LIMIT}.
+     *
+     * @param throwable throwable.
+     * @return stack trace, truncated if needed.
+     */
+    @NonNull
+    static StackTraceElement[] getTruncatedStackTrace(@NonNull Throwable throwable) {
         StackTraceElement[] stackTrace = throwable.getStackTrace();
         if (stackTrace.length > FRAME_LIMIT) {
             StackTraceElement[] stackTraceTruncated = new StackTraceElement[FRAME_LIMIT];
@@ -318,16 +435,7 @@ public class ErrorLogHelper {
             AppCenterLog.warn(Crashes.LOG_TAG, "Crash frames truncated from " + stackTrace.length + " to " + stackTraceTruncated.length + " frames.");
             stackTrace = stackTraceTruncated;
         }
-        return getModelFramesFromStackTrace(stackTrace);
-    }
-
-    @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace) {
-        List<StackFrame> stackFrames = new ArrayList<>();
-        for (StackTraceElement stackTraceElement : stackTrace) {
-            stackFrames.add(getModelStackFrame(stackTraceElement));
-        }
-        return stackFrames;
+        return stackTrace;
     }
 
     @NonNull
@@ -385,4 +493,40 @@ public class ErrorLogHelper {
         }
         return result;
     }
+
+    /**
+     * Shares model frames between identical stack trace elements and identical stack traces of an error log,
+     * most threads of an application having the same stack.
+     */
+    private static class ModelFrameCache {
+
+        /**
+         * Model frame for each distinct stack trace element.
+         */
+        private final Map<StackTraceElement, StackFrame> mFrames = new HashMap<>();
+
+        /**
+         * Model frames for each distinct stack trace.
+         */
+        private final Map<List<StackTraceElement>, List<StackFrame>> mStacks = new HashMap<>();
+
+        @NonNull
+        List<StackFrame> getFrames(@NonNull StackTraceElement[] stackTrace) {
+            List<StackTraceElement> stack = Arrays.asList(stackTrace);
+            List<StackFrame> stackFrames = mStacks.get(stack);
+            if (stackFrames == null) {
+                stackFrames = new ArrayList<>(stackTrace.length);
+                for (StackTraceElement stackTraceElement : stackTrace) {
+                    StackFrame stackFrame = mFrames.get(stackTraceElement);
+                    if (stackFrame == null) {
+                        stackFrame = getModelStackFrame(stackTraceElement);
+                        mFrames.put(stackTraceElement, stackFrame);
+                    }
+                    stackFrames.add(stackFrame);
+                }
+                mStacks.put(stack, stackFrames);
+            }
+            return stackFrames;
+        }
+    }
 }
@@ -0,0 +1,258 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Limits the number of handled errors reported per signature, counting the ones suppressed.
+ * Signatures are cheap to compute so that suppressed errors cost as little as possible to the caller.
+ * Not thread safe, used under the Crashes lock.
+ */
+public class HandledErrorRateLimiter {
+
+    /**
+     * Default maximum number of reports per signature and interval.
+     */
+    public static final int DEFAULT_MAX_REPORTS = 10;
+
+    /**
+     * Default interval in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL = 60 * 1000;
+
+    /**
+     * Maximum number of signatures tracked, the oldest window is ended first.
+     */
+    @VisibleForTesting
+    static final int MAX_SIGNATURES = 64;
+
+    /**
+     * Separator between the signatures of an exception and its causes.
+     */
+    private static final char CAUSE_SEPARATOR = '/';
+
+    /**
+     * Current windows by signature, in start order.
+     */
+    private final Map<String, Window> mWindows = new LinkedHashMap<>();
+
+    /**
+     * Windows ended early to make room, with suppressed errors to report.
+     */
+    private final List<Window> mEvictedWindows = new ArrayList<>();
+
+    /**
+     * Random generator for sampling.
+     */
+    private final Random mRandom;
+
+    /**
+     * Maximum number of reports per signature and interval.
+     */
+    private int mMaxReports = DEFAULT_MAX_REPORTS;
+
+    /**
+     * Interval in milliseconds.
+     */
+    private long mInterval = DEFAULT_INTERVAL;
+
+    /**
+     * Fraction of errors kept before applying the limit.
+     */
+    private float mSamplingRate = 1f;
+
+    public HandledErrorRateLimiter(@NonNull Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Get the signature of an exception, including the types and stack traces of its causes.
+     *
+     * @param throwable exception.
+     * @return signature.
+     */
+    @NonNull
+    public static String getSignature(@NonNull Throwable throwable) {
+        StringBuilder signature = new StringBuilder();
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause != throwable) {
+                signature.append(CAUSE_SEPARATOR);
+            }
+            signature.append(cause.getClass().getName()).append('@').append(Arrays.hashCode(cause.getStackTrace()));
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Get the signature of an exception model, including the types and frames of its inner exceptions.
+     *
+     * @param exception exception model.
+     * @return signature.
+     */
+    @NonNull
+    public static String getSignature(@NonNull Exception exception) {
+        StringBuilder signature = new StringBuilder();
+        appendSignature(signature, exception);
+        return signature.toString();
+    }
+
+    private static void appendSignature(StringBuilder signature, Exception exception) {
+        signature.append(exception.getType()).append('@').append(exception.getFrames() != null ? exception.getFrames().hashCode() : 0);
+        if (exception.getInnerExceptions() != null) {
+            for (Exception innerException : exception.getInnerExceptions()) {
+                signature.append(CAUSE_SEPARATOR);
+                appendSignature(signature, innerException);
+            }
+        }
+    }
+
+    /**
+     * Set the rate limit, current windows keep their start time.
+     *
+     * @param maxReports maximum number of reports per signature and interval.
+     * @param interval   interval in milliseconds.
+     */
+    public void setRateLimit(int maxReports, long interval) {
+        mMaxReports = maxReports;
+        mInterval = interval;
+    }
+
+    /**
+     * Set the fraction of errors kept before applying the limit.
+     *
+     * @param samplingRate sampling rate between 0 exclusive and 1 inclusive.
+     */
+    public void setSamplingRate(float samplingRate) {
+        mSamplingRate = samplingRate;
+    }
+
+    /**
+     * Check if an error can be reported, counting it as suppressed otherwise.
+     *
+     * @param signature error signature.
+     * @param type      error type, used to report suppressed errors.
+     * @param now       current time in milliseconds.
+     * @return true to report the error, false if suppressed.
+     */
+    public boolean tryAcquire(@NonNull String signature, String type, long now) {
+        Window window = mWindows.get(signature);
+        if (window != null && now - window.start >= mInterval) {
+            mWindows.remove(signature);
+            endWindow(window);
+            window = null;
+        }
+        if (window == null) {
+            if (mWindows.size() >= MAX_SIGNATURES) {
+                Iterator<Window> iterator = mWindows.values().iterator();
+                endWindow(iterator.next());
+                iterator.remove();
+            }
+            window = new Window(type, now);
+            mWindows.put(signature, window);
+        }
+        if ((mSamplingRate < 1f && mRandom.nextFloat() >= mSamplingRate) || window.reportedCount >= mMaxReports) {
+            window.suppressedCount++;
+            return false;
+        }
+        window.reportedCount++;
+        return true;
+    }
+
+    /**
+     * Remove windows that ended.
+     *
+     * @param now current time in milliseconds.
+     * @return ended windows with suppressed errors to report.
+     */
+    @NonNull
+    public List<Window> removeExpired(long now) {
+        for (Iterator<Window> iterator = mWindows.values().iterator(); iterator.hasNext(); ) {
+            Window window = iterator.next();
+            if (now - window.start >= mInterval) {
+                iterator.remove();
+                endWindow(window);
+            }
+        }
+        return drainEndedWindows();
+    }
+
+    /**
+     * Remove all windows.
+     *
+     * @return windows with suppressed errors to report.
+     */
+    @NonNull
+    public List<Window> removeAll() {
+        for (Window window : mWindows.values()) {
+            endWindow(window);
+        }
+        mWindows.clear();
+        return drainEndedWindows();
+    }
+
+    @VisibleForTesting
+    int size() {
+        return mWindows.size();
+    }
+
+    private void endWindow(Window window) {
+        if (window.suppressedCount > 0) {
+            mEvictedWindows.add(window);
+        }
+    }
+
+    private List<Window> drainEndedWindows() {
+        List<Window> windows = new ArrayList<>(mEvictedWindows);
+        mEvictedWindows.clear();
+        return windows;
+    }
+
+    /**
+     * Reports and suppressed errors of a signature during an interval.
+     */
+    public static class Window {
+
+        /**
+         * Error type.
+         */
+        private final String type;
+
+        /**
+         * Window start time.
+         */
+        private final long start;
+
+        /**
+         * Number of errors reported.
+         */
+        private int reportedCount;
+
+        /**
+         * Number of errors suppressed.
+         */
+        private int suppressedCount;
+
+        Window(String type, long start) {
+            this.type = type;
+            this.start = start;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getSuppressedCount() {
+            return suppressedCount;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
+
+/**
+ * Compression and clean up of pending minidump files.
+ * <p>
+ * Pending minidumps are named after their error log identifier and gzip compressed before being sent,
+ * the compressed file stays on disk until its attachment log is sent or discarded.
+ * A marker file tells that the compressed file is used by a queued attachment log.
+ */
+public class MinidumpHelper {
+
+    /**
+     * Pending minidump file extension.
+     */
+    public static final String MINIDUMP_FILE_EXTENSION = ".dmp";
+
+    /**
+     * Extension added to compressed minidump files.
+     */
+    @VisibleForTesting
+    static final String COMPRESSED_FILE_EXTENSION = ".gz";
+
+    /**
+     * Extension added to files being compressed.
+     */
+    @VisibleForTesting
+    static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    /**
+     * Extension added to compressed minidump files to mark them as used by a queued attachment log.
+     */
+    @VisibleForTesting
+    static final String QUEUED_FILE_EXTENSION = ".queued";
+
+    /**
+     * Age after which minidump files named by previous versions are deleted,
+     * as they cannot be matched to their error log.
+     */
+    @VisibleForTesting
+    static final long ORPHAN_MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Buffer size for compression.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Get the file where the minidump of a native crash is kept until sent.
+     *
+     * @param errorId error log identifier.
+     * @return pending minidump file.
+     */
+    @NonNull
+    public static File getPendingMinidumpFile(@NonNull UUID errorId) {
+        return new File(ErrorLogHelper.getPendingMinidumpDirectory(), errorId + MINIDUMP_FILE_EXTENSION);
+    }
+
+    /**
+     * Check if a file is a compressed minidump owned by this helper.
+     *
+     * @param file file to check, can be null.
+     * @return true if the file is a compressed pending minidump.
+     */
+    public static boolean isCompressedMinidumpFile(@Nullable File file) {
+        return file != null && file.getName().endsWith(COMPRESSED_FILE_EXTENSION) && ErrorLogHelper.getPendingMinidumpDirectory().equals(file.getParentFile());
+    }
+
+    /**
+     * Mark a compressed minidump as used by an attachment log, so that it is kept until
+     * {@link #deleteCompressedMinidump(File)} is called once the attachment is sent or discarded.
+     * Must be called before the error log file is deleted.
+     *
+     * @param compressedFile compressed minidump file.
+     */
+    public static void markQueued(@NonNull File compressedFile) {
+        try {
+            if (!getQueuedMarkerFile(compressedFile).createNewFile()) {
+                AppCenterLog.debug(LOG_TAG, "Compressed minidump already queued: " + compressedFile);
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to mark compressed minidump as queued: " + compressedFile, e);
+        }
+    }
+
+    /**
+     * Delete a compressed minidump and its queued marker.
+     *
+     * @param compressedFile compressed minidump file.
+     */
+    public static void deleteCompressedMinidump(@NonNull File compressedFile) {
+        StorageHelper.InternalStorage.delete(compressedFile);
+        StorageHelper.InternalStorage.delete(getQueuedMarkerFile(compressedFile));
+    }
+
+    private static File getQueuedMarkerFile(File compressedFile) {
+        return new File(compressedFile.getPath() + QUEUED_FILE_EXTENSION);
+    }
+
+    /**
+     * Compress a pending minidump file, streaming it without loading it in memory.
+     * The uncompressed file is deleted on success or if too large.
+     *
+     * @param minidumpFile uncompressed minidump file.
+     * @param maxSize      maximum uncompressed size in bytes, larger minidumps are skipped.
+     * @return compressed file, or null if the minidump is missing, too large or could not be compressed.
+     */
+    @Nullable
+    public static synchronized File compressMinidump(@NonNull File minidumpFile, long maxSize) {
+
+        /* Already compressed by the background worker. */
+        File compressedFile = new File(minidumpFile.getPath() + COMPRESSED_FILE_EXTENSION);
+        if (compressedFile.exists()) {
+            StorageHelper.InternalStorage.delete(minidumpFile);
+            return compressedFile;
+        }
+        if (!minidumpFile.exists()) {
+            return null;
+        }
+        long size = minidumpFile.length();
+        if (size > maxSize) {
+            AppCenterLog.warn(LOG_TAG, "Minidump of " + size + " bytes exceeds the maximum size of " + maxSize + " bytes and will not be sent: " + minidumpFile);
+            StorageHelper.InternalStorage.delete(minidumpFile);
+            return null;
+        }
+        File temporaryFile = new File(compressedFile.getPath() + TEMPORARY_FILE_EXTENSION);
+        try {
+            gzip(minidumpFile, temporaryFile);
+            if (!temporaryFile.renameTo(compressedFile)) {
+                throw new IOException("Failed to rename " + temporaryFile);
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to compress minidump: " + minidumpFile, e);
+            StorageHelper.InternalStorage.delete(temporaryFile);
+            return null;
+        }
+        AppCenterLog.debug(LOG_TAG, "Compressed minidump " + minidumpFile + " from " + size + " to " + compressedFile.length() + " bytes.");
+        StorageHelper.InternalStorage.delete(minidumpFile);
+        return compressedFile;
+    }
+
+    /**
+     * Compress pending minidumps and delete the orphaned ones.
+     * Meant to run on a background thread, files being sent meanwhile are handled by {@link #compressMinidump(File, long)}.
+     *
+     * @param maxSize maximum uncompressed size in bytes, larger minidumps are skipped.
+     */
+    public static void processPendingMinidumps(long maxSize) {
+        File[] files = ErrorLogHelper.getPendingMinidumpDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+
+            /* Compression interrupted by process exit. */
+            if (name.endsWith(TEMPORARY_FILE_EXTENSION)) {
+                AppCenterLog.debug(LOG_TAG, "Deleting incomplete compressed minidump " + file);
+                StorageHelper.InternalStorage.delete(file);
+                continue;
+            }
+
+            /* Markers are deleted with their compressed file, unless left over. */
+            if (name.endsWith(QUEUED_FILE_EXTENSION)) {
+                if (!new File(file.getPath().substring(0, file.getPath().length() - QUEUED_FILE_EXTENSION.length())).exists()) {
+                    StorageHelper.InternalStorage.delete(file);
+                }
+                continue;
+            }
+
+            /*
+             * A minidump without error log belongs to a discarded crash, unless compressed and used by a queued attachment.
+             * The error log is checked first as it is deleted after the queued marker is created.
+             * Files named by older versions cannot be matched to their error log, wait for them to expire.
+             */
+            boolean compressed = name.endsWith(COMPRESSED_FILE_EXTENSION);
+            UUID errorId = getErrorId(compressed ? name.substring(0, name.length() - COMPRESSED_FILE_EXTENSION.length()) : name);
+            boolean pending = errorId != null && new File(ErrorLogHelper.getErrorStorageDirectory(), errorId + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION).exists();
+            boolean orphan = errorId != null ? !pending : now - file.lastModified() > ORPHAN_MAX_AGE;
+            if (compressed) {
+                if (orphan && !getQueuedMarkerFile(file).exists()) {
+                    AppCenterLog.debug(LOG_TAG, "Deleting orphaned compressed minidump " + file);
+                    StorageHelper.InternalStorage.delete(file);
+                }
+            } else if (orphan) {
+                AppCenterLog.debug(LOG_TAG, "Deleting orphaned minidump " + file);
+                StorageHelper.InternalStorage.delete(file);
+            } else {
+                compressMinidump(file, maxSize);
+            }
+        }
+    }
+
+    /**
+     * Get error log identifier from a pending minidump file name.
+     */
+    @Nullable
+    private static UUID getErrorId(String name) {
+        if (name.endsWith(MINIDUMP_FILE_EXTENSION)) {
+            try {
+                return UUID.fromString(name.substring(0, name.length() - MINIDUMP_FILE_EXTENSION.length()));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stream a file into a gzip compressed file.
+     */
+    private static void gzip(File source, File destination) throws IOException {
+        InputStream input = new FileInputStream(source);
+
+        //noinspection TryFinallyCanBeTryWithResources (requires min API level 19)
+        try {
+            OutputStream output = new GZIPOutputStream(new FileOutputStream(destination), BUFFER_SIZE);
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, count);
+                }
+            } finally {
+
+                //noinspection ThrowFromFinallyBlock
+                output.close();
+            }
+        } finally {
+
+            //noinspection ThrowFromFinallyBlock
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.model.ReconstructedThrowable;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persists throwables for {@link com.microsoft.appcenter.crashes.model.ErrorReport#getThrowable()} without Java serialization.
+ * <p>
+ * Only class name, message, stack trace, cause and suppressed throwables are kept,
+ * so files stay small and can be read back even if the exception classes changed.
+ */
+public class ThrowableHelper {
+
+    /**
+     * First bytes of a file in this format, never the start of a Java serialization stream.
+     */
+    @VisibleForTesting
+    static final int MAGIC = 0x41435448;
+
+    /**
+     * Format version.
+     */
+    @VisibleForTesting
+    static final int VERSION = 1;
+
+    /**
+     * First 2 bytes of a Java serialization stream, used by previous SDK versions.
+     */
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * Write a throwable to a file.
+     *
+     * @param file      file to write to.
+     * @param throwable throwable to write.
+     * @throws IOException if an error occurred while writing the file.
+     */
+    public static void writeThrowable(@NonNull File file, @NonNull Throwable throwable) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            writeThrowable(output, throwable, new StackTraceElement[0], Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()));
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Read a throwable from a file. Files written with Java serialization by previous SDK versions
+     * are converted to the current format on first read.
+     *
+     * @param file file to read.
+     * @return throwable, rebuilt with its original class when possible.
+     * @throws IOException            if the file cannot be read or is corrupted.
+     * @throws ClassNotFoundException if the file uses Java serialization and a class no longer exists.
+     */
+    @NonNull
+    public static Throwable readThrowable(@NonNull File file) throws IOException, ClassNotFoundException {
+        Throwable throwable;
+        boolean javaSerialization;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            input.mark(Integer.SIZE / Byte.SIZE);
+            int magic = input.readInt();
+            javaSerialization = magic >>> 16 == JAVA_SERIALIZATION_MAGIC;
+            if (javaSerialization) {
+                input.reset();
+                Object object = new ObjectInputStream(input).readObject();
+                if (!(object instanceof Throwable)) {
+                    throw new IOException("Not a throwable: " + object);
+                }
+                throwable = (Throwable) object;
+            } else {
+                if (magic != MAGIC) {
+                    throw new IOException("Invalid throwable file.");
+                }
+                int version = input.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported throwable file version: " + version);
+                }
+                throwable = readThrowable(input, new StackTraceElement[0]);
+                if (throwable == null) {
+                    throw new IOException("Missing throwable.");
+                }
+            }
+        } finally {
+            input.close();
+        }
+
+        /* Migrate file written by a previous version. */
+        if (javaSerialization) {
+            try {
+                writeThrowable(file, throwable);
+            } catch (IOException e) {
+                AppCenterLog.warn(Crashes.LOG_TAG, "Failed to convert serialized throwable file " + file.getName(), e);
+            }
+        }
+        return throwable;
+    }
+
+    private static void writeThrowable(DataOutputStream output, Throwable throwable, StackTraceElement[] enclosingTrace, Set<Throwable> dejaVu) throws IOException {
+
+        /* Guard against circular references. */
+        if (throwable == null || !dejaVu.add(throwable)) {
+            output.writeBoolean(false);
+            return;
+        }
+        output.writeBoolean(true);
+        CrashRecordHelper.writeString(output, throwable.getClass().getName());
+        CrashRecordHelper.writeString(output, throwable.getMessage());
+
+        /* Like printStackTrace, frames in common with the enclosing trace are only counted. */
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        int commonFrames = 0;
+        while (commonFrames < stackTrace.length && commonFrames < enclosingTrace.length
+                && stackTrace[stackTrace.length - 1 - commonFrames].equals(enclosingTrace[enclosingTrace.length - 1 - commonFrames])) {
+            commonFrames++;
+        }
+        CrashRecordHelper.writeFrames(output, Arrays.copyOf(stackTrace, stackTrace.length - commonFrames));
+        output.writeInt(commonFrames);
+        writeThrowable(output, throwable.getCause(), stackTrace, dejaVu);
+        Throwable[] suppressedThrowables = getSuppressed(throwable);
+        output.writeInt(suppressedThrowables.length);
+        for (Throwable suppressed : suppressedThrowables) {
+            writeThrowable(output, suppressed, stackTrace, dejaVu);
+        }
+    }
+
+    private static Throwable readThrowable(DataInputStream input, StackTraceElement[] enclosingTrace) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+        String className = CrashRecordHelper.readString(input);
+        String message = CrashRecordHelper.readString(input);
+        StackTraceElement[] stackTrace = readStackTrace(input, enclosingTrace);
+        Throwable cause = readThrowable(input, stackTrace);
+        int suppressedCount = input.readInt();
+        if (suppressedCount < 0) {
+            throw new IOException("Invalid suppressed count: " + suppressedCount);
+        }
+        List<Throwable> suppressedThrowables = new ArrayList<>(suppressedCount);
+        for (int i = 0; i < suppressedCount; i++) {
+            Throwable suppressed = readThrowable(input, stackTrace);
+            if (suppressed != null) {
+                suppressedThrowables.add(suppressed);
+            }
+        }
+        Throwable throwable = newThrowable(className, message);
+        throwable.setStackTrace(stackTrace);
+        if (cause != null) {
+            try {
+                throwable.initCause(cause);
+            } catch (IllegalStateException ignored) {
+
+                /* Constructor already set a cause. */
+            }
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            for (Throwable suppressed : suppressedThrowables) {
+                throwable.addSuppressed(suppressed);
+            }
+        }
+        return throwable;
+    }
+
+    private static StackTraceElement[] readStackTrace(DataInputStream input, StackTraceElement[] enclosingTrace) throws IOException {
+        int frameCount = input.readInt();
+        if (frameCount < 0) {
+            throw new IOException("Invalid frame count: " + frameCount);
+        }
+        StackTraceElement[] frames = new StackTraceElement[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            String className = CrashRecordHelper.readString(input);
+            String methodName = CrashRecordHelper.readString(input);
+            String fileName = CrashRecordHelper.readString(input);
+            int lineNumber = input.readInt();
+            frames[i] = new StackTraceElement(className != null ? className : "", methodName != null ? methodName : "", fileName, lineNumber);
+        }
+        int commonFrames = input.readInt();
+        if (commonFrames < 0 || commonFrames > enclosingTrace.length) {
+            throw new IOException("Invalid common frame count: " + commonFrames);
+        }
+        StackTraceElement[] stackTrace = Arrays.copyOf(frames, frameCount + commonFrames);
+        System.arraycopy(enclosingTrace, enclosingTrace.length - commonFrames, stackTrace, frameCount, commonFrames);
+        return stackTrace;
+    }
+
+    private static Throwable[] getSuppressed(Throwable throwable) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return throwable.getSuppressed();
+        }
+        return new Throwable[0];
+    }
+
+    /**
+     * Instantiate the original throwable class with the same message if possible.
+     * The class is loaded without being initialized, so that an unrelated class stored under a throwable
+     * name never runs its static initializers.
+     */
+    @NonNull
+    private static Throwable newThrowable(String className, String message) {
+        try {
+            Class<?> throwableClass = Class.forName(className, false, ThrowableHelper.class.getClassLoader());
+            if (Throwable.class.isAssignableFrom(throwableClass)) {
+
+                /* Most throwables have a message constructor, but some of them change the message. */
+                Throwable throwable;
+                try {
+                    throwable = (Throwable) throwableClass.getConstructor(String.class).newInstance(message);
+                } catch (NoSuchMethodException e) {
+                    throwable = (Throwable) throwableClass.getConstructor().newInstance();
+                }
+                if (hasMessage(throwable, message)) {
+                    return throwable;
+                }
+            }
+        } catch (Exception | LinkageError ignored) {
+
+            /* Class removed, renamed or not instantiable. */
+        }
+        return new ReconstructedThrowable(className, message);
+    }
+
+    private static boolean hasMessage(Throwable throwable, String message) {
+        return message == null ? throwable.getMessage() == null : message.equals(throwable.getMessage());
+    }
+}
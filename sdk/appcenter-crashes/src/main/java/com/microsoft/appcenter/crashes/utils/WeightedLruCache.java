@@ -0,0 +1,218 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache bounded both by number of entries and by total weight.
+ * Not thread safe.
+ *
+ * @param <K> key type.
+ * @param <V> value type.
+ */
+public abstract class WeightedLruCache<K, V> {
+
+    /**
+     * Entries in access order, eldest first.
+     */
+    private final LinkedHashMap<K, WeightedValue<V>> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Maximum total weight.
+     */
+    private final long mMaxWeight;
+
+    /**
+     * Total weight of entries.
+     */
+    private long mWeight;
+
+    /**
+     * Number of lookups that found an entry.
+     */
+    private int mHitCount;
+
+    /**
+     * Number of lookups that did not find an entry.
+     */
+    private int mMissCount;
+
+    /**
+     * Number of entries evicted to respect bounds.
+     */
+    private int mEvictionCount;
+
+    /**
+     * Init.
+     *
+     * @param maxSize   maximum number of entries.
+     * @param maxWeight maximum total weight, the most recent entry is kept even if heavier.
+     */
+    public WeightedLruCache(int maxSize, long maxWeight) {
+        mMaxSize = maxSize;
+        mMaxWeight = maxWeight;
+    }
+
+    /**
+     * Compute the weight of a value.
+     *
+     * @param value value.
+     * @return weight, at least 1.
+     */
+    protected abstract int weightOf(@NonNull V value);
+
+    /**
+     * Called when an entry is evicted to respect bounds, not when explicitly removed.
+     *
+     * @param key   key.
+     * @param value value.
+     */
+    protected void onEvicted(@NonNull K key, @NonNull V value) {
+    }
+
+    /**
+     * Get a value and mark it as most recently used.
+     *
+     * @param key key.
+     * @return value or null if not cached.
+     */
+    public V get(@NonNull K key) {
+        WeightedValue<V> entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Check if a key is cached without updating statistics or access order.
+     *
+     * @param key key.
+     * @return true if cached.
+     */
+    public boolean containsKey(@NonNull K key) {
+        return mEntries.containsKey(key);
+    }
+
+    /**
+     * Add or replace a value as most recently used, evicting eldest entries if needed.
+     *
+     * @param key   key.
+     * @param value value.
+     */
+    public void put(@NonNull K key, @NonNull V value) {
+        WeightedValue<V> previous = mEntries.put(key, new WeightedValue<>(value, weightOf(value)));
+        if (previous != null) {
+            mWeight -= previous.weight;
+        }
+        mWeight += mEntries.get(key).weight;
+        trim();
+    }
+
+    /**
+     * Update the weight of a cached value that changed, evicting eldest entries if needed.
+     * Access order is not updated.
+     *
+     * @param key key.
+     */
+    public void refresh(@NonNull K key) {
+        for (Map.Entry<K, WeightedValue<V>> mapEntry : mEntries.entrySet()) {
+            if (mapEntry.getKey().equals(key)) {
+                WeightedValue<V> entry = mapEntry.getValue();
+                int weight = weightOf(entry.value);
+                mWeight += weight - entry.weight;
+                entry.weight = weight;
+                trim();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @param key key.
+     * @return removed value or null if not cached.
+     */
+    public V remove(@NonNull K key) {
+        WeightedValue<V> entry = mEntries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        mWeight -= entry.weight;
+        return entry.value;
+    }
+
+    /**
+     * Remove all values.
+     */
+    public void clear() {
+        mEntries.clear();
+        mWeight = 0;
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public long getWeight() {
+        return mWeight;
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + mEntries.size() + "/" + mMaxSize + " weight=" + mWeight + "/" + mMaxWeight
+                + " hits=" + mHitCount + " misses=" + mMissCount + " evictions=" + mEvictionCount;
+    }
+
+    /**
+     * Evict eldest entries until bounds are respected, keeping at least the most recent one.
+     */
+    private void trim() {
+        Iterator<Map.Entry<K, WeightedValue<V>>> iterator = mEntries.entrySet().iterator();
+        while ((mEntries.size() > mMaxSize || mWeight > mMaxWeight) && mEntries.size() > 1) {
+            Map.Entry<K, WeightedValue<V>> eldest = iterator.next();
+            iterator.remove();
+            mWeight -= eldest.getValue().weight;
+            mEvictionCount++;
+            onEvicted(eldest.getKey(), eldest.getValue().value);
+        }
+    }
+
+    /**
+     * Value with the weight it had when last computed.
+     */
+    private static class WeightedValue<V> {
+
+        private final V value;
+
+        private int weight;
+
+        private WeightedValue(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
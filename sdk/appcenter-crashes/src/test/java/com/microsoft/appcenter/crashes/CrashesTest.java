@@ -1,8 +1,10 @@
 package com.microsoft.appcenter.crashes;
 
+import android.app.Activity;
 import android.content.Context;
 import android.os.Looper;
 import android.os.SystemClock;
+import android.support.annotation.NonNull;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.AppCenterHandler;
@@ -17,9 +19,14 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogF
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
+import com.microsoft.appcenter.crashes.model.MainThreadStallException;
 import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.CrashRecordHelper;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.MinidumpHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableHelper;
+import com.microsoft.appcenter.crashes.utils.WeightedLruCache;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
@@ -42,6 +49,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -64,6 +72,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static java.util.Collections.singletonList;
@@ -75,10 +88,13 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -88,16 +104,29 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
 import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @SuppressWarnings("unused")
-@PrepareForTest({ErrorLogHelper.class, SystemClock.class, StorageHelper.InternalStorage.class, StorageHelper.PreferencesStorage.class, AppCenterLog.class, AppCenter.class, Crashes.class, HandlerUtils.class, Looper.class})
+@PrepareForTest({ErrorLogHelper.class, CrashRecordHelper.class, MinidumpHelper.class, ThrowableHelper.class, DeviceInfoHelper.class, SystemClock.class, StorageHelper.InternalStorage.class, StorageHelper.PreferencesStorage.class, AppCenterLog.class, AppCenter.class, Crashes.class, HandlerUtils.class, Looper.class})
 public class CrashesTest {
 
     @SuppressWarnings("ThrowableInstanceNeverThrown")
     private static final Exception EXCEPTION = new Exception("This is a test exception.");
 
+    /**
+     * Decode pending errors synchronously.
+     */
+    private static final Executor SYNCHRONOUS_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
     private static final String CRASHES_ENABLED_KEY = PrefStorageConstants.KEY_ENABLED + "_" + Crashes.getInstance().getServiceName();
 
     @Rule
@@ -121,12 +150,21 @@ public class CrashesTest {
         assertEquals(errorLog.getDevice(), report.getDevice());
     }
 
+    private static File mockErrorLogFile(UUID id) {
+        File file = mock(File.class);
+        when(file.getName()).thenReturn(id + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        return file;
+    }
+
     @Before
     public void setUp() throws Exception {
         Thread.setDefaultUncaughtExceptionHandler(null);
         Crashes.unsetInstance();
+        Crashes.getInstance().setErrorLoaderExecutor(SYNCHRONOUS_EXECUTOR);
         mockStatic(SystemClock.class);
         mockStatic(StorageHelper.InternalStorage.class);
+        mockStatic(ThrowableHelper.class);
+        mockStatic(MinidumpHelper.class);
         mockStatic(StorageHelper.PreferencesStorage.class);
         mockStatic(AppCenterLog.class);
         when(SystemClock.elapsedRealtime()).thenReturn(System.currentTimeMillis());
@@ -189,6 +227,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(dir.listFiles()).thenReturn(new File[]{file1, file2});
         crashes.setUncaughtExceptionHandler(mockHandler);
         when(StorageHelper.PreferencesStorage.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(false);
@@ -239,6 +278,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(dir.listFiles()).thenReturn(new File[]{file1, file2});
 
         /* Before start it's disabled. */
@@ -302,12 +342,14 @@ public class CrashesTest {
         Channel mockChannel = mock(Channel.class);
         ErrorReport report = new ErrorReport();
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(mErrorLog.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new RuntimeException());
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(report)).thenReturn(true);
         when(mockListener.shouldAwaitUserConfirmation()).thenReturn(false);
@@ -351,12 +393,15 @@ public class CrashesTest {
         ErrorReport report = new ErrorReport();
 
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(mErrorLog.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException()).thenReturn(new byte[]{});
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new RuntimeException());
+        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new byte[]{});
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(report)).thenReturn(false);
@@ -394,12 +439,14 @@ public class CrashesTest {
         ErrorReport report = new ErrorReport();
 
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(mErrorLog.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new RuntimeException());
         when(StorageHelper.PreferencesStorage.getBoolean(eq(Crashes.PREF_KEY_ALWAYS_SEND), anyBoolean())).thenReturn(true);
 
         CrashesListener mockListener = mock(CrashesListener.class);
@@ -433,11 +480,140 @@ public class CrashesTest {
         verify(mockChannel, times(errorAttachmentLogList.size())).enqueue(mockAttachment, crashes.getGroupName());
     }
 
+    @Test
+    public void pendingErrorsDecodedOnce() throws Exception {
+
+        /* Setup a valid file, a file with another log inside and a file with an invalid name. */
+        ErrorReport report = new ErrorReport();
+        File errorLogFile = mockErrorLogFile(mErrorLog.getId());
+        UUID otherId = UUID.randomUUID();
+        File otherErrorLogFile = mockErrorLogFile(otherId);
+        File invalidFile = mock(File.class);
+        when(invalidFile.getName()).thenReturn("invalid" + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile, otherErrorLogFile, invalidFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenReturn(mErrorLog);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        WrapperSdkExceptionManager.setAutomaticProcessing(false);
+
+        /* Start: reports are decoded to check duplicates, the file that does not match its name is removed. */
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        verify(logSerializer, times(2)).deserializeLog(anyString());
+        verifyStatic();
+        StorageHelper.InternalStorage.delete(invalidFile);
+        verifyStatic(never());
+        ErrorLogHelper.removeStoredErrorLogFile(mErrorLog.getId());
+        verifyStatic();
+        ErrorLogHelper.removeStoredErrorLogFile(otherId);
+
+        /* Reports are not decoded again when requested. */
+        Collection<ErrorReport> reports = WrapperSdkExceptionManager.getUnprocessedErrorReports().get();
+        assertEquals(Collections.singletonList(report), new ArrayList<>(reports));
+        verify(logSerializer, times(2)).deserializeLog(anyString());
+        reports = WrapperSdkExceptionManager.getUnprocessedErrorReports().get();
+        assertEquals(Collections.singletonList(report), new ArrayList<>(reports));
+        verify(logSerializer, times(2)).deserializeLog(anyString());
+    }
+
+    @Test
+    public void pendingErrorsDecodedOnLoaderThreads() throws Exception {
+
+        /* Setup executor that runs tasks only when we want. */
+        final List<Runnable> tasks = new ArrayList<>();
+        Crashes crashes = Crashes.getInstance();
+        crashes.setErrorLoaderExecutor(new Executor() {
+
+            @Override
+            public void execute(@NonNull Runnable command) {
+                tasks.add(command);
+            }
+        });
+        ErrorReport report = new ErrorReport();
+        File errorLogFile = mockErrorLogFile(mErrorLog.getId());
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenReturn(mErrorLog);
+        crashes.setLogSerializer(logSerializer);
+        CrashesListener listener = mock(CrashesListener.class);
+        when(listener.shouldProcess(report)).thenReturn(true);
+        crashes.setInstanceListener(listener);
+        Channel channel = mock(Channel.class);
+
+        /* Start: nothing decoded in background thread. */
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", channel);
+        verify(logSerializer, never()).deserializeLog(anyString());
+        verify(listener, never()).shouldProcess(any(ErrorReport.class));
+        assertEquals(2, tasks.size());
+
+        /* Minidumps are also processed on loader threads. */
+        tasks.remove(0).run();
+        verifyStatic();
+        MinidumpHelper.processPendingMinidumps(Crashes.DEFAULT_MAX_MINIDUMP_SIZE);
+
+        /* Decoding continues filtering in background. */
+        tasks.remove(0).run();
+        verify(listener).shouldProcess(report);
+        verify(listener).shouldAwaitUserConfirmation();
+
+        /* Already decoded, sending does not use loader threads again. */
+        verify(channel).enqueue(mErrorLog, crashes.getGroupName());
+        assertEquals(0, tasks.size());
+    }
+
+    @Test
+    public void errorLoaderExecutorCreatedWhenEnabled() throws Exception {
+        ThreadPoolExecutor executor = mock(ThreadPoolExecutor.class);
+        whenNew(ThreadPoolExecutor.class).withAnyArguments().thenReturn(executor);
+        mockStatic(ErrorLogHelper.class);
+        File dir = mock(File.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(dir.listFiles()).thenReturn(new File[0]);
+
+        /* Not created with the instance. */
+        Crashes.unsetInstance();
+        Crashes crashes = Crashes.getInstance();
+        verifyNew(ThreadPoolExecutor.class, never()).withArguments(anyInt(), anyInt(), anyLong(), any(TimeUnit.class), any(BlockingQueue.class), any(ThreadFactory.class));
+
+        /* Created when started to process minidumps. */
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        verifyNew(ThreadPoolExecutor.class).withArguments(anyInt(), anyInt(), anyLong(), any(TimeUnit.class), any(BlockingQueue.class), any(ThreadFactory.class));
+        verify(executor).allowCoreThreadTimeOut(true);
+        verify(executor).execute(any(Runnable.class));
+
+        /* Shut down when disabled, created again when enabled. */
+        Crashes.setEnabled(false);
+        verify(executor).shutdown();
+        Crashes.setEnabled(true);
+        verifyNew(ThreadPoolExecutor.class, times(2)).withArguments(anyInt(), anyInt(), anyLong(), any(TimeUnit.class), any(BlockingQueue.class), any(ThreadFactory.class));
+        verify(executor, times(2)).execute(any(Runnable.class));
+    }
+
     @Test
     public void processPendingErrorsCorrupted() throws JSONException {
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(UUID.randomUUID());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
 
         Crashes crashes = Crashes.getInstance();
@@ -474,8 +650,10 @@ public class CrashesTest {
         Channel mockChannel = mock(Channel.class);
 
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(UUID.randomUUID());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
 
         Crashes crashes = Crashes.getInstance();
         LogSerializer logSerializer = mock(LogSerializer.class);
@@ -495,8 +673,10 @@ public class CrashesTest {
         JSONException jsonException = new JSONException("Fake JSON exception");
 
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(UUID.randomUUID());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
         Crashes crashes = Crashes.getInstance();
         LogSerializer logSerializer = mock(LogSerializer.class);
@@ -613,6 +793,166 @@ public class CrashesTest {
         verify(mockListener, never()).onSendingFailed(any(ErrorReport.class), eq(EXCEPTION));
     }
 
+    @Test
+    public void trackExceptionRateLimited() {
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        when(SystemClock.elapsedRealtime()).thenReturn(0L);
+        Crashes.setHandledErrorRateLimit(2, 1000);
+
+        /* Invalid settings ignored. */
+        Crashes.setHandledErrorRateLimit(0, 1000);
+        Crashes.setHandledErrorSamplingRate(0);
+        verifyStatic(times(2));
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString());
+
+        /* Only the first errors with the same signature are reported. */
+        for (int i = 0; i < 5; i++) {
+            Crashes.trackException(EXCEPTION);
+        }
+        verify(mockChannel, times(2)).enqueue(any(HandledErrorLog.class), eq(crashes.getGroupName()));
+
+        /* Suppressed count reported once interval ended. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        Crashes.trackException(EXCEPTION);
+        ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
+        verify(mockChannel, times(4)).enqueue(log.capture(), eq(crashes.getGroupName()));
+        HandledErrorLog countLog = (HandledErrorLog) log.getAllValues().get(2);
+        assertEquals(EXCEPTION.getClass().getName(), countLog.getException().getType());
+        assertEquals("3", countLog.getProperties().get(Crashes.SUPPRESSED_COUNT_PROPERTY));
+        assertEquals(EXCEPTION.getMessage(), ((HandledErrorLog) log.getAllValues().get(3)).getException().getMessage());
+
+        /* Suppressed count reported when activity paused. */
+        Crashes.trackException(EXCEPTION);
+        Crashes.trackException(EXCEPTION);
+        crashes.onActivityPaused(mock(Activity.class));
+        log = ArgumentCaptor.forClass(Log.class);
+        verify(mockChannel, times(6)).enqueue(log.capture(), eq(crashes.getGroupName()));
+        countLog = (HandledErrorLog) log.getAllValues().get(5);
+        assertEquals("1", countLog.getProperties().get(Crashes.SUPPRESSED_COUNT_PROPERTY));
+
+        /* Nothing more to report. */
+        crashes.onActivityPaused(mock(Activity.class));
+        verify(mockChannel, times(6)).enqueue(any(Log.class), anyString());
+    }
+
+    @Test
+    public void trackExceptionRateLimitedWhileDisabled() {
+        Crashes crashes = Crashes.getInstance();
+        mockStatic(ErrorLogHelper.class);
+        File dir = mock(File.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(dir.listFiles()).thenReturn(new File[0]);
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        when(SystemClock.elapsedRealtime()).thenReturn(0L);
+        Crashes.setHandledErrorRateLimit(1, 1000);
+        Crashes.trackException(EXCEPTION);
+        Crashes.trackException(EXCEPTION);
+        verify(mockChannel).enqueue(any(HandledErrorLog.class), eq(crashes.getGroupName()));
+
+        /* Suppressed errors forgotten when disabled, errors tracked while disabled not counted. */
+        Crashes.setEnabled(false);
+        Crashes.trackException(EXCEPTION);
+        Crashes.setEnabled(true);
+        Crashes.trackException(EXCEPTION);
+        verify(mockChannel, times(2)).enqueue(any(HandledErrorLog.class), eq(crashes.getGroupName()));
+        crashes.onActivityPaused(mock(Activity.class));
+        verify(mockChannel, times(2)).enqueue(any(Log.class), anyString());
+    }
+
+    @Test
+    public void mainThreadWatchdog() throws Exception {
+
+        /* Setup mock. */
+        Crashes crashes = Crashes.getInstance();
+        mockStatic(ErrorLogHelper.class);
+        File dir = mock(File.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(dir.listFiles()).thenReturn(new File[0]);
+        MainThreadWatchdog watchdog = mock(MainThreadWatchdog.class);
+        whenNew(MainThreadWatchdog.class).withAnyArguments().thenReturn(watchdog);
+
+        /* Invalid settings are ignored. */
+        Crashes.enableMainThreadWatchdog(0, 5000, false);
+        Crashes.enableMainThreadWatchdog(1000, -1, false);
+        verifyStatic(times(2));
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString());
+
+        /* Not started before the service. */
+        Crashes.enableMainThreadWatchdog(1000, 5000, true);
+        verify(watchdog, never()).start();
+
+        /* Started with the service. */
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        verifyNew(MainThreadWatchdog.class).withArguments(any(), eq(1000L), eq(5000L), eq(true), any(MainThreadWatchdog.Listener.class));
+        verify(watchdog).start();
+
+        /* Stopped when disabled, restarted when enabled again. */
+        Crashes.setEnabled(false);
+        verify(watchdog).stop();
+        Crashes.setEnabled(true);
+        verify(watchdog, times(2)).start();
+
+        /* Restarted when settings change, once the previous thread exited. */
+        Crashes.enableMainThreadWatchdog(500, 2000, false);
+        InOrder inOrder = inOrder(watchdog);
+        inOrder.verify(watchdog).stop();
+        inOrder.verify(watchdog).join();
+        inOrder.verify(watchdog).start();
+        verify(watchdog, times(2)).stop();
+        verify(watchdog, times(3)).start();
+        verifyNew(MainThreadWatchdog.class).withArguments(any(), eq(500L), eq(2000L), eq(false), any(MainThreadWatchdog.Listener.class));
+
+        /* Stopped when disabled by application. */
+        Crashes.disableMainThreadWatchdog();
+        verify(watchdog, times(3)).stop();
+        verify(watchdog, times(2)).join();
+        Crashes.setEnabled(false);
+        Crashes.setEnabled(true);
+        verify(watchdog, times(3)).start();
+    }
+
+    @Test
+    public void queueMainThreadStall() {
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        final StackTraceElement[] stackTrace = {new StackTraceElement("com.contoso.Main", "loop", "Main.java", 42)};
+
+        /* Only main thread. */
+        crashes.queueMainThreadStall(stackTrace, null, 5000);
+        ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
+        verify(mockChannel).enqueue(log.capture(), eq(crashes.getGroupName()));
+        HandledErrorLog errorLog = (HandledErrorLog) log.getValue();
+        assertEquals(MainThreadStallException.class.getName(), errorLog.getException().getType());
+        assertEquals(1, errorLog.getException().getFrames().size());
+        assertEquals("loop", errorLog.getException().getFrames().get(0).getMethodName());
+        assertEquals(Collections.singletonMap(Crashes.STALL_DURATION_PROPERTY, "5000"), errorLog.getProperties());
+        assertNull(errorLog.getThreads());
+
+        /* With all threads. */
+        reset(mockChannel);
+        crashes.queueMainThreadStall(stackTrace, Collections.singletonMap(Thread.currentThread(), stackTrace), 6000);
+        verify(mockChannel).enqueue(log.capture(), eq(crashes.getGroupName()));
+        errorLog = (HandledErrorLog) log.getValue();
+        assertEquals("6000", errorLog.getProperties().get(Crashes.STALL_DURATION_PROPERTY));
+        assertEquals(1, errorLog.getThreads().size());
+        assertEquals(Thread.currentThread().getId(), errorLog.getThreads().get(0).getId());
+        assertEquals(errorLog.getException().getFrames(), errorLog.getThreads().get(0).getFrames());
+    }
+
     @Test
     public void trackExceptionForWrapperSdk() {
         StackFrame frame = new StackFrame();
@@ -700,11 +1040,12 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
         when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(EXCEPTION);
 
         CrashesListener crashesListener = mock(CrashesListener.class);
         Crashes.setListener(crashesListener);
@@ -730,9 +1071,10 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(null);
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         Crashes crashes = Crashes.getInstance();
@@ -756,12 +1098,14 @@ public class CrashesTest {
     @Test
     public void handleUserConfirmationDoNotSend() throws IOException, ClassNotFoundException, JSONException {
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(mErrorLog.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
@@ -797,9 +1141,10 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(null);
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
@@ -830,7 +1175,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile).thenReturn(null);
         when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
 
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(EXCEPTION);
 
         Crashes crashes = Crashes.getInstance();
         ErrorReport report = crashes.buildErrorReport(mErrorLog);
@@ -841,11 +1186,107 @@ public class CrashesTest {
         assertNull(report);
     }
 
+    @Test
+    public void errorReportCacheBounded() throws IOException, ClassNotFoundException {
+        mockStatic(ErrorLogHelper.class);
+        File throwableFile = mock(File.class);
+        when(throwableFile.length()).thenReturn(1L);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(EXCEPTION);
+        Crashes crashes = Crashes.getInstance();
+        WeightedLruCache<UUID, ?> cache = crashes.getErrorReportCache();
+
+        /* Second access is a hit. */
+        assertNotNull(crashes.buildErrorReport(mErrorLog));
+        assertNotNull(crashes.buildErrorReport(mErrorLog));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        verifyStatic();
+        ThrowableHelper.readThrowable(throwableFile);
+
+        /* Fill the cache: the least recently used report is evicted. */
+        for (int i = 0; i < Crashes.ERROR_REPORT_CACHE_MAX_SIZE; i++) {
+            ManagedErrorLog errorLog = new ManagedErrorLog();
+            errorLog.setId(UUID.randomUUID());
+            assertNotNull(crashes.buildErrorReport(errorLog));
+        }
+        assertEquals(Crashes.ERROR_REPORT_CACHE_MAX_SIZE, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        /* Evicted report is read again from file. */
+        assertNotNull(crashes.buildErrorReport(mErrorLog));
+        assertEquals(Crashes.ERROR_REPORT_CACHE_MAX_SIZE + 2, cache.getMissCount());
+        verifyStatic(times(Crashes.ERROR_REPORT_CACHE_MAX_SIZE + 2));
+        ThrowableHelper.readThrowable(throwableFile);
+    }
+
+    @Test
+    public void pendingReportsKeptDecodedUntilSent() throws Exception {
+
+        /* Setup more pending crashes than the cache can hold, each heavier than the cache bounds. */
+        int count = Crashes.ERROR_REPORT_CACHE_MAX_SIZE + 4;
+        final Map<String, ManagedErrorLog> logs = new HashMap<>();
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            ManagedErrorLog log = mock(ManagedErrorLog.class);
+            when(log.getId()).thenReturn(UUID.randomUUID());
+            files[i] = mockErrorLogFile(log.getId());
+            logs.put(files[i].getName(), log);
+        }
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(files);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getFrameCount(any(ManagedErrorLog.class))).thenReturn(Crashes.ERROR_REPORT_CACHE_MAX_FRAMES);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenAnswer(new Answer<ErrorReport>() {
+
+            @Override
+            public ErrorReport answer(InvocationOnMock invocation) throws Throwable {
+                return new ErrorReport();
+            }
+        });
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return ((File) invocation.getArguments()[0]).getName();
+            }
+        });
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                return logs.get(invocation.getArguments()[0]);
+            }
+        });
+        CrashesListener listener = mock(CrashesListener.class);
+        when(listener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
+
+        /* Start: every report is filtered then sent, decoding each file only once. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(listener);
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        verify(listener, times(count)).shouldProcess(any(ErrorReport.class));
+        verify(listener, times(count)).getErrorAttachments(any(ErrorReport.class));
+        verify(mockChannel, times(count)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+        verify(logSerializer, times(count)).deserializeLog(anyString());
+
+        /* Only the sent reports are bounded by the cache. */
+        assertEquals(1, crashes.getErrorReportCache().size());
+    }
+
     @Test
     public void buildErrorReportError() throws IOException, ClassNotFoundException {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
@@ -853,7 +1294,7 @@ public class CrashesTest {
 
         Exception classNotFoundException = mock(ClassNotFoundException.class);
         Exception ioException = mock(IOException.class);
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenThrow(classNotFoundException).thenThrow(ioException);
+        when(ThrowableHelper.readThrowable(any(File.class))).thenThrow(classNotFoundException).thenThrow(ioException);
 
         Crashes crashes = Crashes.getInstance();
 
@@ -923,6 +1364,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(null);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         assertNull(Crashes.getLastSessionCrashReport().get());
         Crashes.getInstance().onStarted(mock(Context.class), "", mock(Channel.class));
         assertFalse(Crashes.hasCrashedInLastSession().get());
@@ -951,7 +1393,7 @@ public class CrashesTest {
         final ErrorReport errorReport = ErrorLogHelper.getErrorReportFromErrorLog(errorLog, throwable);
 
         mockStatic(ErrorLogHelper.class);
-        File lastErrorLogFile = errorStorageDirectory.newFile("last-error-log.json");
+        File lastErrorLogFile = errorStorageDirectory.newFile(UUID.randomUUID() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
         File throwableFile = errorStorageDirectory.newFile();
         new FileWriter(throwableFile).append("fake_data").close();
@@ -959,8 +1401,9 @@ public class CrashesTest {
         when(ErrorLogHelper.getErrorReportFromErrorLog(errorLog, throwable)).thenReturn(errorReport);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(throwable);
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(throwable);
 
         Crashes crashes = Crashes.getInstance();
         crashes.setLogSerializer(logSerializer);
@@ -1023,10 +1466,11 @@ public class CrashesTest {
         when(logSerializer.deserializeLog(anyString())).thenReturn(mock(ManagedErrorLog.class));
 
         mockStatic(ErrorLogHelper.class);
-        File lastErrorLogFile = errorStorageDirectory.newFile("last-error-log.json");
+        File lastErrorLogFile = errorStorageDirectory.newFile(UUID.randomUUID() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
 
         Crashes crashes = Crashes.getInstance();
@@ -1063,6 +1507,7 @@ public class CrashesTest {
         File file = errorStorageDirectory.newFile("last-error-log.json");
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{file});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(file);
         Crashes.getInstance().onStarted(mock(Context.class), "", mock(Channel.class));
         assertFalse(Crashes.hasCrashedInLastSession().get());
@@ -1075,6 +1520,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(null);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
 
         @SuppressWarnings("unchecked")
         AppCenterConsumer<ErrorReport> callback = (AppCenterConsumer<ErrorReport>) mock(AppCenterConsumer.class);
@@ -1110,13 +1556,15 @@ public class CrashesTest {
         when(logSerializer.deserializeLog(anyString())).thenReturn(log);
 
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        File errorLogFile = mockErrorLogFile(log.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
 
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(mock(Throwable.class));
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(mock(Throwable.class));
 
         Crashes crashes = Crashes.getInstance();
         crashes.setInstanceListener(listener);
@@ -1130,6 +1578,298 @@ public class CrashesTest {
         AppCenterLog.warn(Crashes.LOG_TAG, expectedMessage);
     }
 
+    @Test
+    public void duplicateCrashesCounted() throws Exception {
+
+        /* Setup 2 identical crashes and a different one. */
+        final com.microsoft.appcenter.crashes.ingestion.models.Exception exception1 = new com.microsoft.appcenter.crashes.ingestion.models.Exception();
+        exception1.setType("java.lang.IllegalStateException");
+        com.microsoft.appcenter.crashes.ingestion.models.Exception exception2 = new com.microsoft.appcenter.crashes.ingestion.models.Exception();
+        exception2.setType("java.lang.NullPointerException");
+        final ManagedErrorLog log1 = mockCrashLog(exception1, 1000);
+        final ManagedErrorLog log2 = mockCrashLog(exception1, 2000);
+        final ManagedErrorLog log3 = mockCrashLog(exception2, 3000);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStackSignature(exception1)).thenReturn("signature1");
+        when(ErrorLogHelper.getStackSignature(exception2)).thenReturn("signature2");
+        File file1 = mockErrorLogFile(log1.getId());
+        File file2 = mockErrorLogFile(log2.getId());
+        File file3 = mockErrorLogFile(log3.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{file1, file2, file3});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return ((File) invocation.getArguments()[0]).getName();
+            }
+        });
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new RuntimeException());
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                String fileName = (String) invocation.getArguments()[0];
+                for (ManagedErrorLog log : Arrays.asList(log1, log2, log3)) {
+                    if (fileName.startsWith(log.getId().toString())) {
+                        return log;
+                    }
+                }
+                return null;
+            }
+        });
+
+        /* Start and send. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+
+        /* Only first crash of each signature is sent, the duplicate is deleted. */
+        verify(mockChannel).enqueue(log1, crashes.getGroupName());
+        verify(mockChannel, never()).enqueue(log2, crashes.getGroupName());
+        verify(mockChannel).enqueue(log3, crashes.getGroupName());
+        verifyStatic();
+        ErrorLogHelper.removeStoredErrorLogFile(log2.getId());
+        verifyStatic();
+        ErrorLogHelper.removeStoredThrowableFile(log2.getId());
+
+        /* Check duplicate count persisted. */
+        ArgumentCaptor<String> signatures = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> signaturesKey = ArgumentCaptor.forClass(String.class);
+        verifyStatic();
+        StorageHelper.PreferencesStorage.putString(signaturesKey.capture(), signatures.capture());
+        assertTrue(signatures.getValue().contains("signature1 " + log1.getId() + " 1000 1 java.lang.IllegalStateException"));
+        assertTrue(signatures.getValue().contains("signature2 " + log3.getId() + " 3000 0 java.lang.NullPointerException"));
+
+        /* Restart after the window: the duplicate count is sent as an attachment of the reported crash. */
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(StorageHelper.PreferencesStorage.getString(signaturesKey.getValue())).thenReturn(signatures.getValue());
+        Crashes.unsetInstance();
+        crashes = Crashes.getInstance();
+        mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        ArgumentCaptor<Log> countLog = ArgumentCaptor.forClass(Log.class);
+        verify(mockChannel).enqueue(countLog.capture(), eq(crashes.getGroupName()));
+        ErrorAttachmentLog attachment = (ErrorAttachmentLog) countLog.getValue();
+        assertEquals(log1.getId(), attachment.getErrorId());
+        assertEquals(Crashes.DUPLICATE_COUNT_ATTACHMENT_FILE_NAME, attachment.getFileName());
+        assertEquals(ErrorAttachmentLog.CONTENT_TYPE_TEXT_PLAIN, attachment.getContentType());
+        assertEquals("1 identical crashes not reported: java.lang.IllegalStateException", new String(attachment.getData(), "UTF-8"));
+        verifyStatic();
+        StorageHelper.PreferencesStorage.remove(signaturesKey.getValue());
+    }
+
+    @Test
+    public void duplicateCrashNotSeenByListeners() throws Exception {
+
+        /* Setup 2 identical crashes. */
+        com.microsoft.appcenter.crashes.ingestion.models.Exception exception = new com.microsoft.appcenter.crashes.ingestion.models.Exception();
+        exception.setType("java.lang.IllegalStateException");
+        final ManagedErrorLog log1 = mockCrashLog(exception, 1000);
+        final ManagedErrorLog log2 = mockCrashLog(exception, 2000);
+        final ErrorReport report1 = new ErrorReport();
+        final ErrorReport report2 = new ErrorReport();
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStackSignature(exception)).thenReturn("signature");
+        File file1 = mockErrorLogFile(log1.getId());
+        File file2 = mockErrorLogFile(log2.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{file1, file2});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(log1, null)).thenReturn(report1);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(log2, null)).thenReturn(report2);
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return ((File) invocation.getArguments()[0]).getName();
+            }
+        });
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                return ((String) invocation.getArguments()[0]).startsWith(log1.getId().toString()) ? log1 : log2;
+            }
+        });
+        CrashesListener listener = mock(CrashesListener.class);
+        when(listener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
+
+        /* Start and send. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(listener);
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+
+        /* The duplicate is counted before the listener is called. */
+        verify(listener).shouldProcess(report1);
+        verify(listener, never()).shouldProcess(report2);
+        verify(listener).getErrorAttachments(report1);
+        verify(listener, never()).getErrorAttachments(report2);
+        verify(mockChannel).enqueue(log1, crashes.getGroupName());
+        verify(mockChannel, never()).enqueue(log2, crashes.getGroupName());
+        verifyStatic();
+        ErrorLogHelper.removeStoredErrorLogFile(log2.getId());
+
+        /* Only the reported crash is notified when sending. */
+        crashes.getChannelListener().onBeforeSending(log1);
+        crashes.getChannelListener().onSuccess(log1);
+        verify(listener).onBeforeSending(report1);
+        verify(listener).onSendingSucceeded(report1);
+        verify(listener, never()).onBeforeSending(report2);
+        verify(listener, never()).onSendingSucceeded(report2);
+
+        /* In manual processing, the duplicate is not returned to the wrapper SDK either. */
+        Crashes.unsetInstance();
+        crashes = Crashes.getInstance();
+        crashes.setErrorLoaderExecutor(SYNCHRONOUS_EXECUTOR);
+        crashes.setLogSerializer(logSerializer);
+        WrapperSdkExceptionManager.setAutomaticProcessing(false);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        Collection<ErrorReport> reports = WrapperSdkExceptionManager.getUnprocessedErrorReports().get();
+        assertEquals(Collections.singletonList(report1), new ArrayList<>(reports));
+    }
+
+    @Test
+    public void sendCompressedMinidump() throws Exception {
+
+        /* Setup a pending native crash. */
+        com.microsoft.appcenter.crashes.ingestion.models.Exception exception = new com.microsoft.appcenter.crashes.ingestion.models.Exception();
+        exception.setType("minidump");
+        exception.setStackTrace("pending.dmp");
+        final ManagedErrorLog log = mockCrashLog(exception, 1000);
+        mockStatic(ErrorLogHelper.class);
+        File errorLogFile = mockErrorLogFile(log.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        ErrorReport report = new ErrorReport();
+        report.setThrowable(new NativeException());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new NativeException());
+        File compressedFile = errorStorageDirectory.newFile("pending.dmp.gz");
+        when(MinidumpHelper.compressMinidump(new File("pending.dmp"), Crashes.DEFAULT_MAX_MINIDUMP_SIZE)).thenReturn(compressedFile);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenReturn(log);
+
+        /* Start and send. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+
+        /* Pending minidumps are processed in background. */
+        verifyStatic();
+        MinidumpHelper.processPendingMinidumps(Crashes.DEFAULT_MAX_MINIDUMP_SIZE);
+
+        /* Native crashes are never counted as duplicates as their signature would include the dump path. */
+        verifyStatic(never());
+        ErrorLogHelper.getStackSignature(any(com.microsoft.appcenter.crashes.ingestion.models.Exception.class));
+
+        /* Crash is sent without fake stack trace, dump is streamed from the compressed file kept until sent. */
+        verifyStatic();
+        MinidumpHelper.markQueued(compressedFile);
+        ArgumentCaptor<Log> logs = ArgumentCaptor.forClass(Log.class);
+        verify(mockChannel, times(2)).enqueue(logs.capture(), eq(crashes.getGroupName()));
+        assertEquals(log, logs.getAllValues().get(0));
+        assertNull(exception.getStackTrace());
+        ErrorAttachmentLog attachment = (ErrorAttachmentLog) logs.getAllValues().get(1);
+        assertEquals(compressedFile, attachment.getDataFile());
+        assertEquals(log.getId(), attachment.getErrorId());
+        assertEquals(Crashes.MINIDUMP_ATTACHMENT_FILE_NAME, attachment.getFileName());
+        assertEquals(Crashes.MINIDUMP_ATTACHMENT_CONTENT_TYPE, attachment.getContentType());
+    }
+
+    @Test
+    public void sendCrashWithoutSkippedMinidump() throws Exception {
+        com.microsoft.appcenter.crashes.ingestion.models.Exception exception = new com.microsoft.appcenter.crashes.ingestion.models.Exception();
+        exception.setType("minidump");
+        exception.setStackTrace("pending.dmp");
+        ManagedErrorLog log = mockCrashLog(exception, 1000);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStackSignature(exception)).thenReturn("signature");
+        File errorLogFile = mockErrorLogFile(log.getId());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        ErrorReport report = new ErrorReport();
+        report.setThrowable(new NativeException());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new NativeException());
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenReturn(log);
+
+        /* Invalid size ignored. */
+        Crashes.setMaxMinidumpSize(0);
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString());
+        Crashes.setMaxMinidumpSize(1024);
+
+        /* Start and send. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+
+        /* Minidump too large: crash sent alone. */
+        verifyStatic();
+        MinidumpHelper.compressMinidump(new File("pending.dmp"), 1024);
+        verify(mockChannel).enqueue(log, crashes.getGroupName());
+        verify(mockChannel, never()).enqueue(isA(ErrorAttachmentLog.class), anyString());
+    }
+
+    @Test
+    public void minidumpDeletedOnceAttachmentSent() {
+        Crashes crashes = Crashes.getInstance();
+        crashes.onStarting(mAppCenterHandler);
+        File dumpFile = mock(File.class);
+        when(MinidumpHelper.isCompressedMinidumpFile(dumpFile)).thenReturn(true);
+        ErrorAttachmentLog dumpAttachment = ErrorAttachmentLog.attachmentWithFile(dumpFile, Crashes.MINIDUMP_ATTACHMENT_FILE_NAME, Crashes.MINIDUMP_ATTACHMENT_CONTENT_TYPE);
+        ErrorAttachmentLog otherAttachment = ErrorAttachmentLog.attachmentWithText("text", "text.txt");
+
+        /* Only minidump attachments are notified. */
+        Channel.SelectiveGroupListener listener = (Channel.SelectiveGroupListener) crashes.getChannelListener();
+        assertTrue(listener.shouldNotify(dumpAttachment));
+        assertFalse(listener.shouldNotify(otherAttachment));
+
+        /* File is deleted once sent or discarded. */
+        listener.onBeforeSending(dumpAttachment);
+        verifyStatic(never());
+        MinidumpHelper.deleteCompressedMinidump(dumpFile);
+        listener.onSuccess(dumpAttachment);
+        verifyStatic();
+        MinidumpHelper.deleteCompressedMinidump(dumpFile);
+        listener.onFailure(dumpAttachment, EXCEPTION);
+        verifyStatic(times(2));
+        MinidumpHelper.deleteCompressedMinidump(dumpFile);
+    }
+
+    private static ManagedErrorLog mockCrashLog(com.microsoft.appcenter.crashes.ingestion.models.Exception exception, long timestamp) {
+        ManagedErrorLog log = mock(ManagedErrorLog.class);
+        when(log.getId()).thenReturn(UUID.randomUUID());
+        when(log.getException()).thenReturn(exception);
+        when(log.getTimestamp()).thenReturn(new Date(timestamp));
+        return log;
+    }
+
     @Test
     public void manualProcessing() throws Exception {
 
@@ -1139,20 +1879,33 @@ public class CrashesTest {
         ErrorReport report1 = new ErrorReport();
         report1.setId(UUIDUtils.randomUUID().toString());
         ErrorReport report2 = new ErrorReport();
+        report2.setId(UUIDUtils.randomUUID().toString());
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
+        File errorLogFile1 = mockErrorLogFile(UUID.fromString(report1.getId()));
+        File errorLogFile2 = mockErrorLogFile(UUID.fromString(report2.getId()));
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile1, errorLogFile2});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report1).thenReturn(report2);
-        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+
+                /* Use file name as content to decode a log matching the file. */
+                return ((File) invocation.getArguments()[0]).getName();
+            }
+        });
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new RuntimeException());
         LogSerializer logSerializer = mock(LogSerializer.class);
         when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
 
             @Override
             public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                String fileName = (String) invocation.getArguments()[0];
                 ManagedErrorLog log = mock(ManagedErrorLog.class);
-                when(log.getId()).thenReturn(UUID.randomUUID());
+                when(log.getId()).thenReturn(UUID.fromString(fileName.substring(0, fileName.length() - ErrorLogHelper.ERROR_LOG_FILE_EXTENSION.length())));
                 return log;
             }
         });
@@ -1224,6 +1977,7 @@ public class CrashesTest {
         /* Reset instance to test another tine with always send. */
         Crashes.unsetInstance();
         crashes = Crashes.getInstance();
+        crashes.setErrorLoaderExecutor(SYNCHRONOUS_EXECUTOR);
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report1).thenReturn(report2);
         WrapperSdkExceptionManager.setAutomaticProcessing(false);
         crashes.setLogSerializer(logSerializer);
@@ -1248,19 +2002,31 @@ public class CrashesTest {
         report1.setId(UUIDUtils.randomUUID().toString());
         ErrorReport report2 = new ErrorReport();
         mockStatic(ErrorLogHelper.class);
-        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
+        File errorLogFile1 = mockErrorLogFile(UUID.randomUUID());
+        File errorLogFile2 = mockErrorLogFile(UUID.randomUUID());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile1, errorLogFile2});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report1).thenReturn(report2);
-        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+
+                /* Use file name as content to decode a log matching the file. */
+                return ((File) invocation.getArguments()[0]).getName();
+            }
+        });
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new RuntimeException());
         LogSerializer logSerializer = mock(LogSerializer.class);
         when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
 
             @Override
             public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                String fileName = (String) invocation.getArguments()[0];
                 ManagedErrorLog log = mock(ManagedErrorLog.class);
-                when(log.getId()).thenReturn(UUID.randomUUID());
+                when(log.getId()).thenReturn(UUID.fromString(fileName.substring(0, fileName.length() - ErrorLogHelper.ERROR_LOG_FILE_EXTENSION.length())));
                 return log;
             }
         });
@@ -1292,6 +2058,123 @@ public class CrashesTest {
         verify(mockChannel, never()).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
     }
 
+    private Crashes startWithCrashRecord(File recordFile, LogSerializer logSerializer) {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashRecordFiles()).thenReturn(new File[]{recordFile});
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        return crashes;
+    }
+
+    @Test
+    public void processCrashRecord() throws Exception {
+
+        /* Mock a record without device properties. */
+        File recordFile = mock(File.class);
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        mockStatic(CrashRecordHelper.class);
+        when(CrashRecordHelper.readCrashRecord(recordFile)).thenReturn(errorLog);
+        CrashRecordHelper.CrashContext crashContext = mock(CrashRecordHelper.CrashContext.class);
+        when(CrashRecordHelper.createCrashContext(any(Context.class), anyLong())).thenReturn(crashContext);
+        Device device = mock(Device.class);
+        mockStatic(DeviceInfoHelper.class);
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(device);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(errorLog)).thenReturn("{}");
+        Crashes crashes = startWithCrashRecord(recordFile, logSerializer);
+
+        /* Crash context captured when enabled. */
+        assertEquals(crashContext, Whitebox.getInternalState(crashes, "mCrashContext"));
+
+        /* Verify error log saved with device properties at restart and a throwable placeholder. */
+        assertEquals(device, errorLog.getDevice());
+        File errorLogFile = new File(errorStorageDirectory.getRoot(), errorLog.getId() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        verifyStatic();
+        StorageHelper.InternalStorage.write(errorLogFile, "{}");
+        assertTrue(new File(errorStorageDirectory.getRoot(), errorLog.getId() + ErrorLogHelper.THROWABLE_FILE_EXTENSION).exists());
+        verifyStatic();
+        StorageHelper.InternalStorage.delete(recordFile);
+
+        /* Crash context removed when disabled. */
+        Crashes.setEnabled(false);
+        assertNull(Whitebox.getInternalState(crashes, "mCrashContext"));
+    }
+
+    @Test
+    public void processCrashRecordKeepsDevice() throws Exception {
+        File recordFile = mock(File.class);
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        Device device = mock(Device.class);
+        errorLog.setDevice(device);
+        mockStatic(CrashRecordHelper.class);
+        when(CrashRecordHelper.readCrashRecord(recordFile)).thenReturn(errorLog);
+        mockStatic(DeviceInfoHelper.class);
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(mock(Device.class));
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(errorLog)).thenReturn("{}");
+
+        /* Throwable saved before the process died. */
+        File throwableFile = new File(errorStorageDirectory.getRoot(), errorLog.getId() + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+        assertTrue(throwableFile.createNewFile());
+        startWithCrashRecord(recordFile, logSerializer);
+
+        /* Verify device captured before crash is kept. */
+        assertEquals(device, errorLog.getDevice());
+        verifyStatic();
+        StorageHelper.InternalStorage.write(any(File.class), eq("{}"));
+        assertTrue(throwableFile.exists());
+        verifyStatic();
+        StorageHelper.InternalStorage.delete(recordFile);
+    }
+
+    @Test
+    public void processCorruptedCrashRecord() throws Exception {
+        File recordFile = mock(File.class);
+        IOException exception = new IOException("truncated");
+        mockStatic(CrashRecordHelper.class);
+        when(CrashRecordHelper.readCrashRecord(recordFile)).thenThrow(exception);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        startWithCrashRecord(recordFile, logSerializer);
+
+        /* Verify record discarded. */
+        verify(logSerializer, never()).serializeLog(any(Log.class));
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(exception));
+        verifyStatic();
+        StorageHelper.InternalStorage.delete(recordFile);
+    }
+
+    @Test
+    public void processCrashRecordFailsToSaveErrorLog() throws Exception {
+        File recordFile = mock(File.class);
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        errorLog.setDevice(mock(Device.class));
+        mockStatic(CrashRecordHelper.class);
+        when(CrashRecordHelper.readCrashRecord(recordFile)).thenReturn(errorLog);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        JSONException exception = new JSONException("mock");
+        when(logSerializer.serializeLog(errorLog)).thenThrow(exception);
+        startWithCrashRecord(recordFile, logSerializer);
+
+        /* Verify files cleaned up. */
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(exception));
+        verifyStatic();
+        ErrorLogHelper.removeStoredErrorLogFile(errorLog.getId());
+        verifyStatic();
+        ErrorLogHelper.removeStoredThrowableFile(errorLog.getId());
+        verifyStatic();
+        StorageHelper.InternalStorage.delete(recordFile);
+    }
+
     private ManagedErrorLog testNativeCrashLog(long appStartTime, long crashTime, boolean correlateSession) throws Exception {
 
         /* Setup mock for a crash in disk. */
@@ -1313,13 +2196,11 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(mock(File.class));
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{minidumpFile});
-        File pendingDir = mock(File.class);
-        Whitebox.setInternalState(pendingDir, "path", "");
-        when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(pendingDir);
+        when(MinidumpHelper.getPendingMinidumpFile(any(UUID.class))).thenReturn(new File("mockFile"));
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new NativeException());
+        when(ThrowableHelper.readThrowable(any(File.class))).thenReturn(new NativeException());
         LogSerializer logSerializer = mock(LogSerializer.class);
         ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
         when(logSerializer.serializeLog(log.capture())).thenReturn("{}");
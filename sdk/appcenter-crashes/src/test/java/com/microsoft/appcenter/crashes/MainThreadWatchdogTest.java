@@ -0,0 +1,182 @@
+package com.microsoft.appcenter.crashes;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@SuppressWarnings("unchecked")
+@PrepareForTest({SystemClock.class, Debug.class, Looper.class, AppCenterLog.class})
+public class MainThreadWatchdogTest {
+
+    private static final long PING_INTERVAL = 1000;
+
+    private static final long STALL_THRESHOLD = 5000;
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Mock
+    private Handler mHandler;
+
+    @Mock
+    private MainThreadWatchdog.Listener mListener;
+
+    private MainThreadWatchdog mWatchdog;
+
+    @Before
+    public void setUp() {
+        mockStatic(SystemClock.class);
+        mockStatic(Debug.class);
+        mockStatic(AppCenterLog.class);
+        Looper looper = mock(Looper.class);
+        when(mHandler.getLooper()).thenReturn(looper);
+        when(looper.getThread()).thenReturn(Thread.currentThread());
+        mWatchdog = new MainThreadWatchdog(mHandler, PING_INTERVAL, STALL_THRESHOLD, false, mListener);
+    }
+
+    private void tickAt(long uptime) {
+        when(SystemClock.uptimeMillis()).thenReturn(uptime);
+        mWatchdog.tick();
+    }
+
+    private Runnable verifyPing(int times) {
+        ArgumentCaptor<Runnable> pong = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler, times(times)).post(pong.capture());
+        return pong.getValue();
+    }
+
+    @Test
+    public void healthyMainThread() {
+
+        /* Each answered ping triggers the next one. */
+        tickAt(1000);
+        verifyPing(1).run();
+        tickAt(2000);
+        verifyPing(2).run();
+        tickAt(3000);
+        verifyPing(3);
+        verify(mListener, never()).onMainThreadStall(any(StackTraceElement[].class), any(Map.class), anyLong());
+    }
+
+    @Test
+    public void stallReportedOncePerStall() {
+        tickAt(1000);
+        Runnable pong = verifyPing(1);
+
+        /* Below threshold: no report, no new ping while waiting. */
+        tickAt(5999);
+        verify(mListener, never()).onMainThreadStall(any(StackTraceElement[].class), any(Map.class), anyLong());
+
+        /* Threshold reached. */
+        tickAt(6000);
+        ArgumentCaptor<StackTraceElement[]> stackTrace = ArgumentCaptor.forClass(StackTraceElement[].class);
+        verify(mListener).onMainThreadStall(stackTrace.capture(), (Map<Thread, StackTraceElement[]>) isNull(), eq(5000L));
+        assertTrue(stackTrace.getValue().length > 0);
+
+        /* Same stall not reported again. */
+        tickAt(20000);
+        verifyPing(1);
+        verifyNoMoreInteractions(mListener);
+
+        /* Recover then stall again within a minute: not reported. */
+        pong.run();
+        tickAt(21000);
+        pong = verifyPing(2);
+        tickAt(21000 + STALL_THRESHOLD);
+        verifyNoMoreInteractions(mListener);
+
+        /* Recover then stall again after a minute: reported. */
+        pong.run();
+        tickAt(6000 + MainThreadWatchdog.MIN_REPORT_INTERVAL);
+        verifyPing(3);
+        tickAt(6000 + MainThreadWatchdog.MIN_REPORT_INTERVAL + STALL_THRESHOLD);
+        verify(mListener, times(2)).onMainThreadStall(any(StackTraceElement[].class), (Map<Thread, StackTraceElement[]>) isNull(), eq(STALL_THRESHOLD));
+    }
+
+    @Test
+    public void stallIgnoredWhileDebugging() {
+        when(Debug.isDebuggerConnected()).thenReturn(true);
+        tickAt(1000);
+        verifyPing(1);
+        tickAt(10000);
+        verify(mListener, never()).onMainThreadStall(any(StackTraceElement[].class), any(Map.class), anyLong());
+    }
+
+    @Test
+    public void captureAllThreads() {
+        mWatchdog = new MainThreadWatchdog(mHandler, PING_INTERVAL, STALL_THRESHOLD, true, mListener);
+        tickAt(1000);
+        tickAt(7000);
+        ArgumentCaptor<Map> allStackTraces = ArgumentCaptor.forClass(Map.class);
+        verify(mListener).onMainThreadStall(any(StackTraceElement[].class), allStackTraces.capture(), eq(6000L));
+        assertNotNull(allStackTraces.getValue());
+        assertTrue(allStackTraces.getValue().containsKey(Thread.currentThread()));
+    }
+
+    @Test
+    public void startAndStop() throws InterruptedException {
+        final CountDownLatch posted = new CountDownLatch(1);
+        final Thread[] watchdogThread = new Thread[1];
+        doAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                watchdogThread[0] = Thread.currentThread();
+                posted.countDown();
+                return true;
+            }
+        }).when(mHandler).post(notNull(Runnable.class));
+        mWatchdog.start();
+
+        /* Starting twice has no effect. */
+        mWatchdog.start();
+        assertTrue(posted.await(5, TimeUnit.SECONDS));
+        assertEquals(MainThreadWatchdog.THREAD_NAME, watchdogThread[0].getName());
+        assertTrue(watchdogThread[0].isDaemon());
+
+        /* Stop interrupts the thread and cancels the pending ping. */
+        mWatchdog.stop();
+        mWatchdog.join();
+        assertFalse(watchdogThread[0].isAlive());
+        verify(mHandler).removeCallbacks(any(Runnable.class));
+
+        /* Stopping twice has no effect. */
+        mWatchdog.stop();
+        verify(mHandler).removeCallbacks(any(Runnable.class));
+    }
+}
@@ -1,15 +1,12 @@
 package com.microsoft.appcenter.crashes;
 
-import android.content.Context;
 import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.AppCenterHandler;
-import com.microsoft.appcenter.crashes.ingestion.models.Exception;
-import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.utils.CrashRecordHelper;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
-import com.microsoft.appcenter.ingestion.models.Log;
-import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.crashes.utils.ThrowableHelper;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -17,7 +14,6 @@ import com.microsoft.appcenter.utils.ShutdownHelper;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
-import org.json.JSONException;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -40,9 +36,9 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
-import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
@@ -52,7 +48,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 @SuppressWarnings("unused")
-@PrepareForTest({SystemClock.class, StorageHelper.PreferencesStorage.class, StorageHelper.InternalStorage.class, Crashes.class, ErrorLogHelper.class, DeviceInfoHelper.class, ShutdownHelper.class, AppCenterLog.class, AppCenter.class, HandlerUtils.class})
+@PrepareForTest({SystemClock.class, StorageHelper.PreferencesStorage.class, StorageHelper.InternalStorage.class, Crashes.class, ErrorLogHelper.class, CrashRecordHelper.class, ThrowableHelper.class, DeviceInfoHelper.class, ShutdownHelper.class, AppCenterLog.class, AppCenter.class, HandlerUtils.class})
 public class UncaughtExceptionHandlerTest {
 
     private static final String CRASHES_ENABLED_KEY = KEY_ENABLED + "_" + Crashes.getInstance().getServiceName();
@@ -72,6 +68,7 @@ public class UncaughtExceptionHandlerTest {
         mockStatic(SystemClock.class);
         mockStatic(StorageHelper.PreferencesStorage.class);
         mockStatic(StorageHelper.InternalStorage.class);
+        mockStatic(ThrowableHelper.class);
         mockStatic(ErrorLogHelper.class);
         mockStatic(DeviceInfoHelper.class);
         mockStatic(System.class);
@@ -96,13 +93,14 @@ public class UncaughtExceptionHandlerTest {
         }).when(StorageHelper.PreferencesStorage.class);
         StorageHelper.PreferencesStorage.putBoolean(eq(CRASHES_ENABLED_KEY), anyBoolean());
 
-        ManagedErrorLog errorLogMock = mock(ManagedErrorLog.class);
+        mockStatic(CrashRecordHelper.class);
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(new File("."));
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
-        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean()))
-                .thenReturn(errorLogMock);
+        when(CrashRecordHelper.writeCrashRecord(any(CrashRecordHelper.CrashContext.class), any(Thread.class), any(Throwable.class), Matchers.<Map<Thread, StackTraceElement[]>>any()))
+                .thenReturn(UUID.randomUUID());
 
-        when(errorLogMock.getId()).thenReturn(UUID.randomUUID());
+        /* Simulate crash context captured at start. */
+        Whitebox.setInternalState(Crashes.getInstance(), "mCrashContext", mock(CrashRecordHelper.CrashContext.class));
 
         mDefaultExceptionHandler = mock(Thread.UncaughtExceptionHandler.class);
         Thread.setDefaultUncaughtExceptionHandler(mDefaultExceptionHandler);
@@ -146,7 +144,7 @@ public class UncaughtExceptionHandlerTest {
     }
 
     @Test
-    public void handleExceptionAndPassOn() {
+    public void handleExceptionAndPassOn() throws java.lang.Exception {
         mExceptionHandler.register();
 
         // Verify that the exception is being handled and passed on to the previously defined UncaughtExceptionHandler
@@ -156,17 +154,19 @@ public class UncaughtExceptionHandlerTest {
         verify(mDefaultExceptionHandler).uncaughtException(thread, exception);
 
         verifyStatic();
-        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean());
+        CrashRecordHelper.writeCrashRecord(any(CrashRecordHelper.CrashContext.class), eq(thread), eq(exception), Matchers.<Map<Thread, StackTraceElement[]>>any());
+        verifyStatic();
+        ThrowableHelper.writeThrowable(any(File.class), eq(exception));
     }
 
     @Test
-    public void handleExceptionAndPassOnExplicitlySetDontIgnore() {
+    public void handleExceptionAndPassOnExplicitlySetDontIgnore() throws java.lang.Exception {
         mExceptionHandler.setIgnoreDefaultExceptionHandler(false);
         handleExceptionAndPassOn();
     }
 
     @Test
-    public void handleExceptionAndIgnoreDefaultHandler() {
+    public void handleExceptionAndIgnoreDefaultHandler() throws java.lang.Exception {
 
         /* Register crash handler */
         mExceptionHandler.register();
@@ -179,27 +179,55 @@ public class UncaughtExceptionHandlerTest {
         verifyNoMoreInteractions(mDefaultExceptionHandler);
 
         verifyStatic();
-        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean());
+        CrashRecordHelper.writeCrashRecord(any(CrashRecordHelper.CrashContext.class), eq(thread), eq(exception), Matchers.<Map<Thread, StackTraceElement[]>>any());
         verifyStatic();
         System.exit(10);
     }
 
     @Test
-    public void testInvalidJsonException() throws JSONException {
+    public void handleExceptionWhenDisabled() throws java.lang.Exception {
+        mExceptionHandler.register();
+
+        /* Crash context is removed when disabled. */
+        Whitebox.setInternalState(Crashes.getInstance(), "mCrashContext", (Object) null);
+        Thread thread = Thread.currentThread();
+        RuntimeException exception = new RuntimeException();
+        mExceptionHandler.uncaughtException(thread, exception);
+        verify(mDefaultExceptionHandler).uncaughtException(thread, exception);
+
+        /* Nothing saved. */
+        verifyStatic(never());
+        CrashRecordHelper.writeCrashRecord(any(CrashRecordHelper.CrashContext.class), any(Thread.class), any(Throwable.class), Matchers.<Map<Thread, StackTraceElement[]>>any());
+        verifyStatic(never());
+        ThrowableHelper.writeThrowable(any(File.class), any(Throwable.class));
+    }
+
+    @Test
+    public void saveOnlyOnce() throws java.lang.Exception {
         mExceptionHandler.register();
+        Thread thread = Thread.currentThread();
+        mExceptionHandler.uncaughtException(thread, new RuntimeException());
+        mExceptionHandler.uncaughtException(thread, new RuntimeException());
+        verifyStatic();
+        CrashRecordHelper.writeCrashRecord(any(CrashRecordHelper.CrashContext.class), any(Thread.class), any(Throwable.class), Matchers.<Map<Thread, StackTraceElement[]>>any());
+    }
 
-        LogSerializer logSerializer = mock(LogSerializer.class);
-        final JSONException jsonException = new JSONException("Fake JSON serializing exception");
-        when(logSerializer.serializeLog(any(Log.class))).thenThrow(jsonException);
+    @Test
+    public void testCrashRecordIOException() throws java.lang.Exception {
+        mExceptionHandler.register();
 
-        Whitebox.setInternalState(Crashes.getInstance(), "mLogSerializer", logSerializer);
+        IOException ioException = new IOException("Fake IO exception");
+        when(CrashRecordHelper.writeCrashRecord(any(CrashRecordHelper.CrashContext.class), any(Thread.class), any(Throwable.class), Matchers.<Map<Thread, StackTraceElement[]>>any()))
+                .thenThrow(ioException);
 
         final Thread thread = Thread.currentThread();
         final RuntimeException exception = new RuntimeException();
         mExceptionHandler.uncaughtException(thread, exception);
 
         verifyStatic();
-        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(jsonException));
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(ioException));
+        verifyStatic(never());
+        ThrowableHelper.writeThrowable(any(File.class), any(Throwable.class));
 
         verify(mDefaultExceptionHandler).uncaughtException(thread, exception);
     }
@@ -209,8 +237,8 @@ public class UncaughtExceptionHandlerTest {
         mExceptionHandler.register();
 
         IOException ioException = new IOException("Fake IO exception");
-        PowerMockito.doThrow(ioException).when(StorageHelper.InternalStorage.class);
-        StorageHelper.InternalStorage.write(any(File.class), anyString());
+        PowerMockito.doThrow(ioException).when(ThrowableHelper.class);
+        ThrowableHelper.writeThrowable(any(File.class), any(Throwable.class));
 
         final Thread thread = Thread.currentThread();
         final RuntimeException exception = new RuntimeException();
@@ -6,7 +6,9 @@ import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.AppCenterHandler;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.utils.CrashRecordHelper;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableHelper;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -22,6 +24,7 @@ import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.internal.util.reflection.Whitebox;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -52,7 +55,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
-@PrepareForTest({AppCenter.class, WrapperSdkExceptionManager.class, AppCenterLog.class, StorageHelper.PreferencesStorage.class, StorageHelper.InternalStorage.class, Crashes.class, ErrorLogHelper.class, HandlerUtils.class})
+@PrepareForTest({AppCenter.class, WrapperSdkExceptionManager.class, AppCenterLog.class, StorageHelper.PreferencesStorage.class, StorageHelper.InternalStorage.class, Crashes.class, ErrorLogHelper.class, ThrowableHelper.class, HandlerUtils.class})
 public class WrapperSdkExceptionManagerTest {
 
     private static final String CRASHES_ENABLED_KEY = KEY_ENABLED + "_" + Crashes.getInstance().getServiceName();
@@ -69,6 +72,7 @@ public class WrapperSdkExceptionManagerTest {
         mockStatic(AppCenter.class);
         mockStatic(StorageHelper.PreferencesStorage.class);
         mockStatic(StorageHelper.InternalStorage.class);
+        mockStatic(ThrowableHelper.class);
         mockStatic(AppCenterLog.class);
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
@@ -98,6 +102,9 @@ public class WrapperSdkExceptionManagerTest {
         AppCenterHandler handler = mock(AppCenterHandler.class);
         Crashes.getInstance().onStarting(handler);
         doAnswer(runNow).when(handler).post(any(Runnable.class), any(Runnable.class));
+
+        /* Simulate crash context captured at start. */
+        Whitebox.setInternalState(Crashes.getInstance(), "mCrashContext", mock(CrashRecordHelper.CrashContext.class));
     }
 
     @Test
@@ -183,7 +190,7 @@ public class WrapperSdkExceptionManagerTest {
         verifyStatic();
         StorageHelper.InternalStorage.writeObject(any(File.class), eq(data));
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ThrowableHelper.writeThrowable(any(File.class), eq(throwable));
 
         /* We can't do it twice in the same process. */
         data = new byte[]{'e'};
@@ -191,7 +198,7 @@ public class WrapperSdkExceptionManagerTest {
         verifyStatic(never());
         StorageHelper.InternalStorage.writeObject(any(File.class), eq(data));
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ThrowableHelper.writeThrowable(any(File.class), eq(throwable));
     }
 
     @Test
@@ -204,12 +211,12 @@ public class WrapperSdkExceptionManagerTest {
         verifyStatic(never());
         StorageHelper.InternalStorage.writeObject(any(File.class), isNull(byte[].class));
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ThrowableHelper.writeThrowable(any(File.class), eq(throwable));
 
         /* We can't do it twice in the same process. */
         WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), null);
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ThrowableHelper.writeThrowable(any(File.class), eq(throwable));
     }
 
     @Test
@@ -347,6 +354,9 @@ public class WrapperSdkExceptionManagerTest {
     @Test
     public void saveWrapperExceptionWhenSDKDisabled() throws JSONException {
         when(StorageHelper.PreferencesStorage.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(false);
+
+        /* Crash context is removed when disabled. */
+        Whitebox.setInternalState(Crashes.getInstance(), "mCrashContext", (Object) null);
         LogSerializer logSerializer = Mockito.mock(LogSerializer.class);
         Crashes.getInstance().setLogSerializer(logSerializer);
         WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), new byte[]{'d'});
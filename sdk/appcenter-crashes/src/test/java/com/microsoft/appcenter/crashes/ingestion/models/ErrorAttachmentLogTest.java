@@ -1,7 +1,11 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.CHARSET;
@@ -9,11 +13,15 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 
 @SuppressWarnings({"unused", "ConstantConditions"})
 public class ErrorAttachmentLogTest {
 
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
     @Test
     public void attachmentWithText() {
         String text = "Hello World!";
@@ -37,6 +45,36 @@ public class ErrorAttachmentLogTest {
         assertEquals(contentType, attachment.getContentType());
     }
 
+    @Test
+    public void attachmentWithFile() throws IOException {
+        File file = mTemporaryFolder.newFile("app.log");
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithFile(file, "app.log", ErrorAttachmentLog.CONTENT_TYPE_TEXT_PLAIN);
+        assertNotNull(attachment);
+        assertNull(attachment.getData());
+        assertEquals(file, attachment.getDataFile());
+        assertEquals("app.log", attachment.getFileName());
+        assertEquals(ErrorAttachmentLog.CONTENT_TYPE_TEXT_PLAIN, attachment.getContentType());
+
+        /* Valid only while file can be read. */
+        attachment.setId(UUID.randomUUID());
+        attachment.setErrorId(UUID.randomUUID());
+        assertTrue(attachment.isValid());
+        assertTrue(file.delete());
+        assertFalse(attachment.isValid());
+
+        /* Data file is part of equality. */
+        ErrorAttachmentLog other = ErrorAttachmentLog.attachmentWithFile(file, "app.log", ErrorAttachmentLog.CONTENT_TYPE_TEXT_PLAIN);
+        other.setId(attachment.getId());
+        other.setErrorId(attachment.getErrorId());
+        assertEquals(attachment, other);
+        assertEquals(attachment.hashCode(), other.hashCode());
+        other.setDataFile(new File(file.getParentFile(), "other.log"));
+        assertNotEquals(attachment, other);
+        other.setDataFile(null);
+        assertNotEquals(attachment, other);
+        assertNotEquals(other, attachment);
+    }
+
     @Test
     public void attachmentWithoutFilename() {
         String text = "Hello World!";
@@ -0,0 +1,459 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.app.ActivityManager;
+import android.app.ActivityManager.RunningAppProcessInfo;
+import android.content.Context;
+import android.os.Process;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.crashes.ingestion.models.Thread;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.DeviceInfoHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.test.TestUtils.generateString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@SuppressWarnings("unused")
+@PrepareForTest({DeviceInfoHelper.class, Process.class, AppCenterLog.class})
+public class CrashRecordHelperTest {
+
+    @Rule
+    public PowerMockRule mRule = new PowerMockRule();
+
+    @Rule
+    public TemporaryFolder mErrorStorageDirectory = new TemporaryFolder();
+
+    private Context mContext;
+
+    private Device mDevice;
+
+    private static File getRecordFile(UUID id, File directory) {
+        return new File(directory, id.toString() + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+    }
+
+    @Before
+    public void setUp() throws java.lang.Exception {
+        mockStatic(DeviceInfoHelper.class);
+        mockStatic(Process.class);
+        mockStatic(AppCenterLog.class);
+        ErrorLogHelper.setErrorLogDirectory(mErrorStorageDirectory.getRoot());
+
+        /* Mock process. */
+        mContext = mock(Context.class);
+        when(Process.myPid()).thenReturn(123);
+        ActivityManager activityManager = mock(ActivityManager.class);
+        RunningAppProcessInfo runningAppProcessInfo = new RunningAppProcessInfo(null, 0, null);
+        runningAppProcessInfo.pid = 123;
+        runningAppProcessInfo.processName = "right.process";
+        when(mContext.getSystemService(Context.ACTIVITY_SERVICE)).thenReturn(activityManager);
+        when(activityManager.getRunningAppProcesses()).thenReturn(Collections.singletonList(runningAppProcessInfo));
+
+        /* Mock device. */
+        mDevice = new Device();
+        mDevice.setSdkName("appcenter.android");
+        mDevice.setSdkVersion("1.0.0");
+        mDevice.setModel("model");
+        mDevice.setOemName("oem");
+        mDevice.setOsName("Android");
+        mDevice.setOsVersion("8.1.0");
+        mDevice.setOsApiLevel(27);
+        mDevice.setLocale("en_US");
+        mDevice.setTimeZoneOffset(-420);
+        mDevice.setScreenSize("1080x1920");
+        mDevice.setAppVersion("1.0");
+        mDevice.setAppBuild("1");
+        mDevice.setAppNamespace("com.contoso");
+        mDevice.setWrapperSdkName("appcenter.xamarin");
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(mDevice);
+    }
+
+    @After
+    public void tearDown() {
+        ErrorLogHelper.setErrorLogDirectory(null);
+    }
+
+    @Test
+    public void writeAndRead() throws java.lang.Exception {
+
+        /* Dummy coverage of utils class. */
+        new CrashRecordHelper();
+
+        /* Capture context then crash. */
+        CrashRecordHelper.CrashContext crashContext = CrashRecordHelper.createCrashContext(mContext, 900);
+        java.lang.Thread thread = java.lang.Thread.currentThread();
+        RuntimeException exception = new RuntimeException("outer", new IOException("inner"));
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new HashMap<>();
+        allStackTraces.put(thread, thread.getStackTrace());
+        long before = System.currentTimeMillis();
+        UUID id = CrashRecordHelper.writeCrashRecord(crashContext, thread, exception, allStackTraces);
+        long after = System.currentTimeMillis();
+        File recordFile = getRecordFile(id, mErrorStorageDirectory.getRoot());
+        assertTrue(recordFile.exists());
+        assertEquals(Collections.singletonList(recordFile), Arrays.asList(ErrorLogHelper.getStoredCrashRecordFiles()));
+
+        /* Verify error log built from record. */
+        ManagedErrorLog errorLog = CrashRecordHelper.readCrashRecord(recordFile);
+        assertEquals(id, errorLog.getId());
+        assertTrue(errorLog.getTimestamp().getTime() >= before);
+        assertTrue(errorLog.getTimestamp().getTime() <= after);
+        assertEquals(new Date(900), errorLog.getAppLaunchTimestamp());
+        assertEquals(Integer.valueOf(123), errorLog.getProcessId());
+        assertEquals("right.process", errorLog.getProcessName());
+        assertEquals(mDevice, errorLog.getDevice());
+        assertEquals(Long.valueOf(thread.getId()), errorLog.getErrorThreadId());
+        assertEquals(thread.getName(), errorLog.getErrorThreadName());
+        assertEquals(Boolean.TRUE, errorLog.getFatal());
+
+        /* Exception and cause. */
+        Exception modelException = errorLog.getException();
+        assertEquals(RuntimeException.class.getName(), modelException.getType());
+        assertEquals("outer", modelException.getMessage());
+        assertEquals(exception.getStackTrace().length, modelException.getFrames().size());
+        StackFrame frame = modelException.getFrames().get(0);
+        StackTraceElement element = exception.getStackTrace()[0];
+        assertEquals(element.getClassName(), frame.getClassName());
+        assertEquals(element.getMethodName(), frame.getMethodName());
+        assertEquals(element.getFileName(), frame.getFileName());
+        assertEquals(Integer.valueOf(element.getLineNumber()), frame.getLineNumber());
+        assertEquals(1, modelException.getInnerExceptions().size());
+        Exception innerException = modelException.getInnerExceptions().get(0);
+        assertEquals(IOException.class.getName(), innerException.getType());
+        assertEquals("inner", innerException.getMessage());
+        assertNull(innerException.getInnerExceptions());
+
+        /* Threads. */
+        assertEquals(1, errorLog.getThreads().size());
+        Thread modelThread = errorLog.getThreads().get(0);
+        assertEquals(thread.getId(), modelThread.getId());
+        assertEquals(thread.getName(), modelThread.getName());
+        assertEquals(allStackTraces.get(thread).length, modelThread.getFrames().size());
+    }
+
+    @Test
+    public void writeAndReadWithoutDevice() throws java.lang.Exception {
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenThrow(new DeviceInfoHelper.DeviceInfoException("mock", new RuntimeException()));
+        when(mContext.getSystemService(Context.ACTIVITY_SERVICE)).thenReturn(null);
+        CrashRecordHelper.CrashContext crashContext = CrashRecordHelper.createCrashContext(mContext, 0);
+        java.lang.Thread thread = java.lang.Thread.currentThread();
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = Collections.emptyMap();
+        UUID id = CrashRecordHelper.writeCrashRecord(crashContext, thread, new IllegalStateException(), allStackTraces);
+        ManagedErrorLog errorLog = CrashRecordHelper.readCrashRecord(getRecordFile(id, mErrorStorageDirectory.getRoot()));
+        assertNull(errorLog.getDevice());
+        assertNull(errorLog.getProcessName());
+        assertNull(errorLog.getException().getMessage());
+        assertNull(errorLog.getException().getInnerExceptions());
+        assertEquals(0, errorLog.getThreads().size());
+    }
+
+    @Test
+    public void longMessageAndTruncatedFrames() throws java.lang.Exception {
+
+        /* Message too long for DataOutputStream.writeUTF and more frames than limit. */
+        String message = generateString(70000, '\u00e9');
+        RuntimeException exception = new RuntimeException(message);
+        StackTraceElement[] stackTrace = new StackTraceElement[ErrorLogHelper.FRAME_LIMIT * 2];
+        for (int i = 0; i < stackTrace.length; i++) {
+            stackTrace[i] = new StackTraceElement("ClassName", "method" + i, null, i);
+        }
+        exception.setStackTrace(stackTrace);
+        CrashRecordHelper.CrashContext crashContext = CrashRecordHelper.createCrashContext(mContext, 0);
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = Collections.emptyMap();
+        UUID id = CrashRecordHelper.writeCrashRecord(crashContext, java.lang.Thread.currentThread(), exception, allStackTraces);
+        ManagedErrorLog errorLog = CrashRecordHelper.readCrashRecord(getRecordFile(id, mErrorStorageDirectory.getRoot()));
+        assertEquals(message, errorLog.getException().getMessage());
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, errorLog.getException().getFrames().size());
+        assertEquals("method0", errorLog.getException().getFrames().get(0).getMethodName());
+        assertNull(errorLog.getException().getFrames().get(0).getFileName());
+        assertEquals("method" + (stackTrace.length - 1), errorLog.getException().getFrames().get(ErrorLogHelper.FRAME_LIMIT - 1).getMethodName());
+    }
+
+    @Test
+    public void identicalFramesAndStacksWrittenOnce() throws java.lang.Exception {
+        StackTraceElement common = new StackTraceElement("android.os.Looper", "loop", "Looper.java", 164);
+        StackTraceElement[] stackTrace = {new StackTraceElement("java.lang.Object", "wait", null, -2), common};
+        RuntimeException exception = new RuntimeException();
+        exception.setStackTrace(new StackTraceElement[]{new StackTraceElement("com.contoso.Main", "crash", "Main.java", 42), common});
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            allStackTraces.put(new java.lang.Thread(), stackTrace.clone());
+        }
+        CrashRecordHelper.CrashContext crashContext = CrashRecordHelper.createCrashContext(mContext, 0);
+        UUID id = CrashRecordHelper.writeCrashRecord(crashContext, java.lang.Thread.currentThread(), exception, allStackTraces);
+        ManagedErrorLog errorLog = CrashRecordHelper.readCrashRecord(getRecordFile(id, mErrorStorageDirectory.getRoot()));
+
+        /* Threads share the same frames, exception shares the common frame. */
+        assertEquals(10, errorLog.getThreads().size());
+        List<StackFrame> threadFrames = errorLog.getThreads().get(0).getFrames();
+        for (Thread modelThread : errorLog.getThreads()) {
+            assertSame(threadFrames, modelThread.getFrames());
+        }
+        assertEquals(2, threadFrames.size());
+        assertEquals("wait", threadFrames.get(0).getMethodName());
+        assertNull(threadFrames.get(0).getFileName());
+        assertEquals(Integer.valueOf(-2), threadFrames.get(0).getLineNumber());
+        List<StackFrame> exceptionFrames = errorLog.getException().getFrames();
+        assertEquals("crash", exceptionFrames.get(0).getMethodName());
+        assertSame(threadFrames.get(1), exceptionFrames.get(1));
+
+        /* Dictionary encoding is smaller than frames written for every thread. */
+        ByteArrayOutputStream inline = new ByteArrayOutputStream();
+        DataOutputStream inlineOutput = new DataOutputStream(inline);
+        CrashRecordHelper.FrameDictionary dictionary = new CrashRecordHelper.FrameDictionary();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        for (StackTraceElement[] stack : allStackTraces.values()) {
+            CrashRecordHelper.writeFrames(inlineOutput, stack);
+            assertEquals(0, dictionary.addStack(stack));
+        }
+        dictionary.write(new DataOutputStream(encoded));
+        assertTrue(encoded.size() * 5 < inline.size());
+    }
+
+    @Test
+    public void readInlineFramesVersion() throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        UUID id = UUID.randomUUID();
+        StackTraceElement element = new StackTraceElement("ClassName", "method", "File.java", 12);
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(recordFile));
+        try {
+            output.writeInt(CrashRecordHelper.VERSION_INLINE_FRAMES);
+            output.writeLong(id.getMostSignificantBits());
+            output.writeLong(id.getLeastSignificantBits());
+            output.writeLong(1000);
+            output.writeLong(900);
+            output.writeInt(123);
+            CrashRecordHelper.writeString(output, "right.process");
+            CrashRecordHelper.writeString(output, "armeabi-v7a");
+            output.writeBoolean(false);
+            output.writeLong(1);
+            CrashRecordHelper.writeString(output, "main");
+            output.writeInt(1);
+            CrashRecordHelper.writeString(output, RuntimeException.class.getName());
+            CrashRecordHelper.writeString(output, "message");
+            CrashRecordHelper.writeFrames(output, new StackTraceElement[]{element});
+            output.writeInt(1);
+            output.writeLong(1);
+            CrashRecordHelper.writeString(output, "main");
+            CrashRecordHelper.writeFrames(output, new StackTraceElement[]{element, element});
+        } finally {
+            output.close();
+        }
+        ManagedErrorLog errorLog = CrashRecordHelper.readCrashRecord(recordFile);
+        assertEquals(id, errorLog.getId());
+        assertEquals(new Date(1000), errorLog.getTimestamp());
+        assertEquals("right.process", errorLog.getProcessName());
+        assertEquals("message", errorLog.getException().getMessage());
+        assertEquals(1, errorLog.getException().getFrames().size());
+        assertEquals("method", errorLog.getException().getFrames().get(0).getMethodName());
+        assertEquals(2, errorLog.getThreads().get(0).getFrames().size());
+        assertEquals(Integer.valueOf(12), errorLog.getThreads().get(0).getFrames().get(1).getLineNumber());
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalidFrameIndex() throws java.lang.Exception {
+        readRecordWithFrameDictionary(1, 1, 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalidStackIndex() throws java.lang.Exception {
+        readRecordWithFrameDictionary(1, 0, 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void readNegativeStackCount() throws java.lang.Exception {
+        readRecordWithFrameDictionary(-1, 0, 0);
+    }
+
+    /**
+     * Read a record with one frame in dictionary and an exception referencing the first stack.
+     */
+    private void readRecordWithFrameDictionary(int stackCount, int frameIndex, int stackIndex) throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(recordFile));
+        try {
+            writeRecordStart(output);
+            output.writeInt(1);
+            CrashRecordHelper.writeString(output, "ClassName");
+            CrashRecordHelper.writeString(output, "method");
+            CrashRecordHelper.writeString(output, null);
+            output.writeInt(1);
+            output.writeInt(stackCount);
+            for (int i = 0; i < stackCount; i++) {
+                output.writeInt(1);
+                output.writeInt(frameIndex);
+            }
+            output.writeInt(1);
+            CrashRecordHelper.writeString(output, RuntimeException.class.getName());
+            CrashRecordHelper.writeString(output, null);
+            output.writeInt(stackIndex);
+            output.writeInt(0);
+        } finally {
+            output.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readTruncatedRecord() throws java.lang.Exception {
+        CrashRecordHelper.CrashContext crashContext = CrashRecordHelper.createCrashContext(mContext, 0);
+        java.lang.Thread thread = java.lang.Thread.currentThread();
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = Collections.singletonMap(thread, thread.getStackTrace());
+        UUID id = CrashRecordHelper.writeCrashRecord(crashContext, thread, new RuntimeException(), allStackTraces);
+
+        /* Simulate process killed while writing. */
+        File recordFile = getRecordFile(id, mErrorStorageDirectory.getRoot());
+        RandomAccessFile file = new RandomAccessFile(recordFile, "rw");
+        try {
+            file.setLength(file.length() / 2);
+        } finally {
+            file.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readUnsupportedVersion() throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(recordFile));
+        try {
+            output.writeInt(CrashRecordHelper.VERSION + 1);
+        } finally {
+            output.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalidStringLength() throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(recordFile));
+        try {
+            output.writeInt(CrashRecordHelper.VERSION);
+            output.writeLong(0);
+            output.writeLong(0);
+            output.writeLong(0);
+            output.writeLong(0);
+            output.writeInt(0);
+            output.writeInt(-2);
+        } finally {
+            output.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readStringLongerThanRecord() throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(recordFile));
+        try {
+            output.writeInt(CrashRecordHelper.VERSION);
+            output.writeLong(0);
+            output.writeLong(0);
+            output.writeLong(0);
+            output.writeLong(0);
+            output.writeInt(0);
+            output.writeInt(Integer.MAX_VALUE);
+        } finally {
+            output.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readCountLargerThanRecord() throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(recordFile));
+        try {
+            writeRecordStart(output);
+
+            /* Frame count that would fit if each frame took only 1 byte. */
+            output.writeInt(64);
+            output.write(new byte[64]);
+        } finally {
+            output.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readCountAboveMaximum() throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(recordFile));
+        try {
+            writeRecordStart(output);
+            output.writeInt(CrashRecordHelper.MAX_COUNT + 1);
+            output.write(new byte[(CrashRecordHelper.MAX_COUNT + 1) * 16]);
+        } finally {
+            output.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readTooLargeRecord() throws java.lang.Exception {
+        File recordFile = mErrorStorageDirectory.newFile();
+        RandomAccessFile file = new RandomAccessFile(recordFile, "rw");
+        try {
+            file.setLength(CrashRecordHelper.MAX_RECORD_SIZE + 1);
+        } finally {
+            file.close();
+        }
+        CrashRecordHelper.readCrashRecord(recordFile);
+    }
+
+    /**
+     * Write a record header up to the frame dictionary, without any device.
+     */
+    private static void writeRecordStart(DataOutputStream output) throws IOException {
+        output.writeInt(CrashRecordHelper.VERSION);
+        output.writeLong(0);
+        output.writeLong(0);
+        output.writeLong(0);
+        output.writeLong(0);
+        output.writeInt(0);
+        CrashRecordHelper.writeString(output, null);
+        CrashRecordHelper.writeString(output, null);
+        output.writeBoolean(false);
+        output.writeLong(1);
+        CrashRecordHelper.writeString(output, "main");
+    }
+
+    @Test
+    public void getStoredCrashRecordFilesWhenNone() throws java.lang.Exception {
+        assertTrue(mErrorStorageDirectory.newFile("file" + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION).exists());
+        assertNotNull(ErrorLogHelper.getStoredCrashRecordFiles());
+        assertEquals(0, ErrorLogHelper.getStoredCrashRecordFiles().length);
+    }
+}
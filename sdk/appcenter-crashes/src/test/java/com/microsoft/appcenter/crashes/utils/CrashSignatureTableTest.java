@@ -0,0 +1,181 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.crashes.utils.CrashSignatureTable.DUPLICATE_WINDOW;
+import static com.microsoft.appcenter.crashes.utils.CrashSignatureTable.MAX_ENTRIES;
+import static com.microsoft.appcenter.crashes.utils.CrashSignatureTable.PREF_KEY_CRASH_SIGNATURES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@PrepareForTest({StorageHelper.PreferencesStorage.class, AppCenterLog.class})
+public class CrashSignatureTableTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        mockStatic(StorageHelper.PreferencesStorage.class);
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void countDuplicatesWithinWindow() {
+        CrashSignatureTable table = CrashSignatureTable.load();
+        assertEquals(0, table.size());
+        UUID errorId = UUID.randomUUID();
+        assertFalse(table.countDuplicate("a", 1000));
+        assertNull(table.add("a", errorId, 1000, "java.lang.RuntimeException"));
+
+        /* Identical crashes in window, before or after the reported one. */
+        assertTrue(table.countDuplicate("a", 1000 + DUPLICATE_WINDOW - 1));
+        assertTrue(table.countDuplicate("a", 500));
+        assertFalse(table.countDuplicate("b", 1000));
+
+        /* Window ended: reported again, replaced entry returned with its count. */
+        assertFalse(table.countDuplicate("a", 1000 + DUPLICATE_WINDOW));
+        CrashSignatureTable.Entry entry = table.add("a", UUID.randomUUID(), 1000 + DUPLICATE_WINDOW, "java.lang.RuntimeException");
+        assertNotNull(entry);
+        assertEquals(errorId, entry.getErrorId());
+        assertEquals(2, entry.getCount());
+        assertEquals("java.lang.RuntimeException", entry.getType());
+        assertEquals(1, table.size());
+
+        /* Replaced entry without duplicates is not returned. */
+        assertNull(table.add("a", UUID.randomUUID(), 3 * DUPLICATE_WINDOW, null));
+    }
+
+    @Test
+    public void evictOldest() {
+        CrashSignatureTable table = CrashSignatureTable.load();
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            assertNull(table.add("s" + i, UUID.randomUUID(), i, "type"));
+        }
+        assertTrue(table.countDuplicate("s0", 0));
+
+        /* Oldest evicted with its count. */
+        CrashSignatureTable.Entry evicted = table.add("new", UUID.randomUUID(), MAX_ENTRIES, "type");
+        assertNotNull(evicted);
+        assertEquals(1, evicted.getCount());
+        assertEquals(MAX_ENTRIES, table.size());
+        assertFalse(table.countDuplicate("s0", 0));
+
+        /* Evicted without duplicates is not returned. */
+        assertNull(table.add("new2", UUID.randomUUID(), MAX_ENTRIES, "type"));
+        assertFalse(table.countDuplicate("s1", 1));
+        assertEquals(MAX_ENTRIES, table.size());
+    }
+
+    @Test
+    public void removeExpired() {
+        CrashSignatureTable table = CrashSignatureTable.load();
+        table.add("a", UUID.randomUUID(), 0, "type");
+        table.add("b", UUID.randomUUID(), 10, "type");
+        table.add("c", UUID.randomUUID(), DUPLICATE_WINDOW, "type");
+        assertTrue(table.countDuplicate("a", 1));
+        assertTrue(table.countDuplicate("c", DUPLICATE_WINDOW));
+        List<CrashSignatureTable.Entry> expired = table.removeExpired(DUPLICATE_WINDOW + 10);
+        assertEquals(1, expired.size());
+        assertEquals(1, expired.get(0).getCount());
+        assertEquals(1, table.size());
+        assertTrue(table.removeExpired(DUPLICATE_WINDOW + 10).isEmpty());
+    }
+
+    @Test
+    public void removeByErrorId() {
+        CrashSignatureTable table = CrashSignatureTable.load();
+        UUID errorId = UUID.randomUUID();
+        table.add("a", errorId, 0, "type");
+        assertTrue(table.countDuplicate("a", 1));
+        assertTrue(table.contains(errorId));
+        assertFalse(table.contains(UUID.randomUUID()));
+        assertFalse(table.remove(UUID.randomUUID()));
+
+        /* Duplicates counted for a removed crash are dropped with it. */
+        assertTrue(table.remove(errorId));
+        assertFalse(table.contains(errorId));
+        assertFalse(table.countDuplicate("a", 2));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void saveAndLoad() {
+        CrashSignatureTable table = CrashSignatureTable.load();
+        UUID errorId1 = UUID.randomUUID();
+        UUID errorId2 = UUID.randomUUID();
+        table.add("a", errorId1, 1000, "System.Exception with spaces");
+        table.add("b", errorId2, 2000, "multi\nline");
+        table.countDuplicate("a", 1500);
+        table.save();
+        ArgumentCaptor<String> value = ArgumentCaptor.forClass(String.class);
+        verifyStatic();
+        StorageHelper.PreferencesStorage.putString(eq(PREF_KEY_CRASH_SIGNATURES), value.capture());
+
+        /* Load persisted entries. */
+        when(StorageHelper.PreferencesStorage.getString(PREF_KEY_CRASH_SIGNATURES)).thenReturn(value.getValue());
+        table = CrashSignatureTable.load();
+        assertEquals(2, table.size());
+        CrashSignatureTable.Entry entry = table.add("a", UUID.randomUUID(), 1000 + DUPLICATE_WINDOW, null);
+        assertNotNull(entry);
+        assertEquals(errorId1, entry.getErrorId());
+        assertEquals(1, entry.getCount());
+        assertEquals("System.Exception with spaces", entry.getType());
+        assertTrue(table.countDuplicate("b", 2000));
+        List<CrashSignatureTable.Entry> expired = table.removeExpired(2000 + DUPLICATE_WINDOW);
+        assertEquals(1, expired.size());
+        assertEquals(errorId2, expired.get(0).getErrorId());
+        assertEquals("multi line", expired.get(0).getType());
+
+        /* Empty table removes preference. */
+        table.removeExpired(Long.MAX_VALUE);
+        table.save();
+        verifyStatic();
+        StorageHelper.PreferencesStorage.remove(PREF_KEY_CRASH_SIGNATURES);
+    }
+
+    @Test
+    public void loadInvalid() {
+        for (String value : new String[]{"", "a", "a not-a-uuid 1 0 type", "a " + UUID.randomUUID() + " 1 x type"}) {
+            when(StorageHelper.PreferencesStorage.getString(PREF_KEY_CRASH_SIGNATURES)).thenReturn(value);
+            assertEquals(0, CrashSignatureTable.load().size());
+        }
+        verifyStatic(times(4));
+        AppCenterLog.warn(anyString(), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void loadKeepsOrder() {
+        UUID errorId = UUID.randomUUID();
+        when(StorageHelper.PreferencesStorage.getString(PREF_KEY_CRASH_SIGNATURES)).thenReturn("old " + errorId + " 1 0 type\nnew " + UUID.randomUUID() + " 2 0 type");
+        CrashSignatureTable table = CrashSignatureTable.load();
+        for (int i = 2; i < MAX_ENTRIES; i++) {
+            table.add("s" + i, UUID.randomUUID(), i, "type");
+        }
+        table.countDuplicate("old", 1);
+        CrashSignatureTable.Entry evicted = table.add("last", UUID.randomUUID(), MAX_ENTRIES, "type");
+        assertNotNull(evicted);
+        assertEquals(errorId, evicted.getErrorId());
+    }
+}
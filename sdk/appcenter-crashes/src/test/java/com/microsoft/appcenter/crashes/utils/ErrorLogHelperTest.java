@@ -33,13 +33,16 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
@@ -211,6 +214,30 @@ public class ErrorLogHelperTest {
         assertEquals(launchTimeStamp, errorLog.getAppLaunchTimestamp().getTime());
     }
 
+    @Test
+    public void createErrorLogSharesIdenticalFrames() {
+        StackTraceElement common = new StackTraceElement("android.os.Looper", "loop", "Looper.java", 164);
+        StackTraceElement[] stackTrace = {new StackTraceElement("java.lang.Object", "wait", null, -2), common};
+        RuntimeException exception = new RuntimeException();
+        exception.setStackTrace(new StackTraceElement[]{new StackTraceElement("com.contoso.Main", "crash", "Main.java", 42), common});
+        java.lang.Thread firstThread = new java.lang.Thread();
+        java.lang.Thread secondThread = new java.lang.Thread();
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new HashMap<>();
+        allStackTraces.put(firstThread, stackTrace);
+        allStackTraces.put(secondThread, stackTrace.clone());
+
+        /* Identical stacks share their frames list, identical frames share model. */
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mock(Context.class), java.lang.Thread.currentThread(), exception, allStackTraces, 0);
+        assertEquals(2, errorLog.getThreads().size());
+        List<StackFrame> threadFrames = errorLog.getThreads().get(0).getFrames();
+        assertSame(threadFrames, errorLog.getThreads().get(1).getFrames());
+        assertEquals(2, threadFrames.size());
+        assertEquals("wait", threadFrames.get(0).getMethodName());
+        assertSame(threadFrames.get(1), errorLog.getException().getFrames().get(1));
+        assertEquals("loop", threadFrames.get(1).getMethodName());
+        assertEquals(Integer.valueOf(164), threadFrames.get(1).getLineNumber());
+    }
+
     @Test
     public void getErrorReportFromErrorLog() throws java.lang.Exception {
 
@@ -298,4 +325,49 @@ public class ErrorLogHelperTest {
         assertEquals(1, actualProperties.size());
         assertEquals(truncatedMapItem, actualProperties.get(truncatedMapItem));
     }
+
+    @Test
+    public void stackSignature() {
+        Throwable cause = new IllegalArgumentException("cause");
+        cause.setStackTrace(new StackTraceElement[]{new StackTraceElement("com.contoso.Parser", "parse", "Parser.java", 12)});
+        Throwable throwable = new IllegalStateException("message 1", cause);
+        throwable.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.contoso.Job", "run", "Job.java", 42),
+                new StackTraceElement("java.lang.Thread", "run", "Thread.java", 761)
+        });
+        String signature = ErrorLogHelper.getStackSignature(ErrorLogHelper.getModelExceptionFromThrowable(throwable));
+        assertEquals(64, signature.length());
+
+        /* Messages are ignored. */
+        Throwable sameStack = new IllegalStateException("message 2", new IllegalArgumentException());
+        sameStack.setStackTrace(throwable.getStackTrace());
+        sameStack.getCause().setStackTrace(cause.getStackTrace());
+        assertEquals(signature, ErrorLogHelper.getStackSignature(ErrorLogHelper.getModelExceptionFromThrowable(sameStack)));
+
+        /* Type, frames and causes matter. */
+        Throwable otherType = new UnsupportedOperationException("message 1", cause);
+        otherType.setStackTrace(throwable.getStackTrace());
+        assertNotEquals(signature, ErrorLogHelper.getStackSignature(ErrorLogHelper.getModelExceptionFromThrowable(otherType)));
+        Throwable otherLine = new IllegalStateException("message 1", cause);
+        otherLine.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.contoso.Job", "run", "Job.java", 43),
+                new StackTraceElement("java.lang.Thread", "run", "Thread.java", 761)
+        });
+        assertNotEquals(signature, ErrorLogHelper.getStackSignature(ErrorLogHelper.getModelExceptionFromThrowable(otherLine)));
+        Throwable noCause = new IllegalStateException("message 1");
+        noCause.setStackTrace(throwable.getStackTrace());
+        assertNotEquals(signature, ErrorLogHelper.getStackSignature(ErrorLogHelper.getModelExceptionFromThrowable(noCause)));
+    }
+
+    @Test
+    public void stackSignatureWithoutFrames() {
+        Exception exception = new Exception();
+        exception.setType("minidump");
+        exception.setStackTrace("/path/1.dmp");
+        String signature = ErrorLogHelper.getStackSignature(exception);
+        exception.setStackTrace("/path/2.dmp");
+        assertNotEquals(signature, ErrorLogHelper.getStackSignature(exception));
+        exception.setStackTrace(null);
+        assertEquals(64, ErrorLogHelper.getStackSignature(exception).length());
+    }
 }
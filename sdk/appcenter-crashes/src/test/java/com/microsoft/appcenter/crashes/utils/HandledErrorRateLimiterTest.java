@@ -0,0 +1,154 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HandledErrorRateLimiterTest {
+
+    private Random mRandom;
+
+    private HandledErrorRateLimiter mRateLimiter;
+
+    @Before
+    public void setUp() {
+        mRandom = mock(Random.class);
+        mRateLimiter = new HandledErrorRateLimiter(mRandom);
+        mRateLimiter.setRateLimit(2, 1000);
+    }
+
+    @Test
+    public void limitPerSignature() {
+        assertTrue(mRateLimiter.tryAcquire("a", "A", 0));
+        assertTrue(mRateLimiter.tryAcquire("a", "A", 100));
+        assertFalse(mRateLimiter.tryAcquire("a", "A", 200));
+        assertFalse(mRateLimiter.tryAcquire("a", "A", 300));
+
+        /* Other signatures have their own limit. */
+        assertTrue(mRateLimiter.tryAcquire("b", "B", 600));
+        assertTrue(mRateLimiter.removeExpired(999).isEmpty());
+
+        /* Only the window with suppressed errors is reported when ended. */
+        List<HandledErrorRateLimiter.Window> windows = mRateLimiter.removeExpired(1500);
+        assertEquals(1, windows.size());
+        assertEquals("A", windows.get(0).getType());
+        assertEquals(2, windows.get(0).getSuppressedCount());
+        assertEquals(1, mRateLimiter.size());
+
+        /* Ended window is reported by next call even before being removed. */
+        assertTrue(mRateLimiter.tryAcquire("b", "B", 1000));
+        assertFalse(mRateLimiter.tryAcquire("b", "B", 1100));
+        assertTrue(mRateLimiter.tryAcquire("b", "B", 1600));
+        windows = mRateLimiter.removeExpired(1600);
+        assertEquals(1, windows.size());
+        assertEquals(1, windows.get(0).getSuppressedCount());
+        assertEquals(1, mRateLimiter.size());
+    }
+
+    @Test
+    public void removeAll() {
+        assertTrue(mRateLimiter.tryAcquire("a", "A", 0));
+        assertTrue(mRateLimiter.tryAcquire("a", "A", 0));
+        assertFalse(mRateLimiter.tryAcquire("a", "A", 0));
+        assertTrue(mRateLimiter.tryAcquire("b", "B", 0));
+        List<HandledErrorRateLimiter.Window> windows = mRateLimiter.removeAll();
+        assertEquals(1, windows.size());
+        assertEquals("A", windows.get(0).getType());
+        assertEquals(0, mRateLimiter.size());
+
+        /* New window after removal. */
+        assertTrue(mRateLimiter.tryAcquire("a", "A", 0));
+        assertTrue(mRateLimiter.removeAll().isEmpty());
+    }
+
+    @Test
+    public void oldestWindowEndedWhenFull() {
+        for (int i = 0; i < HandledErrorRateLimiter.MAX_SIGNATURES; i++) {
+            assertTrue(mRateLimiter.tryAcquire("s" + i, "T" + i, i));
+        }
+        assertTrue(mRateLimiter.tryAcquire("s0", "T0", 100));
+        assertFalse(mRateLimiter.tryAcquire("s0", "T0", 100));
+        assertTrue(mRateLimiter.tryAcquire("new", "N", 100));
+        assertEquals(HandledErrorRateLimiter.MAX_SIGNATURES, mRateLimiter.size());
+
+        /* Evicted window is reported with the next expired ones. */
+        List<HandledErrorRateLimiter.Window> windows = mRateLimiter.removeExpired(100);
+        assertEquals(1, windows.size());
+        assertEquals("T0", windows.get(0).getType());
+        assertEquals(1, windows.get(0).getSuppressedCount());
+    }
+
+    @Test
+    public void sampling() {
+        mRateLimiter.setSamplingRate(0.25f);
+        when(mRandom.nextFloat()).thenReturn(0.5f, 0.1f, 0.25f);
+        assertFalse(mRateLimiter.tryAcquire("a", "A", 0));
+        assertTrue(mRateLimiter.tryAcquire("a", "A", 0));
+        assertFalse(mRateLimiter.tryAcquire("a", "A", 0));
+        assertEquals(2, mRateLimiter.removeAll().get(0).getSuppressedCount());
+    }
+
+    @Test
+    public void signatures() {
+        IOException first = new IOException("first");
+        IOException second = new IOException("second");
+        second.setStackTrace(first.getStackTrace());
+        assertEquals(HandledErrorRateLimiter.getSignature(first), HandledErrorRateLimiter.getSignature(second));
+        assertNotEquals(HandledErrorRateLimiter.getSignature(first), HandledErrorRateLimiter.getSignature(new IllegalStateException()));
+        second.setStackTrace(new StackTraceElement[0]);
+        assertNotEquals(HandledErrorRateLimiter.getSignature(first), HandledErrorRateLimiter.getSignature(second));
+
+        /* Causes. */
+        IllegalStateException firstCause = new IllegalStateException("cause", first);
+        IllegalStateException secondCause = new IllegalStateException("other cause", new IOException("first"));
+        secondCause.setStackTrace(firstCause.getStackTrace());
+        secondCause.getCause().setStackTrace(first.getStackTrace());
+        assertEquals(HandledErrorRateLimiter.getSignature(firstCause), HandledErrorRateLimiter.getSignature(secondCause));
+        assertNotEquals(HandledErrorRateLimiter.getSignature(firstCause), HandledErrorRateLimiter.getSignature(new IllegalStateException("cause", new IllegalArgumentException())));
+        secondCause.getCause().setStackTrace(new StackTraceElement[0]);
+        assertNotEquals(HandledErrorRateLimiter.getSignature(firstCause), HandledErrorRateLimiter.getSignature(secondCause));
+        IllegalStateException withoutCause = new IllegalStateException("cause");
+        withoutCause.setStackTrace(firstCause.getStackTrace());
+        assertNotEquals(HandledErrorRateLimiter.getSignature(firstCause), HandledErrorRateLimiter.getSignature(withoutCause));
+
+        /* Exception models. */
+        com.microsoft.appcenter.crashes.ingestion.models.Exception model = new com.microsoft.appcenter.crashes.ingestion.models.Exception();
+        model.setType("type");
+        String withoutFrames = HandledErrorRateLimiter.getSignature(model);
+        StackFrame frame = new StackFrame();
+        frame.setMethodName("method");
+        model.setFrames(Collections.singletonList(frame));
+        assertNotEquals(withoutFrames, HandledErrorRateLimiter.getSignature(model));
+        model.setMessage("other message");
+        StackFrame sameFrame = new StackFrame();
+        sameFrame.setMethodName("method");
+        String withFrames = HandledErrorRateLimiter.getSignature(model);
+        model.setFrames(Collections.singletonList(sameFrame));
+        assertEquals(withFrames, HandledErrorRateLimiter.getSignature(model));
+
+        /* Inner exception models. */
+        com.microsoft.appcenter.crashes.ingestion.models.Exception innerModel = new com.microsoft.appcenter.crashes.ingestion.models.Exception();
+        innerModel.setType("inner");
+        model.setInnerExceptions(Collections.singletonList(innerModel));
+        String withInnerException = HandledErrorRateLimiter.getSignature(model);
+        assertNotEquals(withFrames, withInnerException);
+        innerModel.setFrames(Collections.singletonList(frame));
+        assertNotEquals(withInnerException, HandledErrorRateLimiter.getSignature(model));
+        innerModel.setFrames(null);
+        innerModel.setType("other inner");
+        assertNotEquals(withInnerException, HandledErrorRateLimiter.getSignature(model));
+    }
+}
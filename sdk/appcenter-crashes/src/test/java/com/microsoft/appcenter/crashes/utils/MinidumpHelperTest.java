@@ -0,0 +1,238 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static com.microsoft.appcenter.crashes.utils.MinidumpHelper.COMPRESSED_FILE_EXTENSION;
+import static com.microsoft.appcenter.crashes.utils.MinidumpHelper.MINIDUMP_FILE_EXTENSION;
+import static com.microsoft.appcenter.crashes.utils.MinidumpHelper.ORPHAN_MAX_AGE;
+import static com.microsoft.appcenter.crashes.utils.MinidumpHelper.QUEUED_FILE_EXTENSION;
+import static com.microsoft.appcenter.crashes.utils.MinidumpHelper.TEMPORARY_FILE_EXTENSION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@PrepareForTest({ErrorLogHelper.class, AppCenterLog.class})
+public class MinidumpHelperTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mErrorDirectory;
+
+    private File mPendingDirectory;
+
+    private static byte[] minidumpContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i % 7);
+        }
+        return content;
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] readCompressed(File file) throws IOException {
+        InputStream input = new GZIPInputStream(new FileInputStream(file));
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mockStatic(AppCenterLog.class);
+        mockStatic(ErrorLogHelper.class);
+        mErrorDirectory = mTemporaryFolder.newFolder("error");
+        mPendingDirectory = mTemporaryFolder.newFolder("pending");
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mErrorDirectory);
+        when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(mPendingDirectory);
+    }
+
+    @Test
+    public void compressMinidump() throws IOException {
+        UUID errorId = UUID.randomUUID();
+        File minidumpFile = MinidumpHelper.getPendingMinidumpFile(errorId);
+        assertEquals(new File(mPendingDirectory, errorId + MINIDUMP_FILE_EXTENSION), minidumpFile);
+        byte[] content = minidumpContent(100 * 1024);
+        write(minidumpFile, content);
+
+        /* Compressed file replaces minidump. */
+        File compressedFile = MinidumpHelper.compressMinidump(minidumpFile, content.length);
+        assertNotNull(compressedFile);
+        assertEquals(minidumpFile.getPath() + COMPRESSED_FILE_EXTENSION, compressedFile.getPath());
+        assertFalse(minidumpFile.exists());
+        assertTrue(compressedFile.length() < content.length);
+        assertArrayEquals(content, readCompressed(compressedFile));
+        assertTrue(MinidumpHelper.isCompressedMinidumpFile(compressedFile));
+        assertFalse(MinidumpHelper.isCompressedMinidumpFile(minidumpFile));
+        assertFalse(MinidumpHelper.isCompressedMinidumpFile(mTemporaryFolder.newFile("other" + COMPRESSED_FILE_EXTENSION)));
+        assertFalse(MinidumpHelper.isCompressedMinidumpFile(null));
+
+        /* Already compressed. */
+        assertEquals(compressedFile, MinidumpHelper.compressMinidump(minidumpFile, content.length));
+        assertTrue(compressedFile.exists());
+    }
+
+    @Test
+    public void skipMinidump() throws IOException {
+
+        /* Missing. */
+        File minidumpFile = MinidumpHelper.getPendingMinidumpFile(UUID.randomUUID());
+        assertNull(MinidumpHelper.compressMinidump(minidumpFile, 10));
+
+        /* Too large. */
+        write(minidumpFile, minidumpContent(11));
+        assertNull(MinidumpHelper.compressMinidump(minidumpFile, 10));
+        assertFalse(minidumpFile.exists());
+        verifyStatic();
+        AppCenterLog.warn(eq(Crashes.LOG_TAG), anyString());
+    }
+
+    @Test
+    public void compressionFailure() throws IOException {
+        File minidumpFile = MinidumpHelper.getPendingMinidumpFile(UUID.randomUUID());
+        write(minidumpFile, minidumpContent(10));
+
+        /* Temporary file cannot be created. */
+        assertTrue(new File(minidumpFile.getPath() + COMPRESSED_FILE_EXTENSION + TEMPORARY_FILE_EXTENSION).mkdir());
+        assertNull(MinidumpHelper.compressMinidump(minidumpFile, 10));
+        assertTrue(minidumpFile.exists());
+        verifyStatic();
+        AppCenterLog.error(anyString(), anyString(), any(IOException.class));
+    }
+
+    @Test
+    public void processPendingMinidumps() throws IOException {
+        long expired = System.currentTimeMillis() - ORPHAN_MAX_AGE - 1000;
+
+        /* Pending crash: compressed. */
+        UUID pendingId = UUID.randomUUID();
+        assertTrue(new File(mErrorDirectory, pendingId + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION).createNewFile());
+        File pendingMinidump = MinidumpHelper.getPendingMinidumpFile(pendingId);
+        write(pendingMinidump, minidumpContent(10));
+
+        /* Crash discarded: deleted. */
+        File orphanMinidump = MinidumpHelper.getPendingMinidumpFile(UUID.randomUUID());
+        write(orphanMinidump, minidumpContent(10));
+
+        /* Interrupted compression: deleted. */
+        File temporaryFile = new File(mPendingDirectory, UUID.randomUUID() + MINIDUMP_FILE_EXTENSION + COMPRESSED_FILE_EXTENSION + TEMPORARY_FILE_EXTENSION);
+        write(temporaryFile, minidumpContent(10));
+
+        /* Named by previous versions: compressed until expired. */
+        File legacyMinidump = new File(mPendingDirectory, "legacy.dmp");
+        write(legacyMinidump, minidumpContent(10));
+        File expiredLegacyMinidump = new File(mPendingDirectory, "expired.dmp");
+        write(expiredLegacyMinidump, minidumpContent(10));
+        assertTrue(expiredLegacyMinidump.setLastModified(expired));
+
+        /* Compressed with attachment queued: kept whatever its age. */
+        File queuedMinidump = new File(mPendingDirectory, UUID.randomUUID() + MINIDUMP_FILE_EXTENSION + COMPRESSED_FILE_EXTENSION);
+        write(queuedMinidump, minidumpContent(10));
+        assertTrue(queuedMinidump.setLastModified(expired));
+        MinidumpHelper.markQueued(queuedMinidump);
+
+        /* Compressed for a pending crash: kept. */
+        UUID pendingCompressedId = UUID.randomUUID();
+        assertTrue(new File(mErrorDirectory, pendingCompressedId + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION).createNewFile());
+        File pendingCompressedMinidump = new File(MinidumpHelper.getPendingMinidumpFile(pendingCompressedId).getPath() + COMPRESSED_FILE_EXTENSION);
+        write(pendingCompressedMinidump, minidumpContent(10));
+
+        /* Compressed without crash nor queued attachment: deleted. */
+        File orphanCompressedMinidump = new File(mPendingDirectory, UUID.randomUUID() + MINIDUMP_FILE_EXTENSION + COMPRESSED_FILE_EXTENSION);
+        write(orphanCompressedMinidump, minidumpContent(10));
+
+        /* Compressed by previous versions: kept until expired. */
+        File legacyCompressedMinidump = new File(mPendingDirectory, "legacy2.dmp" + COMPRESSED_FILE_EXTENSION);
+        write(legacyCompressedMinidump, minidumpContent(10));
+        File expiredLegacyCompressedMinidump = new File(mPendingDirectory, "expired2.dmp" + COMPRESSED_FILE_EXTENSION);
+        write(expiredLegacyCompressedMinidump, minidumpContent(10));
+        assertTrue(expiredLegacyCompressedMinidump.setLastModified(expired));
+
+        /* Marker left over without its compressed file: deleted. */
+        MinidumpHelper.markQueued(new File(mPendingDirectory, UUID.randomUUID() + MINIDUMP_FILE_EXTENSION + COMPRESSED_FILE_EXTENSION));
+
+        /* Check results. */
+        MinidumpHelper.processPendingMinidumps(1024);
+        String[] names = mPendingDirectory.list();
+        Arrays.sort(names);
+        String[] expectedNames = {
+                pendingMinidump.getName() + COMPRESSED_FILE_EXTENSION,
+                legacyMinidump.getName() + COMPRESSED_FILE_EXTENSION,
+                queuedMinidump.getName(),
+                queuedMinidump.getName() + QUEUED_FILE_EXTENSION,
+                pendingCompressedMinidump.getName(),
+                legacyCompressedMinidump.getName()
+        };
+        Arrays.sort(expectedNames);
+        assertArrayEquals(expectedNames, names);
+    }
+
+    @Test
+    public void deleteQueuedMinidump() throws IOException {
+        File compressedFile = new File(mPendingDirectory, UUID.randomUUID() + MINIDUMP_FILE_EXTENSION + COMPRESSED_FILE_EXTENSION);
+        write(compressedFile, minidumpContent(10));
+        MinidumpHelper.markQueued(compressedFile);
+        MinidumpHelper.markQueued(compressedFile);
+        assertEquals(2, mPendingDirectory.list().length);
+        MinidumpHelper.deleteCompressedMinidump(compressedFile);
+        assertEquals(0, mPendingDirectory.list().length);
+
+        /* Failure to create the marker is only logged. */
+        MinidumpHelper.markQueued(new File(new File(mPendingDirectory, "missing"), "file" + COMPRESSED_FILE_EXTENSION));
+        verifyStatic();
+        AppCenterLog.error(anyString(), anyString(), any(IOException.class));
+    }
+
+    @Test
+    public void processWithoutDirectory() {
+        assertTrue(mPendingDirectory.delete());
+        MinidumpHelper.processPendingMinidumps(1024);
+        assertFalse(mPendingDirectory.exists());
+    }
+}
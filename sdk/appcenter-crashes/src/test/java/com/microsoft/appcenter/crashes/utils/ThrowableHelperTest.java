@@ -0,0 +1,369 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.os.Build;
+
+import com.microsoft.appcenter.crashes.model.NativeException;
+import com.microsoft.appcenter.crashes.model.ReconstructedThrowable;
+import com.microsoft.appcenter.test.TestUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@SuppressWarnings("unused")
+@PrepareForTest(AppCenterLog.class)
+public class ThrowableHelperTest {
+
+    @Rule
+    public PowerMockRule mRule = new PowerMockRule();
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private static boolean sNotThrowableInitialized;
+
+    private File mFile;
+
+    private static StackTraceElement[] generateStackTrace(int depth, String method) {
+        StackTraceElement[] stackTrace = new StackTraceElement[depth + 1];
+        stackTrace[0] = new StackTraceElement("com.contoso.Thrower", method, "Thrower.java", 42);
+        for (int i = 1; i <= depth; i++) {
+            stackTrace[i] = new StackTraceElement("com.contoso.Caller", "call" + i, "Caller.java", i);
+        }
+        return stackTrace;
+    }
+
+    private static <T extends Throwable> T withStackTrace(T throwable, int depth, String method) {
+        throwable.setStackTrace(generateStackTrace(depth, method));
+        return throwable;
+    }
+
+    private void writeThrowableRecord(String className, String message) throws IOException {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeInt(ThrowableHelper.MAGIC);
+            output.writeInt(ThrowableHelper.VERSION);
+            output.writeBoolean(true);
+            CrashRecordHelper.writeString(output, className);
+            CrashRecordHelper.writeString(output, message);
+            CrashRecordHelper.writeFrames(output, new StackTraceElement[0]);
+            output.writeInt(0);
+            output.writeBoolean(false);
+            output.writeInt(0);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static int readFirstInt(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            return input.readInt();
+        } finally {
+            input.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mockStatic(AppCenterLog.class);
+        mFile = mTemporaryFolder.newFile();
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+
+        /* Dummy coverage of utils class. */
+        new ThrowableHelper();
+
+        /* Round trip exception with cause, sharing most frames. */
+        RuntimeException exception = withStackTrace(new RuntimeException("outer", withStackTrace(new IOException("inner"), 10, "read")), 10, "wrap");
+        ThrowableHelper.writeThrowable(mFile, exception);
+        assertEquals(ThrowableHelper.MAGIC, readFirstInt(mFile));
+        Throwable throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(RuntimeException.class, throwable.getClass());
+        assertEquals("outer", throwable.getMessage());
+        assertArrayEquals(exception.getStackTrace(), throwable.getStackTrace());
+        Throwable cause = throwable.getCause();
+        assertEquals(IOException.class, cause.getClass());
+        assertEquals("inner", cause.getMessage());
+        assertArrayEquals(exception.getCause().getStackTrace(), cause.getStackTrace());
+        assertNull(cause.getCause());
+    }
+
+    @Test
+    public void nullMessageAndFileName() throws Exception {
+        Error error = new StackOverflowError();
+        error.setStackTrace(new StackTraceElement[]{new StackTraceElement("Class", "method", null, -2)});
+        ThrowableHelper.writeThrowable(mFile, error);
+        Throwable throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(StackOverflowError.class, throwable.getClass());
+        assertNull(throwable.getMessage());
+        assertArrayEquals(error.getStackTrace(), throwable.getStackTrace());
+    }
+
+    @Test
+    public void defaultConstructor() throws Exception {
+        ThrowableHelper.writeThrowable(mFile, new NativeException());
+        Throwable throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(NativeException.class, throwable.getClass());
+        assertEquals(new NativeException().getMessage(), throwable.getMessage());
+    }
+
+    @Test
+    public void classCannotBeInstantiated() throws Exception {
+
+        /* Constructor that does not match. */
+        CodeException exception = withStackTrace(new CodeException(42), 3, "code");
+        ThrowableHelper.writeThrowable(mFile, exception);
+        Throwable throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(ReconstructedThrowable.class, throwable.getClass());
+        assertEquals(CodeException.class.getName(), ((ReconstructedThrowable) throwable).getClassName());
+        assertEquals("code 42", throwable.getMessage());
+        assertEquals(exception.toString(), throwable.toString());
+        assertArrayEquals(exception.getStackTrace(), throwable.getStackTrace());
+
+        /* Default constructor with a different message. */
+        writeThrowableRecord(DefaultMessageException.class.getName(), "other");
+        throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(ReconstructedThrowable.class, throwable.getClass());
+        assertEquals(DefaultMessageException.class.getName() + ": other", throwable.toString());
+
+        /* Message constructor that changes the message. */
+        writeThrowableRecord(PrefixedMessageException.class.getName(), "message");
+        throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(ReconstructedThrowable.class, throwable.getClass());
+        assertEquals(PrefixedMessageException.class.getName() + ": message", throwable.toString());
+
+        /* Not a throwable class. */
+        writeThrowableRecord(String.class.getName(), "string");
+        throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(ReconstructedThrowable.class, throwable.getClass());
+
+        /* Not a throwable class is never initialized. */
+        writeThrowableRecord(NotThrowable.class.getName(), null);
+        throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(ReconstructedThrowable.class, throwable.getClass());
+        assertFalse(sNotThrowableInitialized);
+
+        /* Class no longer exists. */
+        writeThrowableRecord("com.contoso.RemovedException", null);
+        throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals("com.contoso.RemovedException", throwable.toString());
+        assertEquals(0, throwable.getStackTrace().length);
+    }
+
+    @Test
+    public void circularCause() throws Exception {
+        Exception first = new Exception("first");
+        Exception second = new Exception("second");
+        first.initCause(second);
+        second.initCause(first);
+        ThrowableHelper.writeThrowable(mFile, first);
+        Throwable throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals("first", throwable.getMessage());
+        assertEquals("second", throwable.getCause().getMessage());
+        assertNull(throwable.getCause().getCause());
+    }
+
+    @Test
+    public void suppressed() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.KITKAT);
+        Exception exception = new Exception("main");
+        exception.addSuppressed(new IllegalStateException("suppressed"));
+        ThrowableHelper.writeThrowable(mFile, exception);
+        Throwable throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(1, throwable.getSuppressed().length);
+        assertEquals(IllegalStateException.class, throwable.getSuppressed()[0].getClass());
+        assertEquals("suppressed", throwable.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void migrateJavaSerialization() throws Exception {
+        RuntimeException exception = withStackTrace(new RuntimeException("legacy", withStackTrace(new IOException("inner"), 20, "read")), 20, "wrap");
+        ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeObject(exception);
+        } finally {
+            output.close();
+        }
+        long legacyLength = mFile.length();
+
+        /* Read legacy file: file is converted. */
+        Throwable throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals(RuntimeException.class, throwable.getClass());
+        assertEquals("legacy", throwable.getMessage());
+        assertEquals("inner", throwable.getCause().getMessage());
+        assertEquals(ThrowableHelper.MAGIC, readFirstInt(mFile));
+        assertTrue(mFile.length() < legacyLength);
+
+        /* Read again from new format. */
+        throwable = ThrowableHelper.readThrowable(mFile);
+        assertEquals("legacy", throwable.getMessage());
+        assertArrayEquals(exception.getStackTrace(), throwable.getStackTrace());
+        assertArrayEquals(exception.getCause().getStackTrace(), throwable.getCause().getStackTrace());
+    }
+
+    @Test(expected = IOException.class)
+    public void javaSerializationOfOtherObject() throws Exception {
+        ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeObject("not a throwable");
+        } finally {
+            output.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidMagic() throws Exception {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeInt(ThrowableHelper.MAGIC + 1);
+        } finally {
+            output.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedVersion() throws Exception {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeInt(ThrowableHelper.MAGIC);
+            output.writeInt(ThrowableHelper.VERSION + 1);
+        } finally {
+            output.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void missingThrowable() throws Exception {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeInt(ThrowableHelper.MAGIC);
+            output.writeInt(ThrowableHelper.VERSION);
+            output.writeBoolean(false);
+        } finally {
+            output.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFile() throws Exception {
+        ThrowableHelper.writeThrowable(mFile, new RuntimeException("truncated"));
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFrameCount() throws Exception {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeInt(ThrowableHelper.MAGIC);
+            output.writeInt(ThrowableHelper.VERSION);
+            output.writeBoolean(true);
+            CrashRecordHelper.writeString(output, RuntimeException.class.getName());
+            CrashRecordHelper.writeString(output, null);
+            output.writeInt(-1);
+        } finally {
+            output.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidSuppressedCount() throws Exception {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeInt(ThrowableHelper.MAGIC);
+            output.writeInt(ThrowableHelper.VERSION);
+            output.writeBoolean(true);
+            CrashRecordHelper.writeString(output, RuntimeException.class.getName());
+            CrashRecordHelper.writeString(output, null);
+            output.writeInt(0);
+            output.writeInt(0);
+            output.writeBoolean(false);
+            output.writeInt(-1);
+        } finally {
+            output.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidCommonFrameCount() throws Exception {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            output.writeInt(ThrowableHelper.MAGIC);
+            output.writeInt(ThrowableHelper.VERSION);
+            output.writeBoolean(true);
+            CrashRecordHelper.writeString(output, RuntimeException.class.getName());
+            CrashRecordHelper.writeString(output, null);
+            output.writeInt(0);
+            output.writeInt(1);
+        } finally {
+            output.close();
+        }
+        ThrowableHelper.readThrowable(mFile);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public static class CodeException extends Exception {
+
+        public CodeException(int code) {
+            super("code " + code);
+        }
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public static class DefaultMessageException extends Exception {
+
+        public DefaultMessageException() {
+            super("default");
+        }
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public static class PrefixedMessageException extends Exception {
+
+        public PrefixedMessageException(String message) {
+            super("prefix " + message);
+        }
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public static class NotThrowable {
+
+        static {
+            sNotThrowableInitialized = true;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedLruCacheTest {
+
+    private final List<String> mEvicted = new ArrayList<>();
+
+    private WeightedLruCache<String, StringBuilder> mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new WeightedLruCache<String, StringBuilder>(3, 10) {
+
+            @Override
+            protected int weightOf(@NonNull StringBuilder value) {
+                return Math.max(1, value.length());
+            }
+
+            @Override
+            protected void onEvicted(@NonNull String key, @NonNull StringBuilder value) {
+                mEvicted.add(key);
+            }
+        };
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedBySize() {
+        mCache.put("a", new StringBuilder("a"));
+        mCache.put("b", new StringBuilder("b"));
+        mCache.put("c", new StringBuilder("c"));
+
+        /* Access makes "a" most recently used. */
+        assertEquals("a", mCache.get("a").toString());
+        mCache.put("d", new StringBuilder("d"));
+        assertEquals(3, mCache.size());
+        assertEquals(3, mCache.getWeight());
+        assertFalse(mCache.containsKey("b"));
+        assertEquals(1, mCache.getEvictionCount());
+        assertEquals("[b]", mEvicted.toString());
+
+        /* Statistics. */
+        assertNull(mCache.get("b"));
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+        assertEquals("size=3/3 weight=3/10 hits=1 misses=1 evictions=1", mCache.toString());
+    }
+
+    @Test
+    public void evictByWeight() {
+        mCache.put("a", new StringBuilder("aaaa"));
+        mCache.put("b", new StringBuilder("bbbb"));
+        mCache.put("c", new StringBuilder("cccc"));
+        assertEquals("[a]", mEvicted.toString());
+        assertEquals(8, mCache.getWeight());
+
+        /* Replacing updates weight. */
+        mCache.put("b", new StringBuilder("b"));
+        assertEquals(5, mCache.getWeight());
+        assertEquals(2, mCache.size());
+
+        /* Most recent entry is kept even if heavier than the limit. */
+        mCache.put("d", new StringBuilder("dddddddddddd"));
+        assertEquals(1, mCache.size());
+        assertTrue(mCache.containsKey("d"));
+        assertEquals("[a, c, b]", mEvicted.toString());
+    }
+
+    @Test
+    public void refreshWeight() {
+        StringBuilder a = new StringBuilder("a");
+        mCache.put("a", a);
+        mCache.put("b", new StringBuilder("bbbb"));
+        assertEquals(5, mCache.getWeight());
+
+        /* Value grows after being cached, refresh does not change access order. */
+        a.append("aaaaa");
+        mCache.refresh("a");
+        assertEquals(10, mCache.getWeight());
+        mCache.refresh("b");
+        assertEquals(10, mCache.getWeight());
+
+        /* Growing over the limit evicts least recently used, even the refreshed entry. */
+        a.append("a");
+        mCache.refresh("a");
+        assertEquals("[a]", mEvicted.toString());
+        assertEquals(4, mCache.getWeight());
+
+        /* Missing key ignored. */
+        mCache.refresh("missing");
+        assertEquals(0, mCache.getHitCount());
+        assertEquals(0, mCache.getMissCount());
+    }
+
+    @Test
+    public void removeAndClear() {
+        mCache.put("a", new StringBuilder("aa"));
+        mCache.put("b", new StringBuilder("bbb"));
+        assertEquals("aa", mCache.remove("a").toString());
+        assertNull(mCache.remove("a"));
+        assertEquals(3, mCache.getWeight());
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.getWeight());
+
+        /* Explicit removal is not an eviction. */
+        assertTrue(mEvicted.isEmpty());
+        assertEquals(0, mCache.getEvictionCount());
+    }
+}
@@ -10,6 +10,7 @@ import com.microsoft.appcenter.utils.UUIDUtils;
 import junit.framework.Assert;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -161,4 +162,56 @@ public class LogSerializerAndroidTest {
         invalidTypeLog.setProperties(invalidTypeProperties);
         serializer.serializeLog(invalidTypeLog);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void startServiceLogStreamingMatchesObject() throws JSONException {
+        StartServiceLog log = new StartServiceLog();
+        log.setServices(Collections.singletonList("FIRST"));
+        log.setSid(UUIDUtils.randomUUID());
+        log.setTimestamp(new Date());
+        log.setDevice(AndroidTestUtils.generateMockLog().getDevice());
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+
+        /* Type is first so the log is streamed, check the result matches reading from JSONObject. */
+        String payload = serializer.serializeLog(log);
+        Assert.assertTrue(payload.startsWith("{\"type\":"));
+        StartServiceLog objectLog = new StartServiceLog();
+        objectLog.read(new JSONObject(payload));
+        Assert.assertEquals(log, serializer.deserializeLog(payload));
+        Assert.assertEquals(objectLog, serializer.deserializeLog(payload));
+    }
+
+    @Test
+    public void startServiceLogTypeNotFirst() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        Log log = serializer.deserializeLog("{" +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"services\": [\"FIRST\"]," +
+                "\"unknown\": {\"nested\": [1, 2]}," +
+                "\"type\": \"startService\"" +
+                "}");
+        Assert.assertEquals(Collections.singletonList("FIRST"), ((StartServiceLog) log).getServices());
+    }
+
+    @Test
+    public void startServiceLogStreamingSkipsUnknownProperties() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        Log log = serializer.deserializeLog("{" +
+                "\"type\": \"startService\"," +
+                "\"unknown\": {\"nested\": [1, 2]}," +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"services\": [\"FIRST\"]" +
+                "}");
+        Assert.assertEquals(Collections.singletonList("FIRST"), ((StartServiceLog) log).getServices());
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeMalformedStreaming() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{\"type\": \"startService\", \"services\": [");
+    }
+}
@@ -11,6 +11,7 @@ import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LazyLog;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
 import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
@@ -73,6 +74,11 @@ public class DatabasePersistenceAndroidTest {
         return count;
     }
 
+    private static Log decode(Log log) throws JSONException {
+        assertTrue(log instanceof LazyLog);
+        return ((LazyLog) log).getLog();
+    }
+
     @After
     public void tearDown() {
 
@@ -81,7 +87,7 @@ public class DatabasePersistenceAndroidTest {
     }
 
     @Test
-    public void putLog() throws PersistenceException, IOException {
+    public void putLog() throws PersistenceException, IOException, JSONException {
 
         /* Initialize database persistence. */
         DatabasePersistence persistence = new DatabasePersistence("test-persistence", "putLog", 1);
@@ -106,7 +112,7 @@ public class DatabasePersistenceAndroidTest {
             List<Log> outputLogs = new ArrayList<>();
             persistence.getLogs("test-p1", 1, outputLogs);
             assertEquals(1, outputLogs.size());
-            assertEquals(log, outputLogs.get(0));
+            assertEquals(log, decode(outputLogs.get(0)));
             assertEquals(1, persistence.countLogs("test-p1"));
         } finally {
 
@@ -117,7 +123,47 @@ public class DatabasePersistenceAndroidTest {
     }
 
     @Test
-    public void putLargeLogAndDeleteAll() throws PersistenceException, IOException {
+    public void getLogsPassesPayloadThrough() throws PersistenceException, IOException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence("test-persistence", "getLogsPassesPayloadThrough", 1);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Persist a log then read it back. */
+            Log log = AndroidTestUtils.generateMockLog();
+            String payload = logSerializer.serializeLog(log);
+            persistence.putLog("test-p1", log);
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test-p1", 1, outputLogs);
+            assertEquals(1, outputLogs.size());
+
+            /* Header is available without decoding and the payload is serialized as is. */
+            LazyLog lazyLog = (LazyLog) outputLogs.get(0);
+            assertEquals(log.getType(), lazyLog.getType());
+            assertEquals(log.getTimestamp(), lazyLog.getTimestamp());
+            assertEquals(log.getSid(), lazyLog.getSid());
+            assertFalse(lazyLog.isDecoded());
+            assertEquals(payload, logSerializer.serializeLog(lazyLog));
+            assertFalse(lazyLog.isDecoded());
+
+            /* Once decoded, changes are serialized. */
+            lazyLog.setSid(null);
+            assertTrue(lazyLog.isDecoded());
+            log.setSid(null);
+            assertEquals(logSerializer.serializeLog(log), logSerializer.serializeLog(lazyLog));
+        } finally {
+
+            /* Close. */
+            //noinspection ThrowFromFinallyBlock
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putLargeLogAndDeleteAll() throws PersistenceException, IOException, JSONException {
 
         /* Initialize database persistence. */
         DatabasePersistence persistence = new DatabasePersistence("test-persistence", "putLargeLog", 1);
@@ -150,13 +196,13 @@ public class DatabasePersistenceAndroidTest {
             List<Log> outputLogs = new ArrayList<>();
             persistence.getLogs("test-p1", 1, outputLogs);
             assertEquals(1, outputLogs.size());
-            assertEquals(log, outputLogs.get(0));
+            assertEquals(log, decode(outputLogs.get(0)));
             assertEquals(1, persistence.countLogs("test-p1"));
 
             /* Verify large file. */
             File file = persistence.getLargePayloadFile(persistence.getLargePayloadGroupDirectory("test-p1"), id);
             assertNotNull(file);
-            String fileLog = StorageHelper.InternalStorage.read(file);
+            String fileLog = StorageHelper.InternalStorage.readCompressed(file);
             assertNotNull(fileLog);
             assertTrue(fileLog.length() >= size);
 
@@ -254,7 +300,7 @@ public class DatabasePersistenceAndroidTest {
             /* Verify large file. */
             File file = persistence.getLargePayloadFile(persistence.getLargePayloadGroupDirectory("test-p1"), id);
             assertNotNull(file);
-            String fileLog = StorageHelper.InternalStorage.read(file);
+            String fileLog = StorageHelper.InternalStorage.readCompressed(file);
             assertNotNull(fileLog);
             assertTrue(fileLog.length() >= size);
 
@@ -275,7 +321,60 @@ public class DatabasePersistenceAndroidTest {
     }
 
     @Test
-    public void putTooManyLogs() throws PersistenceException, IOException {
+    public void getLargeLogFromLegacyUncompressedFile() throws PersistenceException, IOException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence("test-persistence", "getLargeLogFromLegacyFile", 1);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Generate a large log and persist. */
+            LogWithProperties log = AndroidTestUtils.generateMockLog();
+            int size = 2 * 1024 * 1024;
+            StringBuilder largeValue = new StringBuilder(size);
+            for (int i = 0; i < size; i++) {
+                largeValue.append("x");
+            }
+            Map<String, String> properties = new HashMap<>();
+            properties.put("key", largeValue.toString());
+            log.setProperties(properties);
+            long id = persistence.putLog("test-p1", log);
+
+            /* Verify compressed file is much smaller than payload. */
+            File directory = persistence.getLargePayloadGroupDirectory("test-p1");
+            File file = persistence.getLargePayloadFile(directory, id);
+            assertTrue(file.exists());
+            assertTrue(file.length() < size);
+
+            /* Replace compressed file by an uncompressed one like previous SDK versions did. */
+            File legacyFile = persistence.getLegacyLargePayloadFile(directory, id);
+            StorageHelper.InternalStorage.write(legacyFile, StorageHelper.InternalStorage.readCompressed(file));
+            assertTrue(file.delete());
+
+            /* Get the log from persistence. */
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test-p1", 1, outputLogs);
+            assertEquals(1, outputLogs.size());
+            assertEquals(log, decode(outputLogs.get(0)));
+
+            /* Delete entire group. */
+            persistence.deleteLogs("test-p1");
+            assertEquals(0, persistence.countLogs("test-p1"));
+            assertFalse(legacyFile.exists());
+        } finally {
+
+            /* Close. */
+            //noinspection ThrowFromFinallyBlock
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putTooManyLogs() throws PersistenceException, IOException, JSONException {
 
         /* Initialize database persistence. */
         DatabasePersistence persistence = new DatabasePersistence("test-persistence", "putTooManyLogs", 1, 2);
@@ -300,8 +399,8 @@ public class DatabasePersistenceAndroidTest {
             List<Log> outputLogs = new ArrayList<>();
             persistence.getLogs("test-p1", 4, outputLogs);
             assertEquals(2, outputLogs.size());
-            assertEquals(log3, outputLogs.get(0));
-            assertEquals(log4, outputLogs.get(1));
+            assertEquals(log3, decode(outputLogs.get(0)));
+            assertEquals(log4, decode(outputLogs.get(1)));
             assertEquals(2, persistence.countLogs("test-p1"));
         } finally {
 
@@ -428,7 +527,7 @@ public class DatabasePersistenceAndroidTest {
     }
 
     @Test
-    public void deleteLogsForGroup() throws PersistenceException, IOException {
+    public void deleteLogsForGroup() throws PersistenceException, IOException, JSONException {
 
         /* Initialize database persistence. */
         DatabasePersistence persistence = new DatabasePersistence("test-persistence", "deleteLogsForGroup", 1);
@@ -477,7 +576,7 @@ public class DatabasePersistenceAndroidTest {
             outputLogs.clear();
             persistence.getLogs("test-p2", 5, outputLogs);
             assertEquals(1, outputLogs.size());
-            assertEquals(log3, outputLogs.get(0));
+            assertEquals(log3, decode(outputLogs.get(0)));
 
             /* Count for groups. */
             assertEquals(0, persistence.countLogs("test-p1"));
@@ -573,7 +672,7 @@ public class DatabasePersistenceAndroidTest {
                 .doThrow(new JSONException("JSON exception"))
                 /* Return a normal log for further calls. */
                 .doReturn(AndroidTestUtils.generateMockLog())
-                .when(logSerializer).deserializeLog(anyString());
+                .when(logSerializer).deserializeLazyLog(anyString());
         persistence.setLogSerializer(logSerializer);
         try {
 
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -126,10 +127,12 @@ public class StorageHelperAndroidTest {
         /* Delete database. */
         sContext.deleteDatabase("test-databaseStorage");
         sContext.deleteDatabase("test-databaseStorageUpgrade");
+        sContext.deleteDatabase("test-databaseStorageUpgradeKeepingRecords");
         sContext.deleteDatabase("test-putTooManyLogs");
         sContext.deleteDatabase("test-databaseStorageScannerRemove");
         sContext.deleteDatabase("test-databaseStorageScannerNext");
         sContext.deleteDatabase("test-databaseStorageInMemoryDB");
+        sContext.deleteDatabase("test-databaseStorageExpiry");
     }
 
     private static SharedPreferencesTestData[] generateSharedPreferenceData() throws NoSuchMethodException {
@@ -275,6 +278,20 @@ public class StorageHelperAndroidTest {
         assertEquals(0, databaseStorage.getScanner("COL_STRING", null).getCount());
         assertEquals(2, databaseStorage.getScanner("COL_STRING_NULL", null).getCount());
 
+        /* Floor lookup. */
+        long minLong = Math.min(value1.getAsLong("COL_LONG"), value2.getAsLong("COL_LONG"));
+        long maxLong = Math.max(value1.getAsLong("COL_LONG"), value2.getAsLong("COL_LONG"));
+        ContentValues minValue = value1.getAsLong("COL_LONG") == minLong ? value1 : value2;
+        ContentValues maxValue = minValue == value1 ? value2 : value1;
+        if (minLong > Long.MIN_VALUE) {
+            assertNull(databaseStorage.getFloor("COL_LONG", minLong - 1));
+        }
+        assertContentValuesEquals(minValue, databaseStorage.getFloor("COL_LONG", minLong));
+        if (maxLong > minLong) {
+            assertContentValuesEquals(minValue, databaseStorage.getFloor("COL_LONG", maxLong - 1));
+        }
+        assertContentValuesEquals(maxValue, databaseStorage.getFloor("COL_LONG", Long.MAX_VALUE));
+
         /* Update. */
         assertTrue(databaseStorage.update(value1Id, value3));
         ContentValues value3FromDatabase = databaseStorage.get(value1Id);
@@ -501,6 +518,32 @@ public class StorageHelperAndroidTest {
         assertNull(StorageHelper.InternalStorage.readBytes(file));
     }
 
+    @Test
+    public void internalStorageForCompressedFiles() throws IOException {
+        Log.i(TAG, "Testing Internal Storage compressed read/write");
+
+        File file = new File(sAndroidFilesPath + UUIDUtils.randomUUID().toString() + INTERNAL_STORAGE_TEST_FILE_EXTENSION);
+
+        /* Write contents larger than the streaming buffer, with multi byte characters. */
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("Hello world \u00e9\u4e2d\ud83d\ude00\n");
+        }
+        String contents = builder.toString();
+        StorageHelper.InternalStorage.writeCompressed(file, contents);
+        assertTrue(file.length() < contents.length());
+
+        /* Read and check. */
+        assertEquals(contents, StorageHelper.InternalStorage.readCompressed(file));
+
+        /* Delete the files to clean up. */
+        Log.i(TAG, "Deleting " + file.getName());
+        InternalStorage.delete(file);
+
+        /* Check file not found. */
+        assertNull(StorageHelper.InternalStorage.readCompressed(file));
+    }
+
     @Test
     public void databaseStorage() throws IOException {
         Log.i(TAG, "Testing Database Storage");
@@ -569,6 +612,52 @@ public class StorageHelperAndroidTest {
         }
     }
 
+    @Test
+    public void databaseStorageUpgradeKeepingRecords() throws IOException {
+        Log.i(TAG, "Testing Database Storage Upgrade keeping records");
+
+        /* Create a schema for v1 and store a record. */
+        ContentValues schema = new ContentValues();
+        schema.put("COL_STRING", "");
+        ContentValues oldVersionValue = new ContentValues();
+        oldVersionValue.put("COL_STRING", "Hello World");
+        DatabaseStorage databaseStorage = DatabaseStorage.getDatabaseStorage("test-databaseStorageUpgradeKeepingRecords", "databaseStorageUpgradeKeepingRecords", 1, schema, new DatabaseStorage.DatabaseErrorListener() {
+            @Override
+            public void onError(String operation, RuntimeException e) {
+                throw e;
+            }
+        });
+        try {
+            databaseStorage.put(oldVersionValue);
+        } finally {
+            //noinspection ThrowFromFinallyBlock
+            databaseStorage.close();
+        }
+
+        /* Upgrade with a new column that gets a value for the kept record. */
+        schema.put("COL_LONG", 0L);
+        schema.put("COL_INTEGER", 0);
+        databaseStorage = DatabaseStorage.getDatabaseStorage("test-databaseStorageUpgradeKeepingRecords", "databaseStorageUpgradeKeepingRecords", 2, schema, new DatabaseStorage.DatabaseErrorListener() {
+            @Override
+            public void onError(String operation, RuntimeException e) {
+                throw e;
+            }
+        });
+        ContentValues upgradeValues = new ContentValues();
+        upgradeValues.put("COL_LONG", 42L);
+        databaseStorage.setUpgradeValues(upgradeValues);
+        try {
+            assertEquals(4, databaseStorage.getColumnNames().length);
+            ContentValues values = databaseStorage.get("COL_STRING", "Hello World");
+            assertNotNull(values);
+            assertEquals(Long.valueOf(42L), values.getAsLong("COL_LONG"));
+            assertNull(values.getAsInteger("COL_INTEGER"));
+        } finally {
+            //noinspection ThrowFromFinallyBlock
+            databaseStorage.close();
+        }
+    }
+
     @Test
     public void putTooManyLogs() throws IOException {
         Log.i(TAG, "Testing Database Storage Capacity");
@@ -605,6 +694,62 @@ public class StorageHelperAndroidTest {
         }
     }
 
+    @Test
+    public void databaseStorageExpiryAndCompaction() throws IOException {
+        Log.i(TAG, "Testing Database Storage expiry scan and compaction");
+
+        /* Get instance to access database with an indexed timestamp. */
+        ContentValues schema = new ContentValues();
+        schema.put("COL_GROUP", "");
+        schema.put("COL_TIMESTAMP", 0L);
+        schema.put("COL_PAYLOAD", "");
+        DatabaseStorage databaseStorage = DatabaseStorage.getDatabaseStorage("test-databaseStorageExpiry", "databaseStorageExpiry", 1, schema, 0, new String[]{"COL_TIMESTAMP"}, new DatabaseStorage.DatabaseErrorListener() {
+            @Override
+            public void onError(String operation, RuntimeException e) {
+                throw e;
+            }
+        });
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+
+            /* Put enough data to free many pages when deleted. */
+            char[] payload = new char[4096];
+            Arrays.fill(payload, 'a');
+            for (long i = 0; i < 200; i++) {
+                ContentValues values = new ContentValues();
+                values.put("COL_GROUP", i % 2 == 0 ? "even" : "odd");
+                values.put("COL_TIMESTAMP", i);
+                values.put("COL_PAYLOAD", new String(payload));
+                databaseStorage.put(values);
+            }
+
+            /* Scan records of a group older than a timestamp. */
+            List<Long> ids = new ArrayList<>();
+            DatabaseStorage.DatabaseScanner scanner = databaseStorage.getScanner("COL_GROUP", "even", "COL_TIMESTAMP", 100, true);
+            for (ContentValues values : scanner) {
+                ids.add(values.getAsLong(DatabaseManager.PRIMARY_KEY));
+            }
+            scanner.close();
+            assertEquals(50, ids.size());
+
+            /* Nothing to reclaim yet. */
+            assertEquals(0, databaseStorage.compact(1));
+
+            /* Delete and reclaim space, once. */
+            databaseStorage.delete(ids);
+            assertEquals(150, databaseStorage.size());
+            assertTrue(databaseStorage.compact(1) > 0);
+            assertEquals(0, databaseStorage.compact(1));
+            assertEquals(150, databaseStorage.size());
+        } finally {
+
+            /* Close. */
+            //noinspection ThrowFromFinallyBlock
+            databaseStorage.close();
+        }
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void databaseStorageScannerRemove() throws IOException {
         Log.i(TAG, "Testing Database Storage Exceptions");
@@ -138,7 +138,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
 
             /* Register service to channel on enabling. */
             if (enabled) {
-                mChannel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), getChannelListener());
+                addGroup(mChannel, groupName);
             }
 
             /* Otherwise, clear all persisted logs and remove a group for the service. */
@@ -184,7 +184,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
 
             /* Add a group to the channel if the service is enabled */
             if (enabled) {
-                channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), getChannelListener());
+                addGroup(channel, groupName);
             }
 
             /* Otherwise, clear all persisted logs for the service. */
@@ -196,6 +196,20 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         applyEnabledState(enabled);
     }
 
+    /**
+     * Register the service group to the channel.
+     *
+     * @param channel   channel.
+     * @param groupName group name.
+     */
+    private void addGroup(@NonNull Channel channel, @NonNull String groupName) {
+        channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), getChannelListener());
+        long logTimeToLive = getLogTimeToLive();
+        if (logTimeToLive > 0) {
+            channel.setLogTimeToLive(groupName, logTimeToLive);
+        }
+    }
+
     @Override
     public Map<String, LogFactory> getLogFactories() {
         return null;
@@ -250,6 +264,16 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         return DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
     }
 
+    /**
+     * Gets how long logs of the service are kept in the channel before being discarded if not sent.
+     *
+     * @return A time to live in milliseconds, 0 to keep logs until sent.
+     */
+    @SuppressWarnings({"WeakerAccess", "SameReturnValue"})
+    protected long getLogTimeToLive() {
+        return 0;
+    }
+
     /**
      * Gets a listener which will be called when channel completes synchronization.
      *
@@ -1,12 +1,16 @@
 package com.microsoft.appcenter;
 
+import android.content.ContentValues;
+import android.support.annotation.IntRange;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
+import com.microsoft.appcenter.utils.storage.StorageHelper.DatabaseStorage;
 
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
@@ -21,17 +25,56 @@ import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 public class SessionContext {
 
     /**
-     * Key used in storage to persist sessions.
+     * Default maximum number of sessions to persist.
      */
-    private static final String STORAGE_KEY = "sessions";
+    @VisibleForTesting
+    static final int DEFAULT_MAX_SESSIONS = 1000;
+
+    /**
+     * Name of the indexed session start time column in the table, in milliseconds since epoch.
+     */
+    @VisibleForTesting
+    static final String COLUMN_TIMESTAMP = "timestamp";
+
+    /**
+     * Name of the session identifier column in the table, null for the special launch session.
+     */
+    @VisibleForTesting
+    static final String COLUMN_SESSION_ID = "sid";
+
+    /**
+     * Name of the app launch time column in the table, in milliseconds since epoch.
+     */
+    @VisibleForTesting
+    static final String COLUMN_APP_LAUNCH_TIMESTAMP = "app_launch_timestamp";
+
+    /**
+     * Database name.
+     */
+    private static final String DATABASE = "com.microsoft.appcenter.sessions";
+
+    /**
+     * Table name.
+     */
+    private static final String TABLE = "sessions";
 
     /**
-     * Maximum number of sessions to persist the state.
+     * Current version of the schema.
      */
-    private static final int STORAGE_MAX_SESSIONS = 10;
+    private static final int VERSION = 1;
 
     /**
-     * Separator used for persistent storage format.
+     * Table schema.
+     */
+    private static final ContentValues SCHEMA = getContentValues(0L, "", 0L);
+
+    /**
+     * Key used in storage to persist sessions in previous SDK versions.
+     */
+    private static final String STORAGE_KEY = "sessions";
+
+    /**
+     * Separator used for persistent storage format of previous SDK versions.
      * We store session timestamp, then session uuid (can be empty for the special launch session),
      * then the app launch timestamp. Each field just is separated by this character.
      */
@@ -40,12 +83,29 @@ public class SessionContext {
     /**
      * Singleton.
      */
-    private static SessionContext sInstance;
+    private static volatile SessionContext sInstance;
+
+    /**
+     * Maximum number of sessions to persist, applied when the singleton is created.
+     */
+    private static int sMaxSessions = DEFAULT_MAX_SESSIONS;
 
     /**
-     * Past and current session identifiers sorted by session starting timestamp (ascending).
+     * Sessions of the current process sorted by session starting timestamp (ascending).
+     * Older sessions are looked up in the database.
+     * The map is never modified: it is replaced by a modified copy so that it can be read without locking.
      */
-    private final NavigableMap<Long, SessionInfo> mSessions = new TreeMap<>();
+    private volatile NavigableMap<Long, SessionInfo> mSessions = new TreeMap<>();
+
+    /**
+     * Persisted session history.
+     */
+    private final DatabaseStorage mDatabaseStorage;
+
+    /**
+     * Maximum number of sessions to keep.
+     */
+    private final int mMaxSessions;
 
     /**
      * App launch timestamp. We could use the real process start time and not SDK start time.
@@ -60,33 +120,18 @@ public class SessionContext {
      * Init.
      */
     @WorkerThread
-    private SessionContext() {
-
-        /* Try loading past sessions from storage. */
+    private SessionContext(int maxSessions) {
         mAppLaunchTimestamp = System.currentTimeMillis();
-        Set<String> storedSessions = StorageHelper.PreferencesStorage.getStringSet(STORAGE_KEY);
-        if (storedSessions != null) {
-            for (String session : storedSessions) {
-                String[] split = session.split(STORAGE_KEY_VALUE_SEPARATOR, -1);
-                try {
-                    long time = Long.parseLong(split[0]);
-                    String rawSid = split[1];
-                    UUID sid = rawSid.isEmpty() ? null : UUID.fromString(rawSid);
-                    long appLaunchTimestamp;
-                    if (split.length > 2) {
-                        appLaunchTimestamp = Long.parseLong(split[2]);
-                    } else {
-
-                        /* Backward compatibility with older SDK storage. Use placeholder. */
-                        appLaunchTimestamp = time;
+        mMaxSessions = maxSessions;
+        mDatabaseStorage = DatabaseStorage.getDatabaseStorage(DATABASE, TABLE, VERSION, SCHEMA, maxSessions, new String[]{COLUMN_TIMESTAMP},
+                new DatabaseStorage.DatabaseErrorListener() {
+
+                    @Override
+                    public void onError(String operation, RuntimeException e) {
+                        AppCenterLog.error(LOG_TAG, "Cannot complete an operation on sessions (" + operation + ")", e);
                     }
-                    mSessions.put(time, new SessionInfo(time, sid, appLaunchTimestamp));
-                } catch (RuntimeException e) {
-                    AppCenterLog.warn(LOG_TAG, "Ignore invalid session in store: " + session, e);
-                }
-            }
-        }
-        AppCenterLog.debug(LOG_TAG, "Loaded stored sessions: " + mSessions);
+                });
+        migrateSessions();
 
         /*
          * Record a session with no identifier
@@ -96,16 +141,86 @@ public class SessionContext {
     }
 
     @WorkerThread
-    public static synchronized SessionContext getInstance() {
-        if (sInstance == null) {
-            sInstance = new SessionContext();
+    public static SessionContext getInstance() {
+        SessionContext instance = sInstance;
+        if (instance == null) {
+            synchronized (SessionContext.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    sInstance = instance = new SessionContext(sMaxSessions);
+                }
+            }
         }
-        return sInstance;
+        return instance;
     }
 
     @VisibleForTesting
     public static synchronized void unsetInstance() {
         sInstance = null;
+        sMaxSessions = DEFAULT_MAX_SESSIONS;
+    }
+
+    /**
+     * Set the maximum number of sessions to keep in history, the oldest sessions are discarded first.
+     * This must be called before the SDK is started to be applied.
+     *
+     * @param maxSessions maximum number of sessions.
+     */
+    public static synchronized void setMaxSessions(@IntRange(from = 1) int maxSessions) {
+        if (maxSessions < 1) {
+            AppCenterLog.error(LOG_TAG, "Maximum number of sessions must be at least 1.");
+            return;
+        }
+        sMaxSessions = maxSessions;
+    }
+
+    /**
+     * Instantiates {@link ContentValues} for a session.
+     *
+     * @param timestamp          session timestamp.
+     * @param sessionId          session identifier, can be null.
+     * @param appLaunchTimestamp app launch timestamp.
+     * @return A {@link ContentValues} instance.
+     */
+    private static ContentValues getContentValues(long timestamp, String sessionId, long appLaunchTimestamp) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TIMESTAMP, timestamp);
+        values.put(COLUMN_SESSION_ID, sessionId);
+        values.put(COLUMN_APP_LAUNCH_TIMESTAMP, appLaunchTimestamp);
+        return values;
+    }
+
+    /**
+     * Move sessions stored in shared preferences by previous SDK versions to the database.
+     */
+    private void migrateSessions() {
+        Set<String> storedSessions = StorageHelper.PreferencesStorage.getStringSet(STORAGE_KEY);
+        if (storedSessions == null) {
+            return;
+        }
+        List<ContentValues> valuesList = new ArrayList<>(storedSessions.size());
+        for (String session : storedSessions) {
+            String[] split = session.split(STORAGE_KEY_VALUE_SEPARATOR, -1);
+            try {
+                long time = Long.parseLong(split[0]);
+                String rawSid = split[1];
+                UUID sid = rawSid.isEmpty() ? null : UUID.fromString(rawSid);
+                long appLaunchTimestamp;
+                if (split.length > 2) {
+                    appLaunchTimestamp = Long.parseLong(split[2]);
+                } else {
+
+                    /* Backward compatibility with older SDK storage. Use placeholder. */
+                    appLaunchTimestamp = time;
+                }
+                valuesList.add(getContentValues(time, sid == null ? null : sid.toString(), appLaunchTimestamp));
+            } catch (RuntimeException e) {
+                AppCenterLog.warn(LOG_TAG, "Ignore invalid session in store: " + session, e);
+            }
+        }
+        mDatabaseStorage.put(valuesList);
+        StorageHelper.PreferencesStorage.remove(STORAGE_KEY);
+        AppCenterLog.debug(LOG_TAG, "Migrated " + valuesList.size() + " stored sessions.");
     }
 
     /**
@@ -118,32 +233,55 @@ public class SessionContext {
 
         /* Update session map. */
         long now = System.currentTimeMillis();
-        mSessions.put(now, new SessionInfo(now, sessionId, mAppLaunchTimestamp));
+        NavigableMap<Long, SessionInfo> sessions = new TreeMap<>(mSessions);
+        sessions.put(now, new SessionInfo(now, sessionId, mAppLaunchTimestamp));
 
-        /* Remove oldest session if we reached maximum storage capacity. */
-        if (mSessions.size() > STORAGE_MAX_SESSIONS) {
-            mSessions.pollFirstEntry();
+        /* Remove oldest session if we reached maximum capacity. */
+        if (sessions.size() > mMaxSessions) {
+            sessions.pollFirstEntry();
         }
+        mSessions = sessions;
 
-        /* Persist sessions. */
-        Set<String> sessionStorage = new LinkedHashSet<>();
-        for (SessionInfo session : mSessions.values()) {
-            sessionStorage.add(session.toString());
-        }
-        StorageHelper.PreferencesStorage.putStringSet(STORAGE_KEY, sessionStorage);
+        /* Append session to storage, the database purges the oldest sessions. */
+        mDatabaseStorage.put(getContentValues(now, sessionId == null ? null : sessionId.toString(), mAppLaunchTimestamp));
     }
 
     /**
      * Get what was the current session from storage at the specified timestamp.
+     * Sessions of the current process are looked up without locking.
      *
      * @param timestamp try to find session at that timestamp.
      * @return found session or null.
      */
-    public synchronized SessionInfo getSessionAt(long timestamp) {
+    public SessionInfo getSessionAt(long timestamp) {
+
+        /* Sessions of this process are in memory. */
         Map.Entry<Long, SessionInfo> pastEntry = mSessions.floorEntry(timestamp);
         if (pastEntry != null) {
             return pastEntry.getValue();
         }
+
+        /* Look up sessions from previous processes. */
+        return getStoredSessionAt(timestamp);
+    }
+
+    /**
+     * Get what was the current session from the database at the specified timestamp.
+     *
+     * @param timestamp try to find session at that timestamp.
+     * @return found session or null.
+     */
+    private synchronized SessionInfo getStoredSessionAt(long timestamp) {
+        ContentValues values = mDatabaseStorage.getFloor(COLUMN_TIMESTAMP, timestamp);
+        if (values != null) {
+            try {
+                String rawSid = values.getAsString(COLUMN_SESSION_ID);
+                UUID sid = rawSid == null ? null : UUID.fromString(rawSid);
+                return new SessionInfo(values.getAsLong(COLUMN_TIMESTAMP), sid, values.getAsLong(COLUMN_APP_LAUNCH_TIMESTAMP));
+            } catch (RuntimeException e) {
+                AppCenterLog.warn(LOG_TAG, "Ignore invalid session in store: " + values, e);
+            }
+        }
         return null;
     }
 
@@ -151,8 +289,8 @@ public class SessionContext {
      * Clear storage from saved session state.
      */
     public synchronized void clearSessions() {
-        mSessions.clear();
-        StorageHelper.PreferencesStorage.remove(STORAGE_KEY);
+        mSessions = new TreeMap<>();
+        mDatabaseStorage.clear();
     }
 
     /**
@@ -4,6 +4,8 @@ import android.support.annotation.NonNull;
 
 import com.microsoft.appcenter.ingestion.models.Log;
 
+import java.util.Collection;
+
 /**
  * The interface for Channel
  */
@@ -35,6 +37,14 @@ public interface Channel {
      */
     void enqueue(@NonNull Log log, @NonNull String groupName);
 
+    /**
+     * Add logs to queue to be persisted in a single transaction and sent.
+     *
+     * @param logs      the logs to be enqueued.
+     * @param groupName the group to use.
+     */
+    void enqueueAll(@NonNull Collection<Log> logs, @NonNull String groupName);
+
     /**
      * Check whether channel is enabled or disabled.
      *
@@ -57,6 +67,14 @@ public interface Channel {
      */
     void setLogUrl(String logUrl);
 
+    /**
+     * Set how long persisted logs of the given group are kept before being discarded if not sent.
+     *
+     * @param groupName  the group name.
+     * @param timeToLive time to live in milliseconds since log creation, 0 to keep logs until sent.
+     */
+    void setLogTimeToLive(String groupName, long timeToLive);
+
     /**
      * Clear all persisted logs for the given group.
      *
@@ -111,6 +129,13 @@ public interface Channel {
          * @return true to filter out the log, false to let it being stored and sent by the channel.
          */
         boolean shouldFilter(@NonNull Log log);
+
+        /**
+         * Called after the channel compacted persistence and storage space was reclaimed.
+         *
+         * @param reclaimedBytes number of bytes reclaimed.
+         */
+        void onCompacted(long reclaimedBytes);
     }
 
     /**
@@ -140,4 +165,20 @@ public interface Channel {
          */
         void onFailure(Log log, Exception e);
     }
-}
\ No newline at end of file
+
+    /**
+     * Group listener that only needs callbacks for some logs.
+     * Logs read from persistence are decoded only when a callback is needed.
+     */
+    interface SelectiveGroupListener extends GroupListener {
+
+        /**
+         * Check if callbacks are needed for a log.
+         * Only the type, timestamp and session identifier of the log are cheap to access here.
+         *
+         * @param log log that will be passed to callbacks.
+         * @return true to get callbacks for this log, false to skip them.
+         */
+        boolean shouldNotify(@NonNull Log log);
+    }
+}
@@ -1,28 +1,42 @@
 package com.microsoft.appcenter.channel;
 
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.IngestionHttp;
 import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.json.LazyLog;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.persistence.AsyncPersistence;
+import com.microsoft.appcenter.persistence.AsyncPersistenceAdapter;
 import com.microsoft.appcenter.persistence.DatabasePersistence;
+import com.microsoft.appcenter.persistence.LogJournal;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.IdHelper;
 
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -39,11 +53,22 @@ import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 public class DefaultChannel implements Channel {
 
     /**
-     * Persistence batch size for {@link Persistence#getLogs(String, int, List)} when clearing.
+     * Persistence batch size for {@link AsyncPersistence#getLogs(String, int, List, AsyncPersistence.ResultCallback)} when clearing.
      */
     @VisibleForTesting
     static final int CLEAR_BATCH_SIZE = 100;
 
+    /**
+     * Minimum time in milliseconds between 2 database compactions.
+     */
+    @VisibleForTesting
+    static final long COMPACTION_INTERVAL = 60 * 60 * 1000;
+
+    /**
+     * Sub path of the log journal file.
+     */
+    private static final String LOG_JOURNAL_FILE = "/appcenter/log_journal";
+
     /**
      * Application context.
      */
@@ -75,9 +100,14 @@ public class DefaultChannel implements Channel {
     private final Collection<Listener> mListeners;
 
     /**
-     * The Persistence instance used to store events in the local storage.
+     * The Persistence instance used to store events in the local storage, I/O runs on its own thread.
      */
-    private final Persistence mPersistence;
+    private final AsyncPersistence mPersistence;
+
+    /**
+     * Journal of logs being persisted, to recover them if the process is killed while persisting.
+     */
+    private final LogJournal mLogJournal;
 
     /**
      * The ingestion object used to send batches to the server.
@@ -111,6 +141,11 @@ public class DefaultChannel implements Channel {
      */
     private int mCurrentState;
 
+    /**
+     * Time of the last database compaction, or of channel creation.
+     */
+    private long mLastCompactionTime;
+
     /**
      * Creates and initializes a new instance.
      *
@@ -120,7 +155,8 @@ public class DefaultChannel implements Channel {
      * @param appCenterHandler App Center looper thread handler.
      */
     public DefaultChannel(@NonNull Context context, @NonNull String appSecret, @NonNull LogSerializer logSerializer, @NonNull Handler appCenterHandler) {
-        this(context, appSecret, buildDefaultPersistence(logSerializer), new IngestionHttp(context, logSerializer), appCenterHandler);
+        this(context, appSecret, new AsyncPersistenceAdapter(buildDefaultPersistence(logSerializer), appCenterHandler), new IngestionHttp(context, logSerializer), appCenterHandler,
+                new LogJournal(new File(Constants.FILES_PATH + LOG_JOURNAL_FILE), logSerializer));
     }
 
     /**
@@ -134,6 +170,38 @@ public class DefaultChannel implements Channel {
      */
     @VisibleForTesting
     DefaultChannel(@NonNull Context context, @NonNull String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion, @NonNull Handler appCenterHandler) {
+        this(context, appSecret, persistence, ingestion, appCenterHandler, null);
+    }
+
+    /**
+     * Overloaded constructor with limited visibility that allows for dependency injection.
+     *
+     * @param context          The context.
+     * @param appSecret        The application secret.
+     * @param persistence      Persistence object for dependency injection.
+     * @param ingestion        Ingestion object for dependency injection.
+     * @param appCenterHandler App Center looper thread handler.
+     * @param logJournal       Log journal for dependency injection, can be null.
+     */
+    @VisibleForTesting
+    DefaultChannel(@NonNull Context context, @NonNull String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion, @NonNull Handler appCenterHandler, LogJournal logJournal) {
+
+        /* Persistence I/O runs on the App Center handler. */
+        this(context, appSecret, new AsyncPersistenceAdapter(persistence, appCenterHandler, appCenterHandler), ingestion, appCenterHandler, logJournal);
+    }
+
+    /**
+     * Overloaded constructor with limited visibility that allows for dependency injection.
+     *
+     * @param context          The context.
+     * @param appSecret        The application secret.
+     * @param persistence      Asynchronous persistence object for dependency injection.
+     * @param ingestion        Ingestion object for dependency injection.
+     * @param appCenterHandler App Center looper thread handler.
+     * @param logJournal       Log journal for dependency injection, can be null.
+     */
+    @VisibleForTesting
+    DefaultChannel(@NonNull Context context, @NonNull String appSecret, @NonNull AsyncPersistence persistence, @NonNull Ingestion ingestion, @NonNull Handler appCenterHandler, LogJournal logJournal) {
         mContext = context;
         mAppSecret = appSecret;
         mInstallId = IdHelper.getInstallId();
@@ -143,7 +211,9 @@ public class DefaultChannel implements Channel {
         mPersistence = persistence;
         mIngestion = ingestion;
         mAppCenterHandler = appCenterHandler;
+        mLogJournal = logJournal;
         mEnabled = true;
+        mLastCompactionTime = SystemClock.elapsedRealtime();
     }
 
     /**
@@ -177,11 +247,34 @@ public class DefaultChannel implements Channel {
         final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, groupListener);
         mGroupStates.put(groupName, groupState);
 
-        /* Count pending logs. */
-        groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+        /* Recover logs that previous process did not have time to persist. */
+        if (mLogJournal != null) {
+            mLogJournal.replay(groupName, mPersistence);
+        }
+
+        /* Count pending logs, replayed logs are included as persistence runs operations in order. */
+        mPersistence.countLogs(groupName, new AsyncPersistence.ResultCallback<Integer>() {
 
-        /* Schedule sending any pending log. */
-        checkPendingLogs(groupState.mName);
+            @Override
+            public void onResult(Integer count) {
+                handleLogsCounted(groupState, count);
+            }
+        });
+    }
+
+    /**
+     * Add logs found in persistence when the group was added to the pending count.
+     *
+     * @param groupState the group state.
+     * @param count      number of logs in persistence.
+     */
+    private synchronized void handleLogsCounted(@NonNull GroupState groupState, int count) {
+        if (groupState == mGroupStates.get(groupState.mName)) {
+            groupState.mPendingLogCount += count;
+
+            /* Schedule sending any pending log. */
+            checkPendingLogs(groupState.mName);
+        }
     }
 
     @Override
@@ -227,6 +320,11 @@ public class DefaultChannel implements Channel {
         mIngestion.setLogUrl(logUrl);
     }
 
+    @Override
+    public void setLogTimeToLive(String groupName, long timeToLive) {
+        mPersistence.setTimeToLive(groupName, timeToLive);
+    }
+
     /**
      * Delete all persisted logs for the given group.
      *
@@ -234,14 +332,44 @@ public class DefaultChannel implements Channel {
      */
     @Override
     public synchronized void clear(String groupName) {
+        if (mLogJournal != null) {
+            mLogJournal.discard(groupName);
+        }
         mPersistence.deleteLogs(groupName);
     }
 
     @Override
     public synchronized void invalidateDeviceCache() {
+
+        /* Logs still holding the previous device must not reuse its serialized JSON either. */
+        if (mDevice != null) {
+            mDevice.invalidateSerializedFragment();
+        }
         mDevice = null;
     }
 
+    /**
+     * Get the log to pass to group listener callbacks, decoding it if it was lazily read from persistence.
+     *
+     * @param groupListener group listener.
+     * @param log           log to notify.
+     * @return log to pass to callbacks or null if callbacks must be skipped for this log.
+     */
+    private static Log getLogForListener(@NonNull GroupListener groupListener, @NonNull Log log) {
+        if (groupListener instanceof SelectiveGroupListener && !((SelectiveGroupListener) groupListener).shouldNotify(log)) {
+            return null;
+        }
+        if (log instanceof LazyLog) {
+            try {
+                return ((LazyLog) log).getLog();
+            } catch (JSONException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to decode log for group listener", e);
+                return null;
+            }
+        }
+        return log;
+    }
+
     /**
      * Stop sending logs until app is restarted or the channel is enabled again.
      *
@@ -264,7 +392,10 @@ public class DefaultChannel implements Channel {
                     GroupListener groupListener = groupState.mListener;
                     if (groupListener != null) {
                         for (Log log : removedLogsForBatchId) {
-                            groupListener.onFailure(log, exception);
+                            Log listenerLog = getLogForListener(groupListener, log);
+                            if (listenerLog != null) {
+                                groupListener.onFailure(listenerLog, exception);
+                            }
                         }
                     }
                 }
@@ -277,24 +408,47 @@ public class DefaultChannel implements Channel {
         }
         if (deleteLogs) {
             for (GroupState groupState : mGroupStates.values()) {
-                deleteLogsOnSuspended(groupState);
+                deleteLogsOnSuspended(groupState, mCurrentState);
             }
         } else {
             mPersistence.clearPendingLogState();
         }
     }
 
-    private void deleteLogsOnSuspended(final GroupState groupState) {
+    private void deleteLogsOnSuspended(final GroupState groupState, final int currentState) {
         final List<Log> logs = new ArrayList<>();
-        mPersistence.getLogs(groupState.mName, CLEAR_BATCH_SIZE, logs);
+        mPersistence.getLogs(groupState.mName, CLEAR_BATCH_SIZE, logs, new AsyncPersistence.ResultCallback<String>() {
+
+            @Override
+            public void onResult(String batchId) {
+                handleLogsToDeleteOnSuspended(groupState, currentState, logs);
+            }
+        });
+    }
+
+    /**
+     * Notify listener of logs being deleted then delete them or get the next batch to notify.
+     * Nothing is deleted if the channel was enabled again or the group removed meanwhile, as new logs may have been persisted.
+     *
+     * @param groupState   the group state.
+     * @param currentState the state when logs were requested.
+     * @param logs         logs read from persistence.
+     */
+    private synchronized void handleLogsToDeleteOnSuspended(@NonNull GroupState groupState, int currentState, @NonNull List<Log> logs) {
+        if (!checkStateDidNotChange(groupState, currentState)) {
+            return;
+        }
         if (logs.size() > 0 && groupState.mListener != null) {
             for (Log log : logs) {
-                groupState.mListener.onBeforeSending(log);
-                groupState.mListener.onFailure(log, new CancellationException());
+                Log listenerLog = getLogForListener(groupState.mListener, log);
+                if (listenerLog != null) {
+                    groupState.mListener.onBeforeSending(listenerLog);
+                    groupState.mListener.onFailure(listenerLog, new CancellationException());
+                }
             }
         }
         if (logs.size() >= CLEAR_BATCH_SIZE && groupState.mListener != null) {
-            deleteLogsOnSuspended(groupState);
+            deleteLogsOnSuspended(groupState, currentState);
         } else {
             mPersistence.deleteLogs(groupState.mName);
         }
@@ -332,29 +486,69 @@ public class DefaultChannel implements Channel {
         cancelTimer(groupState);
 
         /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
-        if (groupState.mSendingBatches.size() == groupState.mMaxParallelBatches) {
+        if (groupState.mSendingBatches.size() + groupState.mFetchingBatchCount >= groupState.mMaxParallelBatches) {
             AppCenterLog.debug(LOG_TAG, "Already sending " + groupState.mMaxParallelBatches + " batches of analytics data to the server.");
             return;
         }
 
-        /* Get a batch from Persistence. */
+        /* Get a batch from Persistence, the sending batches keep being sent meanwhile. */
         final List<Log> batch = new ArrayList<>(maxFetch);
         final int stateSnapshot = mCurrentState;
-        final String batchId = mPersistence.getLogs(groupName, maxFetch, batch);
+        groupState.mFetchingBatchCount++;
 
         /* Decrement counter. */
         groupState.mPendingLogCount -= maxFetch;
+        mPersistence.getLogs(groupName, maxFetch, batch, new AsyncPersistence.ResultCallback<String>() {
 
-        /* Nothing more to do if no logs. */
-        if (batchId == null) {
+            @Override
+            public void onResult(String batchId) {
+                handleBatchFetched(groupState, stateSnapshot, batch, batchId);
+            }
+        });
+    }
+
+    /**
+     * Send a batch read from persistence.
+     *
+     * @param groupState   The group state.
+     * @param currentState The state when the batch was requested.
+     * @param batch        The log batch.
+     * @param batchId      The batch ID, null if no logs.
+     */
+    private synchronized void handleBatchFetched(@NonNull final GroupState groupState, final int currentState, @NonNull final List<Log> batch, final String batchId) {
+        groupState.mFetchingBatchCount--;
+
+        /* Nothing more to do if no logs or state changed. */
+        if (batchId == null || !checkStateDidNotChange(groupState, currentState)) {
             return;
         }
         AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
 
+        /* Drop logs whose data file cannot be read anymore instead of failing the whole batch. */
+        for (Iterator<Log> iterator = batch.iterator(); iterator.hasNext(); ) {
+            Log log = iterator.next();
+            File dataFile = log instanceof FileDataLog ? ((FileDataLog) log).getDataFile() : null;
+            if (dataFile != null && !dataFile.canRead()) {
+                AppCenterLog.error(LOG_TAG, "Cannot read data file, log discarded: " + dataFile);
+                iterator.remove();
+                discardLog(groupState, log, new FileNotFoundException(dataFile.getPath()));
+            }
+        }
+
+        /* The dropped logs are deleted with the batch. */
+        if (batch.isEmpty()) {
+            mPersistence.deleteLogs(groupState.mName, batchId);
+            checkPendingLogs(groupState.mName);
+            return;
+        }
+
         /* Call group listener before sending logs to ingestion service. */
         if (groupState.mListener != null) {
             for (Log log : batch) {
-                groupState.mListener.onBeforeSending(log);
+                Log listenerLog = getLogForListener(groupState.mListener, log);
+                if (listenerLog != null) {
+                    groupState.mListener.onBeforeSending(listenerLog);
+                }
             }
         }
 
@@ -378,7 +572,7 @@ public class DefaultChannel implements Channel {
 
             @Override
             public void run() {
-                sendLogs(groupState, stateSnapshot, batch, batchId);
+                sendLogs(groupState, currentState, batch, batchId);
             }
         });
     }
@@ -455,11 +649,77 @@ public class DefaultChannel implements Channel {
             GroupListener groupListener = groupState.mListener;
             if (groupListener != null) {
                 for (Log log : removedLogsForBatchId) {
-                    groupListener.onSuccess(log);
+                    Log listenerLog = getLogForListener(groupListener, log);
+                    if (listenerLog != null) {
+                        groupListener.onSuccess(listenerLog);
+                    }
                 }
             }
             checkPendingLogs(groupName);
+            compactIfIdle();
+        }
+    }
+
+    /**
+     * Compact persistence to shrink the database file after logs were deleted,
+     * at most once per {@link #COMPACTION_INTERVAL} and only when there is nothing left to send or the device is charging.
+     */
+    private void compactIfIdle() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - mLastCompactionTime < COMPACTION_INTERVAL || !(isIdle() || isCharging())) {
+            return;
+        }
+        mLastCompactionTime = now;
+        mPersistence.compact(new AsyncPersistence.ResultCallback<Long>() {
+
+            @Override
+            public void onResult(Long reclaimedBytes) {
+                handleCompacted(reclaimedBytes);
+            }
+        });
+    }
+
+    /**
+     * Notify listeners of the storage space reclaimed by a compaction.
+     *
+     * @param reclaimedBytes The number of bytes reclaimed.
+     */
+    private synchronized void handleCompacted(long reclaimedBytes) {
+        if (reclaimedBytes > 0) {
+            for (Listener listener : mListeners) {
+                listener.onCompacted(reclaimedBytes);
+            }
+        }
+    }
+
+    /**
+     * Check if all groups are done sending logs.
+     *
+     * @return true if no log is pending, being read or being sent.
+     */
+    private boolean isIdle() {
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mPendingLogCount > 0 || groupState.mFetchingBatchCount > 0 || !groupState.mSendingBatches.isEmpty()) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * Check if the device is plugged to a power source, using the sticky battery broadcast.
+     *
+     * @return true if charging.
+     */
+    private boolean isCharging() {
+        Intent batteryStatus;
+        try {
+            batteryStatus = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        } catch (RuntimeException e) {
+            AppCenterLog.warn(LOG_TAG, "Cannot read battery status", e);
+            return false;
+        }
+        return batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
     }
 
     /**
@@ -484,7 +744,10 @@ public class DefaultChannel implements Channel {
                 GroupListener groupListener = groupState.mListener;
                 if (groupListener != null) {
                     for (Log log : removedLogsForBatchId) {
-                        groupListener.onFailure(log, e);
+                        Log listenerLog = getLogForListener(groupListener, log);
+                        if (listenerLog != null) {
+                            groupListener.onFailure(listenerLog, e);
+                        }
                     }
                 }
             }
@@ -493,30 +756,30 @@ public class DefaultChannel implements Channel {
     }
 
     /**
-     * Actual implementation of enqueue logic. Will increase counters, triggers of batching logic.
+     * Notify group listener that a log is discarded without being sent.
      *
-     * @param log       the Log to be enqueued
-     * @param groupName the queue to use
+     * @param groupState the group state.
+     * @param log        the discarded log.
+     * @param exception  the reason, {@link CancellationException} when channel is disabled with discarding logs.
      */
-    @Override
-    public synchronized void enqueue(@NonNull Log log, @NonNull final String groupName) {
-
-        /* Check group name is registered. */
-        final GroupState groupState = mGroupStates.get(groupName);
-        if (groupState == null) {
-            AppCenterLog.error(LOG_TAG, "Invalid group name:" + groupName);
-            return;
-        }
-
-        /* Check if disabled with discarding logs. */
-        if (mDiscardLogs) {
-            AppCenterLog.warn(LOG_TAG, "Channel is disabled, log are discarded.");
-            if (groupState.mListener != null) {
-                groupState.mListener.onBeforeSending(log);
-                groupState.mListener.onFailure(log, new CancellationException());
+    private void discardLog(@NonNull GroupState groupState, @NonNull Log log, @NonNull Exception exception) {
+        if (groupState.mListener != null) {
+            Log listenerLog = getLogForListener(groupState.mListener, log);
+            if (listenerLog != null) {
+                groupState.mListener.onBeforeSending(listenerLog);
+                groupState.mListener.onFailure(listenerLog, exception);
             }
-            return;
         }
+    }
+
+    /**
+     * Let listeners decorate a log, attach device and timestamp then let listeners filter the log.
+     *
+     * @param log       the log to prepare.
+     * @param groupName the group of the log.
+     * @return true if the log must be persisted, false if it cannot or has been filtered out.
+     */
+    private boolean prepareLog(@NonNull Log log, @NonNull String groupName) {
 
         /* Call listeners so that they can decorate the log. */
         for (Listener listener : mListeners) {
@@ -532,7 +795,7 @@ public class DefaultChannel implements Channel {
                     mDevice = DeviceInfoHelper.getDeviceInfo(mContext);
                 } catch (DeviceInfoHelper.DeviceInfoException e) {
                     AppCenterLog.error(LOG_TAG, "Device log cannot be generated", e);
-                    return;
+                    return false;
                 }
             }
 
@@ -550,28 +813,157 @@ public class DefaultChannel implements Channel {
         for (Listener listener : mListeners) {
             filteredOut = filteredOut || listener.shouldFilter(log);
         }
-
-        /* Persist log if not filtered out. */
         if (filteredOut) {
             AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was filtered out by listener(s)");
-        } else {
-            try {
+        }
+        return !filteredOut;
+    }
+
+    /**
+     * Actual implementation of enqueue logic. Will increase counters, triggers of batching logic.
+     *
+     * @param log       the Log to be enqueued
+     * @param groupName the queue to use
+     */
+    @Override
+    public synchronized void enqueue(@NonNull Log log, @NonNull final String groupName) {
+
+        /* Check group name is registered. */
+        final GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
+            AppCenterLog.error(LOG_TAG, "Invalid group name:" + groupName);
+            return;
+        }
+
+        /* Check if disabled with discarding logs. */
+        if (mDiscardLogs) {
+            AppCenterLog.warn(LOG_TAG, "Channel is disabled, log are discarded.");
+            discardLog(groupState, log, new CancellationException());
+            return;
+        }
+
+        /* Persist log if not filtered out. */
+        if (prepareLog(log, groupName)) {
 
-                /* Increment counters and schedule ingestion if we are enabled. */
-                mPersistence.putLog(groupName, log);
-                groupState.mPendingLogCount++;
-                AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
-                if (mEnabled) {
-                    checkPendingLogs(groupState.mName);
-                } else {
-                    AppCenterLog.warn(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+            /* Journal log first so that it can be recovered if process is killed before it's persisted. */
+            String payload = null;
+            long journalToken = LogJournal.NO_ENTRY;
+            if (mLogJournal != null) {
+                try {
+                    payload = mLogJournal.getLogSerializer().serializeLog(log);
+                } catch (JSONException e) {
+                    AppCenterLog.error(LOG_TAG, "Error persisting log with exception: " + e.toString());
+                    return;
+                }
+                journalToken = mLogJournal.append(groupName, payload);
+            }
+            AsyncPersistence.PutLogCallback callback = new AsyncPersistence.PutLogCallback() {
+
+                @Override
+                public void onSuccess(long id) {
+                    handleLogsPersisted(groupState, 1);
+                }
+
+                @Override
+                public void onFailure(Persistence.PersistenceException e) {
+                    AppCenterLog.error(LOG_TAG, "Error persisting log with exception: " + e.toString());
                 }
-            } catch (Persistence.PersistenceException e) {
-                AppCenterLog.error(LOG_TAG, "Error persisting log with exception: " + e.toString());
+            };
+
+            /*
+             * Persistence reuses the payload serialized for the journal,
+             * and commits the journal record as soon as the log is stored.
+             */
+            if (payload != null) {
+                mPersistence.putLog(groupName, log, payload, mLogJournal.getCommitAction(journalToken), callback);
+            } else {
+                mPersistence.putLog(groupName, log, callback);
             }
         }
     }
 
+    @Override
+    public synchronized void enqueueAll(@NonNull Collection<Log> logs, @NonNull final String groupName) {
+
+        /* Check group name is registered. */
+        final GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
+            AppCenterLog.error(LOG_TAG, "Invalid group name:" + groupName);
+            return;
+        }
+
+        /* Check if disabled with discarding logs. */
+        if (mDiscardLogs) {
+            AppCenterLog.warn(LOG_TAG, "Channel is disabled, log are discarded.");
+            for (Log log : logs) {
+                discardLog(groupState, log, new CancellationException());
+            }
+            return;
+        }
+
+        /* Prepare and journal all logs, then persist the ones not filtered out at once. */
+        List<Log> preparedLogs = new ArrayList<>(logs.size());
+        for (Log log : logs) {
+            if (prepareLog(log, groupName)) {
+                preparedLogs.add(log);
+            }
+        }
+        if (preparedLogs.isEmpty()) {
+            return;
+        }
+        long journalToken = journalLogs(groupName, preparedLogs);
+        Runnable journalCommit = mLogJournal != null ? mLogJournal.getCommitAction(journalToken) : null;
+        mPersistence.putLogs(groupName, preparedLogs, journalCommit, new AsyncPersistence.ResultCallback<Integer>() {
+
+            @Override
+            public void onResult(Integer count) {
+                handleLogsPersisted(groupState, count);
+            }
+        });
+    }
+
+    /**
+     * Journal logs persisted together as a single record.
+     *
+     * @param groupName the group name.
+     * @param logs      logs to journal.
+     * @return journal token or {@link LogJournal#NO_ENTRY} if logs are not journaled.
+     */
+    private long journalLogs(@NonNull String groupName, @NonNull List<Log> logs) {
+        if (mLogJournal == null) {
+            return LogJournal.NO_ENTRY;
+        }
+        List<String> payloads = new ArrayList<>(logs.size());
+        try {
+            for (Log log : logs) {
+                payloads.add(mLogJournal.getLogSerializer().serializeLog(log));
+            }
+        } catch (JSONException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot journal logs.", e);
+            return LogJournal.NO_ENTRY;
+        }
+        return mLogJournal.appendAll(groupName, payloads);
+    }
+
+    /**
+     * Increment counters and schedule ingestion if we are enabled once logs are persisted.
+     *
+     * @param groupState the group state.
+     * @param count      number of logs persisted.
+     */
+    private synchronized void handleLogsPersisted(@NonNull GroupState groupState, int count) {
+        if (groupState != mGroupStates.get(groupState.mName) || count <= 0) {
+            return;
+        }
+        groupState.mPendingLogCount += count;
+        AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+        if (mEnabled) {
+            checkPendingLogs(groupState.mName);
+        } else {
+            AppCenterLog.warn(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+        }
+    }
+
     /**
      * Check for logs to trigger immediately or schedule with a timer or does nothing if no logs.
      *
@@ -644,6 +1036,11 @@ public class DefaultChannel implements Channel {
          */
         int mPendingLogCount;
 
+        /**
+         * Batches being currently read from persistence.
+         */
+        int mFetchingBatchCount;
+
         /**
          * Is timer scheduled.
          */
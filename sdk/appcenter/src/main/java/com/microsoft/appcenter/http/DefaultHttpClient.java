@@ -64,6 +64,11 @@ public class DefaultHttpClient implements HttpClient {
      */
     private static final int READ_BUFFER_SIZE = 1024;
 
+    /**
+     * Chunk length for streamed request bodies.
+     */
+    private static final int CHUNK_LENGTH = 64 * 1024;
+
     /**
      * HTTP connection timeout.
      */
@@ -149,16 +154,30 @@ public class DefaultHttpClient implements HttpClient {
 
             /* Build payload. */
             if (method.equals(METHOD_POST) && callTemplate != null) {
-                String payload = callTemplate.buildRequestBody();
-                AppCenterLog.verbose(LOG_TAG, payload);
-
-                /* Send payload through the wire. */
-                byte[] binaryPayload = payload.getBytes(CHARSET_NAME);
-                urlConnection.setDoOutput(true);
-                urlConnection.setFixedLengthStreamingMode(binaryPayload.length);
-                OutputStream out = urlConnection.getOutputStream();
-                out.write(binaryPayload);
-                out.close();
+                if (callTemplate instanceof StreamingCallTemplate) {
+
+                    /* Stream payload of unknown length in chunks. */
+                    AppCenterLog.verbose(LOG_TAG, "Streaming request body...");
+                    urlConnection.setDoOutput(true);
+                    urlConnection.setChunkedStreamingMode(CHUNK_LENGTH);
+                    OutputStream out = urlConnection.getOutputStream();
+                    try {
+                        ((StreamingCallTemplate) callTemplate).writeRequestBody(out);
+                    } finally {
+                        out.close();
+                    }
+                } else {
+                    String payload = callTemplate.buildRequestBody();
+                    AppCenterLog.verbose(LOG_TAG, payload);
+
+                    /* Send payload through the wire. */
+                    byte[] binaryPayload = payload.getBytes(CHARSET_NAME);
+                    urlConnection.setDoOutput(true);
+                    urlConnection.setFixedLengthStreamingMode(binaryPayload.length);
+                    OutputStream out = urlConnection.getOutputStream();
+                    out.write(binaryPayload);
+                    out.close();
+                }
             }
 
             /* Read response. */
@@ -3,6 +3,8 @@ package com.microsoft.appcenter.http;
 import org.json.JSONException;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.Map;
 
@@ -45,6 +47,22 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call callbacks for a request body too large to be built in memory.
+     * The body is written directly to the connection using chunked transfer encoding.
+     */
+    interface StreamingCallTemplate extends CallTemplate {
+
+        /**
+         * Called when the method is POST to write the request body, instead of {@link #buildRequestBody()}.
+         *
+         * @param stream request body stream, closed by the caller.
+         * @throws JSONException callback can throw this to make the call fail if a JSON error occurs.
+         * @throws IOException   if writing failed.
+         */
+        void writeRequestBody(OutputStream stream) throws JSONException, IOException;
+    }
+
     /**
      * Make this client active again after closing.
      */
@@ -11,6 +11,8 @@ import com.microsoft.appcenter.http.HttpClientRetryer;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
+import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -18,7 +20,11 @@ import com.microsoft.appcenter.utils.NetworkStateHelper;
 
 import org.json.JSONException;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -54,6 +60,11 @@ public class IngestionHttp implements Ingestion {
     @VisibleForTesting
     static final String APP_SECRET = "App-Secret";
 
+    /**
+     * Request body charset.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
     /**
      * Log serializer.
      */
@@ -99,10 +110,27 @@ public class IngestionHttp implements Ingestion {
         Map<String, String> headers = new HashMap<>();
         headers.put(INSTALL_ID, installId.toString());
         headers.put(APP_SECRET, appSecret);
-        HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
+        HttpClient.CallTemplate callTemplate;
+        if (hasDataFile(logContainer)) {
+            callTemplate = new StreamingIngestionCallTemplate(mLogSerializer, logContainer);
+        } else {
+            callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
+        }
         return mHttpClient.callAsync(mLogUrl + API_PATH, METHOD_POST, headers, callTemplate, serviceCallback);
     }
 
+    /**
+     * Check if a log has its data in a file that must be streamed.
+     */
+    private static boolean hasDataFile(LogContainer logContainer) {
+        for (Log log : logContainer.getLogs()) {
+            if (log instanceof FileDataLog && ((FileDataLog) log).getDataFile() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void close() throws IOException {
         mHttpClient.close();
@@ -118,9 +146,9 @@ public class IngestionHttp implements Ingestion {
      */
     private static class IngestionCallTemplate implements HttpClient.CallTemplate {
 
-        private final LogSerializer mLogSerializer;
+        final LogSerializer mLogSerializer;
 
-        private final LogContainer mLogContainer;
+        final LogContainer mLogContainer;
 
         IngestionCallTemplate(LogSerializer logSerializer, LogContainer logContainer) {
             mLogSerializer = logSerializer;
@@ -151,4 +179,21 @@ public class IngestionHttp implements Ingestion {
             }
         }
     }
+
+    /**
+     * Call template writing logs to the connection so that file data is never loaded in memory.
+     */
+    private static class StreamingIngestionCallTemplate extends IngestionCallTemplate implements HttpClient.StreamingCallTemplate {
+
+        StreamingIngestionCallTemplate(LogSerializer logSerializer, LogContainer logContainer) {
+            super(logSerializer, logContainer);
+        }
+
+        @Override
+        public void writeRequestBody(OutputStream stream) throws JSONException, IOException {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, CHARSET_NAME));
+            mLogSerializer.serializeContainer(mLogContainer, writer);
+            writer.flush();
+        }
+    }
 }
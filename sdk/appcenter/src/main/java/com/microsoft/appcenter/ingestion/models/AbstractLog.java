@@ -2,6 +2,7 @@ package com.microsoft.appcenter.ingestion.models;
 
 
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
 
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
@@ -10,6 +11,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.UUID;
 
@@ -18,19 +20,17 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 /**
  * The AbstractLog model.
  */
-public abstract class AbstractLog implements Log {
+public abstract class AbstractLog implements Log, PropertyReader {
 
     /**
      * timestamp property.
      */
-    @VisibleForTesting
-    static final String TIMESTAMP = "timestamp";
+    public static final String TIMESTAMP = "timestamp";
 
     /**
      * Session identifier property.
      */
-    @VisibleForTesting
-    static final String SID = "sid";
+    public static final String SID = "sid";
 
     /**
      * Distribution group ID property.
@@ -41,8 +41,7 @@ public abstract class AbstractLog implements Log {
     /**
      * device property.
      */
-    @VisibleForTesting
-    static final String DEVICE = "device";
+    public static final String DEVICE = "device";
 
     /**
      * Log timestamp.
@@ -134,32 +133,52 @@ public abstract class AbstractLog implements Log {
         writer.key(TIMESTAMP).value(JSONDateUtils.toString(getTimestamp()));
         JSONUtils.write(writer, SID, getSid());
         JSONUtils.write(writer, DISTRIBUTION_GROUP_ID, getDistributionGroupId());
-        if (getDevice() != null) {
-            writer.key(DEVICE).object();
-            getDevice().write(writer);
-            writer.endObject();
-        }
+
+        /* Device is written by the log serializer, which can splice its cached JSON instead. */
     }
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        if (!object.getString(TYPE).equals(getType())) {
-            throw new JSONException("Invalid type");
-        }
-        setTimestamp(JSONDateUtils.toDate(object.getString(TIMESTAMP)));
-        if (object.has(SID)) {
-            setSid(UUID.fromString(object.getString(SID)));
-        }
-        if (object.has(DISTRIBUTION_GROUP_ID)) {
-            setDistributionGroupId(object.getString(DISTRIBUTION_GROUP_ID));
-        }
-        if (object.has(DEVICE)) {
-            Device device = new Device();
-            device.read(object.getJSONObject(DEVICE));
-            setDevice(device);
+        JSONUtils.readObject(object, this);
+    }
+
+    @Override
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case TYPE:
+                if (!reader.nextString().equals(getType())) {
+                    throw new JSONException("Invalid type");
+                }
+                return true;
+
+            case TIMESTAMP:
+                setTimestamp(JSONDateUtils.toDate(reader.nextString()));
+                return true;
+
+            case SID:
+                setSid(UUID.fromString(reader.nextString()));
+                return true;
+
+            case DISTRIBUTION_GROUP_ID:
+                setDistributionGroupId(reader.nextString());
+                return true;
+
+            case DEVICE:
+                Device device = new Device();
+                JSONUtils.readObject(reader, device);
+                setDevice(device);
+                return true;
+
+            default:
+                return false;
         }
     }
 
+    @Override
+    public void validate() throws JSONException {
+        JSONUtils.checkRequired(TIMESTAMP, timestamp);
+    }
+
     @Override
     @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
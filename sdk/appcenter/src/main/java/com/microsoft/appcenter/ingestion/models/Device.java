@@ -1,11 +1,14 @@
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Device characteristic log.
  */
@@ -125,6 +128,11 @@ public class Device extends WrapperSdk {
      */
     private String appNamespace;
 
+    /**
+     * Cached JSON object of this device, shared by all the logs that reference this instance.
+     */
+    private volatile String serializedFragment;
+
     /**
      * Get the sdkName value.
      *
@@ -142,6 +150,7 @@ public class Device extends WrapperSdk {
      */
     public void setSdkName(String sdkName) {
         this.sdkName = sdkName;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -161,6 +170,7 @@ public class Device extends WrapperSdk {
      */
     public void setSdkVersion(String sdkVersion) {
         this.sdkVersion = sdkVersion;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -179,6 +189,7 @@ public class Device extends WrapperSdk {
      */
     public void setModel(String model) {
         this.model = model;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -197,6 +208,7 @@ public class Device extends WrapperSdk {
      */
     public void setOemName(String oemName) {
         this.oemName = oemName;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -215,6 +227,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsName(String osName) {
         this.osName = osName;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -233,6 +246,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsVersion(String osVersion) {
         this.osVersion = osVersion;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -251,6 +265,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsBuild(String osBuild) {
         this.osBuild = osBuild;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -269,6 +284,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsApiLevel(Integer osApiLevel) {
         this.osApiLevel = osApiLevel;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -287,6 +303,7 @@ public class Device extends WrapperSdk {
      */
     public void setLocale(String locale) {
         this.locale = locale;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -305,6 +322,7 @@ public class Device extends WrapperSdk {
      */
     public void setTimeZoneOffset(Integer timeZoneOffset) {
         this.timeZoneOffset = timeZoneOffset;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -323,6 +341,7 @@ public class Device extends WrapperSdk {
      */
     public void setScreenSize(String screenSize) {
         this.screenSize = screenSize;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -341,6 +360,7 @@ public class Device extends WrapperSdk {
      */
     public void setAppVersion(String appVersion) {
         this.appVersion = appVersion;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -359,6 +379,7 @@ public class Device extends WrapperSdk {
      */
     public void setCarrierName(String carrierName) {
         this.carrierName = carrierName;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -377,6 +398,7 @@ public class Device extends WrapperSdk {
      */
     public void setCarrierCountry(String carrierCountry) {
         this.carrierCountry = carrierCountry;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -395,6 +417,7 @@ public class Device extends WrapperSdk {
      */
     public void setAppBuild(String appBuild) {
         this.appBuild = appBuild;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -413,27 +436,122 @@ public class Device extends WrapperSdk {
      */
     public void setAppNamespace(String appNamespace) {
         this.appNamespace = appNamespace;
+        invalidateSerializedFragment();
+    }
+
+    /**
+     * Get this device serialized as a JSON object, computing it only once until a property changes.
+     *
+     * @return the JSON object of this device.
+     * @throws JSONException if serialization failed.
+     */
+    public String getSerializedFragment() throws JSONException {
+        String fragment = serializedFragment;
+        if (fragment == null) {
+            JSONStringer writer = new JSONStringer();
+            writer.object();
+            write(writer);
+            writer.endObject();
+            fragment = writer.toString();
+            serializedFragment = fragment;
+        }
+        return fragment;
+    }
+
+    /**
+     * Drop the cached JSON object so that it is computed again on next use.
+     */
+    @Override
+    public void invalidateSerializedFragment() {
+        serializedFragment = null;
+    }
+
+    @Override
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case SDK_NAME:
+                setSdkName(JSONUtils.readString(reader));
+                return true;
+
+            case SDK_VERSION:
+                setSdkVersion(JSONUtils.readString(reader));
+                return true;
+
+            case MODEL:
+                setModel(JSONUtils.readString(reader));
+                return true;
+
+            case OEM_NAME:
+                setOemName(JSONUtils.readString(reader));
+                return true;
+
+            case OS_NAME:
+                setOsName(JSONUtils.readString(reader));
+                return true;
+
+            case OS_VERSION:
+                setOsVersion(JSONUtils.readString(reader));
+                return true;
+
+            case OS_BUILD:
+                setOsBuild(JSONUtils.readString(reader));
+                return true;
+
+            case OS_API_LEVEL:
+                setOsApiLevel(JSONUtils.readInteger(reader));
+                return true;
+
+            case LOCALE:
+                setLocale(JSONUtils.readString(reader));
+                return true;
+
+            case TIME_ZONE_OFFSET:
+                setTimeZoneOffset(JSONUtils.readInteger(reader));
+                return true;
+
+            case SCREEN_SIZE:
+                setScreenSize(JSONUtils.readString(reader));
+                return true;
+
+            case APP_VERSION:
+                setAppVersion(JSONUtils.readString(reader));
+                return true;
+
+            case CARRIER_NAME:
+                setCarrierName(JSONUtils.readString(reader));
+                return true;
+
+            case CARRIER_COUNTRY:
+                setCarrierCountry(JSONUtils.readString(reader));
+                return true;
+
+            case APP_BUILD:
+                setAppBuild(JSONUtils.readString(reader));
+                return true;
+
+            case APP_NAMESPACE:
+                setAppNamespace(JSONUtils.readString(reader));
+                return true;
+
+            default:
+                return super.readProperty(name, reader);
+        }
     }
 
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        setSdkName(object.getString(SDK_NAME));
-        setSdkVersion(object.getString(SDK_VERSION));
-        setModel(object.getString(MODEL));
-        setOemName(object.getString(OEM_NAME));
-        setOsName(object.getString(OS_NAME));
-        setOsVersion(object.getString(OS_VERSION));
-        setOsBuild(object.optString(OS_BUILD, null));
-        setOsApiLevel(JSONUtils.readInteger(object, OS_API_LEVEL));
-        setLocale(object.getString(LOCALE));
-        setTimeZoneOffset(object.getInt(TIME_ZONE_OFFSET));
-        setScreenSize(object.getString(SCREEN_SIZE));
-        setAppVersion(object.getString(APP_VERSION));
-        setCarrierName(object.optString(CARRIER_NAME, null));
-        setCarrierCountry(object.optString(CARRIER_COUNTRY, null));
-        setAppBuild(object.getString(APP_BUILD));
-        setAppNamespace(object.optString(APP_NAMESPACE, null));
+    public void validate() throws JSONException {
+        super.validate();
+        JSONUtils.checkRequired(SDK_NAME, sdkName);
+        JSONUtils.checkRequired(SDK_VERSION, sdkVersion);
+        JSONUtils.checkRequired(MODEL, model);
+        JSONUtils.checkRequired(OEM_NAME, oemName);
+        JSONUtils.checkRequired(OS_NAME, osName);
+        JSONUtils.checkRequired(OS_VERSION, osVersion);
+        JSONUtils.checkRequired(LOCALE, locale);
+        JSONUtils.checkRequired(TIME_ZONE_OFFSET, timeZoneOffset);
+        JSONUtils.checkRequired(SCREEN_SIZE, screenSize);
+        JSONUtils.checkRequired(APP_VERSION, appVersion);
+        JSONUtils.checkRequired(APP_BUILD, appBuild);
     }
 
     @Override
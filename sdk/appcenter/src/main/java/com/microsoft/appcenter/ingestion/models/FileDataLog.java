@@ -0,0 +1,28 @@
+package com.microsoft.appcenter.ingestion.models;
+
+import java.io.File;
+
+/**
+ * Log whose binary data can stay in a file until the log is sent.
+ * Only the file path is persisted, the file content is Base64 encoded directly into the request body.
+ */
+public interface FileDataLog extends Log {
+
+    /**
+     * Property holding the Base64 encoded data in the request body.
+     */
+    String DATA = "data";
+
+    /**
+     * Property holding the data file path in persisted JSON, written by the log serializer
+     * which writes {@link #DATA} instead when sending.
+     */
+    String DATA_FILE = "dataFile";
+
+    /**
+     * Get the file holding the data.
+     *
+     * @return data file or null if data is held in memory.
+     */
+    File getDataFile();
+}
@@ -1,11 +1,13 @@
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -39,9 +41,12 @@ public abstract class LogWithProperties extends AbstractLog {
     }
 
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        setProperties(JSONUtils.readMap(object, PROPERTIES));
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        if (PROPERTIES.equals(name)) {
+            setProperties(JSONUtils.readMap(reader));
+            return true;
+        }
+        return super.readProperty(name, reader);
     }
 
     @Override
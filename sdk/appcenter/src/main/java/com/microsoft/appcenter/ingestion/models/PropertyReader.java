@@ -0,0 +1,32 @@
+package com.microsoft.appcenter.ingestion.models;
+
+import android.util.JsonReader;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * Reads the properties of a model one at a time, this is the only property mapping of a model
+ * and is used both for streaming and for {@link org.json.JSONObject} input.
+ */
+public interface PropertyReader {
+
+    /**
+     * Read a property value.
+     *
+     * @param name   property name.
+     * @param reader reader positioned on the property value.
+     * @return true if the value was consumed, false if the property is unknown and its value must be skipped.
+     * @throws IOException   if the JSON is malformed.
+     * @throws JSONException if the value is invalid.
+     */
+    boolean readProperty(String name, JsonReader reader) throws IOException, JSONException;
+
+    /**
+     * Check that required properties were read, called once all properties are read.
+     *
+     * @throws JSONException if a required property is missing.
+     */
+    void validate() throws JSONException;
+}
@@ -1,17 +1,19 @@
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Describe a AppCenter.start call from the SDK.
  */
-public class StartServiceLog extends AbstractLog {
+public class StartServiceLog extends AbstractLog implements StreamingModel {
 
     /**
      * Log type.
@@ -49,9 +51,12 @@ public class StartServiceLog extends AbstractLog {
     }
 
     @Override
-    public void read(JSONObject object) throws JSONException {
-        super.read(object);
-        setServices(JSONUtils.readStringArray(object, SERVICES));
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        if (SERVICES.equals(name)) {
+            setServices(JSONUtils.readStringArray(reader));
+            return true;
+        }
+        return super.readProperty(name, reader);
     }
 
     @Override
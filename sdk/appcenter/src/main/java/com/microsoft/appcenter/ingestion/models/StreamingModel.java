@@ -0,0 +1,8 @@
+package com.microsoft.appcenter.ingestion.models;
+
+/**
+ * Model that can also be read in a single pass from a streaming JSON reader,
+ * without building a {@link org.json.JSONObject} first.
+ */
+public interface StreamingModel extends Model, PropertyReader {
+}
@@ -1,12 +1,16 @@
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
-public class WrapperSdk implements Model {
+import java.io.IOException;
+
+public class WrapperSdk implements StreamingModel {
 
     private static final String WRAPPER_SDK_VERSION = "wrapperSdkVersion";
 
@@ -71,6 +75,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperSdkVersion(String wrapperSdkVersion) {
         this.wrapperSdkVersion = wrapperSdkVersion;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -89,6 +94,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperSdkName(String wrapperSdkName) {
         this.wrapperSdkName = wrapperSdkName;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -107,6 +113,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperRuntimeVersion(String wrapperRuntimeVersion) {
         this.wrapperRuntimeVersion = wrapperRuntimeVersion;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -125,6 +132,7 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdateReleaseLabel(String liveUpdateReleaseLabel) {
         this.liveUpdateReleaseLabel = liveUpdateReleaseLabel;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -143,6 +151,7 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdateDeploymentKey(String liveUpdateDeploymentKey) {
         this.liveUpdateDeploymentKey = liveUpdateDeploymentKey;
+        invalidateSerializedFragment();
     }
 
     /**
@@ -161,16 +170,54 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdatePackageHash(String liveUpdatePackageHash) {
         this.liveUpdatePackageHash = liveUpdatePackageHash;
+        invalidateSerializedFragment();
+    }
+
+    /**
+     * Called after any property changed, lets subclasses drop state derived from properties.
+     */
+    void invalidateSerializedFragment() {
     }
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        setWrapperSdkVersion(object.optString(WRAPPER_SDK_VERSION, null));
-        setWrapperSdkName(object.optString(WRAPPER_SDK_NAME, null));
-        setWrapperRuntimeVersion(object.optString(WRAPPER_RUNTIME_VERSION, null));
-        setLiveUpdateReleaseLabel(object.optString(LIVE_UPDATE_RELEASE_LABEL, null));
-        setLiveUpdateDeploymentKey(object.optString(LIVE_UPDATE_DEPLOYMENT_KEY, null));
-        setLiveUpdatePackageHash(object.optString(LIVE_UPDATE_PACKAGE_HASH, null));
+        JSONUtils.readObject(object, this);
+    }
+
+    @Override
+    public boolean readProperty(String name, JsonReader reader) throws IOException, JSONException {
+        switch (name) {
+            case WRAPPER_SDK_VERSION:
+                setWrapperSdkVersion(JSONUtils.readString(reader));
+                return true;
+
+            case WRAPPER_SDK_NAME:
+                setWrapperSdkName(JSONUtils.readString(reader));
+                return true;
+
+            case WRAPPER_RUNTIME_VERSION:
+                setWrapperRuntimeVersion(JSONUtils.readString(reader));
+                return true;
+
+            case LIVE_UPDATE_RELEASE_LABEL:
+                setLiveUpdateReleaseLabel(JSONUtils.readString(reader));
+                return true;
+
+            case LIVE_UPDATE_DEPLOYMENT_KEY:
+                setLiveUpdateDeploymentKey(JSONUtils.readString(reader));
+                return true;
+
+            case LIVE_UPDATE_PACKAGE_HASH:
+                setLiveUpdatePackageHash(JSONUtils.readString(reader));
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void validate() throws JSONException {
     }
 
     @Override
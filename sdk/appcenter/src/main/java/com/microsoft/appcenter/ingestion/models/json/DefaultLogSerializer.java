@@ -1,39 +1,107 @@
 package com.microsoft.appcenter.ingestion.models.json;
 
 import android.support.annotation.NonNull;
+import android.util.Base64;
+import android.util.JsonReader;
 
 import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.StringInterner;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+import static com.microsoft.appcenter.ingestion.models.AbstractLog.DEVICE;
+import static com.microsoft.appcenter.ingestion.models.AbstractLog.SID;
+import static com.microsoft.appcenter.ingestion.models.AbstractLog.TIMESTAMP;
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 
 public class DefaultLogSerializer implements LogSerializer {
 
     private static final String LOGS = "logs";
 
+    /**
+     * Number of file bytes encoded at once, a multiple of 3 so that Base64 chunks can be concatenated.
+     */
+    private static final int BASE64_CHUNK_LENGTH = 3 * 4096;
+
     private final Map<String, LogFactory> mLogFactories = new HashMap<>();
 
+    /**
+     * Write a log as a JSON object.
+     *
+     * @param writer      output.
+     * @param log         log to serialize.
+     * @param writeDevice   true to write device properties, false to leave the device out so that the caller can splice it.
+     * @param writeDataFile true to write the data file path, false to leave it out so that the caller can stream the file data.
+     * @return the writer.
+     * @throws JSONException if serialization failed.
+     */
     @NonNull
-    private JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
+    private JSONStringer writeLog(JSONStringer writer, Log log, boolean writeDevice, boolean writeDataFile) throws JSONException {
         writer.object();
         log.write(writer);
+        File dataFile = getDataFile(log);
+        if (writeDataFile && dataFile != null) {
+            writer.key(FileDataLog.DATA_FILE).value(dataFile.getPath());
+        }
+        Device device = log.getDevice();
+        if (writeDevice && device != null) {
+            writer.key(DEVICE).object();
+            device.write(writer);
+            writer.endObject();
+        }
         writer.endObject();
         return writer;
     }
 
+    /**
+     * Append a log as compact JSON, splicing the cached JSON object of the device
+     * instead of writing all its properties again.
+     *
+     * @param builder       output.
+     * @param log           log to serialize.
+     * @param device        device to splice, equal to the log device but possibly an instance with an already cached JSON.
+     * @param writeDataFile true to write the data file path, false to leave it out.
+     * @throws JSONException if serialization failed.
+     */
+    private void appendLog(StringBuilder builder, Log log, Device device, boolean writeDataFile) throws JSONException {
+        String json = writeLog(new JSONStringer(), log, false, writeDataFile).toString();
+        if (device == null) {
+            builder.append(json);
+            return;
+        }
+
+        /* Device goes last so that type remains the first property for streaming decode. */
+        builder.append(json, 0, json.length() - 1);
+        if (json.length() > 2) {
+            builder.append(',');
+        }
+        builder.append('"').append(DEVICE).append("\":").append(device.getSerializedFragment()).append('}');
+    }
+
     @NonNull
     private Log readLog(JSONObject object) throws JSONException {
         String type = object.getString(TYPE);
@@ -46,32 +114,140 @@ public class DefaultLogSerializer implements LogSerializer {
         return log;
     }
 
+    /**
+     * Read a log in a single pass without building a JSONObject,
+     * only possible when type is the first property and the log type supports streaming.
+     *
+     * @param json log JSON.
+     * @return log or null if streaming cannot be used.
+     * @throws JSONException if the type is unknown or a value is invalid.
+     */
+    private Log readLogStreaming(String json) throws JSONException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            reader.beginObject();
+            if (!reader.hasNext() || !TYPE.equals(reader.nextName())) {
+                return null;
+            }
+            String type = reader.nextString();
+            LogFactory logFactory = mLogFactories.get(type);
+            if (logFactory == null) {
+                throw new JSONException("Unknown log type: " + type);
+            }
+            Log log = logFactory.create();
+            if (!(log instanceof StreamingModel)) {
+                return null;
+            }
+            JSONUtils.readProperties(reader, (StreamingModel) log);
+            return log;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+
+            /* Let the DOM parser report the error. */
+            return null;
+        }
+    }
+
     @NonNull
     @Override
     public String serializeLog(@NonNull Log log) throws JSONException {
-        return writeLog(new JSONStringer(), log).toString();
+        if (log instanceof LazyLog) {
+            LazyLog lazyLog = (LazyLog) log;
+            if (!lazyLog.isDecoded()) {
+                return lazyLog.getPayload();
+            }
+            log = lazyLog.getLog();
+        }
+        StringBuilder builder = new StringBuilder();
+        appendLog(builder, log, log.getDevice(), true);
+        return builder.toString();
     }
 
     @NonNull
     @Override
     public Log deserializeLog(@NonNull String json) throws JSONException {
-        return readLog(new JSONObject(json));
+        Log log = readLogStreaming(json);
+        return log != null ? log : readLog(new JSONObject(json));
+    }
+
+    @NonNull
+    @Override
+    public Log deserializeLazyLog(@NonNull String json) throws JSONException {
+        String type = null;
+        Date timestamp = null;
+        UUID sid = null;
+        boolean hasDataFile = false;
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+
+            /* Skipping the other values still checks the syntax of the whole payload. */
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case TYPE:
+                        type = StringInterner.intern(reader.nextString());
+                        break;
+
+                    case TIMESTAMP:
+                        timestamp = JSONDateUtils.toDate(reader.nextString());
+                        break;
+
+                    case SID:
+                        sid = UUID.fromString(reader.nextString());
+                        break;
+
+                    case FileDataLog.DATA_FILE:
+                        hasDataFile = true;
+                        reader.skipValue();
+                        break;
+
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            throw new JSONException("Invalid log JSON: " + e.getMessage());
+        }
+        if (type == null) {
+            throw new JSONException("Missing log type");
+        }
+        if (!mLogFactories.containsKey(type)) {
+            throw new JSONException("Unknown log type: " + type);
+        }
+        JSONUtils.checkRequired(TIMESTAMP, timestamp);
+
+        /* Payload cannot be passed through as the data file must be streamed, decode now. */
+        if (hasDataFile) {
+            return deserializeLog(json);
+        }
+        return new LazyLog(this, json, type, timestamp, sid);
     }
 
     @NonNull
     @Override
     public String serializeContainer(@NonNull LogContainer logContainer) throws JSONException {
 
-        /* Init JSON serializer, in verbose: try to make it pretty. */
-        JSONStringer writer = null;
-        if (AppCenterLog.getLogLevel() <= android.util.Log.VERBOSE) {
+        /* Use compact output with spliced devices unless verbose. */
+        if (AppCenterLog.getLogLevel() > android.util.Log.VERBOSE) {
+            StringWriter writer = new StringWriter();
             try {
-                Constructor<JSONStringer> constructor = JSONStringer.class.getDeclaredConstructor(int.class);
-                constructor.setAccessible(true);
-                writer = constructor.newInstance(2);
-            } catch (Exception e) {
-                AppCenterLog.error(AppCenter.LOG_TAG, "Failed to setup pretty json, falling back to default one", e);
+                writeContainer(writer, logContainer, false);
+            } catch (IOException e) {
+
+                /* Cannot happen with a string writer. */
+                throw new JSONException(e.getMessage());
             }
+            return writer.toString();
+        }
+
+        /* Init JSON serializer, try to make it pretty. */
+        JSONStringer writer = null;
+        try {
+            Constructor<JSONStringer> constructor = JSONStringer.class.getDeclaredConstructor(int.class);
+            constructor.setAccessible(true);
+            writer = constructor.newInstance(2);
+        } catch (Exception e) {
+            AppCenterLog.error(AppCenter.LOG_TAG, "Failed to setup pretty json, falling back to default one", e);
         }
         if (writer == null) {
             writer = new JSONStringer();
@@ -81,13 +257,122 @@ public class DefaultLogSerializer implements LogSerializer {
         writer.object();
         writer.key(LOGS).array();
         for (Log log : logContainer.getLogs()) {
-            writeLog(writer, log);
+            writeLog(writer, log, true, true);
         }
         writer.endArray();
         writer.endObject();
         return writer.toString();
     }
 
+    @Override
+    public void serializeContainer(@NonNull LogContainer logContainer, @NonNull Writer writer) throws JSONException, IOException {
+        writeContainer(writer, logContainer, true);
+    }
+
+    /**
+     * Write a container as compact JSON with spliced devices.
+     *
+     * @param writer          output.
+     * @param logContainer    container to serialize.
+     * @param streamDataFiles true to write the Base64 encoded content of data files, false to write their path.
+     * @throws JSONException if serialization failed.
+     * @throws IOException   if writing failed.
+     */
+    private void writeContainer(Writer writer, LogContainer logContainer, boolean streamDataFiles) throws JSONException, IOException {
+        writer.write("{\"" + LOGS + "\":[");
+        Device sharedDevice = null;
+        boolean first = true;
+        for (Log log : logContainer.getLogs()) {
+
+            /* Pass through the payload of logs read from database that nobody accessed. */
+            if (log instanceof LazyLog) {
+                LazyLog lazyLog = (LazyLog) log;
+                if (!lazyLog.isDecoded()) {
+                    first = writeSeparator(writer, first);
+                    writer.write(lazyLog.getPayload());
+                    continue;
+                }
+                log = lazyLog.getLog();
+            }
+
+            /* The channel drops unreadable data files when building the batch, skip the ones deleted since. */
+            File dataFile = streamDataFiles ? getDataFile(log) : null;
+            if (dataFile != null && !dataFile.canRead()) {
+                AppCenterLog.error(AppCenter.LOG_TAG, "Cannot read data file, log not sent: " + dataFile);
+                continue;
+            }
+            first = writeSeparator(writer, first);
+
+            /* Logs read from database have their own device instances, reuse the JSON of equal ones. */
+            Device device = log.getDevice();
+            if (device != null && !device.equals(sharedDevice)) {
+                sharedDevice = device;
+            }
+            StringBuilder builder = new StringBuilder();
+            appendLog(builder, log, device == null ? null : sharedDevice, !streamDataFiles);
+            if (dataFile == null) {
+                writer.append(builder);
+                continue;
+            }
+
+            /* Add the Base64 encoded file content as the last member of the log object. */
+            writer.append(builder, 0, builder.length() - 1);
+            writer.write(",\"" + FileDataLog.DATA + "\":\"");
+            writeBase64(dataFile, writer);
+            writer.write("\"}");
+        }
+        writer.write("]}");
+    }
+
+    /**
+     * Write a comma before every log but the first one, returning false to update the first log flag.
+     */
+    private static boolean writeSeparator(Writer writer, boolean first) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        return false;
+    }
+
+    /**
+     * Get the data file to stream for a log, null if none or if the log is not decoded.
+     */
+    private static File getDataFile(Log log) throws JSONException {
+        if (log instanceof LazyLog) {
+            LazyLog lazyLog = (LazyLog) log;
+            if (!lazyLog.isDecoded()) {
+                return null;
+            }
+            log = lazyLog.getLog();
+        }
+        return log instanceof FileDataLog ? ((FileDataLog) log).getDataFile() : null;
+    }
+
+    /**
+     * Write file content as Base64 one chunk at a time.
+     */
+    private static void writeBase64(File file, Writer writer) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BASE64_CHUNK_LENGTH];
+            int length;
+            do {
+
+                /* Only the last chunk can be shorter, otherwise padding would corrupt the output. */
+                length = 0;
+                int read;
+                while (length < buffer.length && (read = input.read(buffer, length, buffer.length - length)) > 0) {
+                    length += read;
+                }
+                if (length > 0) {
+                    writer.write(Base64.encodeToString(buffer, 0, length, Base64.NO_WRAP));
+                }
+            } while (length == buffer.length);
+        } finally {
+            input.close();
+        }
+    }
+
     @NonNull
     @Override
     public LogContainer deserializeContainer(@NonNull String json) throws JSONException {
@@ -13,11 +13,43 @@ import java.util.TimeZone;
  * Utility to convert date to string and vice versa to use in JSON payloads.
  * The date format is using ISO 8601 and includes date and time to milliseconds accuracy.
  * It also always uses UTC timezone.
+ * Conforming dates are formatted and parsed by hand, {@link SimpleDateFormat} is only used as a fallback.
  */
 public final class JSONDateUtils {
 
     /**
-     * Date formatter.
+     * Length of the fixed layout "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'".
+     */
+    private static final int LENGTH = 24;
+
+    /**
+     * Milliseconds in a day.
+     */
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    /**
+     * First year handled by the fast path, before that {@link SimpleDateFormat} switches to Julian calendar.
+     */
+    private static final int MIN_YEAR = 1583;
+
+    /**
+     * Last year handled by the fast path, after that the year does not fit 4 digits.
+     */
+    private static final int MAX_YEAR = 9999;
+
+    /**
+     * Reusable output buffer for formatting.
+     */
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+
+        @Override
+        protected char[] initialValue() {
+            return new char[LENGTH];
+        }
+    };
+
+    /**
+     * Date formatter used for dates and strings outside of the fast path.
      */
     private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
 
@@ -50,7 +82,41 @@ public final class JSONDateUtils {
      */
     public static String toString(Date date) throws JSONException {
         checkNull(date);
-        return DATE_FORMAT.get().format(date);
+        long time = date.getTime();
+        long days = floorDiv(time, MILLIS_PER_DAY);
+        int millisOfDay = (int) (time - days * MILLIS_PER_DAY);
+
+        /* Civil date from days since epoch, see http://howardhinnant.github.io/date_algorithms.html. */
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            return DATE_FORMAT.get().format(date);
+        }
+
+        /* Write fixed layout. */
+        char[] buffer = BUFFER.get();
+        writeDigits(buffer, 0, (int) year, 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, month, 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, day, 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, millisOfDay / 3600000, 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, millisOfDay / 60000 % 60, 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, millisOfDay / 1000 % 60, 2);
+        buffer[19] = '.';
+        writeDigits(buffer, 20, millisOfDay % 1000, 3);
+        buffer[23] = 'Z';
+        return new String(buffer);
     }
 
     /**
@@ -62,10 +128,108 @@ public final class JSONDateUtils {
      */
     public static Date toDate(String date) throws JSONException {
         checkNull(date);
+        long time = parse(date);
+        if (time != Long.MIN_VALUE) {
+            return new Date(time);
+        }
         try {
             return DATE_FORMAT.get().parse(date);
         } catch (ParseException e) {
             throw new JSONException(e.getMessage());
         }
     }
+
+    /**
+     * Parse the fixed layout without allocating intermediate objects.
+     *
+     * @param date string to parse.
+     * @return time in milliseconds since epoch or {@link Long#MIN_VALUE} if the string does not strictly conform.
+     */
+    private static long parse(String date) {
+        if (date.length() != LENGTH || date.charAt(4) != '-' || date.charAt(7) != '-' || date.charAt(10) != 'T'
+                || date.charAt(13) != ':' || date.charAt(16) != ':' || date.charAt(19) != '.' || date.charAt(23) != 'Z') {
+            return Long.MIN_VALUE;
+        }
+        int year = readDigits(date, 0, 4);
+        int month = readDigits(date, 5, 2);
+        int day = readDigits(date, 8, 2);
+        int hour = readDigits(date, 11, 2);
+        int minute = readDigits(date, 14, 2);
+        int second = readDigits(date, 17, 2);
+        int millis = readDigits(date, 20, 3);
+        if (year < MIN_YEAR || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return Long.MIN_VALUE;
+        }
+
+        /* Days since epoch from civil date, see http://howardhinnant.github.io/date_algorithms.html. */
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return days * MILLIS_PER_DAY + ((hour * 60 + minute) * 60 + second) * 1000L + millis;
+    }
+
+    /**
+     * Write a zero padded positive number.
+     *
+     * @param buffer output.
+     * @param offset position of first digit.
+     * @param value  value to write.
+     * @param count  number of digits.
+     */
+    private static void writeDigits(char[] buffer, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Read a fixed number of digits.
+     *
+     * @param date   string to read.
+     * @param offset position of first digit.
+     * @param count  number of digits.
+     * @return value or -1 if a character is not a digit.
+     */
+    private static int readDigits(String date, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Get number of days in a month of the Gregorian calendar.
+     *
+     * @param year  year.
+     * @param month month from 1 to 12.
+     * @return number of days.
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Division rounding toward negative infinity.
+     *
+     * @param x dividend.
+     * @param y positive divisor.
+     * @return quotient.
+     */
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return x % y < 0 ? q - 1 : q;
+    }
 }
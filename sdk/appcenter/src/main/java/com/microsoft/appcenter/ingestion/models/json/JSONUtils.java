@@ -1,14 +1,21 @@
 package com.microsoft.appcenter.ingestion.models.json;
 
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.PropertyReader;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.utils.StringInterner;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -83,6 +90,131 @@ public final class JSONUtils {
         return array;
     }
 
+    public static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    public static Integer readInteger(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextInt();
+    }
+
+    public static Long readLong(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextLong();
+    }
+
+    public static Boolean readBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextBoolean();
+    }
+
+    public static Map<String, String> readMap(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Map<String, String> properties = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            properties.put(StringInterner.intern(reader.nextName()), reader.nextString());
+        }
+        reader.endObject();
+        return properties;
+    }
+
+    public static <M extends StreamingModel> List<M> readArray(JsonReader reader, ModelFactory<M> factory) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<M> array = factory.createList(0);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            M model = factory.create();
+            readObject(reader, model);
+            array.add(model);
+        }
+        reader.endArray();
+        return array;
+    }
+
+    public static List<String> readStringArray(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<String> array = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.add(reader.nextString());
+        }
+        reader.endArray();
+        return array;
+    }
+
+    public static void readObject(JsonReader reader, PropertyReader model) throws IOException, JSONException {
+        reader.beginObject();
+        readProperties(reader, model);
+    }
+
+    /**
+     * Read a model from a JSON object using the same property mapping as the streaming reader.
+     *
+     * @param object JSON object.
+     * @param model  model to read into.
+     * @throws JSONException if the JSON object does not match the model.
+     */
+    public static void readObject(JSONObject object, PropertyReader model) throws JSONException {
+        JsonReader reader = new JsonReader(new StringReader(object.toString()));
+        try {
+            readObject(reader, model);
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            throw new JSONException(e.getMessage());
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public static void readProperties(JsonReader reader, PropertyReader model) throws IOException, JSONException {
+        while (reader.hasNext()) {
+            if (!model.readProperty(reader.nextName(), reader)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        model.validate();
+    }
+
+    /**
+     * Check that a required property was read.
+     *
+     * @param key   property name.
+     * @param value property value, null if not read.
+     * @throws JSONException if the value is null.
+     */
+    public static void checkRequired(String key, Object value) throws JSONException {
+        if (value == null) {
+            throw new JSONException("Missing required property: " + key);
+        }
+    }
+
     public static void write(JSONStringer writer, String key, Object value) throws JSONException {
         if (value != null) {
             writer.key(key).value(value);
@@ -0,0 +1,188 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Log read from persistence that keeps its JSON payload and only decodes header fields up front.
+ * The full log is decoded the first time any other property is accessed or when compared,
+ * until then the serializer passes the payload through unchanged.
+ */
+public class LazyLog implements Log {
+
+    /**
+     * Serializer used to decode the full log.
+     */
+    private final LogSerializer mSerializer;
+
+    /**
+     * Log JSON payload.
+     */
+    private final String mPayload;
+
+    /**
+     * Log type.
+     */
+    private final String mType;
+
+    /**
+     * Log timestamp.
+     */
+    private final Date mTimestamp;
+
+    /**
+     * Session identifier.
+     */
+    private final UUID mSid;
+
+    /**
+     * Decoded log, null until a property other than header is accessed.
+     */
+    private Log mLog;
+
+    /**
+     * Init.
+     *
+     * @param serializer serializer used to decode the full log.
+     * @param payload    log JSON payload.
+     * @param type       log type.
+     * @param timestamp  log timestamp, can be null.
+     * @param sid        session identifier, can be null.
+     */
+    LazyLog(@NonNull LogSerializer serializer, @NonNull String payload, @NonNull String type, Date timestamp, UUID sid) {
+        mSerializer = serializer;
+        mPayload = payload;
+        mType = type;
+        mTimestamp = timestamp;
+        mSid = sid;
+    }
+
+    /**
+     * Get the log JSON payload as read from persistence.
+     *
+     * @return log JSON payload.
+     */
+    @NonNull
+    public String getPayload() {
+        return mPayload;
+    }
+
+    /**
+     * Check whether the full log has already been decoded.
+     *
+     * @return true if decoded, false if only the payload is available.
+     */
+    public synchronized boolean isDecoded() {
+        return mLog != null;
+    }
+
+    /**
+     * Get the decoded log, decoding it on first call.
+     * Any change made to the decoded log is reflected when serializing this log.
+     *
+     * @return decoded log.
+     * @throws JSONException if the payload cannot be decoded.
+     */
+    @NonNull
+    public synchronized Log getLog() throws JSONException {
+        if (mLog == null) {
+            mLog = mSerializer.deserializeLog(mPayload);
+        }
+        return mLog;
+    }
+
+    /**
+     * Get decoded log for model accessors that cannot throw checked exceptions.
+     *
+     * @return decoded log.
+     */
+    private Log decode() {
+        try {
+            return getLog();
+        } catch (JSONException e) {
+            throw new IllegalStateException("Failed to decode log", e);
+        }
+    }
+
+    @Override
+    public String getType() {
+        return mType;
+    }
+
+    @Override
+    public synchronized Date getTimestamp() {
+        return mLog != null ? mLog.getTimestamp() : mTimestamp;
+    }
+
+    @Override
+    public void setTimestamp(Date timestamp) {
+        decode().setTimestamp(timestamp);
+    }
+
+    @Override
+    public synchronized UUID getSid() {
+        return mLog != null ? mLog.getSid() : mSid;
+    }
+
+    @Override
+    public void setSid(UUID sid) {
+        decode().setSid(sid);
+    }
+
+    @Override
+    public String getDistributionGroupId() {
+        return decode().getDistributionGroupId();
+    }
+
+    @Override
+    public void setDistributionGroupId(String distributionGroupId) {
+        decode().setDistributionGroupId(distributionGroupId);
+    }
+
+    @Override
+    public Device getDevice() {
+        return decode().getDevice();
+    }
+
+    @Override
+    public void setDevice(Device device) {
+        decode().setDevice(device);
+    }
+
+    @Override
+    public void read(JSONObject object) throws JSONException {
+        getLog().read(object);
+    }
+
+    @Override
+    public void write(JSONStringer writer) throws JSONException {
+        getLog().write(writer);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        /* Compare decoded logs as payloads of equal logs can differ, for example in property order. */
+        if (o instanceof LazyLog) {
+            o = ((LazyLog) o).decode();
+        }
+        return decode().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return decode().hashCode();
+    }
+}
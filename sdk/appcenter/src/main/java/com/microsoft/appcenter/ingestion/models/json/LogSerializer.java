@@ -7,6 +7,9 @@ import com.microsoft.appcenter.ingestion.models.LogContainer;
 
 import org.json.JSONException;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public interface LogSerializer {
 
     @NonNull
@@ -15,9 +18,23 @@ public interface LogSerializer {
     @NonNull
     Log deserializeLog(@NonNull String json) throws JSONException;
 
+    @NonNull
+    Log deserializeLazyLog(@NonNull String json) throws JSONException;
+
     @NonNull
     String serializeContainer(@NonNull LogContainer container) throws JSONException;
 
+    /**
+     * Write a container as compact JSON, streaming the data of {@link com.microsoft.appcenter.ingestion.models.FileDataLog}
+     * from their file instead of loading it in memory. Logs whose data file cannot be read are left out.
+     *
+     * @param container container to serialize.
+     * @param writer    output.
+     * @throws JSONException if serialization failed.
+     * @throws IOException   if writing failed.
+     */
+    void serializeContainer(@NonNull LogContainer container, @NonNull Writer writer) throws JSONException, IOException;
+
     @NonNull
     LogContainer deserializeContainer(@NonNull String json) throws JSONException;
 
@@ -0,0 +1,135 @@
+package com.microsoft.appcenter.persistence;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Asynchronous variant of {@link Persistence}: storage operations are executed in order on a dedicated I/O thread
+ * and results are delivered through callbacks on the caller's handler.
+ */
+public interface AsyncPersistence extends Closeable {
+
+    /**
+     * Writes a log to the storage with the given {@code group}.
+     *
+     * @param group    The group of the storage for the log.
+     * @param log      The log to be placed in the storage.
+     * @param callback Callback to get the result, can be null.
+     */
+    void putLog(@NonNull String group, @NonNull Log log, @Nullable PutLogCallback callback);
+
+    /**
+     * Writes a log already serialized by the caller to the storage with the given {@code group}.
+     *
+     * @param group        The group of the storage for the log.
+     * @param log          The log to be placed in the storage.
+     * @param payload      The serialized log.
+     * @param storedAction Action run on the I/O thread right after the log is stored, before the callback is posted, can be null.
+     * @param callback     Callback to get the result, can be null.
+     */
+    void putLog(@NonNull String group, @NonNull Log log, @NonNull String payload, @Nullable Runnable storedAction, @Nullable PutLogCallback callback);
+
+    /**
+     * Writes logs to the storage with the given {@code group} in a single transaction.
+     *
+     * @param group        The group of the storage for the logs.
+     * @param logs         The logs to be placed in the storage, must not be modified before callback is called.
+     * @param storedAction Action run on the I/O thread right after the transaction, before the callback is posted, can be null.
+     * @param callback     Callback to get the number of logs written, can be null.
+     */
+    void putLogs(@NonNull String group, @NonNull List<Log> logs, @Nullable Runnable storedAction, @Nullable ResultCallback<Integer> callback);
+
+    /**
+     * Deletes a log with the give ID from the {@code group}.
+     *
+     * @param group The group of the storage for logs.
+     * @param id    The ID for a set of logs.
+     */
+    void deleteLogs(@NonNull String group, @NonNull String id);
+
+    /**
+     * Deletes all logs for the given {@code group}.
+     *
+     * @param group The group of the storage for logs.
+     */
+    void deleteLogs(String group);
+
+    /**
+     * Gets the number of logs for the given {@code group}.
+     *
+     * @param group    The group of the storage for logs.
+     * @param callback Callback to get the number of logs.
+     */
+    void countLogs(@NonNull String group, @NonNull ResultCallback<Integer> callback);
+
+    /**
+     * Gets an array of logs for the given {@code group}.
+     *
+     * @param group    The group of the storage for logs.
+     * @param limit    The max number of logs to be returned.
+     * @param outLogs  A list to receive {@link Log} objects, must not be accessed before callback is called.
+     * @param callback Callback to get an ID for {@code outLogs}, {@code null} if no logs exist.
+     */
+    void getLogs(@NonNull String group, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs, @NonNull ResultCallback<String> callback);
+
+    /**
+     * Clears all associations between logs and ids returned by {@link #getLogs(String, int, List, ResultCallback)}.
+     */
+    void clearPendingLogState();
+
+    /**
+     * Sets how long logs of the {@code group} are kept, older logs are deleted instead of being returned.
+     *
+     * @param group      The group of the storage for logs.
+     * @param timeToLive The time to live in milliseconds since log creation, {@code 0} to keep logs until sent.
+     */
+    void setTimeToLive(@NonNull String group, @IntRange(from = 0) long timeToLive);
+
+    /**
+     * Reclaims storage space freed by deleted logs if worth it.
+     *
+     * @param callback Callback to get the number of bytes reclaimed, can be null.
+     */
+    void compact(@Nullable ResultCallback<Long> callback);
+
+    /**
+     * Callback for an operation returning a result.
+     *
+     * @param <T> result type.
+     */
+    interface ResultCallback<T> {
+
+        /**
+         * Called when the operation completes.
+         *
+         * @param result operation result.
+         */
+        void onResult(T result);
+    }
+
+    /**
+     * Callback for {@link #putLog(String, Log, PutLogCallback)}.
+     */
+    interface PutLogCallback {
+
+        /**
+         * Called when the log has been stored.
+         *
+         * @param id log identifier from persistence.
+         */
+        void onSuccess(long id);
+
+        /**
+         * Called when the log could not be stored.
+         *
+         * @param e the reason.
+         */
+        void onFailure(Persistence.PersistenceException e);
+    }
+}
@@ -0,0 +1,262 @@
+package com.microsoft.appcenter.persistence;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * {@link AsyncPersistence} implementation that runs a synchronous {@link Persistence} on an I/O handler.
+ */
+public class AsyncPersistenceAdapter implements AsyncPersistence {
+
+    /**
+     * Name of the I/O thread.
+     */
+    private static final String THREAD_NAME = "AppCenter.Persistence";
+
+    /**
+     * Wrapped persistence, only accessed from the I/O handler.
+     */
+    private final Persistence mPersistence;
+
+    /**
+     * I/O handler.
+     */
+    private final Handler mIOHandler;
+
+    /**
+     * Handler where callbacks are called.
+     */
+    private final Handler mCallbackHandler;
+
+    /**
+     * I/O thread if owned by this instance.
+     */
+    private final HandlerThread mIOThread;
+
+    /**
+     * Wrap persistence, running operations on a new I/O thread.
+     *
+     * @param persistence     persistence to wrap.
+     * @param callbackHandler handler where callbacks are called.
+     */
+    public AsyncPersistenceAdapter(@NonNull Persistence persistence, @NonNull Handler callbackHandler) {
+        mIOThread = new HandlerThread(THREAD_NAME);
+        mIOThread.start();
+        mPersistence = persistence;
+        mIOHandler = new Handler(mIOThread.getLooper());
+        mCallbackHandler = callbackHandler;
+    }
+
+    /**
+     * Wrap persistence, running operations on the specified handler.
+     *
+     * @param persistence     persistence to wrap.
+     * @param ioHandler       handler where operations are executed.
+     * @param callbackHandler handler where callbacks are called.
+     */
+    public AsyncPersistenceAdapter(@NonNull Persistence persistence, @NonNull Handler ioHandler, @NonNull Handler callbackHandler) {
+        mIOThread = null;
+        mPersistence = persistence;
+        mIOHandler = ioHandler;
+        mCallbackHandler = callbackHandler;
+    }
+
+    @Override
+    public void putLog(@NonNull String group, @NonNull Log log, @Nullable PutLogCallback callback) {
+        postPutLog(group, log, null, null, callback);
+    }
+
+    @Override
+    public void putLog(@NonNull String group, @NonNull Log log, @NonNull String payload, @Nullable Runnable storedAction, @Nullable PutLogCallback callback) {
+        postPutLog(group, log, payload, storedAction, callback);
+    }
+
+    /**
+     * Write a log on the I/O handler.
+     *
+     * @param group        group name.
+     * @param log          log.
+     * @param payload      serialized log, null to let persistence serialize it.
+     * @param storedAction action run once the log is stored, can be null.
+     * @param callback     callback, can be null.
+     */
+    private void postPutLog(@NonNull final String group, @NonNull final Log log, @Nullable final String payload, @Nullable final Runnable storedAction, @Nullable final PutLogCallback callback) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    final long id = payload != null ? mPersistence.putLog(group, log, payload) : mPersistence.putLog(group, log);
+                    if (storedAction != null) {
+                        storedAction.run();
+                    }
+                    if (callback != null) {
+                        mCallbackHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                callback.onSuccess(id);
+                            }
+                        });
+                    }
+                } catch (final Persistence.PersistenceException e) {
+                    if (callback != null) {
+                        mCallbackHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                callback.onFailure(e);
+                            }
+                        });
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void putLogs(@NonNull final String group, @NonNull final List<Log> logs, @Nullable final Runnable storedAction, @Nullable final ResultCallback<Integer> callback) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                int count = mPersistence.putLogs(group, logs);
+                if (storedAction != null) {
+                    storedAction.run();
+                }
+                if (callback != null) {
+                    postResult(callback, count);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void deleteLogs(@NonNull final String group, @NonNull final String id) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                mPersistence.deleteLogs(group, id);
+            }
+        });
+    }
+
+    @Override
+    public void deleteLogs(final String group) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                mPersistence.deleteLogs(group);
+            }
+        });
+    }
+
+    @Override
+    public void countLogs(@NonNull final String group, @NonNull final ResultCallback<Integer> callback) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                postResult(callback, mPersistence.countLogs(group));
+            }
+        });
+    }
+
+    @Override
+    public void getLogs(@NonNull final String group, @IntRange(from = 0) final int limit, @NonNull final List<Log> outLogs, @NonNull final ResultCallback<String> callback) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                postResult(callback, mPersistence.getLogs(group, limit, outLogs));
+            }
+        });
+    }
+
+    @Override
+    public void clearPendingLogState() {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                mPersistence.clearPendingLogState();
+            }
+        });
+    }
+
+    @Override
+    public void setTimeToLive(@NonNull final String group, @IntRange(from = 0) final long timeToLive) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                mPersistence.setTimeToLive(group, timeToLive);
+            }
+        });
+    }
+
+    @Override
+    public void compact(@Nullable final ResultCallback<Long> callback) {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                long reclaimedBytes = mPersistence.compact();
+                if (callback != null) {
+                    postResult(callback, reclaimedBytes);
+                }
+            }
+        });
+    }
+
+    /**
+     * Close wrapped persistence after pending operations and stop I/O thread if owned.
+     */
+    @Override
+    public void close() {
+        mIOHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    mPersistence.close();
+                } catch (IOException e) {
+                    AppCenterLog.error(LOG_TAG, "Failed to close persistence", e);
+                }
+                if (mIOThread != null) {
+                    mIOThread.quit();
+                }
+            }
+        });
+    }
+
+    /**
+     * Deliver a result on the callback handler.
+     *
+     * @param callback callback.
+     * @param result   result.
+     * @param <T>      result type.
+     */
+    private <T> void postResult(final ResultCallback<T> callback, final T result) {
+        mCallbackHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                callback.onResult(result);
+            }
+        });
+    }
+}
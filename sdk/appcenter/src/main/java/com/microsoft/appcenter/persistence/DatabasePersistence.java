@@ -43,6 +43,18 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final String COLUMN_LOG = "log";
 
+    /**
+     * Name of the indexed log creation time column in the table, in milliseconds since epoch.
+     */
+    @VisibleForTesting
+    static final String COLUMN_TIMESTAMP = "timestamp";
+
+    /**
+     * Minimum number of free database pages before compacting the database file.
+     */
+    @VisibleForTesting
+    static final int COMPACTION_MIN_FREE_PAGES = 64;
+
     /**
      * Database name.
      */
@@ -53,10 +65,15 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String TABLE = "logs";
 
+    /**
+     * Current version of the schema.
+     */
+    private static final int VERSION = 2;
+
     /**
      * Table schema for Persistence.
      */
-    private static final ContentValues SCHEMA = getContentValues("", "");
+    private static final ContentValues SCHEMA = getContentValues("", "", 0L);
 
     /**
      * Size limit (in bytes) for a database row log payload.
@@ -72,7 +89,12 @@ public class DatabasePersistence extends Persistence {
     /**
      * Large payload file extension.
      */
-    private static final String PAYLOAD_FILE_EXTENSION = ".json";
+    private static final String PAYLOAD_FILE_EXTENSION = ".json.gz";
+
+    /**
+     * Large payload file extension used by previous SDK versions that did not compress payloads.
+     */
+    private static final String PAYLOAD_LEGACY_FILE_EXTENSION = ".json";
 
     /**
      * Database storage instance to access Persistence database.
@@ -91,6 +113,11 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     final Set<Long> mPendingDbIdentifiers;
 
+    /**
+     * Time to live of logs in milliseconds by group, groups without entry keep logs until sent.
+     */
+    private final Map<String, Long> mTimeToLives;
+
     /**
      * Base directory to store large payloads outside of SQLite.
      */
@@ -100,7 +127,7 @@ public class DatabasePersistence extends Persistence {
      * Initializes variables.
      */
     public DatabasePersistence() {
-        this(DATABASE, TABLE, 1);
+        this(DATABASE, TABLE, VERSION);
     }
 
     /**
@@ -125,7 +152,8 @@ public class DatabasePersistence extends Persistence {
     DatabasePersistence(String database, String table, int version, int maxRecords) {
         mPendingDbIdentifiersGroups = new HashMap<>();
         mPendingDbIdentifiers = new HashSet<>();
-        mDatabaseStorage = DatabaseStorage.getDatabaseStorage(database, table, version, SCHEMA, maxRecords,
+        mTimeToLives = new HashMap<>();
+        mDatabaseStorage = DatabaseStorage.getDatabaseStorage(database, table, version, SCHEMA, maxRecords, new String[]{COLUMN_TIMESTAMP},
                 new DatabaseStorage.DatabaseErrorListener() {
 
                     @Override
@@ -133,6 +161,18 @@ public class DatabasePersistence extends Persistence {
                         AppCenterLog.error(LOG_TAG, "Cannot complete an operation (" + operation + ")", e);
                     }
                 });
+        mDatabaseStorage.setIdentifierChangeListener(new DatabaseStorage.IdentifierChangeListener() {
+
+            @Override
+            public void onIdentifierChanged(ContentValues values, long oldId, long newId) {
+                changeIdentifier(values.getAsString(COLUMN_GROUP), oldId, newId);
+            }
+        });
+
+        /* Keep logs of previous versions on upgrade, their time to live starts with the upgrade. */
+        ContentValues upgradeValues = new ContentValues();
+        upgradeValues.put(COLUMN_TIMESTAMP, System.currentTimeMillis());
+        mDatabaseStorage.setUpgradeValues(upgradeValues);
         mLargePayloadDirectory = new File(Constants.FILES_PATH + PAYLOAD_LARGE_DIRECTORY);
 
         //noinspection ResultOfMethodCallIgnored we handle errors at read/write time for each file.
@@ -142,56 +182,144 @@ public class DatabasePersistence extends Persistence {
     /**
      * Instantiates {@link ContentValues} with the give values.
      *
-     * @param group The group of the storage for the log.
-     * @param logJ  The JSON string for a log.
+     * @param group     The group of the storage for the log.
+     * @param logJ      The JSON string for a log.
+     * @param timestamp The log creation time.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, Long timestamp) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
         values.put(COLUMN_LOG, logJ);
+        values.put(COLUMN_TIMESTAMP, timestamp);
         return values;
     }
 
+    /**
+     * Get the time used to expire a log.
+     *
+     * @param log log.
+     * @return log creation time, or now if log has no timestamp.
+     */
+    private static long getTimestamp(@NonNull Log log) {
+        return log.getTimestamp() != null ? log.getTimestamp().getTime() : System.currentTimeMillis();
+    }
+
     @Override
     public long putLog(@NonNull String group, @NonNull Log log) throws PersistenceException {
 
         /* Convert log to JSON string and put in the database. */
+        String payload;
+        try {
+            payload = getLogSerializer().serializeLog(log);
+        } catch (JSONException e) {
+            throw new PersistenceException("Cannot convert to JSON string", e);
+        }
+        return putLog(group, log, payload);
+    }
+
+    @Override
+    public long putLog(@NonNull String group, @NonNull Log log, @NonNull String payload) throws PersistenceException {
+        AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with sid=" + log.getSid());
+        return putPayload(group, log, payload);
+    }
+
+    /**
+     * Put a serialized log in the database, or in a file if too large.
+     *
+     * @param group   The group of the storage for the log.
+     * @param log     The log.
+     * @param payload The serialized log.
+     * @return Log identifier.
+     * @throws PersistenceException if the payload file could not be written.
+     */
+    private long putPayload(@NonNull String group, @NonNull Log log, @NonNull String payload) throws PersistenceException {
         try {
-            AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with sid=" + log.getSid());
-            String payload = getLogSerializer().serializeLog(log);
             ContentValues contentValues;
-            boolean isLargePayload = payload.getBytes("UTF-8").length >= PAYLOAD_MAX_SIZE;
+            boolean isLargePayload = isLargePayload(payload);
+            long timestamp = getTimestamp(log);
             if (isLargePayload) {
-                contentValues = getContentValues(group, null);
+                contentValues = getContentValues(group, null, timestamp);
             } else {
-                contentValues = getContentValues(group, payload);
+                contentValues = getContentValues(group, payload, timestamp);
             }
             long databaseId = mDatabaseStorage.put(contentValues);
             AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
             if (isLargePayload) {
-                AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
-                File directory = getLargePayloadGroupDirectory(group);
+                writeLargePayload(group, databaseId, payload);
+            }
+            return databaseId;
+        } catch (IOException e) {
+            throw new PersistenceException("Cannot save large payload in a file", e);
+        }
+    }
+
+    /**
+     * Write a payload too large for SQLite to a compressed file named after its database entry.
+     * The entry is removed if the file cannot be written.
+     *
+     * @param group      the group of the log.
+     * @param databaseId the database identifier of the log entry.
+     * @param payload    the serialized log.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeLargePayload(@NonNull String group, long databaseId, @NonNull String payload) throws IOException {
+        AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing compressed payload in a separate file.");
+        File directory = getLargePayloadGroupDirectory(group);
 
-                //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
-                directory.mkdir();
-                File payloadFile = getLargePayloadFile(directory, databaseId);
+        //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
+        directory.mkdir();
+        File payloadFile = getLargePayloadFile(directory, databaseId);
+        try {
+            StorageHelper.InternalStorage.writeCompressed(payloadFile, payload);
+        } catch (IOException e) {
+
+            /* Remove database entry if we cannot save payload as a file. */
+            mDatabaseStorage.delete(databaseId);
+            throw e;
+        }
+        AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
+    }
+
+    @Override
+    public int putLogs(@NonNull String group, @NonNull List<Log> logs) {
+        AppCenterLog.debug(LOG_TAG, "Storing " + logs.size() + " logs to the Persistence database for group " + group);
+        List<ContentValues> valuesList = new ArrayList<>(logs.size());
+        List<String> largePayloads = new ArrayList<>(logs.size());
+        for (Log log : logs) {
+            try {
+                String payload = getLogSerializer().serializeLog(log);
+                boolean isLargePayload = isLargePayload(payload);
+                valuesList.add(getContentValues(group, isLargePayload ? null : payload, getTimestamp(log)));
+                largePayloads.add(isLargePayload ? payload : null);
+            } catch (JSONException e) {
+                AppCenterLog.error(LOG_TAG, "Cannot convert log to JSON string, skipping it", e);
+            }
+        }
+        int count = 0;
+        if (valuesList.size() > 0) {
+            long[] databaseIds = mDatabaseStorage.put(valuesList);
+
+            /*
+             * Large payload files are named after the identifier, they are written once the transaction is committed
+             * so that no file is left behind if it rolls back.
+             */
+            for (int i = 0; i < databaseIds.length; i++) {
+                String largePayload = largePayloads.get(i);
+                if (largePayload == null) {
+                    count++;
+                    continue;
+                }
                 try {
-                    StorageHelper.InternalStorage.write(payloadFile, payload);
+                    writeLargePayload(group, databaseIds[i], largePayload);
+                    count++;
                 } catch (IOException e) {
-
-                    /* Remove database entry if we cannot save payload as a file. */
-                    mDatabaseStorage.delete(databaseId);
-                    throw e;
+                    AppCenterLog.error(LOG_TAG, "Cannot save large payload in a file, skipping it", e);
                 }
-                AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
             }
-            return databaseId;
-        } catch (JSONException e) {
-            throw new PersistenceException("Cannot convert to JSON string", e);
-        } catch (IOException e) {
-            throw new PersistenceException("Cannot save large payload in a file", e);
         }
+        AppCenterLog.debug(LOG_TAG, "Stored " + count + " logs to the Persistence database for group " + group);
+        return count;
     }
 
     @NonNull
@@ -206,9 +334,109 @@ public class DatabasePersistence extends Persistence {
         return new File(directory, databaseId + PAYLOAD_FILE_EXTENSION);
     }
 
+    @NonNull
+    @VisibleForTesting
+    File getLegacyLargePayloadFile(File directory, long databaseId) {
+        return new File(directory, databaseId + PAYLOAD_LEGACY_FILE_EXTENSION);
+    }
+
+    /**
+     * Check if a serialized log exceeds the size SQLite can store in a row once encoded in UTF-8.
+     * The encoded size is computed from the characters, without copying the payload into a byte array.
+     *
+     * @param payload serialized log.
+     * @return true if the payload has to be stored in a separate file.
+     */
+    @VisibleForTesting
+    static boolean isLargePayload(@NonNull String payload) {
+
+        /* Each character takes at least 1 byte and at most 3 bytes (surrogate pairs take 4 bytes for 2 characters). */
+        int length = payload.length();
+        if (length >= PAYLOAD_MAX_SIZE) {
+            return true;
+        }
+        if (length * 3L < PAYLOAD_MAX_SIZE) {
+            return false;
+        }
+        long size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = payload.charAt(i);
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(payload.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+
+                /* Unpaired surrogates are replaced by a single byte when encoded. */
+                size++;
+            } else {
+                size += 3;
+            }
+            if (size >= PAYLOAD_MAX_SIZE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read a large payload file, supporting uncompressed files written by previous SDK versions.
+     *
+     * @param directory  large payload directory of the log group.
+     * @param databaseId database identifier of the log.
+     * @return payload or null if it cannot be read.
+     */
+    private String readLargePayload(File directory, long databaseId) {
+        File file = getLargePayloadFile(directory, databaseId);
+        if (file.exists()) {
+            AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
+            return StorageHelper.InternalStorage.readCompressed(file);
+        }
+        File legacyFile = getLegacyLargePayloadFile(directory, databaseId);
+        AppCenterLog.debug(LOG_TAG, "Read payload file " + legacyFile);
+        return StorageHelper.InternalStorage.read(legacyFile);
+    }
+
+    /**
+     * Keep the payload file and pending state of a log in sync when its database identifier changes.
+     *
+     * @param group The group of the log.
+     * @param oldId The previous database identifier.
+     * @param newId The new database identifier.
+     */
+    @VisibleForTesting
+    void changeIdentifier(@Nullable String group, long oldId, long newId) {
+
+        /* Large payload files are named after the identifier. */
+        if (group != null) {
+            File directory = getLargePayloadGroupDirectory(group);
+            File payloadFile = getLargePayloadFile(directory, oldId);
+            if (payloadFile.exists() && !payloadFile.renameTo(getLargePayloadFile(directory, newId))) {
+                AppCenterLog.error(LOG_TAG, "Failed to rename payload file " + payloadFile + " for new identifier " + newId);
+            }
+        }
+
+        /* Identifier may be part of a batch being sent. */
+        if (mPendingDbIdentifiers.remove(oldId)) {
+            mPendingDbIdentifiers.add(newId);
+            for (List<Long> pendingDbIdentifiersGroup : mPendingDbIdentifiersGroups.values()) {
+                int index = pendingDbIdentifiersGroup.indexOf(oldId);
+                if (index >= 0) {
+                    pendingDbIdentifiersGroup.set(index, newId);
+                    break;
+                }
+            }
+        }
+    }
+
     private void deleteLog(File groupLargePayloadDirectory, long id) {
         //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
         getLargePayloadFile(groupLargePayloadDirectory, id).delete();
+        //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+        getLegacyLargePayloadFile(groupLargePayloadDirectory, id).delete();
         mDatabaseStorage.delete(id);
     }
 
@@ -262,9 +490,49 @@ public class DatabasePersistence extends Persistence {
         }
     }
 
+    /**
+     * Delete the logs of a group that are older than its time to live, except the ones being sent.
+     * Logs stored by previous SDK versions expire after the time to live since the upgrade.
+     *
+     * @param group The group of the storage for logs.
+     */
+    private void deleteExpiredLogs(@NonNull String group) {
+        Long timeToLive = mTimeToLives.get(group);
+        if (timeToLive == null) {
+            return;
+        }
+
+        /* Use the timestamp index to find expired logs. */
+        List<Long> expiredDbIdentifiers = new ArrayList<>();
+        DatabaseStorage.DatabaseScanner scanner = mDatabaseStorage.getScanner(COLUMN_GROUP, group, COLUMN_TIMESTAMP, System.currentTimeMillis() - timeToLive, true);
+        for (ContentValues values : scanner) {
+            Long dbIdentifier = values.getAsLong(DatabaseManager.PRIMARY_KEY);
+            if (dbIdentifier != null && !mPendingDbIdentifiers.contains(dbIdentifier)) {
+                expiredDbIdentifiers.add(dbIdentifier);
+            }
+        }
+        scanner.close();
+        if (expiredDbIdentifiers.size() > 0) {
+            File directory = getLargePayloadGroupDirectory(group);
+            for (Long dbIdentifier : expiredDbIdentifiers) {
+
+                //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+                getLargePayloadFile(directory, dbIdentifier).delete();
+
+                //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+                getLegacyLargePayloadFile(directory, dbIdentifier).delete();
+            }
+            mDatabaseStorage.delete(expiredDbIdentifiers);
+            AppCenterLog.debug(LOG_TAG, "Deleted " + expiredDbIdentifiers.size() + " expired log(s) from the Persistence database for " + group);
+        }
+    }
+
     @Override
     public int countLogs(@NonNull String group) {
 
+        /* Don't count expired logs. */
+        deleteExpiredLogs(group);
+
         /* Query database and get scanner. */
         DatabaseStorage.DatabaseScanner scanner = mDatabaseStorage.getScanner(COLUMN_GROUP, group, true);
         int count = scanner.getCount();
@@ -279,6 +547,9 @@ public class DatabasePersistence extends Persistence {
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
 
+        /* Don't send expired logs. */
+        deleteExpiredLogs(group);
+
         /* Query database and get scanner. */
         DatabaseStorage.DatabaseScanner scanner = mDatabaseStorage.getScanner(COLUMN_GROUP, group);
 
@@ -318,20 +589,18 @@ public class DatabasePersistence extends Persistence {
             if (!mPendingDbIdentifiers.contains(dbIdentifier)) {
                 try {
 
-                    /* Deserialize JSON to Log. */
+                    /* Read log header only, the payload is sent as is unless the log is accessed. */
                     String logPayload;
                     String databasePayload = values.getAsString(COLUMN_LOG);
                     if (databasePayload == null) {
-                        File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
-                        AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
-                        logPayload = StorageHelper.InternalStorage.read(file);
+                        logPayload = readLargePayload(largePayloadGroupDirectory, dbIdentifier);
                         if (logPayload == null) {
                             throw new JSONException("Log payload is null and not stored as a file.");
                         }
                     } else {
                         logPayload = databasePayload;
                     }
-                    candidates.put(dbIdentifier, getLogSerializer().deserializeLog(logPayload));
+                    candidates.put(dbIdentifier, getLogSerializer().deserializeLazyLog(logPayload));
                     count++;
                 } catch (JSONException e) {
 
@@ -395,6 +664,24 @@ public class DatabasePersistence extends Persistence {
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
+    @Override
+    public void setTimeToLive(@NonNull String group, @IntRange(from = 0) long timeToLive) {
+        if (timeToLive > 0) {
+            mTimeToLives.put(group, timeToLive);
+        } else {
+            mTimeToLives.remove(group);
+        }
+    }
+
+    @Override
+    public long compact() {
+        long reclaimedBytes = mDatabaseStorage.compact(COMPACTION_MIN_FREE_PAGES);
+        if (reclaimedBytes > 0) {
+            AppCenterLog.info(LOG_TAG, "Compacted the Persistence database, reclaimed " + reclaimedBytes + " bytes.");
+        }
+        return reclaimedBytes;
+    }
+
     @Override
     public void close() throws IOException {
         mDatabaseStorage.close();
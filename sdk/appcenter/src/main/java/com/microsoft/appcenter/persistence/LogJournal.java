@@ -0,0 +1,526 @@
+package com.microsoft.appcenter.persistence;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Small pre-allocated journal of logs being persisted, backed by a memory-mapped ring file.
+ * <p>
+ * A log is written to the journal when it is handed to persistence and marked as committed once persistence
+ * completes. Writes to a memory-mapped file survive the process being killed (the kernel owns the pages),
+ * so if the application crashes while a log is queued for or being persisted, the log is still in the journal
+ * and is replayed into persistence at next start when its group is registered again.
+ * <p>
+ * Each record is made of an integer record length, a state byte, a short group name length,
+ * the group name and the serialized log, both UTF-8 encoded. A record length of 0 terminates the ring.
+ * Logs persisted together are journaled as a single record holding a serialized log container,
+ * so that a batch takes one record and is replayed in a single transaction.
+ */
+public class LogJournal {
+
+    /**
+     * Token returned by {@link #append(String, String)} when the log could not be journaled.
+     */
+    public static final long NO_ENTRY = -1;
+
+    /**
+     * Default journal file size in bytes.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    /**
+     * Record state for a log not yet committed to persistence.
+     */
+    @VisibleForTesting
+    static final byte STATE_PENDING = 1;
+
+    /**
+     * Record state for a log committed to persistence.
+     */
+    @VisibleForTesting
+    static final byte STATE_COMMITTED = 2;
+
+    /**
+     * Record state for a batch of logs not yet committed to persistence.
+     */
+    @VisibleForTesting
+    static final byte STATE_PENDING_BATCH = 3;
+
+    /**
+     * Size of a record header: record length, state and group name length.
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 2;
+
+    /**
+     * Size of the terminator written after the last record.
+     */
+    private static final int TERMINATOR_SIZE = 4;
+
+    /**
+     * Offset of the state byte in a record.
+     */
+    private static final int STATE_OFFSET = 4;
+
+    /**
+     * Offset of the group name length in a record.
+     */
+    private static final int GROUP_LENGTH_OFFSET = 5;
+
+    /**
+     * Charset used to encode group names and logs.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
+    /**
+     * Start of a batch record payload, the same as a serialized log container.
+     */
+    private static final String BATCH_PREFIX = "{\"logs\":[";
+
+    /**
+     * End of a batch record payload.
+     */
+    private static final String BATCH_SUFFIX = "]}";
+
+    /**
+     * Log serializer.
+     */
+    private final LogSerializer mLogSerializer;
+
+    /**
+     * Journal capacity in bytes.
+     */
+    private final int mCapacity;
+
+    /**
+     * Memory-mapped journal file, null if the journal could not be opened.
+     */
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * Offset where the next record will be written.
+     */
+    private int mPosition;
+
+    /**
+     * Incremented every time the ring restarts from the beginning of the file,
+     * tokens from previous generations are no longer valid.
+     */
+    private int mGeneration;
+
+    /**
+     * Number of records in the journal that are not committed yet.
+     */
+    private int mPendingCount;
+
+    /**
+     * Records found pending when opening the journal, by group name, waiting to be replayed.
+     */
+    private final Map<String, List<PendingRecord>> mRecordsToReplay = new HashMap<>();
+
+    /**
+     * Open or create a journal file.
+     *
+     * @param file          journal file.
+     * @param logSerializer log serializer.
+     */
+    public LogJournal(@NonNull File file, @NonNull LogSerializer logSerializer) {
+        this(file, logSerializer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Open or create a journal file.
+     *
+     * @param file          journal file.
+     * @param logSerializer log serializer.
+     * @param capacity      journal file size in bytes.
+     */
+    @VisibleForTesting
+    LogJournal(@NonNull File file, @NonNull LogSerializer logSerializer, int capacity) {
+        mLogSerializer = logSerializer;
+        mCapacity = capacity;
+        try {
+
+            //noinspection ResultOfMethodCallIgnored we'll get an error anyway when opening the file.
+            file.getParentFile().mkdirs();
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+            /* The mapping remains valid after closing the file. */
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                randomAccessFile.setLength(capacity);
+                mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } finally {
+                randomAccessFile.close();
+            }
+            load();
+        } catch (IOException | RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot open log journal, logs will not be journaled.", e);
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * Read pending records left by the previous process and rewrite them at the beginning of the ring.
+     */
+    private void load() throws UnsupportedEncodingException {
+
+        /* Scan records until terminator or corrupted record. */
+        List<String> groups = new ArrayList<>();
+        List<Byte> states = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        int offset = 0;
+        while (offset + HEADER_SIZE <= mCapacity) {
+            int length = mBuffer.getInt(offset);
+            if (length < HEADER_SIZE || length > mCapacity - offset) {
+                break;
+            }
+            byte state = mBuffer.get(offset + STATE_OFFSET);
+            int groupLength = mBuffer.getShort(offset + GROUP_LENGTH_OFFSET) & 0xffff;
+            if ((state != STATE_PENDING && state != STATE_COMMITTED && state != STATE_PENDING_BATCH) || HEADER_SIZE + groupLength > length) {
+                break;
+            }
+            if (state != STATE_COMMITTED) {
+                byte[] group = new byte[groupLength];
+                byte[] payload = new byte[length - HEADER_SIZE - groupLength];
+                mBuffer.position(offset + HEADER_SIZE);
+                mBuffer.get(group);
+                mBuffer.get(payload);
+                groups.add(new String(group, CHARSET_NAME));
+                states.add(state);
+                payloads.add(payload);
+            }
+            offset += length;
+        }
+
+        /* Compact the ring so that only pending records remain. */
+        mBuffer.putInt(0, 0);
+        for (int i = 0; i < groups.size(); i++) {
+            String group = groups.get(i);
+            byte state = states.get(i);
+            long token = write(group.getBytes(CHARSET_NAME), payloads.get(i), state);
+            if (token != NO_ENTRY) {
+                List<PendingRecord> records = mRecordsToReplay.get(group);
+                if (records == null) {
+                    records = new ArrayList<>();
+                    mRecordsToReplay.put(group, records);
+                }
+                records.add(new PendingRecord(token, payloads.get(i), state));
+            }
+        }
+        if (mPendingCount > 0) {
+            AppCenterLog.debug(LOG_TAG, "Found " + mPendingCount + " log(s) in journal not committed to persistence.");
+        }
+    }
+
+    /**
+     * Get the log serializer used to encode journaled logs.
+     *
+     * @return log serializer.
+     */
+    @NonNull
+    public LogSerializer getLogSerializer() {
+        return mLogSerializer;
+    }
+
+    /**
+     * Write a log to the journal before committing it to persistence.
+     * The log is serialized by the caller so that the same payload can be passed to persistence.
+     *
+     * @param group   group name.
+     * @param payload serialized log.
+     * @return token to pass to {@link #commit(long)} once the log is persisted or {@link #NO_ENTRY} if journal could not be written.
+     */
+    public synchronized long append(@NonNull String group, @NonNull String payload) {
+        if (mBuffer == null) {
+            return NO_ENTRY;
+        }
+        try {
+            return write(group.getBytes(CHARSET_NAME), payload.getBytes(CHARSET_NAME), STATE_PENDING);
+        } catch (UnsupportedEncodingException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot journal log.", e);
+            return NO_ENTRY;
+        }
+    }
+
+    /**
+     * Write logs persisted together to the journal as a single record before committing them to persistence.
+     *
+     * @param group    group name.
+     * @param payloads serialized logs.
+     * @return token to pass to {@link #commit(long)} once the logs are persisted or {@link #NO_ENTRY} if journal could not be written.
+     */
+    public synchronized long appendAll(@NonNull String group, @NonNull List<String> payloads) {
+        if (mBuffer == null) {
+            return NO_ENTRY;
+        }
+        StringBuilder batch = new StringBuilder(BATCH_PREFIX);
+        for (int i = 0; i < payloads.size(); i++) {
+            if (i > 0) {
+                batch.append(',');
+            }
+            batch.append(payloads.get(i));
+        }
+        batch.append(BATCH_SUFFIX);
+        try {
+            return write(group.getBytes(CHARSET_NAME), batch.toString().getBytes(CHARSET_NAME), STATE_PENDING_BATCH);
+        } catch (UnsupportedEncodingException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot journal logs.", e);
+            return NO_ENTRY;
+        }
+    }
+
+    /**
+     * Mark a journaled log as committed to persistence.
+     *
+     * @param token token returned by {@link #append(String, String)} or {@link #appendAll(String, List)}.
+     */
+    public synchronized void commit(long token) {
+        if (mBuffer == null || token == NO_ENTRY || (int) (token >>> 32) != mGeneration) {
+            return;
+        }
+        int offset = (int) token;
+        byte state = mBuffer.get(offset + STATE_OFFSET);
+        if (state == STATE_PENDING || state == STATE_PENDING_BATCH) {
+            mBuffer.put(offset + STATE_OFFSET, STATE_COMMITTED);
+            mPendingCount--;
+
+            /* Restart the ring when nothing is pending to keep writing to the same pages. */
+            if (mPendingCount == 0) {
+                mBuffer.putInt(0, 0);
+                mPosition = 0;
+                mGeneration++;
+            }
+        }
+    }
+
+    /**
+     * Get an action marking a journaled log as committed, to run on the persistence thread right after the log is stored
+     * so that a log cannot be both stored and replayed if the process is killed before the persistence callback.
+     *
+     * @param token token returned by {@link #append(String, String)} or {@link #appendAll(String, List)}.
+     * @return action committing the record, null if nothing was journaled.
+     */
+    public Runnable getCommitAction(final long token) {
+        if (token == NO_ENTRY) {
+            return null;
+        }
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                commit(token);
+            }
+        };
+    }
+
+    /**
+     * Replay logs of a group that were journaled by a previous process but not committed to persistence.
+     * Records are committed as soon as persistence stores them, or once persistence fails.
+     *
+     * @param group       group name.
+     * @param persistence persistence to commit logs to.
+     */
+    public synchronized void replay(@NonNull String group, @NonNull AsyncPersistence persistence) {
+        List<PendingRecord> records = mRecordsToReplay.remove(group);
+        if (records == null) {
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "Replaying " + records.size() + " journaled log(s) for group " + group);
+        for (final PendingRecord record : records) {
+            if (record.mState == STATE_PENDING_BATCH) {
+                replayBatch(group, record, persistence);
+                continue;
+            }
+            String payload;
+            Log log;
+            try {
+                payload = new String(record.mPayload, CHARSET_NAME);
+                log = mLogSerializer.deserializeLog(payload);
+            } catch (JSONException | UnsupportedEncodingException e) {
+                AppCenterLog.error(LOG_TAG, "Cannot replay journaled log.", e);
+                commit(record.mToken);
+                continue;
+            }
+            persistence.putLog(group, log, payload, getCommitAction(record.mToken), new AsyncPersistence.PutLogCallback() {
+
+                @Override
+                public void onSuccess(long id) {
+
+                    /* Record was committed on the persistence thread. */
+                }
+
+                @Override
+                public void onFailure(Persistence.PersistenceException e) {
+                    AppCenterLog.error(LOG_TAG, "Cannot replay journaled log.", e);
+                    commit(record.mToken);
+                }
+            });
+        }
+    }
+
+    /**
+     * Replay a batch record in a single persistence transaction.
+     *
+     * @param group       group name.
+     * @param record      batch record.
+     * @param persistence persistence to commit logs to.
+     */
+    private void replayBatch(@NonNull String group, @NonNull final PendingRecord record, @NonNull AsyncPersistence persistence) {
+        List<Log> logs;
+        try {
+            logs = mLogSerializer.deserializeContainer(new String(record.mPayload, CHARSET_NAME)).getLogs();
+        } catch (JSONException | UnsupportedEncodingException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot replay journaled logs.", e);
+            commit(record.mToken);
+            return;
+        }
+        persistence.putLogs(group, logs, getCommitAction(record.mToken), null);
+    }
+
+    /**
+     * Discard logs of a group that were journaled by a previous process but not committed to persistence.
+     *
+     * @param group group name.
+     */
+    public synchronized void discard(@NonNull String group) {
+        List<PendingRecord> records = mRecordsToReplay.remove(group);
+        if (records != null) {
+            for (PendingRecord record : records) {
+                commit(record.mToken);
+            }
+        }
+    }
+
+    /**
+     * Write a pending record to the ring.
+     *
+     * @param group   encoded group name.
+     * @param payload encoded log or batch of logs.
+     * @param state   {@link #STATE_PENDING} or {@link #STATE_PENDING_BATCH}.
+     * @return record token or {@link #NO_ENTRY} if the record does not fit.
+     * @throws UnsupportedEncodingException if group names of records to replay cannot be encoded.
+     */
+    private long write(byte[] group, byte[] payload, byte state) throws UnsupportedEncodingException {
+        int length = HEADER_SIZE + group.length + payload.length;
+        if (group.length > 0xffff || length + TERMINATOR_SIZE > mCapacity) {
+            AppCenterLog.debug(LOG_TAG, "Log is too large to be journaled.");
+            return NO_ENTRY;
+        }
+
+        /* Restart from the beginning of the file if record does not fit, overwriting oldest records. */
+        if (mPosition + length + TERMINATOR_SIZE > mCapacity) {
+            AppCenterLog.warn(LOG_TAG, "Log journal is full, overwriting oldest records.");
+            restart();
+            if (mPosition + length + TERMINATOR_SIZE > mCapacity) {
+                AppCenterLog.warn(LOG_TAG, "Log journal is full of logs to replay, log is not journaled.");
+                return NO_ENTRY;
+            }
+        }
+        return put(group, payload, length, state);
+    }
+
+    /**
+     * Restart the ring from the beginning of the file.
+     * Records of the previous process whose group was not replayed yet are written again first so that they are not lost.
+     *
+     * @throws UnsupportedEncodingException if a group name cannot be encoded.
+     */
+    private void restart() throws UnsupportedEncodingException {
+        mBuffer.putInt(0, 0);
+        mPosition = 0;
+        mGeneration++;
+        mPendingCount = 0;
+        for (Map.Entry<String, List<PendingRecord>> entry : mRecordsToReplay.entrySet()) {
+            byte[] group = entry.getKey().getBytes(CHARSET_NAME);
+            for (PendingRecord record : entry.getValue()) {
+                int length = HEADER_SIZE + group.length + record.mPayload.length;
+                if (mPosition + length + TERMINATOR_SIZE <= mCapacity) {
+                    record.mToken = put(group, record.mPayload, length, record.mState);
+                } else {
+
+                    /* Still replayed from memory, just not durable anymore. */
+                    record.mToken = NO_ENTRY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a pending record at the current position, the caller checked that it fits.
+     *
+     * @param group   encoded group name.
+     * @param payload encoded log or batch of logs.
+     * @param length  record length.
+     * @param state   pending record state.
+     * @return record token.
+     */
+    private long put(byte[] group, byte[] payload, int length, byte state) {
+
+        /* Write terminator and content first, then length to make the record visible. */
+        int offset = mPosition;
+        mBuffer.putInt(offset + length, 0);
+        mBuffer.put(offset + STATE_OFFSET, state);
+        mBuffer.putShort(offset + GROUP_LENGTH_OFFSET, (short) group.length);
+        mBuffer.position(offset + HEADER_SIZE);
+        mBuffer.put(group);
+        mBuffer.put(payload);
+        mBuffer.putInt(offset, length);
+        mPosition += length;
+        mPendingCount++;
+        return ((long) mGeneration << 32) | offset;
+    }
+
+    /**
+     * Pending record to replay.
+     */
+    private static class PendingRecord {
+
+        /**
+         * Record token, updated when the record is written again after the ring restarts.
+         */
+        long mToken;
+
+        /**
+         * Encoded log or batch of logs.
+         */
+        final byte[] mPayload;
+
+        /**
+         * {@link #STATE_PENDING} or {@link #STATE_PENDING_BATCH}.
+         */
+        final byte mState;
+
+        /**
+         * Init.
+         *
+         * @param token   record token.
+         * @param payload encoded log or batch of logs.
+         * @param state   pending record state.
+         */
+        PendingRecord(long token, byte[] payload, byte state) {
+            mToken = token;
+            mPayload = payload;
+            mState = state;
+        }
+    }
+}
@@ -35,6 +35,27 @@ public abstract class Persistence implements Closeable {
      */
     public abstract long putLog(@NonNull String group, @NonNull Log log) throws PersistenceException;
 
+    /**
+     * Writes a log already serialized by the caller to the storage with the given {@code group}.
+     *
+     * @param group   The group of the storage for the log.
+     * @param log     The log to be placed in the storage.
+     * @param payload The serialized log.
+     * @return Log identifier from persistence after saving.
+     * @throws PersistenceException Exception will be thrown if Persistence cannot write a log to the storage.
+     */
+    public abstract long putLog(@NonNull String group, @NonNull Log log, @NonNull String payload) throws PersistenceException;
+
+    /**
+     * Writes logs to the storage with the given {@code group} in a single transaction.
+     * Logs that cannot be written are skipped.
+     *
+     * @param group The group of the storage for the logs.
+     * @param logs  The logs to be placed in the storage.
+     * @return The number of logs written.
+     */
+    public abstract int putLogs(@NonNull String group, @NonNull List<Log> logs);
+
     /**
      * Deletes a log with the give ID from the {@code group}.
      *
@@ -74,6 +95,21 @@ public abstract class Persistence implements Closeable {
      */
     public abstract void clearPendingLogState();
 
+    /**
+     * Sets how long logs of the {@code group} are kept, older logs are deleted instead of being returned.
+     *
+     * @param group      The group of the storage for logs.
+     * @param timeToLive The time to live in milliseconds since log creation, {@code 0} to keep logs until sent.
+     */
+    public abstract void setTimeToLive(@NonNull String group, @IntRange(from = 0) long timeToLive);
+
+    /**
+     * Reclaims storage space freed by deleted logs if worth it.
+     *
+     * @return The number of bytes reclaimed.
+     */
+    public abstract long compact();
+
     /**
      * Gets a {@link LogSerializer}.
      *
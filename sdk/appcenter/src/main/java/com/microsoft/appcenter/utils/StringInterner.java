@@ -0,0 +1,64 @@
+package com.microsoft.appcenter.utils;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of strings repeated a lot, such as event names, property keys and log types,
+ * so that logs built from equal strings share the same instances.
+ * Unlike {@link String#intern()}, the pool is bounded so unique values cannot make it grow forever.
+ * The pool keeps the first strings it sees and never evicts them, so it must not be used for
+ * free-form values such as property values that would fill it with strings never seen again.
+ */
+public class StringInterner {
+
+    /**
+     * Maximum number of canonical strings, other strings are returned as is once reached.
+     */
+    @VisibleForTesting
+    static final int MAX_SIZE = 1024;
+
+    /**
+     * Maximum length of a string to keep in the pool.
+     */
+    @VisibleForTesting
+    static final int MAX_LENGTH = 256;
+
+    /**
+     * Canonical strings.
+     */
+    private static final ConcurrentHashMap<String, String> sPool = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    StringInterner() {
+
+        /* Hide constructor in utils pattern. */
+    }
+
+    /**
+     * Get the canonical instance of a string.
+     *
+     * @param value string, can be null.
+     * @return canonical instance equal to value, or value itself if pool is full or value is too long.
+     */
+    public static String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        String canonical = sPool.get(value);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (sPool.size() >= MAX_SIZE) {
+            return value;
+        }
+        canonical = sPool.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        sPool.clear();
+    }
+}
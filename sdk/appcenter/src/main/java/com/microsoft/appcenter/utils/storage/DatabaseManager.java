@@ -4,9 +4,11 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.SystemClock;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -16,13 +18,20 @@ import android.text.TextUtils;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Database manager for SQLite with fail-over to in-memory.
@@ -39,6 +48,53 @@ public class DatabaseManager implements Closeable {
      */
     private static final String PRIMARY_KEY_SELECTION = "oid = ?";
 
+    /**
+     * Maximum number of records kept in the in-memory database if the table has no preset limit.
+     */
+    @VisibleForTesting
+    static final int IN_MEMORY_DEFAULT_MAX_RECORDS = 300;
+
+    /**
+     * Maximum size in bytes of the records kept in the in-memory database.
+     * Oldest records are evicted first when this size is exceeded.
+     */
+    @VisibleForTesting
+    static final int IN_MEMORY_MAX_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Minimum time in milliseconds between 2 attempts to move records back from memory to SQLite.
+     */
+    @VisibleForTesting
+    static final long SQLITE_RECOVERY_INTERVAL = 60 * 1000;
+
+    /**
+     * Type markers used when serializing records for the in-memory database.
+     */
+    private static final byte TYPE_NULL = 0;
+
+    private static final byte TYPE_STRING = 1;
+
+    private static final byte TYPE_LONG = 2;
+
+    private static final byte TYPE_INTEGER = 3;
+
+    private static final byte TYPE_SHORT = 4;
+
+    private static final byte TYPE_BYTE = 5;
+
+    private static final byte TYPE_DOUBLE = 6;
+
+    private static final byte TYPE_FLOAT = 7;
+
+    private static final byte TYPE_BOOLEAN = 8;
+
+    private static final byte TYPE_BYTE_ARRAY = 9;
+
+    /**
+     * Value of the auto_vacuum pragma when incremental vacuum is enabled.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
     /**
      * Application context instance.
      */
@@ -64,11 +120,26 @@ public class DatabaseManager implements Closeable {
      */
     private final int mMaxNumberOfRecords;
 
+    /**
+     * Columns to index, can be null.
+     */
+    private final String[] mIndexedColumns;
+
     /**
      * Error listener instance.
      */
     private final ErrorListener mErrorListener;
 
+    /**
+     * Listener notified when a record gets a new identifier, can be null.
+     */
+    private IdentifierChangeListener mIdentifierChangeListener;
+
+    /**
+     * Values of the columns added to the records kept on upgrade, null to drop the table on upgrade.
+     */
+    private ContentValues mUpgradeValues;
+
     /**
      * SQLite helper instance.
      */
@@ -78,13 +149,23 @@ public class DatabaseManager implements Closeable {
      * In-memory database if SQLite cannot be used.
      */
     @SuppressWarnings("SpellCheckingInspection")
-    private Map<Long, ContentValues> mIMDB;
+    private InMemoryDatabase mIMDB;
 
     /**
      * In-memory auto increment.
      */
     private long mIMDBAutoInc;
 
+    /**
+     * Greatest identifier known to be used in SQLite.
+     */
+    private long mLastSQLiteId;
+
+    /**
+     * Time of the last attempt to move back from in-memory database to SQLite.
+     */
+    private long mLastRecoveryAttemptTime;
+
     /**
      * Initializes the table in the database.
      *
@@ -114,11 +195,29 @@ public class DatabaseManager implements Closeable {
      */
     DatabaseManager(Context context, String database, String table, int version,
                     ContentValues schema, int maxRecords, ErrorListener listener) {
+        this(context, database, table, version, schema, maxRecords, null, listener);
+    }
+
+    /**
+     * Initializes the table in the database.
+     *
+     * @param context        The application context.
+     * @param database       The database name.
+     * @param table          The table name.
+     * @param version        The version of current schema.
+     * @param schema         The schema.
+     * @param maxRecords     The maximum number of records allowed in the table. {@code 0} for no preset limit.
+     * @param indexedColumns The columns to index, can be null.
+     * @param listener       The error listener.
+     */
+    DatabaseManager(Context context, String database, String table, int version,
+                    ContentValues schema, int maxRecords, String[] indexedColumns, ErrorListener listener) {
         mContext = context;
         mDatabase = database;
         mTable = table;
         mSchema = schema;
         mMaxNumberOfRecords = maxRecords;
+        mIndexedColumns = indexedColumns;
         mErrorListener = listener;
         mSQLiteOpenHelper = new SQLiteOpenHelper(context, database, null, version) {
 
@@ -130,32 +229,111 @@ public class DatabaseManager implements Closeable {
                 sql.append(mTable);
                 sql.append("` (oid INTEGER PRIMARY KEY AUTOINCREMENT");
                 for (Map.Entry<String, Object> col : mSchema.valueSet()) {
-                    sql.append(", `").append(col.getKey()).append("` ");
-                    Object val = col.getValue();
-                    if (val instanceof Double || val instanceof Float) {
-                        sql.append("REAL");
-                    } else if (val instanceof Number || val instanceof Boolean) {
-                        sql.append("INTEGER");
-                    } else if (val instanceof byte[]) {
-                        sql.append("BLOB");
-                    } else {
-                        sql.append("TEXT");
-                    }
+                    sql.append(", `").append(col.getKey()).append("` ").append(getColumnType(col.getValue()));
                 }
                 sql.append(");");
                 db.execSQL(sql.toString());
+                createIndexes(db);
             }
 
             @Override
             public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 
-                /* For now we upgrade by destroying the old table. */
-                db.execSQL("DROP TABLE `" + mTable + "`");
-                onCreate(db);
+                /* Upgrade by destroying the old table unless records must be kept. */
+                if (mUpgradeValues == null) {
+                    db.execSQL("DROP TABLE `" + mTable + "`");
+                    onCreate(db);
+                    return;
+                }
+
+                /* Add the columns missing from the previous schema to keep existing records. */
+                Set<String> columns = new HashSet<>();
+                Cursor cursor = db.rawQuery("PRAGMA table_info(`" + mTable + "`)", null);
+                try {
+                    while (cursor.moveToNext()) {
+                        columns.add(cursor.getString(cursor.getColumnIndex("name")));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (columns.isEmpty()) {
+                    onCreate(db);
+                    return;
+                }
+                for (Map.Entry<String, Object> col : mSchema.valueSet()) {
+                    if (!columns.contains(col.getKey())) {
+                        db.execSQL("ALTER TABLE `" + mTable + "` ADD COLUMN `" + col.getKey() + "` " + getColumnType(col.getValue()));
+                        Object value = mUpgradeValues.get(col.getKey());
+                        if (value != null) {
+                            db.execSQL("UPDATE `" + mTable + "` SET `" + col.getKey() + "` = ?", new Object[]{value});
+                        }
+                    }
+                }
+                createIndexes(db);
+            }
+
+            @Override
+            public void onOpen(SQLiteDatabase db) {
+
+                /* Remember the greatest identifier so that in-memory identifiers follow the SQLite ones. */
+                try {
+                    mLastSQLiteId = Math.max(mLastSQLiteId, DatabaseUtils.longForQuery(db, "SELECT MAX(" + PRIMARY_KEY + ") FROM `" + mTable + "`", null));
+                } catch (RuntimeException e) {
+                    AppCenterLog.warn(AppCenter.LOG_TAG, "Failed to read the greatest identifier of the table.", e);
+                }
             }
         };
     }
 
+    /**
+     * Sets the listener notified when a record gets a new identifier.
+     *
+     * @param listener The listener, null to remove it.
+     */
+    void setIdentifierChangeListener(@Nullable IdentifierChangeListener listener) {
+        mIdentifierChangeListener = listener;
+    }
+
+    /**
+     * Keeps the records when the schema version changes, instead of dropping the table.
+     * Must be called before the first database operation.
+     *
+     * @param values The values of the columns added by the upgrade, columns without a value are left null.
+     */
+    void setUpgradeValues(@NonNull ContentValues values) {
+        mUpgradeValues = values;
+    }
+
+    /**
+     * Gets the SQLite column type for a schema specimen value.
+     *
+     * @param specimen The specimen value.
+     * @return The column type.
+     */
+    private static String getColumnType(Object specimen) {
+        if (specimen instanceof Double || specimen instanceof Float) {
+            return "REAL";
+        } else if (specimen instanceof Number || specimen instanceof Boolean) {
+            return "INTEGER";
+        } else if (specimen instanceof byte[]) {
+            return "BLOB";
+        }
+        return "TEXT";
+    }
+
+    /**
+     * Creates the indexes of the table if missing.
+     *
+     * @param db The database.
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        if (mIndexedColumns != null) {
+            for (String column : mIndexedColumns) {
+                db.execSQL("CREATE INDEX IF NOT EXISTS `ix_" + mTable + "_" + column + "` ON `" + mTable + "` (`" + column + "`)");
+            }
+        }
+    }
+
     /**
      * Converts a cursor to an entry.
      *
@@ -204,19 +382,16 @@ public class DatabaseManager implements Closeable {
     public long put(@NonNull ContentValues values) {
 
         /* Try SQLite. */
+        recoverFromInMemory();
         if (mIMDB == null) {
             try {
 
                 /* Insert data. */
                 long id = getDatabase().insertOrThrow(mTable, null, values);
+                mLastSQLiteId = Math.max(mLastSQLiteId, id);
 
                 /* Purge oldest entry if it hits the limit. */
-                if (mMaxNumberOfRecords < getRowCount() && mMaxNumberOfRecords > 0) {
-                    Cursor cursor = getCursor(null, null, true);
-                    cursor.moveToNext();
-                    delete(cursor.getLong(0));
-                    cursor.close();
-                }
+                purgeOldestRecords();
                 return id;
             } catch (RuntimeException e) {
                 switchToInMemory("put", e);
@@ -229,6 +404,72 @@ public class DatabaseManager implements Closeable {
         return mIMDBAutoInc++;
     }
 
+    /**
+     * Stores the entries to the table in a single transaction.
+     *
+     * @param valuesList The entries to be stored.
+     * @return Database identifiers, in the same order as the entries.
+     */
+    public long[] put(@NonNull List<ContentValues> valuesList) {
+        long[] ids = new long[valuesList.size()];
+
+        /* Try SQLite. */
+        recoverFromInMemory();
+        if (mIMDB == null) {
+            try {
+
+                /* Insert data, nothing is stored if any insert fails. */
+                SQLiteDatabase database = getDatabase();
+                long lastId = mLastSQLiteId;
+                database.beginTransaction();
+                try {
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = database.insertOrThrow(mTable, null, valuesList.get(i));
+                        lastId = Math.max(lastId, ids[i]);
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                mLastSQLiteId = lastId;
+
+                /* Purge oldest entries once for the whole batch. */
+                purgeOldestRecords();
+                return ids;
+            } catch (RuntimeException e) {
+                switchToInMemory("put", e);
+            }
+        }
+
+        /* Store the values to in-memory database. */
+        for (int i = 0; i < ids.length; i++) {
+            ContentValues values = valuesList.get(i);
+            values.put(PRIMARY_KEY, mIMDBAutoInc);
+            mIMDB.put(mIMDBAutoInc, values);
+            ids[i] = mIMDBAutoInc++;
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes the oldest entries until the table fits the maximum number of records.
+     *
+     * @throws RuntimeException If an error occurs.
+     */
+    private void purgeOldestRecords() throws RuntimeException {
+        while (mMaxNumberOfRecords > 0 && mMaxNumberOfRecords < getRowCount()) {
+            Cursor cursor = getCursor(null, null, true);
+            boolean hasRecord = cursor.moveToNext();
+            if (hasRecord) {
+                delete(cursor.getLong(0));
+            }
+            cursor.close();
+            if (!hasRecord) {
+                break;
+            }
+        }
+    }
+
     /**
      * Updates the entry for the identifier.
      *
@@ -253,6 +494,7 @@ public class DatabaseManager implements Closeable {
             return false;
         }
         existValues.putAll(values);
+        mIMDB.put(id, existValues);
         return true;
     }
 
@@ -316,9 +558,8 @@ public class DatabaseManager implements Closeable {
             }
             mIMDB.remove(((Number) value).longValue());
         } else {
-            for (Iterator<Map.Entry<Long, ContentValues>> iterator = mIMDB.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<Long, ContentValues> entry = iterator.next();
-                Object object = entry.getValue().get(key);
+            for (Iterator<ContentValues> iterator = mIMDB.iterator(); iterator.hasNext(); ) {
+                Object object = iterator.next().get(key);
                 if (object != null && object.equals(value)) {
                     iterator.remove();
                 }
@@ -364,7 +605,8 @@ public class DatabaseManager implements Closeable {
             }
             return mIMDB.get(((Number) value).longValue());
         } else {
-            for (ContentValues values : mIMDB.values()) {
+            for (Iterator<ContentValues> iterator = mIMDB.iterator(); iterator.hasNext(); ) {
+                ContentValues values = iterator.next();
                 Object object = values.get(key);
                 if (object != null && object.equals(value)) {
                     return values;
@@ -375,6 +617,44 @@ public class DatabaseManager implements Closeable {
         return null;
     }
 
+    /**
+     * Gets the entry with the greatest value lower than or equal to maxValue in a numeric column.
+     *
+     * @param key      The key of a numeric column to compare, should be indexed.
+     * @param maxValue The inclusive upper bound for the key column.
+     * @return The matching entry or null if none.
+     */
+    public ContentValues getFloor(@NonNull String key, long maxValue) {
+
+        /* Try SQLite. */
+        if (mIMDB == null) {
+            try {
+                SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+                builder.setTables(mTable);
+                builder.appendWhere(key + " <= " + maxValue);
+                Cursor cursor = builder.query(getDatabase(), null, null, null, null, null, key + " DESC, " + PRIMARY_KEY + " DESC", "1");
+                ContentValues values = cursor.moveToFirst() ? buildValues(cursor, mSchema) : null;
+                cursor.close();
+                return values;
+            } catch (RuntimeException e) {
+                switchToInMemory("getFloor", e);
+            }
+        }
+
+        /* Search in-memory database. */
+        ContentValues floorValues = null;
+        long floor = Long.MIN_VALUE;
+        for (Iterator<ContentValues> iterator = mIMDB.iterator(); iterator.hasNext(); ) {
+            ContentValues values = iterator.next();
+            Long value = values.getAsLong(key);
+            if (value != null && value <= maxValue && (floorValues == null || value >= floor)) {
+                floorValues = values;
+                floor = value;
+            }
+        }
+        return floorValues;
+    }
+
     /**
      * Gets a scanner to iterate all values those match key == value.
      *
@@ -385,7 +665,22 @@ public class DatabaseManager implements Closeable {
      * @return A scanner to iterate all values.
      */
     Scanner getScanner(String key, Object value, boolean idOnly) {
-        return new Scanner(key, value, idOnly);
+        return getScanner(key, value, null, 0, idOnly);
+    }
+
+    /**
+     * Gets a scanner to iterate all values those match key == value and lessThanKey &lt; lessThanValue.
+     *
+     * @param key           The optional key for query.
+     * @param value         The optional value for query.
+     * @param lessThanKey   The optional key of a numeric column to compare.
+     * @param lessThanValue The exclusive upper bound for the lessThanKey column.
+     * @param idOnly        true to return only identifier, false to return all fields.
+     *                      This flag is ignored if using in memory database.
+     * @return A scanner to iterate all values.
+     */
+    Scanner getScanner(String key, Object value, String lessThanKey, long lessThanValue, boolean idOnly) {
+        return new Scanner(key, value, lessThanKey, lessThanValue, idOnly);
     }
 
     /**
@@ -462,6 +757,21 @@ public class DatabaseManager implements Closeable {
      * @throws RuntimeException If an error occurs.
      */
     Cursor getCursor(String key, Object value, boolean idOnly) throws RuntimeException {
+        return getCursor(key, value, null, 0, idOnly);
+    }
+
+    /**
+     * Gets a cursor for all rows in the table, all rows where key matches value and lessThanKey is lower than lessThanValue if specified.
+     *
+     * @param key           The optional key for query.
+     * @param value         The optional value for query.
+     * @param lessThanKey   The optional key of a numeric column to compare.
+     * @param lessThanValue The exclusive upper bound for the lessThanKey column.
+     * @param idOnly        Return only row identifier if true, return all fields otherwise.
+     * @return A cursor for all rows that matches the given criteria.
+     * @throws RuntimeException If an error occurs.
+     */
+    Cursor getCursor(String key, Object value, String lessThanKey, long lessThanValue, boolean idOnly) throws RuntimeException {
 
         /* Build a query to get values. */
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
@@ -476,12 +786,59 @@ public class DatabaseManager implements Closeable {
             builder.appendWhere(key + " = ?");
             selectionArgs = new String[]{String.valueOf(value.toString())};
         }
+        if (lessThanKey != null) {
+            if (key != null) {
+                builder.appendWhere(" AND ");
+            }
+            builder.appendWhere(lessThanKey + " < " + lessThanValue);
+        }
 
         /* Query database. */
         String[] projectionIn = idOnly ? new String[]{PRIMARY_KEY} : null;
         return builder.query(getDatabase(), projectionIn, null, selectionArgs, null, null, PRIMARY_KEY);
     }
 
+    /**
+     * Reclaims the free pages of the database file if there are at least {@code minFreePages} of them.
+     * Incremental vacuum is enabled the first time, which requires a full vacuum.
+     * Nothing is done when using the in-memory database.
+     *
+     * @param minFreePages The minimum number of free pages to start compacting.
+     * @return The number of bytes reclaimed.
+     */
+    long compact(@IntRange(from = 0) int minFreePages) {
+        if (mIMDB != null) {
+            return 0;
+        }
+        try {
+            SQLiteDatabase database = getDatabase();
+            long freePages = DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null);
+            if (freePages < minFreePages || freePages == 0) {
+                return 0;
+            }
+            long pageSize = DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+            if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+
+                /* The pragma frees pages while the statement is stepped, so read the cursor to the end. */
+                Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum", null);
+                try {
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+            } else {
+                database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                database.execSQL("VACUUM");
+            }
+            return (freePages - DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null)) * pageSize;
+        } catch (RuntimeException e) {
+
+            /* Compaction is an optimization, e.g. vacuum needs temporary space: keep using SQLite. */
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Failed to compact database.", e);
+            return 0;
+        }
+    }
+
     /**
      * Gets SQLite database.
      *
@@ -513,13 +870,16 @@ public class DatabaseManager implements Closeable {
     @VisibleForTesting
     void switchToInMemory(String operation, RuntimeException exception) {
 
-        /* Create an in-memory database. */
-        mIMDB = new LinkedHashMap<Long, ContentValues>() {
-            @Override
-            protected boolean removeEldestEntry(Entry<Long, ContentValues> eldest) {
-                return mMaxNumberOfRecords < size() && mMaxNumberOfRecords > 0;
-            }
-        };
+        /*
+         * Create an in-memory database if not already using one.
+         * Identifiers follow the greatest SQLite one so that they don't collide with SQLite ones,
+         * which allows keeping the same identifiers when records are moved back to SQLite.
+         */
+        if (mIMDB == null) {
+            mIMDB = new InMemoryDatabase(mMaxNumberOfRecords > 0 ? mMaxNumberOfRecords : IN_MEMORY_DEFAULT_MAX_RECORDS);
+            mIMDBAutoInc = Math.max(mIMDBAutoInc, mLastSQLiteId + 1);
+            mLastRecoveryAttemptTime = SystemClock.elapsedRealtime();
+        }
 
         /* Trigger error listener. */
         if (mErrorListener != null) {
@@ -527,6 +887,225 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * If using in-memory database, periodically check if SQLite works again.
+     * When it does, records are moved back to SQLite with the same identifiers and in-memory database is released.
+     * Records whose identifier is already used in SQLite get a new one, which is notified to {@link IdentifierChangeListener}.
+     */
+    @VisibleForTesting
+    void recoverFromInMemory() {
+
+        /* Check if time to try again. */
+        if (mIMDB == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - mLastRecoveryAttemptTime < SQLITE_RECOVERY_INTERVAL) {
+            return;
+        }
+        mLastRecoveryAttemptTime = now;
+
+        /* Replay all records in a single transaction, stay in memory if anything fails. */
+        long lastId = mLastSQLiteId;
+        List<ContentValues> conflictingValues = new ArrayList<>();
+        List<Long> conflictingIds = new ArrayList<>();
+        long[] newIds;
+        try {
+            SQLiteDatabase database = mSQLiteOpenHelper.getWritableDatabase();
+            database.beginTransaction();
+            try {
+                for (Long id : mIMDB.getIds()) {
+                    ContentValues values = mIMDB.get(id);
+                    try {
+                        lastId = Math.max(lastId, database.insertOrThrow(mTable, null, values));
+                    } catch (SQLiteConstraintException e) {
+                        conflictingValues.add(values);
+                        conflictingIds.add(id);
+                    }
+                }
+
+                /*
+                 * Identifiers already used get new ones once all the others are inserted,
+                 * so that a new identifier cannot be one of the in-memory identifiers.
+                 */
+                newIds = new long[conflictingValues.size()];
+                for (int i = 0; i < newIds.length; i++) {
+                    ContentValues values = conflictingValues.get(i);
+                    values.remove(PRIMARY_KEY);
+                    newIds[i] = database.insertOrThrow(mTable, null, values);
+                    lastId = Math.max(lastId, newIds[i]);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "SQLite is still not usable, keep using in-memory database.", e);
+            return;
+        }
+        mLastSQLiteId = lastId;
+
+        /* Notify the identifiers that changed once committed. */
+        for (int i = 0; i < newIds.length; i++) {
+            long oldId = conflictingIds.get(i);
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Identifier " + oldId + " already used in SQLite, record moved back with identifier " + newIds[i]);
+            if (mIdentifierChangeListener != null) {
+                mIdentifierChangeListener.onIdentifierChanged(conflictingValues.get(i), oldId, newIds[i]);
+            }
+        }
+
+        /* Switch back to SQLite. Scanners already iterating in-memory records keep their own reference. */
+        int count = mIMDB.size();
+        mIMDB = null;
+        AppCenterLog.info(AppCenter.LOG_TAG, "SQLite is usable again, moved " + count + " record(s) back from memory.");
+        try {
+            purgeOldestRecords();
+        } catch (RuntimeException e) {
+            switchToInMemory("recover", e);
+        }
+    }
+
+    /**
+     * Serializes an entry to a compact byte array for the in-memory database.
+     * The primary key is not serialized.
+     *
+     * @param values The entry to serialize.
+     * @return The serialized entry.
+     */
+    @VisibleForTesting
+    static byte[] serialize(@NonNull ContentValues values) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        try {
+            Set<Map.Entry<String, Object>> entries = values.valueSet();
+            if (entries != null) {
+                for (Map.Entry<String, Object> entry : entries) {
+                    if (PRIMARY_KEY.equals(entry.getKey())) {
+                        continue;
+                    }
+                    output.writeUTF(entry.getKey());
+                    Object value = entry.getValue();
+                    if (value == null) {
+                        output.writeByte(TYPE_NULL);
+                    } else if (value instanceof String) {
+                        output.writeByte(TYPE_STRING);
+                        byte[] bytes = ((String) value).getBytes("UTF-8");
+                        output.writeInt(bytes.length);
+                        output.write(bytes);
+                    } else if (value instanceof Long) {
+                        output.writeByte(TYPE_LONG);
+                        output.writeLong((Long) value);
+                    } else if (value instanceof Integer) {
+                        output.writeByte(TYPE_INTEGER);
+                        output.writeInt((Integer) value);
+                    } else if (value instanceof Short) {
+                        output.writeByte(TYPE_SHORT);
+                        output.writeShort((Short) value);
+                    } else if (value instanceof Byte) {
+                        output.writeByte(TYPE_BYTE);
+                        output.writeByte((Byte) value);
+                    } else if (value instanceof Double) {
+                        output.writeByte(TYPE_DOUBLE);
+                        output.writeDouble((Double) value);
+                    } else if (value instanceof Float) {
+                        output.writeByte(TYPE_FLOAT);
+                        output.writeFloat((Float) value);
+                    } else if (value instanceof Boolean) {
+                        output.writeByte(TYPE_BOOLEAN);
+                        output.writeBoolean((Boolean) value);
+                    } else if (value instanceof byte[]) {
+                        output.writeByte(TYPE_BYTE_ARRAY);
+                        byte[] bytes = (byte[]) value;
+                        output.writeInt(bytes.length);
+                        output.write(bytes);
+                    } else {
+                        throw new IllegalArgumentException("Unsupported value type: " + value.getClass());
+                    }
+                }
+            }
+            output.close();
+        } catch (IOException e) {
+
+            /* Cannot happen when writing to memory. */
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Deserializes an entry from the in-memory database.
+     *
+     * @param id     The database identifier to put in the entry.
+     * @param record The serialized entry.
+     * @return The entry.
+     */
+    @VisibleForTesting
+    static ContentValues deserialize(long id, @NonNull byte[] record) {
+        ContentValues values = new ContentValues();
+        values.put(PRIMARY_KEY, id);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        try {
+            while (input.available() > 0) {
+                String key = input.readUTF();
+                byte type = input.readByte();
+                switch (type) {
+
+                    case TYPE_NULL:
+                        values.putNull(key);
+                        break;
+
+                    case TYPE_STRING:
+                        byte[] string = new byte[input.readInt()];
+                        input.readFully(string);
+                        values.put(key, new String(string, "UTF-8"));
+                        break;
+
+                    case TYPE_LONG:
+                        values.put(key, input.readLong());
+                        break;
+
+                    case TYPE_INTEGER:
+                        values.put(key, input.readInt());
+                        break;
+
+                    case TYPE_SHORT:
+                        values.put(key, input.readShort());
+                        break;
+
+                    case TYPE_BYTE:
+                        values.put(key, input.readByte());
+                        break;
+
+                    case TYPE_DOUBLE:
+                        values.put(key, input.readDouble());
+                        break;
+
+                    case TYPE_FLOAT:
+                        values.put(key, input.readFloat());
+                        break;
+
+                    case TYPE_BOOLEAN:
+                        values.put(key, input.readBoolean());
+                        break;
+
+                    case TYPE_BYTE_ARRAY:
+                        byte[] bytes = new byte[input.readInt()];
+                        input.readFully(bytes);
+                        values.put(key, bytes);
+                        break;
+
+                    default:
+                        throw new IllegalStateException("Unknown value type: " + type);
+                }
+            }
+        } catch (IOException e) {
+
+            /* Cannot happen when reading from memory what we serialized. */
+            throw new IllegalStateException(e);
+        }
+        return values;
+    }
+
     /**
      * Sets {@link SQLiteOpenHelper} instance.
      *
@@ -548,6 +1127,126 @@ public class DatabaseManager implements Closeable {
         void onError(String operation, RuntimeException e);
     }
 
+    /**
+     * Listener for records that get a new identifier when moved back from memory to SQLite.
+     */
+    interface IdentifierChangeListener {
+
+        /**
+         * Notifies that a record has a new identifier.
+         *
+         * @param values The record, without identifier.
+         * @param oldId  The identifier previously returned for the record.
+         * @param newId  The new identifier of the record.
+         */
+        void onIdentifierChanged(ContentValues values, long oldId, long newId);
+    }
+
+    /**
+     * Bounded in-memory table, records are kept as serialized byte arrays in insertion order.
+     * Oldest records are evicted when either the maximum number of records or {@link #IN_MEMORY_MAX_SIZE} is exceeded.
+     */
+    private static class InMemoryDatabase {
+
+        /**
+         * Serialized records by identifier.
+         */
+        private final Map<Long, byte[]> mRecords = new LinkedHashMap<>();
+
+        /**
+         * Maximum number of records.
+         */
+        private final int mMaxRecords;
+
+        /**
+         * Total size of serialized records in bytes.
+         */
+        private long mSize;
+
+        InMemoryDatabase(int maxRecords) {
+            mMaxRecords = maxRecords;
+        }
+
+        void put(long id, @NonNull ContentValues values) {
+            byte[] record = serialize(values);
+            byte[] previous = mRecords.put(id, record);
+            if (previous != null) {
+                mSize -= previous.length;
+            }
+            mSize += record.length;
+
+            /* Evict oldest records, but always keep the one we just added. */
+            for (Iterator<Map.Entry<Long, byte[]>> iterator = mRecords.entrySet().iterator(); iterator.hasNext(); ) {
+                if (mRecords.size() <= mMaxRecords && (mSize <= IN_MEMORY_MAX_SIZE || mRecords.size() <= 1)) {
+                    break;
+                }
+                Map.Entry<Long, byte[]> eldest = iterator.next();
+                if (eldest.getKey() == id) {
+                    continue;
+                }
+                mSize -= eldest.getValue().length;
+                iterator.remove();
+            }
+        }
+
+        ContentValues get(long id) {
+            byte[] record = mRecords.get(id);
+            return record == null ? null : deserialize(id, record);
+        }
+
+        void remove(long id) {
+            byte[] record = mRecords.remove(id);
+            if (record != null) {
+                mSize -= record.length;
+            }
+        }
+
+        int size() {
+            return mRecords.size();
+        }
+
+        /**
+         * Gets the identifiers in insertion order.
+         */
+        List<Long> getIds() {
+            return new ArrayList<>(mRecords.keySet());
+        }
+
+        void clear() {
+            mRecords.clear();
+            mSize = 0;
+        }
+
+        /**
+         * Iterates over deserialized records in insertion order, supports removal.
+         */
+        Iterator<ContentValues> iterator() {
+            final Iterator<Map.Entry<Long, byte[]>> iterator = mRecords.entrySet().iterator();
+            return new Iterator<ContentValues>() {
+
+                /** Current record. */
+                Map.Entry<Long, byte[]> current;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public ContentValues next() {
+                    current = iterator.next();
+                    return deserialize(current.getKey(), current.getValue());
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                    mSize -= current.getValue().length;
+                }
+            };
+        }
+    }
+
     /**
      * Scanner specification.
      */
@@ -563,6 +1262,16 @@ public class DatabaseManager implements Closeable {
          */
         private final Object value;
 
+        /**
+         * Optional key of a numeric column to compare.
+         */
+        private final String lessThanKey;
+
+        /**
+         * Exclusive upper bound for the {@link #lessThanKey} column.
+         */
+        private final long lessThanValue;
+
         /**
          * Return only IDs flags (SQLite implementation only).
          */
@@ -576,9 +1285,11 @@ public class DatabaseManager implements Closeable {
         /**
          * Initializes a cursor with optional filter.
          */
-        private Scanner(String key, Object value, boolean idOnly) {
+        private Scanner(String key, Object value, String lessThanKey, long lessThanValue, boolean idOnly) {
             this.key = key;
             this.value = value;
+            this.lessThanKey = lessThanKey;
+            this.lessThanValue = lessThanValue;
             this.idOnly = idOnly;
         }
 
@@ -601,11 +1312,12 @@ public class DatabaseManager implements Closeable {
         public Iterator<ContentValues> iterator() {
 
             /* Try SQLite. */
+            recoverFromInMemory();
             if (mIMDB == null) {
                 try {
                     /* Close cursor first if it was being used. */
                     close();
-                    cursor = getCursor(key, value, idOnly);
+                    cursor = getCursor(key, value, lessThanKey, lessThanValue, idOnly);
 
                     /* Wrap cursor as iterator. */
                     return new Iterator<ContentValues>() {
@@ -666,8 +1378,8 @@ public class DatabaseManager implements Closeable {
             /* Scanner for in-memory database. */
             return new Iterator<ContentValues>() {
 
-                /** In memory map iterator that we wrap because of the filter logic. */
-                final Iterator<ContentValues> iterator = mIMDB.values().iterator();
+                /** In memory iterator that we wrap because of the filter logic. */
+                final Iterator<ContentValues> iterator = mIMDB.iterator();
 
                 /** True if we moved the iterator but not retrieved the value. */
                 boolean advanced;
@@ -684,7 +1396,7 @@ public class DatabaseManager implements Closeable {
                         while (iterator.hasNext()) {
                             ContentValues nextCandidate = iterator.next();
                             Object candidateValue = nextCandidate.get(key);
-                            if (key == null || (value != null && value.equals(candidateValue)) || (value == null && candidateValue == null)) {
+                            if ((key == null || (value != null && value.equals(candidateValue)) || (value == null && candidateValue == null)) && isLessThan(nextCandidate)) {
                                 next = nextCandidate;
                                 break;
                             }
@@ -710,11 +1422,25 @@ public class DatabaseManager implements Closeable {
             };
         }
 
+        /**
+         * Checks the optional upper bound filter on an in-memory record.
+         *
+         * @param values The record.
+         * @return true if the record matches the filter.
+         */
+        private boolean isLessThan(ContentValues values) {
+            if (lessThanKey == null) {
+                return true;
+            }
+            Object candidateValue = values.get(lessThanKey);
+            return candidateValue instanceof Number && ((Number) candidateValue).longValue() < lessThanValue;
+        }
+
         public int getCount() {
             if (mIMDB == null) {
                 try {
                     if (cursor == null) {
-                        cursor = getCursor(key, value, idOnly);
+                        cursor = getCursor(key, value, lessThanKey, lessThanValue, idOnly);
                     }
                     return cursor.getCount();
                 } catch (RuntimeException e) {
@@ -24,12 +24,18 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * StorageHelper class to access local storage.
@@ -308,6 +314,16 @@ public class StorageHelper {
      */
     public static class InternalStorage {
 
+        /**
+         * Character buffer size used when streaming text from or to files.
+         */
+        private static final int STREAM_BUFFER_SIZE = 8192;
+
+        /**
+         * Charset used for compressed text files.
+         */
+        private static final String CHARSET_NAME = "UTF-8";
+
         /**
          * Read contents from a file.
          *
@@ -407,6 +423,63 @@ public class StorageHelper {
             }
         }
 
+        /**
+         * Read contents from a gzip compressed file written by {@link #writeCompressed(File, String)}.
+         *
+         * @param file The file to read from.
+         * @return The decompressed contents of the file or {@code null} if the file cannot be read.
+         */
+        public static String readCompressed(@NonNull File file) {
+            try {
+                Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE), CHARSET_NAME);
+
+                //noinspection TryFinallyCanBeTryWithResources (requires min API level 19)
+                try {
+                    StringBuilder contents = new StringBuilder();
+                    char[] buffer = new char[STREAM_BUFFER_SIZE];
+                    int count;
+                    while ((count = reader.read(buffer)) != -1) {
+                        contents.append(buffer, 0, count);
+                    }
+                    return contents.toString();
+                } finally {
+
+                    //noinspection ThrowFromFinallyBlock
+                    reader.close();
+                }
+            } catch (IOException e) {
+                AppCenterLog.error(AppCenter.LOG_TAG, "Could not read file " + file.getAbsolutePath(), e);
+            }
+            return null;
+        }
+
+        /**
+         * Write contents to a gzip compressed file.
+         * The contents are streamed through a fixed size buffer so no full size copy of the text is made while encoding.
+         *
+         * @param file     The file instance.
+         * @param contents The content to be written to the file.
+         * @throws IOException If an I/O error occurs
+         */
+        public static void writeCompressed(@NonNull File file, @NonNull String contents) throws IOException {
+            Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), STREAM_BUFFER_SIZE), CHARSET_NAME);
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                char[] buffer = new char[STREAM_BUFFER_SIZE];
+                int length = contents.length();
+                for (int offset = 0; offset < length; offset += buffer.length) {
+                    int end = Math.min(length, offset + buffer.length);
+                    contents.getChars(offset, end, buffer, 0);
+                    writer.write(buffer, 0, end - offset);
+                }
+            } finally {
+
+                //noinspection ThrowFromFinallyBlock
+                writer.close();
+            }
+        }
+
         /**
          * Read an object from a file (deserialization).
          *
@@ -599,7 +672,30 @@ public class StorageHelper {
                                                          @NonNull ContentValues schema,
                                                          @IntRange(from = 0) int maxRecords,
                                                          final DatabaseErrorListener listener) {
-            return new DatabaseStorage(new DatabaseManager(sContext, database, table, version, schema, maxRecords, new DatabaseManager.ErrorListener() {
+            return getDatabaseStorage(database, table, version, schema, maxRecords, null, listener);
+        }
+
+        /**
+         * Get a new instance of {@code DatabaseManager}.
+         *
+         * @param database       The database name.
+         * @param table          The table name.
+         * @param version        The version.
+         * @param schema         The schema of the database. If the database has more than one table,
+         *                       it should contain schemas for all tables.
+         * @param maxRecords     The maximum number of records allowed in the table.
+         * @param indexedColumns The columns to index, can be null.
+         * @param listener       The error listener.
+         * @return database storage.
+         */
+        public static DatabaseStorage getDatabaseStorage(@NonNull String database,
+                                                         @NonNull String table,
+                                                         @IntRange(from = 1) int version,
+                                                         @NonNull ContentValues schema,
+                                                         @IntRange(from = 0) int maxRecords,
+                                                         @Nullable String[] indexedColumns,
+                                                         final DatabaseErrorListener listener) {
+            return new DatabaseStorage(new DatabaseManager(sContext, database, table, version, schema, maxRecords, indexedColumns, new DatabaseManager.ErrorListener() {
 
                 @Override
                 public void onError(String operation, RuntimeException e) {
@@ -608,6 +704,33 @@ public class StorageHelper {
             }));
         }
 
+        /**
+         * Set the listener notified when an entry gets a new identifier.
+         * This happens when entries stored in memory after a SQLite failure are moved back to SQLite
+         * and their identifier is already used.
+         *
+         * @param listener The listener, null to remove it.
+         */
+        public void setIdentifierChangeListener(@Nullable final IdentifierChangeListener listener) {
+            mDatabaseManager.setIdentifierChangeListener(listener == null ? null : new DatabaseManager.IdentifierChangeListener() {
+
+                @Override
+                public void onIdentifierChanged(ContentValues values, long oldId, long newId) {
+                    listener.onIdentifierChanged(values, oldId, newId);
+                }
+            });
+        }
+
+        /**
+         * Keep the entries when the schema version changes, instead of dropping the table.
+         * This must be called before the first database operation.
+         *
+         * @param values The values of the columns added by the upgrade, columns without a value are left null.
+         */
+        public void setUpgradeValues(@NonNull ContentValues values) {
+            mDatabaseManager.setUpgradeValues(values);
+        }
+
         /**
          * Store an entry in a table.
          *
@@ -618,6 +741,16 @@ public class StorageHelper {
             return mDatabaseManager.put(values);
         }
 
+        /**
+         * Store entries in a table in a single transaction.
+         *
+         * @param valuesList The entries to be stored.
+         * @return The identifiers of the created database entries, in the same order.
+         */
+        public long[] put(@NonNull List<ContentValues> valuesList) {
+            return mDatabaseManager.put(valuesList);
+        }
+
         /**
          * Update an entry in a table.
          *
@@ -678,6 +811,17 @@ public class StorageHelper {
             return mDatabaseManager.get(key, value);
         }
 
+        /**
+         * Gets the entry with the greatest value lower than or equal to maxValue in a numeric column.
+         *
+         * @param key      The key of a numeric column to compare, should be indexed.
+         * @param maxValue The inclusive upper bound for the key column.
+         * @return The matching entry or null if none.
+         */
+        public ContentValues getFloor(@NonNull String key, long maxValue) {
+            return mDatabaseManager.getFloor(key, maxValue);
+        }
+
         /**
          * Gets a scanner to iterate all values.
          *
@@ -713,6 +857,21 @@ public class StorageHelper {
             return new DatabaseScanner(mDatabaseManager.getScanner(key, value, idOnly));
         }
 
+        /**
+         * Gets a scanner to iterate all values those match key == value and lessThanKey &lt; lessThanValue.
+         *
+         * @param key           The optional key for query.
+         * @param value         The optional value for query.
+         * @param lessThanKey   The key of a numeric column to compare, should be indexed.
+         * @param lessThanValue The exclusive upper bound for the lessThanKey column.
+         * @param idOnly        True to return only identifiers, false to return all fields.
+         *                      This flag is ignored if using in memory database.
+         * @return A scanner to iterate all values.
+         */
+        public DatabaseScanner getScanner(@Nullable String key, @Nullable Object value, @NonNull String lessThanKey, long lessThanValue, boolean idOnly) {
+            return new DatabaseScanner(mDatabaseManager.getScanner(key, value, lessThanKey, lessThanValue, idOnly));
+        }
+
         /**
          * Clears the table in the database.
          */
@@ -739,6 +898,16 @@ public class StorageHelper {
             return mDatabaseManager.getRowCount();
         }
 
+        /**
+         * Reclaims the free pages of the database file if there are at least {@code minFreePages} of them.
+         *
+         * @param minFreePages The minimum number of free pages to start compacting.
+         * @return The number of bytes reclaimed.
+         */
+        public long compact(@IntRange(from = 0) int minFreePages) {
+            return mDatabaseManager.compact(minFreePages);
+        }
+
         /**
          * Gets an array of column names in the table.
          *
@@ -763,6 +932,21 @@ public class StorageHelper {
             void onError(String operation, RuntimeException e);
         }
 
+        /**
+         * Listener for entries that get a new identifier.
+         */
+        public interface IdentifierChangeListener {
+
+            /**
+             * Notifies that an entry has a new identifier.
+             *
+             * @param values The entry, without identifier.
+             * @param oldId  The identifier previously returned for the entry.
+             * @param newId  The new identifier of the entry.
+             */
+            void onIdentifierChanged(ContentValues values, long oldId, long newId);
+        }
+
         /**
          * Database scanner to iterate over values.
          */
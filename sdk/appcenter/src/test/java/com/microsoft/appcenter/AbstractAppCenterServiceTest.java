@@ -234,6 +234,38 @@ public class AbstractAppCenterServiceTest {
         verifyNoMoreInteractions(channel);
     }
 
+    @Test
+    public void logTimeToLive() {
+        mService = new AbstractAppCenterService() {
+
+            @Override
+            protected String getGroupName() {
+                return "group_test";
+            }
+
+            @Override
+            public String getServiceName() {
+                return "Test";
+            }
+
+            @Override
+            protected String getLoggerTag() {
+                return "TestLog";
+            }
+
+            @Override
+            protected long getLogTimeToLive() {
+                return 1000;
+            }
+        };
+        Channel channel = mock(Channel.class);
+        mService.onStarted(mock(Context.class), "", channel);
+        verify(channel).setLogTimeToLive("group_test", 1000);
+        mService.setInstanceEnabled(false);
+        mService.setInstanceEnabled(true);
+        verify(channel, times(2)).setLogTimeToLive("group_test", 1000);
+    }
+
     @Test
     public void getGroupName() {
         Assert.assertEquals("group_test", mService.getGroupName());
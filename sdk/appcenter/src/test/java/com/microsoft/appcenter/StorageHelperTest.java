@@ -162,4 +162,13 @@ public class StorageHelperTest {
         verifyStatic();
         AppCenterLog.error(anyString(), anyString(), any(IOException.class));
     }
+
+    @Test
+    public void readCompressedFileNotFound() throws Exception {
+        mockStatic(AppCenterLog.class);
+        whenNew(FileInputStream.class).withAnyArguments().thenThrow(new FileNotFoundException());
+        assertNull(StorageHelper.InternalStorage.readCompressed(new File("")));
+        verifyStatic();
+        AppCenterLog.error(anyString(), anyString(), any(IOException.class));
+    }
 }
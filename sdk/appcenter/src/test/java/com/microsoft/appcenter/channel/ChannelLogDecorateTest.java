@@ -65,6 +65,7 @@ public class ChannelLogDecorateTest {
         Device device2 = mock(Device.class);
         when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(device2);
         channel.invalidateDeviceCache();
+        verify(device).invalidateSerializedFragment();
 
         /* Generate some logs to verify device properties have been updated. */
         for (int i = 0; i < 3; i++) {
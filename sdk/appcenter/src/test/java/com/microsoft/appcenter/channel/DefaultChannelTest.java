@@ -1,7 +1,12 @@
 package com.microsoft.appcenter.channel;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.os.BatteryManager;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
 import com.microsoft.appcenter.CancellationException;
@@ -10,20 +15,31 @@ import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.IngestionHttp;
 import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.json.LazyLog;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.persistence.AsyncPersistence;
+import com.microsoft.appcenter.persistence.LogJournal;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.UUIDUtils;
 
+import org.json.JSONException;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -35,16 +51,20 @@ import static org.junit.Assert.assertNotNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.spy;
 
 @SuppressWarnings("unused")
@@ -666,6 +686,156 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mHandler, never()).removeCallbacks(any(Runnable.class));
     }
 
+    @Test
+    public void journalLogsWhilePersisting() throws Exception {
+        Persistence persistence = mock(Persistence.class);
+        LogJournal journal = mock(LogJournal.class);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("payload");
+        when(journal.getLogSerializer()).thenReturn(logSerializer);
+        when(journal.append(anyString(), anyString())).thenReturn(42L);
+        when(journal.getCommitAction(anyLong())).thenCallRealMethod();
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, mock(Ingestion.class), mCoreHandler, journal);
+
+        /* Pending logs from previous process are replayed before counting logs. */
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null);
+        InOrder inOrder = inOrder(journal, persistence);
+        inOrder.verify(journal).replay(eq(TEST_GROUP), any(AsyncPersistence.class));
+        inOrder.verify(persistence).countLogs(TEST_GROUP);
+
+        /* Log is serialized once, journaled before being persisted then committed. */
+        Log log = mock(Log.class);
+        channel.enqueue(log, TEST_GROUP);
+        inOrder.verify(journal).append(TEST_GROUP, "payload");
+        inOrder.verify(persistence).putLog(TEST_GROUP, log, "payload");
+        inOrder.verify(journal).commit(42L);
+        verify(logSerializer).serializeLog(log);
+        verify(persistence, never()).putLog(anyString(), any(Log.class));
+
+        /* Log stays in journal if persistence fails. */
+        doThrow(new Persistence.PersistenceException("mock", new IOException("mock"))).when(persistence).putLog(anyString(), any(Log.class), anyString());
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(journal).commit(anyLong());
+
+        /* Log that cannot be serialized is neither journaled nor persisted. */
+        when(logSerializer.serializeLog(any(Log.class))).thenThrow(new JSONException("mock"));
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(journal, times(2)).append(anyString(), anyString());
+        verify(persistence, times(2)).putLog(anyString(), any(Log.class), anyString());
+
+        /* Clearing a group discards its journal. */
+        channel.clear(TEST_GROUP);
+        verify(journal).discard(TEST_GROUP);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void journalBatchOnce() throws Exception {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.putLogs(eq(TEST_GROUP), anyList())).thenReturn(2);
+        LogJournal journal = mock(LogJournal.class);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        when(logSerializer.serializeLog(log1)).thenReturn("payload1");
+        when(logSerializer.serializeLog(log2)).thenReturn("payload2");
+        when(journal.getLogSerializer()).thenReturn(logSerializer);
+        when(journal.appendAll(anyString(), anyList())).thenReturn(42L);
+        when(journal.getCommitAction(anyLong())).thenCallRealMethod();
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, mock(Ingestion.class), mCoreHandler, journal);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null);
+
+        /* Batch is journaled as a single record before being persisted then committed. */
+        channel.enqueueAll(Arrays.asList(log1, log2), TEST_GROUP);
+        InOrder inOrder = inOrder(journal, persistence);
+        inOrder.verify(journal).appendAll(TEST_GROUP, Arrays.asList("payload1", "payload2"));
+        inOrder.verify(persistence).putLogs(TEST_GROUP, Arrays.asList(log1, log2));
+        inOrder.verify(journal).commit(42L);
+        verify(journal, never()).append(anyString(), anyString());
+
+        /* Batch is still persisted if a log cannot be serialized for the journal. */
+        when(logSerializer.serializeLog(log2)).thenThrow(new JSONException("mock"));
+        channel.enqueueAll(Arrays.asList(log1, log2), TEST_GROUP);
+        verify(journal).appendAll(anyString(), anyList());
+        verify(persistence, times(2)).putLogs(TEST_GROUP, Arrays.asList(log1, log2));
+        verify(journal).commit(anyLong());
+        assertEquals(4, channel.getCounter(TEST_GROUP));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void persistenceIsPipelinedWithIngestion() {
+
+        /* Persistence that completes reads only when asked to. */
+        AsyncPersistence persistence = mock(AsyncPersistence.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((AsyncPersistence.ResultCallback<Integer>) invocation.getArguments()[1]).onResult(3);
+                return null;
+            }
+        }).when(persistence).countLogs(anyString(), any(AsyncPersistence.ResultCallback.class));
+        final List<AsyncPersistence.ResultCallback<String>> getLogsCallbacks = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((List<Log>) invocation.getArguments()[2]).add(mock(Log.class));
+                getLogsCallbacks.add((AsyncPersistence.ResultCallback<String>) invocation.getArguments()[3]);
+                return null;
+            }
+        }).when(persistence).getLogs(anyString(), anyInt(), anyList(), any(AsyncPersistence.ResultCallback.class));
+        Ingestion ingestion = mock(Ingestion.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, ingestion, mCoreHandler, null);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, 2, null);
+
+        /* First batch is being read. */
+        verify(persistence).getLogs(eq(TEST_GROUP), eq(1), anyList(), any(AsyncPersistence.ResultCallback.class));
+        verify(ingestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* When first batch is read, it's sent and the next batch is read while the first one is in flight. */
+        getLogsCallbacks.get(0).onResult(UUIDUtils.randomUUID().toString());
+        verify(ingestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(persistence, times(2)).getLogs(eq(TEST_GROUP), eq(1), anyList(), any(AsyncPersistence.ResultCallback.class));
+
+        /* Reading batches counts toward the parallel limit. */
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(persistence, times(2)).getLogs(eq(TEST_GROUP), eq(1), anyList(), any(AsyncPersistence.ResultCallback.class));
+
+        /* No more batches if persistence had no log. */
+        getLogsCallbacks.get(1).onResult(null);
+        verify(ingestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void logsNotDeletedIfEnabledBeforeSuspendedDeletion() {
+
+        /* Persistence that completes reads only when asked to. */
+        AsyncPersistence persistence = mock(AsyncPersistence.class);
+        final List<AsyncPersistence.ResultCallback<String>> getLogsCallbacks = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                getLogsCallbacks.add((AsyncPersistence.ResultCallback<String>) invocation.getArguments()[3]);
+                return null;
+            }
+        }).when(persistence).getLogs(anyString(), anyInt(), anyList(), any(AsyncPersistence.ResultCallback.class));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, mock(Ingestion.class), mCoreHandler, null);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null);
+
+        /* Disable then enable again before logs to delete are read. */
+        channel.setEnabled(false);
+        verify(persistence).getLogs(eq(TEST_GROUP), eq(DefaultChannel.CLEAR_BATCH_SIZE), anyList(), any(AsyncPersistence.ResultCallback.class));
+        channel.setEnabled(true);
+        getLogsCallbacks.get(0).onResult(null);
+
+        /* Logs persisted after enabling again are kept. */
+        verify(persistence, never()).deleteLogs(TEST_GROUP);
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void setEnabled() throws IOException, InterruptedException {
@@ -731,6 +901,92 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(ingestion).setLogUrl(logUrl);
     }
 
+    @Test
+    public void setLogTimeToLive() {
+        Persistence persistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, mock(Ingestion.class), mCoreHandler);
+        channel.setLogTimeToLive(TEST_GROUP, 1000);
+        verify(persistence).setTimeToLive(TEST_GROUP, 1000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void compactWhenIdle() throws Persistence.PersistenceException {
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        Persistence persistence = mock(Persistence.class);
+        Ingestion ingestion = mock(Ingestion.class);
+        when(persistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(getGetLogsAnswer());
+        when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, ingestion, mCoreHandler);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        channel.addListener(listener);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null);
+
+        /* No compaction before interval elapsed. */
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(persistence).deleteLogs(eq(TEST_GROUP), anyString());
+        verify(persistence, never()).compact();
+
+        /* Compact once all logs are sent, listeners get the reclaimed bytes. */
+        when(persistence.compact()).thenReturn(4096L);
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + DefaultChannel.COMPACTION_INTERVAL);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(persistence).compact();
+        verify(listener).onCompacted(4096L);
+
+        /* Not again before next interval. */
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(persistence, times(3)).deleteLogs(eq(TEST_GROUP), anyString());
+        verify(persistence).compact();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void compactWhenChargingOnly() throws Persistence.PersistenceException {
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenReturn(DefaultChannel.COMPACTION_INTERVAL);
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(getGetLogsAnswer());
+
+        /* Keep ingestion callbacks to complete them later. */
+        final List<ServiceCallback> callbacks = new ArrayList<>();
+        Ingestion ingestion = mock(Ingestion.class);
+        when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                callbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        Context context = mock(Context.class);
+        DefaultChannel channel = new DefaultChannel(context, UUIDUtils.randomUUID().toString(), persistence, ingestion, mCoreHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null);
+        when(SystemClock.elapsedRealtime()).thenReturn(2 * DefaultChannel.COMPACTION_INTERVAL);
+
+        /* Sending 2 batches, when first completes, not idle and not charging. */
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        assertEquals(2, callbacks.size());
+        callbacks.get(0).onCallSucceeded("");
+        verify(persistence).deleteLogs(eq(TEST_GROUP), anyString());
+        verify(persistence, never()).compact();
+
+        /* Still busy but charging. */
+        Intent batteryStatus = mock(Intent.class);
+        when(batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0)).thenReturn(BatteryManager.BATTERY_PLUGGED_AC);
+        when(context.registerReceiver(any(BroadcastReceiver.class), any(IntentFilter.class))).thenReturn(batteryStatus);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        channel.addListener(listener);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        callbacks.get(1).onCallSucceeded("");
+        verify(persistence).compact();
+
+        /* Nothing reclaimed, listeners are not called. */
+        verify(listener, never()).onCompacted(anyLong());
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void initialLogs() throws IOException, InterruptedException {
@@ -1040,4 +1296,193 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
             verify(persistence).putLog(TEST_GROUP, log);
         }
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lazyLogsDecodedForListener() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+
+        /* First log decodes, second is corrupted. */
+        final LazyLog lazyLog = mock(LazyLog.class);
+        Log decodedLog = mock(Log.class);
+        when(lazyLog.getLog()).thenReturn(decodedLog);
+        final LazyLog corruptedLog = mock(LazyLog.class);
+        when(corruptedLog.getLog()).thenThrow(new JSONException("mock"));
+        when(mockPersistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                List<Log> logs = (List<Log>) invocation.getArguments()[2];
+                logs.add(lazyLog);
+                logs.add(corruptedLog);
+                return UUIDUtils.randomUUID().toString();
+            }
+        });
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mockPersistence, mockIngestion, mCoreHandler);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, mockListener);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+
+        /* Listener gets the decoded log only. */
+        verify(mockListener).onBeforeSending(decodedLog);
+        verify(mockListener).onSuccess(decodedLog);
+        verify(mockListener).onBeforeSending(any(Log.class));
+        verify(mockListener).onSuccess(any(Log.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void unreadableDataFileDiscarded() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        final Log log = mock(Log.class);
+        final FileDataLog fileDataLog = mock(FileDataLog.class);
+        when(fileDataLog.getDataFile()).thenReturn(new File("missing"));
+
+        /* First batch has only the unreadable log, second has a valid one too. */
+        when(mockPersistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                ((List<Log>) invocation.getArguments()[2]).add(fileDataLog);
+                return "batch1";
+            }
+        }).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                List<Log> logs = (List<Log>) invocation.getArguments()[2];
+                logs.add(log);
+                logs.add(fileDataLog);
+                return "batch2";
+            }
+        });
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mockPersistence, mockIngestion, mCoreHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, mockListener);
+
+        /* Batch without other logs is deleted without sending. */
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mockPersistence).deleteLogs(TEST_GROUP, "batch1");
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockListener).onBeforeSending(fileDataLog);
+        verify(mockListener).onFailure(eq(fileDataLog), any(FileNotFoundException.class));
+
+        /* Only the readable log is sent, the whole batch is deleted once sent. */
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        LogContainer expected = new LogContainer();
+        expected.setLogs(Collections.singletonList(log));
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), eq(expected), any(ServiceCallback.class));
+        verify(mockPersistence).deleteLogs(TEST_GROUP, "batch2");
+        verify(mockListener).onSuccess(log);
+        verify(mockListener, times(2)).onFailure(eq(fileDataLog), any(FileNotFoundException.class));
+        verify(mockListener, never()).onSuccess(fileDataLog);
+    }
+
+    @Test
+    public void discardedLazyLogDecodedForListener() throws Exception {
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mock(Persistence.class), mock(Ingestion.class), mCoreHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, mockListener);
+        channel.setEnabled(false);
+
+        /* Listener gets the decoded log. */
+        LazyLog lazyLog = mock(LazyLog.class);
+        Log decodedLog = mock(Log.class);
+        when(lazyLog.getLog()).thenReturn(decodedLog);
+        channel.enqueue(lazyLog, TEST_GROUP);
+        verify(mockListener).onBeforeSending(decodedLog);
+        verify(mockListener).onFailure(eq(decodedLog), any(CancellationException.class));
+        verify(mockListener, never()).onBeforeSending(lazyLog);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void selectiveListenerSkipsDecoding() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        Channel.SelectiveGroupListener mockListener = mock(Channel.SelectiveGroupListener.class);
+        final LazyLog lazyLog = mock(LazyLog.class);
+        when(mockListener.shouldNotify(lazyLog)).thenReturn(false);
+        when(mockPersistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                ((List<Log>) invocation.getArguments()[2]).add(lazyLog);
+                return UUIDUtils.randomUUID().toString();
+            }
+        });
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new HttpException(403)));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mockPersistence, mockIngestion, mCoreHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, mockListener);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+
+        /* No callback and no decoding. */
+        verify(mockListener, never()).onBeforeSending(any(Log.class));
+        verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
+        verify(lazyLog, never()).getLog();
+
+        /* Log is discarded when disabled, listener is asked too. */
+        Log log = mock(Log.class);
+        channel.enqueue(log, TEST_GROUP);
+        verify(mockListener).shouldNotify(log);
+        verify(mockListener, never()).onBeforeSending(log);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void enqueueAll() throws Persistence.PersistenceException {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.putLogs(eq(TEST_GROUP), anyList())).then(new Answer<Integer>() {
+
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                return ((List) invocation.getArguments()[1]).size();
+            }
+        });
+        Channel.GroupListener groupListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, mock(IngestionHttp.class), mCoreHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, groupListener);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        channel.addListener(listener);
+
+        /* Invalid group. */
+        channel.enqueueAll(Collections.singletonList(mock(Log.class)), "invalid");
+        verify(persistence, never()).putLogs(anyString(), anyList());
+
+        /* Enqueue 3 logs with 1 filtered out. */
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        Log filteredLog = mock(Log.class);
+        when(listener.shouldFilter(filteredLog)).thenReturn(true);
+        channel.enqueueAll(Arrays.asList(log1, filteredLog, log2), TEST_GROUP);
+        verify(listener).onEnqueuingLog(log1, TEST_GROUP);
+        verify(listener).onEnqueuingLog(filteredLog, TEST_GROUP);
+        verify(listener).onEnqueuingLog(log2, TEST_GROUP);
+        verify(log1).setDevice(any(Device.class));
+        verify(log2).setTimestamp(any(Date.class));
+
+        /* Persisted at once and timer scheduled once. */
+        verify(persistence).putLogs(TEST_GROUP, Arrays.asList(log1, log2));
+        verify(persistence, never()).putLog(anyString(), any(Log.class));
+        assertEquals(2, channel.getCounter(TEST_GROUP));
+        verify(mHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+
+        /* All logs filtered out. */
+        channel.enqueueAll(Collections.singletonList(filteredLog), TEST_GROUP);
+        verify(persistence).putLogs(anyString(), anyList());
+
+        /* Logs are discarded when disabled. */
+        channel.setEnabled(false);
+        channel.enqueueAll(Arrays.asList(log1, log2), TEST_GROUP);
+        verify(groupListener).onBeforeSending(log1);
+        verify(groupListener).onFailure(eq(log1), any(CancellationException.class));
+        verify(groupListener).onBeforeSending(log2);
+        verify(groupListener).onFailure(eq(log2), any(CancellationException.class));
+        verify(persistence).putLogs(anyString(), anyList());
+    }
 }
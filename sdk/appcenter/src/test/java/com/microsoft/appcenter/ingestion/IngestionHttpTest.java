@@ -7,6 +7,7 @@ import com.microsoft.appcenter.http.HttpClientNetworkStateHandler;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
@@ -22,6 +23,9 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,13 +36,16 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -105,6 +112,55 @@ public class IngestionHttpTest {
         verify(httpClient).reopen();
     }
 
+    @Test
+    public void sendAsyncWithDataFile() throws Exception {
+
+        /* Build payload with a log streaming its data from a file. */
+        LogContainer container = new LogContainer();
+        FileDataLog fileDataLog = mock(FileDataLog.class);
+        when(fileDataLog.getDataFile()).thenReturn(new File("mock"));
+        List<Log> logs = new ArrayList<>();
+        logs.add(mock(Log.class));
+        logs.add(fileDataLog);
+        container.setLogs(logs);
+        LogSerializer serializer = mock(LogSerializer.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[1]).write("mockPayload\u00e9");
+                return null;
+            }
+        }).when(serializer).serializeContainer(any(LogContainer.class), any(Writer.class));
+
+        /* Configure mock HTTP. */
+        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
+        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
+        when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) throws Throwable {
+                callTemplate.set((HttpClient.CallTemplate) invocation.getArguments()[3]);
+                return mock(ServiceCall.class);
+            }
+        });
+
+        /* Body is streamed. */
+        IngestionHttp ingestionHttp = new IngestionHttp(mock(Context.class), serializer);
+        ingestionHttp.sendAsync(UUIDUtils.randomUUID().toString(), UUIDUtils.randomUUID(), container, mock(ServiceCallback.class));
+        assertTrue(callTemplate.get() instanceof HttpClient.StreamingCallTemplate);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ((HttpClient.StreamingCallTemplate) callTemplate.get()).writeRequestBody(body);
+        assertEquals("mockPayload\u00e9", body.toString("UTF-8"));
+        verify(serializer, never()).serializeContainer(any(LogContainer.class));
+
+        /* Data in memory is not streamed. */
+        when(fileDataLog.getDataFile()).thenReturn(null);
+        ingestionHttp.sendAsync(UUIDUtils.randomUUID().toString(), UUIDUtils.randomUUID(), container, mock(ServiceCallback.class));
+        assertFalse(callTemplate.get() instanceof HttpClient.StreamingCallTemplate);
+    }
+
     @Test
     public void failedSerialization() throws Exception {
 
@@ -1,11 +1,17 @@
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 import com.microsoft.appcenter.test.TestUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
+import org.junit.Rule;
 import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.util.Date;
 import java.util.UUID;
@@ -15,15 +21,21 @@ import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @SuppressWarnings("unused")
+@PrepareForTest({AbstractLog.class, JSONUtils.class})
 public class AbstractLogTest {
 
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
     @Test
     public void utilsCoverage() {
         new CommonProperties();
@@ -86,38 +98,76 @@ public class AbstractLogTest {
     }
 
     @Test(expected = JSONException.class)
-    public void readDifferentTypeTest() throws JSONException {
-        JSONObject mockJsonObject = mock(JSONObject.class);
-        when(mockJsonObject.getString(CommonProperties.TYPE)).thenReturn("type");
+    public void readDifferentTypeTest() throws Exception {
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        when(reader.hasNext()).thenReturn(true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE);
+        when(reader.nextString()).thenReturn("type");
         AbstractLog mockLog = new MockLog();
-        mockLog.read(mockJsonObject);
+        mockLog.read(mock(JSONObject.class));
     }
 
     @Test
-    public void readWithoutOptionalPropertiesTest() throws JSONException {
+    public void readWithoutOptionalPropertiesTest() throws Exception {
         AbstractLog mockLog = new MockLogWithType();
         UUID uuid = UUID.randomUUID();
         String distributionGroupId = UUID.randomUUID().toString();
-
-        JSONObject mockJsonObject = mock(JSONObject.class);
-        when(mockJsonObject.getString(CommonProperties.TYPE)).thenReturn(mockLog.getType());
-        when(mockJsonObject.getString(AbstractLog.TIMESTAMP)).thenReturn("2017-07-08T01:17:43.245Z");
-        when(mockJsonObject.has(AbstractLog.SID)).thenReturn(false).thenReturn(true);
-        when(mockJsonObject.has(AbstractLog.DISTRIBUTION_GROUP_ID)).thenReturn(false).thenReturn(true);
-        when(mockJsonObject.has(AbstractLog.DEVICE)).thenReturn(false).thenReturn(true);
-        when(mockJsonObject.getString(AbstractLog.SID)).thenReturn(uuid.toString());
-        when(mockJsonObject.getString(AbstractLog.DISTRIBUTION_GROUP_ID)).thenReturn(distributionGroupId);
-        when(mockJsonObject.getJSONObject(AbstractLog.DEVICE)).thenReturn(mock(JSONObject.class));
-
-        mockLog.read(mockJsonObject);
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+
+        /* Only required properties. */
+        when(reader.hasNext()).thenReturn(true, true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, AbstractLog.TIMESTAMP);
+        when(reader.nextString()).thenReturn(mockLog.getType(), "2017-07-08T01:17:43.245Z");
+        mockLog.read(mock(JSONObject.class));
+        assertEquals(new Date(1499476663245L), mockLog.getTimestamp());
         assertNull(mockLog.getSid());
         assertNull(mockLog.getDistributionGroupId());
         assertNull(mockLog.getDevice());
 
-        mockLog.read(mockJsonObject);
+        /* With optional properties, unknown ones are skipped. */
+        whenNew(Device.class).withNoArguments().thenReturn(mock(Device.class));
+        when(reader.hasNext()).thenReturn(true, true, true, true, true, true, false, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, AbstractLog.TIMESTAMP, AbstractLog.SID, AbstractLog.DISTRIBUTION_GROUP_ID, "unknown", AbstractLog.DEVICE);
+        when(reader.nextString()).thenReturn(mockLog.getType(), "2017-07-08T01:17:43.245Z", uuid.toString(), distributionGroupId);
+        mockLog.read(mock(JSONObject.class));
         assertEquals(uuid, mockLog.getSid());
         assertEquals(distributionGroupId, mockLog.getDistributionGroupId());
         assertNotNull(mockLog.getDevice());
+        verify(reader).skipValue();
+    }
+
+    @Test(expected = JSONException.class)
+    public void readWithoutTimestampTest() throws Exception {
+        AbstractLog mockLog = new MockLogWithType();
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        when(reader.hasNext()).thenReturn(true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE);
+        when(reader.nextString()).thenReturn(mockLog.getType());
+        mockLog.read(mock(JSONObject.class));
+    }
+
+    @Test(expected = JSONException.class)
+    public void readDeviceWithoutRequiredPropertiesTest() throws Exception {
+        AbstractLog mockLog = new MockLogWithType();
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        when(reader.hasNext()).thenReturn(true, true, true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, AbstractLog.TIMESTAMP, AbstractLog.DEVICE);
+        when(reader.nextString()).thenReturn(mockLog.getType(), "2017-07-08T01:17:43.245Z");
+        mockLog.read(mock(JSONObject.class));
+    }
+
+    @Test(expected = JSONException.class)
+    public void readMalformedTest() throws Exception {
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        when(reader.hasNext()).thenReturn(true);
+        when(reader.nextName()).thenReturn(AbstractLog.SID);
+        when(reader.nextString()).thenReturn("not an uuid");
+        new MockLog().read(mock(JSONObject.class));
     }
 
     @Test
@@ -133,6 +183,22 @@ public class AbstractLogTest {
         verify(mockJsonStringer, never()).key(AbstractLog.DEVICE);
     }
 
+    @Test
+    public void writeDeviceLeftToSerializerTest() throws JSONException {
+        JSONStringer mockJsonStringer = mock(JSONStringer.class);
+        when(mockJsonStringer.key(anyString())).thenReturn(mockJsonStringer);
+        when(mockJsonStringer.value(anyString())).thenReturn(mockJsonStringer);
+
+        /* Device is left to the serializer. */
+        Device device = mock(Device.class);
+        AbstractLog mockLog = new MockLog();
+        mockLog.setTimestamp(new Date());
+        mockLog.setDevice(device);
+        mockLog.write(mockJsonStringer);
+        verify(mockJsonStringer, never()).key(AbstractLog.DEVICE);
+        verify(device, never()).write(any(JSONStringer.class));
+    }
+
     private static class MockLog extends AbstractLog {
 
         @Override
@@ -1,14 +1,28 @@
 package com.microsoft.appcenter.ingestion.models;
 
+import org.json.JSONStringer;
+import org.junit.Rule;
 import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import static com.microsoft.appcenter.test.TestUtils.checkEquals;
 import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
 import static com.microsoft.appcenter.test.TestUtils.compareSelfNullClass;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @SuppressWarnings("unused")
+@PrepareForTest(Device.class)
 public class DeviceTest {
 
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
     @Test
     public void compareDifferentType() {
         compareSelfNullClass(new Device());
@@ -202,4 +216,38 @@ public class DeviceTest {
         b.setAppNamespace("a");
         checkEquals(a, b);
     }
+
+    @Test
+    public void serializedFragmentIsCached() throws Exception {
+        JSONStringer first = mock(JSONStringer.class);
+        when(first.key(anyString())).thenReturn(first);
+        when(first.toString()).thenReturn("{\"sdkName\":\"a\"}");
+        JSONStringer second = mock(JSONStringer.class);
+        when(second.key(anyString())).thenReturn(second);
+        when(second.toString()).thenReturn("{\"sdkName\":\"b\"}");
+        JSONStringer third = mock(JSONStringer.class);
+        when(third.key(anyString())).thenReturn(third);
+        when(third.toString()).thenReturn("{\"sdkName\":\"b\",\"wrapperSdkName\":\"c\"}");
+        JSONStringer fourth = mock(JSONStringer.class);
+        when(fourth.key(anyString())).thenReturn(fourth);
+        when(fourth.toString()).thenReturn("{}");
+        whenNew(JSONStringer.class).withNoArguments().thenReturn(first, second, third, fourth);
+
+        /* Computed once. */
+        Device device = new Device();
+        device.setSdkName("a");
+        assertEquals("{\"sdkName\":\"a\"}", device.getSerializedFragment());
+        assertEquals("{\"sdkName\":\"a\"}", device.getSerializedFragment());
+        verifyNew(JSONStringer.class).withNoArguments();
+
+        /* Any setter, including wrapper SDK ones, invalidates the cache. */
+        device.setSdkName("b");
+        assertEquals("{\"sdkName\":\"b\"}", device.getSerializedFragment());
+        device.setWrapperSdkName("c");
+        assertEquals("{\"sdkName\":\"b\",\"wrapperSdkName\":\"c\"}", device.getSerializedFragment());
+
+        /* Explicit invalidation. */
+        device.invalidateSerializedFragment();
+        assertEquals("{}", device.getSerializedFragment());
+    }
 }
@@ -1,22 +1,50 @@
 package com.microsoft.appcenter.ingestion.models.json;
 
+import android.util.Base64;
+import android.util.JsonReader;
 import android.util.Log;
 
 import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.CommonProperties;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.FileDataLog;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.json.JSONStringer;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.powermock.reflect.Whitebox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
@@ -26,12 +54,15 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
  * Supplements tests in LogSerializerTest.
  */
 @SuppressWarnings("unused")
-@PrepareForTest({DefaultLogSerializer.class, AppCenterLog.class})
+@PrepareForTest({DefaultLogSerializer.class, AppCenterLog.class, Base64.class})
 public class DefaultLogSerializerTest {
 
     @Rule
     public PowerMockRule mPowerMockRule = new PowerMockRule();
 
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
     @Test
     public void failToUsePrettyJson() throws Exception {
 
@@ -56,4 +87,256 @@ public class DefaultLogSerializerTest {
         verifyStatic();
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(NoSuchMethodError.class));
     }
+
+    @Test
+    public void serializeWithSplicedDevice() throws Exception {
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.ASSERT);
+
+        /* Logs are written without device, device JSON comes from its cache and is appended last. */
+        JSONStringer stringer = mock(JSONStringer.class);
+        whenNew(JSONStringer.class).withAnyArguments().thenReturn(stringer);
+        when(stringer.toString()).thenReturn("{\"type\":\"mock\"}");
+        Device device = new Device();
+        Whitebox.setInternalState(device, "serializedFragment", "{\"sdkName\":\"a\"}");
+        com.microsoft.appcenter.ingestion.models.Log log = mock(com.microsoft.appcenter.ingestion.models.Log.class);
+        when(log.getDevice()).thenReturn(device);
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        assertEquals("{\"type\":\"mock\",\"device\":{\"sdkName\":\"a\"}}", serializer.serializeLog(log));
+
+        /* An equal device in the same container reuses the JSON of the first one instead of serializing again. */
+        Device device2 = new Device();
+        com.microsoft.appcenter.ingestion.models.Log log2 = mock(com.microsoft.appcenter.ingestion.models.Log.class);
+        when(log2.getDevice()).thenReturn(device2);
+        com.microsoft.appcenter.ingestion.models.Log log3 = mock(com.microsoft.appcenter.ingestion.models.Log.class);
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.asList(log, log2, log3));
+        assertEquals("{\"logs\":[{\"type\":\"mock\",\"device\":{\"sdkName\":\"a\"}},{\"type\":\"mock\",\"device\":{\"sdkName\":\"a\"}},{\"type\":\"mock\"}]}", serializer.serializeContainer(container));
+
+        verify(stringer, never()).key(AbstractLog.DEVICE);
+
+        /* Empty log object does not get a trailing comma. */
+        when(stringer.toString()).thenReturn("{}");
+        assertEquals("{\"device\":{\"sdkName\":\"a\"}}", serializer.serializeLog(log));
+    }
+
+    @Test
+    public void serializeDataFile() throws Exception {
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.ASSERT);
+        mockStatic(Base64.class);
+        when(Base64.encodeToString(any(byte[].class), eq(0), eq(4), eq(Base64.NO_WRAP))).thenReturn("ZGF0YQ==");
+        JSONStringer stringer = mock(JSONStringer.class);
+        whenNew(JSONStringer.class).withAnyArguments().thenReturn(stringer);
+        when(stringer.key(anyString())).thenReturn(stringer);
+        when(stringer.toString()).thenReturn("{\"type\":\"mock\"}");
+        File file = mTemporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write("data".getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        FileDataLog log = mock(FileDataLog.class);
+        when(log.getDataFile()).thenReturn(file);
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+
+        /* Path is persisted. */
+        serializer.serializeLog(log);
+        verify(stringer).key(FileDataLog.DATA_FILE);
+        verify(stringer).value(file.getPath());
+
+        /* Content is sent instead of the path, logs with an unreadable file are left out. */
+        FileDataLog missingFileLog = mock(FileDataLog.class);
+        when(missingFileLog.getDataFile()).thenReturn(new File(mTemporaryFolder.getRoot(), "missing"));
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.<com.microsoft.appcenter.ingestion.models.Log>asList(missingFileLog, log));
+        StringWriter writer = new StringWriter();
+        serializer.serializeContainer(container, writer);
+        assertEquals("{\"logs\":[{\"type\":\"mock\",\"data\":\"ZGF0YQ==\"}]}", writer.toString());
+        verify(stringer).key(FileDataLog.DATA_FILE);
+    }
+
+    @Test
+    public void deserializeStreaming() throws Exception {
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        when(reader.hasNext()).thenReturn(true, true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, "name");
+        when(reader.nextString()).thenReturn("mock");
+        com.microsoft.appcenter.ingestion.models.Log log = mock(com.microsoft.appcenter.ingestion.models.Log.class, withSettings().extraInterfaces(StreamingModel.class));
+        when(((StreamingModel) log).readProperty("name", reader)).thenReturn(false);
+        LogFactory logFactory = mock(LogFactory.class);
+        when(logFactory.create()).thenReturn(log);
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory("mock", logFactory);
+
+        /* Log is read from tokens and unknown property is skipped. */
+        assertSame(log, serializer.deserializeLog("{}"));
+        verify(reader).skipValue();
+        verify(reader).endObject();
+        verify(log, never()).read(any(JSONObject.class));
+    }
+
+    @Test
+    public void deserializeStreamingFallback() throws Exception {
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        JSONObject object = mock(JSONObject.class);
+        whenNew(JSONObject.class).withParameterTypes(String.class).withArguments(anyString()).thenReturn(object);
+        when(object.getString(CommonProperties.TYPE)).thenReturn("mock");
+        com.microsoft.appcenter.ingestion.models.Log streamingLog = mock(com.microsoft.appcenter.ingestion.models.Log.class, withSettings().extraInterfaces(StreamingModel.class));
+        com.microsoft.appcenter.ingestion.models.Log log = mock(com.microsoft.appcenter.ingestion.models.Log.class);
+        LogFactory logFactory = mock(LogFactory.class);
+        when(logFactory.create()).thenReturn(log);
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory("mock", logFactory);
+
+        /* Type is not the first property. */
+        when(reader.hasNext()).thenReturn(true);
+        when(reader.nextName()).thenReturn("timestamp");
+        assertSame(log, serializer.deserializeLog("{}"));
+        verify(log).read(object);
+
+        /* Log type does not support streaming. */
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE);
+        when(reader.nextString()).thenReturn("mock");
+        assertSame(log, serializer.deserializeLog("{}"));
+        verify(log, times(2)).read(object);
+
+        /* Malformed JSON. */
+        when(logFactory.create()).thenReturn(streamingLog, log);
+        when(((StreamingModel) streamingLog).readProperty(anyString(), any(JsonReader.class))).thenThrow(new IOException("mock"));
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, "name");
+        assertSame(log, serializer.deserializeLog("{}"));
+        verify(log, times(3)).read(object);
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeStreamingUnknownType() throws Exception {
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        when(reader.hasNext()).thenReturn(true);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE);
+        when(reader.nextString()).thenReturn("unknown");
+        new DefaultLogSerializer().deserializeLog("{}");
+    }
+
+    @Test
+    public void deserializeLazyLog() throws Exception {
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        when(reader.hasNext()).thenReturn(true, true, true, true, false);
+        when(reader.nextName()).thenReturn("name", CommonProperties.TYPE, "timestamp", "sid");
+        when(reader.nextString()).thenReturn("mock", "2017-07-08T01:17:43.245Z", "00000000-0000-0000-0000-000000000001");
+        LogFactory logFactory = mock(LogFactory.class);
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory("mock", logFactory);
+
+        /* Only header is read, other values are skipped and no log is created. */
+        String payload = "{\"name\":\"a\"}";
+        com.microsoft.appcenter.ingestion.models.Log log = serializer.deserializeLazyLog(payload);
+        assertTrue(log instanceof LazyLog);
+        assertEquals("mock", log.getType());
+        assertEquals(new Date(1499476663245L), log.getTimestamp());
+        assertEquals(new UUID(0, 1), log.getSid());
+        verify(reader).skipValue();
+        verify(reader).endObject();
+        verify(logFactory, never()).create();
+
+        /* Payload is passed through as long as the log is not decoded. */
+        assertSame(payload, serializer.serializeLog(log));
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.ASSERT);
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.asList(log, log));
+        assertEquals("{\"logs\":[" + payload + "," + payload + "]}", serializer.serializeContainer(container));
+        verify(logFactory, never()).create();
+    }
+
+    @Test
+    public void serializeDecodedLazyLog() throws Exception {
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.ASSERT);
+        JSONStringer stringer = mock(JSONStringer.class);
+        whenNew(JSONStringer.class).withAnyArguments().thenReturn(stringer);
+        when(stringer.toString()).thenReturn("{\"type\":\"decoded\"}");
+        LogSerializer decoder = mock(LogSerializer.class);
+        com.microsoft.appcenter.ingestion.models.Log decodedLog = mock(com.microsoft.appcenter.ingestion.models.Log.class);
+        when(decoder.deserializeLog("{}")).thenReturn(decodedLog);
+        LazyLog log = new LazyLog(decoder, "{}", "mock", null, null);
+        log.getLog();
+
+        /* Once decoded, changes made by listeners are serialized. */
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        assertEquals("{\"type\":\"decoded\"}", serializer.serializeLog(log));
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.<com.microsoft.appcenter.ingestion.models.Log>singletonList(log));
+        assertEquals("{\"logs\":[{\"type\":\"decoded\"}]}", serializer.serializeContainer(container));
+        verify(decodedLog, times(2)).write(stringer);
+    }
+
+    @Test
+    public void deserializeLazyLogInvalid() throws Exception {
+        JsonReader reader = mock(JsonReader.class);
+        whenNew(JsonReader.class).withAnyArguments().thenReturn(reader);
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory("mock", mock(LogFactory.class));
+
+        /* Missing type. */
+        try {
+            serializer.deserializeLazyLog("{}");
+            fail();
+        } catch (JSONException ignored) {
+        }
+
+        /* Unknown type. */
+        when(reader.hasNext()).thenReturn(true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE);
+        when(reader.nextString()).thenReturn("unknown");
+        try {
+            serializer.deserializeLazyLog("{}");
+            fail();
+        } catch (JSONException ignored) {
+        }
+
+        /* Missing timestamp. */
+        when(reader.hasNext()).thenReturn(true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE);
+        when(reader.nextString()).thenReturn("mock");
+        try {
+            serializer.deserializeLazyLog("{}");
+            fail();
+        } catch (JSONException ignored) {
+        }
+
+        /* Malformed JSON. */
+        when(reader.hasNext()).thenReturn(true, true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, "name");
+        when(reader.nextString()).thenReturn("mock");
+        doThrow(new IOException("mock")).when(reader).skipValue();
+        try {
+            serializer.deserializeLazyLog("{}");
+            fail();
+        } catch (JSONException ignored) {
+        }
+
+        /* Invalid header values are reported when the log is read, not when accessed. */
+        when(reader.hasNext()).thenReturn(true, true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, AbstractLog.TIMESTAMP);
+        when(reader.nextString()).thenReturn("mock", "invalid");
+        try {
+            serializer.deserializeLazyLog("{}");
+            fail();
+        } catch (JSONException ignored) {
+        }
+        when(reader.hasNext()).thenReturn(true, true, false);
+        when(reader.nextName()).thenReturn(CommonProperties.TYPE, AbstractLog.SID);
+        when(reader.nextString()).thenReturn("mock", "invalid");
+        try {
+            serializer.deserializeLazyLog("{}");
+            fail();
+        } catch (JSONException ignored) {
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("unused")
+public class JSONDateUtilsTest {
+
+    private static final int FUZZ_ITERATIONS = 100000;
+
+    private static DateFormat newReferenceFormat() {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat;
+    }
+
+    private static Date parseReference(DateFormat reference, String date) {
+        try {
+            return reference.parse(date);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static Date parse(String date) {
+        try {
+            return JSONDateUtils.toDate(date);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    @Test
+    public void knownDates() throws JSONException {
+        assertEquals("1970-01-01T00:00:00.000Z", JSONDateUtils.toString(new Date(0)));
+        assertEquals("2017-07-08T01:17:43.245Z", JSONDateUtils.toString(new Date(1499476663245L)));
+        assertEquals("1969-12-31T23:59:59.999Z", JSONDateUtils.toString(new Date(-1)));
+        assertEquals("2000-02-29T12:00:00.000Z", JSONDateUtils.toString(new Date(951825600000L)));
+        assertEquals(new Date(0), JSONDateUtils.toDate("1970-01-01T00:00:00.000Z"));
+        assertEquals(new Date(1499476663245L), JSONDateUtils.toDate("2017-07-08T01:17:43.245Z"));
+        assertEquals(new Date(-1), JSONDateUtils.toDate("1969-12-31T23:59:59.999Z"));
+        assertEquals(new Date(951825600000L), JSONDateUtils.toDate("2000-02-29T12:00:00.000Z"));
+    }
+
+    @Test
+    public void roundTrip() throws JSONException {
+        Random random = new Random(42);
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+
+            /* Years 1583 to 9999 are on the fast path. */
+            long time = -12212553600000L + (long) (random.nextDouble() * 265614854399000L);
+            Date date = new Date(time);
+            assertEquals(date, JSONDateUtils.toDate(JSONDateUtils.toString(date)));
+        }
+    }
+
+    @Test
+    public void formatMatchesReference() throws JSONException {
+        DateFormat reference = newReferenceFormat();
+        Random random = new Random(42);
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+
+            /* Include dates handled by fallback (before Gregorian calendar and after year 9999). */
+            Date date = new Date((long) ((random.nextDouble() - 0.5) * 1e15));
+            assertEquals(reference.format(date), JSONDateUtils.toString(date));
+        }
+    }
+
+    @Test
+    public void parseMatchesReference() {
+        DateFormat reference = newReferenceFormat();
+        Random random = new Random(42);
+        String alphabet = "0123456789-T:.Z ";
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+
+            /* Mutate a valid date string, fallback must keep the lenient behavior of reference parser. */
+            char[] chars = reference.format(new Date((long) ((random.nextDouble() - 0.5) * 1e14))).toCharArray();
+            int mutations = random.nextInt(3);
+            for (int j = 0; j < mutations; j++) {
+                chars[random.nextInt(chars.length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            String date = new String(chars);
+            assertEquals(date, parseReference(reference, date), parse(date));
+        }
+    }
+
+    @Test
+    public void parseNonConforming() throws JSONException {
+
+        /* Out of range fields are not handled by fast path, fallback is lenient. */
+        DateFormat reference = newReferenceFormat();
+        String[] dates = {
+                "2017-13-01T00:00:00.000Z",
+                "2017-02-29T00:00:00.000Z",
+                "2017-01-01T24:00:00.000Z",
+                "2017-01-01T00:60:00.000Z",
+                "2017-01-01T00:00:60.000Z",
+                "1500-01-01T00:00:00.000Z",
+                "2017-01-01T00:00:00.0Z",
+                "2017-01-01T00:00:00Z"
+        };
+        for (String date : dates) {
+            assertEquals(date, parseReference(reference, date), parse(date));
+        }
+        assertNull(parse("Fri Jul 07 17:43:56 PDT 2017"));
+        assertNull(parse(""));
+    }
+
+    @Test
+    public void nullValues() {
+        try {
+            JSONDateUtils.toString(null);
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            JSONDateUtils.toDate(null);
+            fail();
+        } catch (JSONException ignored) {
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.test.TestUtils.checkEquals;
+import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
+import static com.microsoft.appcenter.test.TestUtils.compareSelfNullClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unused")
+public class LazyLogTest {
+
+    private static final String PAYLOAD = "{}";
+
+    @Test
+    public void headerWithoutDecoding() throws JSONException {
+        LogSerializer serializer = mock(LogSerializer.class);
+        LazyLog log = new LazyLog(serializer, PAYLOAD, "mock", new Date(1499476663245L), new UUID(0, 1));
+        assertEquals("mock", log.getType());
+        assertEquals(new Date(1499476663245L), log.getTimestamp());
+        assertEquals(new UUID(0, 1), log.getSid());
+        assertSame(PAYLOAD, log.getPayload());
+        assertFalse(log.isDecoded());
+        verify(serializer, never()).deserializeLog(PAYLOAD);
+
+        /* Missing header values. */
+        log = new LazyLog(serializer, PAYLOAD, "mock", null, null);
+        assertNull(log.getTimestamp());
+        assertNull(log.getSid());
+        assertFalse(log.isDecoded());
+    }
+
+    @Test
+    public void decodeOnce() throws JSONException {
+        LogSerializer serializer = mock(LogSerializer.class);
+        Log decodedLog = mock(Log.class);
+        when(serializer.deserializeLog(PAYLOAD)).thenReturn(decodedLog);
+        Date timestamp = new Date();
+        UUID sid = UUID.randomUUID();
+        Device device = new Device();
+        when(decodedLog.getTimestamp()).thenReturn(timestamp);
+        when(decodedLog.getSid()).thenReturn(sid);
+        when(decodedLog.getDistributionGroupId()).thenReturn("group");
+        when(decodedLog.getDevice()).thenReturn(device);
+        LazyLog log = new LazyLog(serializer, PAYLOAD, "mock", null, null);
+
+        /* Accessing other properties decodes. */
+        assertSame(device, log.getDevice());
+        assertTrue(log.isDecoded());
+        assertSame(decodedLog, log.getLog());
+
+        /* Then everything goes to decoded log. */
+        assertEquals(timestamp, log.getTimestamp());
+        assertEquals(sid, log.getSid());
+        assertEquals("group", log.getDistributionGroupId());
+        log.setTimestamp(timestamp);
+        verify(decodedLog).setTimestamp(timestamp);
+        log.setSid(sid);
+        verify(decodedLog).setSid(sid);
+        log.setDistributionGroupId("other");
+        verify(decodedLog).setDistributionGroupId("other");
+        log.setDevice(device);
+        verify(decodedLog).setDevice(device);
+        JSONStringer writer = mock(JSONStringer.class);
+        log.write(writer);
+        verify(decodedLog).write(writer);
+        JSONObject object = mock(JSONObject.class);
+        log.read(object);
+        verify(decodedLog).read(object);
+        verify(serializer).deserializeLog(PAYLOAD);
+    }
+
+    @Test
+    public void decodeFailure() throws JSONException {
+        LogSerializer serializer = mock(LogSerializer.class);
+        when(serializer.deserializeLog(PAYLOAD)).thenThrow(new JSONException("mock"));
+        LazyLog log = new LazyLog(serializer, PAYLOAD, "mock", null, null);
+        try {
+            log.getLog();
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            log.getDevice();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof JSONException);
+        }
+        assertFalse(log.isDecoded());
+    }
+
+    @Test
+    public void compareDecodedLogs() throws JSONException {
+        LogSerializer serializer = mock(LogSerializer.class);
+        Log decodedLog = new MockLog();
+        Log otherLog = new MockLog();
+        otherLog.setTimestamp(new Date(1L));
+        when(serializer.deserializeLog(PAYLOAD)).thenReturn(decodedLog);
+        when(serializer.deserializeLog("{\"other\":1}")).thenReturn(new MockLog());
+        when(serializer.deserializeLog("{\"different\":1}")).thenReturn(otherLog);
+        LazyLog log = new LazyLog(serializer, PAYLOAD, "mock", null, null);
+
+        /* Equal logs with different payloads. */
+        checkEquals(log, new LazyLog(serializer, "{\"other\":1}", "mock", null, null));
+        assertEquals(log, decodedLog);
+        assertEquals(decodedLog.hashCode(), log.hashCode());
+        checkNotEquals(log, new LazyLog(serializer, "{\"different\":1}", "mock", null, null));
+        compareSelfNullClass(log);
+        assertTrue(log.isDecoded());
+    }
+
+    private static class MockLog extends AbstractLog {
+
+        @Override
+        public String getType() {
+            return "mock";
+        }
+    }
+}
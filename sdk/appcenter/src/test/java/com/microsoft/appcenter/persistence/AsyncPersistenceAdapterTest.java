@@ -0,0 +1,197 @@
+package com.microsoft.appcenter.persistence;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@SuppressWarnings("unused")
+@PrepareForTest({AsyncPersistenceAdapter.class, AppCenterLog.class})
+public class AsyncPersistenceAdapterTest {
+
+    private static final String GROUP = "group_test";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private Persistence mPersistence;
+
+    private Handler mIOHandler;
+
+    private Handler mCallbackHandler;
+
+    private List<Runnable> mIOTasks;
+
+    private static Handler mockHandler(final List<Runnable> tasks) {
+        Handler handler = mock(Handler.class);
+        when(handler.post(any(Runnable.class))).then(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                Runnable runnable = (Runnable) invocation.getArguments()[0];
+                if (tasks == null) {
+                    runnable.run();
+                } else {
+                    tasks.add(runnable);
+                }
+                return true;
+            }
+        });
+        return handler;
+    }
+
+    private void runIOTasks() {
+        List<Runnable> tasks = new ArrayList<>(mIOTasks);
+        mIOTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mPersistence = mock(Persistence.class);
+        mIOTasks = new ArrayList<>();
+        mIOHandler = mockHandler(mIOTasks);
+        mCallbackHandler = mockHandler(null);
+    }
+
+    @Test
+    public void operationsRunOnIOHandlerInOrder() throws Exception {
+        AsyncPersistence asyncPersistence = new AsyncPersistenceAdapter(mPersistence, mIOHandler, mCallbackHandler);
+        Log log = mock(Log.class);
+        when(mPersistence.putLog(GROUP, log)).thenReturn(42L);
+        when(mPersistence.putLog(GROUP, log, "payload")).thenReturn(43L);
+        List<Log> logs = Collections.singletonList(log);
+        when(mPersistence.putLogs(GROUP, logs)).thenReturn(1);
+        when(mPersistence.countLogs(GROUP)).thenReturn(3);
+        List<Log> outLogs = new ArrayList<>();
+        when(mPersistence.getLogs(GROUP, 2, outLogs)).thenReturn("batch");
+        when(mPersistence.compact()).thenReturn(4096L);
+        AsyncPersistence.PutLogCallback putLogCallback = mock(AsyncPersistence.PutLogCallback.class);
+        Runnable storedAction = mock(Runnable.class);
+        @SuppressWarnings("unchecked")
+        AsyncPersistence.ResultCallback<Integer> putLogsCallback = mock(AsyncPersistence.ResultCallback.class);
+        @SuppressWarnings("unchecked")
+        AsyncPersistence.ResultCallback<Integer> countCallback = mock(AsyncPersistence.ResultCallback.class);
+        @SuppressWarnings("unchecked")
+        AsyncPersistence.ResultCallback<String> getLogsCallback = mock(AsyncPersistence.ResultCallback.class);
+        @SuppressWarnings("unchecked")
+        AsyncPersistence.ResultCallback<Long> compactCallback = mock(AsyncPersistence.ResultCallback.class);
+
+        /* Queue operations, nothing runs on caller thread. */
+        asyncPersistence.putLog(GROUP, log, putLogCallback);
+        asyncPersistence.putLog(GROUP, log, null);
+        asyncPersistence.putLog(GROUP, log, "payload", storedAction, putLogCallback);
+        asyncPersistence.putLogs(GROUP, logs, storedAction, putLogsCallback);
+        asyncPersistence.putLogs(GROUP, logs, null, null);
+        asyncPersistence.countLogs(GROUP, countCallback);
+        asyncPersistence.getLogs(GROUP, 2, outLogs, getLogsCallback);
+        asyncPersistence.deleteLogs(GROUP, "batch");
+        asyncPersistence.deleteLogs(GROUP);
+        asyncPersistence.clearPendingLogState();
+        asyncPersistence.setTimeToLive(GROUP, 1000);
+        asyncPersistence.compact(compactCallback);
+        asyncPersistence.compact(null);
+        verify(mPersistence, never()).putLog(anyString(), any(Log.class));
+        verify(putLogCallback, never()).onSuccess(42L);
+        verify(storedAction, never()).run();
+
+        /* Run I/O. */
+        runIOTasks();
+        InOrder inOrder = inOrder(mPersistence);
+        inOrder.verify(mPersistence, times(2)).putLog(GROUP, log);
+        inOrder.verify(mPersistence).putLog(GROUP, log, "payload");
+        inOrder.verify(mPersistence, times(2)).putLogs(GROUP, logs);
+        inOrder.verify(mPersistence).countLogs(GROUP);
+        inOrder.verify(mPersistence).getLogs(GROUP, 2, outLogs);
+        inOrder.verify(mPersistence).deleteLogs(GROUP, "batch");
+        inOrder.verify(mPersistence).deleteLogs(GROUP);
+        inOrder.verify(mPersistence).clearPendingLogState();
+        inOrder.verify(mPersistence).setTimeToLive(GROUP, 1000);
+        inOrder.verify(mPersistence, times(2)).compact();
+        verify(putLogCallback).onSuccess(42L);
+        verify(putLogCallback).onSuccess(43L);
+        verify(putLogsCallback).onResult(1);
+        verify(countCallback).onResult(3);
+        verify(getLogsCallback).onResult("batch");
+        verify(compactCallback).onResult(4096L);
+
+        /* Stored actions run on the I/O thread right after storing, before callbacks. */
+        InOrder storedOrder = inOrder(mPersistence, storedAction, putLogCallback, putLogsCallback);
+        storedOrder.verify(mPersistence).putLog(GROUP, log, "payload");
+        storedOrder.verify(storedAction).run();
+        storedOrder.verify(putLogCallback).onSuccess(43L);
+        storedOrder.verify(mPersistence).putLogs(GROUP, logs);
+        storedOrder.verify(storedAction).run();
+        storedOrder.verify(putLogsCallback).onResult(1);
+    }
+
+    @Test
+    public void putLogFailure() throws Exception {
+        AsyncPersistence asyncPersistence = new AsyncPersistenceAdapter(mPersistence, mIOHandler, mCallbackHandler);
+        Persistence.PersistenceException exception = new Persistence.PersistenceException("mock", null);
+        doThrow(exception).when(mPersistence).putLog(anyString(), any(Log.class));
+        AsyncPersistence.PutLogCallback putLogCallback = mock(AsyncPersistence.PutLogCallback.class);
+        asyncPersistence.putLog(GROUP, mock(Log.class), putLogCallback);
+        asyncPersistence.putLog(GROUP, mock(Log.class), null);
+        runIOTasks();
+        verify(putLogCallback).onFailure(exception);
+    }
+
+    @Test
+    public void ownThread() throws Exception {
+        HandlerThread handlerThread = mock(HandlerThread.class);
+        Looper looper = mock(Looper.class);
+        when(handlerThread.getLooper()).thenReturn(looper);
+        whenNew(HandlerThread.class).withArguments("AppCenter.Persistence").thenReturn(handlerThread);
+        whenNew(Handler.class).withArguments(looper).thenReturn(mIOHandler);
+        AsyncPersistence asyncPersistence = new AsyncPersistenceAdapter(mPersistence, mCallbackHandler);
+        verify(handlerThread).start();
+
+        /* Close persistence then stop thread. */
+        doThrow(new IOException()).when(mPersistence).close();
+        asyncPersistence.close();
+        verify(mPersistence, never()).close();
+        runIOTasks();
+        verify(mPersistence).close();
+        verify(handlerThread).quit();
+    }
+
+    @Test
+    public void closeWithoutOwnThread() throws Exception {
+        AsyncPersistence asyncPersistence = new AsyncPersistenceAdapter(mPersistence, mIOHandler, mCallbackHandler);
+        asyncPersistence.close();
+        runIOTasks();
+        verify(mPersistence).close();
+    }
+}
@@ -13,39 +13,55 @@ import com.microsoft.appcenter.utils.storage.StorageHelper;
 import org.json.JSONException;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 
 import static com.microsoft.appcenter.persistence.DatabasePersistence.COLUMN_GROUP;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 @SuppressWarnings("unused")
-@PrepareForTest({AppCenterLog.class, StorageHelper.DatabaseStorage.class})
+@PrepareForTest({AppCenterLog.class, StorageHelper.DatabaseStorage.class, StorageHelper.InternalStorage.class})
 public class DatabasePersistenceTest {
 
     @Rule
     public PowerMockRule mPowerMockRule = new PowerMockRule();
 
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
     @Test
     public void databaseOperationException() throws Persistence.PersistenceException, IOException, JSONException {
 
@@ -106,7 +122,7 @@ public class DatabasePersistenceTest {
         mockStatic(StorageHelper.DatabaseStorage.class);
         StorageHelper.DatabaseStorage mockDatabaseStorage = mock(StorageHelper.DatabaseStorage.class);
         when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
-                anyInt(), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(mockDatabaseStorage);
+                anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(mockDatabaseStorage);
 
         for (int i = 0; i < groupCount; i++) {
             StorageHelper.DatabaseStorage.DatabaseScanner mockDatabaseScanner = mock(StorageHelper.DatabaseStorage.DatabaseScanner.class);
@@ -115,7 +131,7 @@ public class DatabasePersistenceTest {
         }
 
         LogSerializer mockLogSerializer = mock(LogSerializer.class);
-        when(mockLogSerializer.deserializeLog(anyString())).thenReturn(mock(Log.class));
+        when(mockLogSerializer.deserializeLazyLog(anyString())).thenReturn(mock(Log.class));
 
         /* Instantiate Database Persistence. */
         DatabasePersistence persistence = new DatabasePersistence();
@@ -144,7 +160,7 @@ public class DatabasePersistenceTest {
         mockStatic(StorageHelper.DatabaseStorage.class);
         StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
         when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
-                anyInt(), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(databaseStorage);
+                anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(databaseStorage);
 
         /* Make 3 logs, the second one will be corrupted. */
         Collection<ContentValues> fieldValues = new ArrayList<>(logCount);
@@ -188,7 +204,7 @@ public class DatabasePersistenceTest {
 
         /* Mock serializer and eventually the database. */
         LogSerializer logSerializer = mock(LogSerializer.class);
-        when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<Log>() {
+        when(logSerializer.deserializeLazyLog(anyString())).thenAnswer(new Answer<Log>() {
 
             @Override
             public Log answer(InvocationOnMock invocation) throws Throwable {
@@ -272,4 +288,182 @@ public class DatabasePersistenceTest {
         /* Verify that the only log we deleted in the entire test was the one from previous test (id=1). */
         verify(databaseStorage).delete(anyLong());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void expiredLogsAreDeleted() {
+
+        /* Mock instances. */
+        mockStatic(AppCenterLog.class);
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
+                anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(databaseStorage);
+
+        /* Mock 2 expired logs. */
+        List<ContentValues> expiredValues = new ArrayList<>();
+        for (long id = 1; id <= 2; id++) {
+            ContentValues values = mock(ContentValues.class);
+            when(values.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(id);
+            expiredValues.add(values);
+        }
+        StorageHelper.DatabaseStorage.DatabaseScanner expiredScanner = mock(StorageHelper.DatabaseStorage.DatabaseScanner.class);
+        when(expiredScanner.iterator()).thenReturn(expiredValues.iterator());
+        when(databaseStorage.getScanner(eq(COLUMN_GROUP), eq("mock"), eq(DatabasePersistence.COLUMN_TIMESTAMP), anyLong(), eq(true))).thenReturn(expiredScanner);
+        StorageHelper.DatabaseStorage.DatabaseScanner countScanner = mock(StorageHelper.DatabaseStorage.DatabaseScanner.class);
+        when(databaseStorage.getScanner(COLUMN_GROUP, "mock", true)).thenReturn(countScanner);
+
+        /* Logs of previous versions are kept on upgrade and get a timestamp. */
+        DatabasePersistence persistence = new DatabasePersistence();
+        verify(databaseStorage).setUpgradeValues(any(ContentValues.class));
+
+        /* Logs are kept until a time to live is set. */
+        persistence.countLogs("mock");
+        verify(databaseStorage, never()).getScanner(anyString(), anyString(), anyString(), anyLong(), anyBoolean());
+
+        /* Expired logs are deleted in a single operation before counting. */
+        persistence.setTimeToLive("mock", 1000);
+        persistence.countLogs("mock");
+        verify(databaseStorage).delete(Arrays.asList(1L, 2L));
+        verify(expiredScanner).close();
+
+        /* Removing time to live. */
+        persistence.setTimeToLive("mock", 0);
+        persistence.countLogs("mock");
+        verify(databaseStorage).getScanner(anyString(), anyString(), anyString(), anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void compact() {
+        mockStatic(AppCenterLog.class);
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
+                anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(databaseStorage);
+        when(databaseStorage.compact(DatabasePersistence.COMPACTION_MIN_FREE_PAGES)).thenReturn(0L, 8192L);
+        DatabasePersistence persistence = new DatabasePersistence();
+        assertEquals(0, persistence.compact());
+        assertEquals(8192, persistence.compact());
+        verifyStatic();
+        AppCenterLog.info(eq(AppCenter.LOG_TAG), contains("8192"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void putLogs() throws Exception {
+        mockStatic(AppCenterLog.class);
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        mockStatic(StorageHelper.InternalStorage.class);
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
+                anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(databaseStorage);
+        when(databaseStorage.put(anyList())).thenReturn(new long[]{1L, 2L, 3L});
+
+        /* Small log, log failing to serialize, large log and large log failing to be written. */
+        Log smallLog = mock(Log.class);
+        Log invalidLog = mock(Log.class);
+        Log largeLog = mock(Log.class);
+        Log failingLargeLog = mock(Log.class);
+        String largePayload = repeat('x', 2 * 1024 * 1024);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(smallLog)).thenReturn("{}");
+        when(logSerializer.serializeLog(invalidLog)).thenThrow(new JSONException("mock"));
+        when(logSerializer.serializeLog(largeLog)).thenReturn(largePayload);
+        when(logSerializer.serializeLog(failingLargeLog)).thenReturn(largePayload);
+        DatabasePersistence persistence = spy(new DatabasePersistence());
+        persistence.setLogSerializer(logSerializer);
+        File directory = mock(File.class);
+        doReturn(directory).when(persistence).getLargePayloadGroupDirectory("mock");
+        File file2 = mock(File.class);
+        doReturn(file2).when(persistence).getLargePayloadFile(directory, 2L);
+        File file3 = mock(File.class);
+        doReturn(file3).when(persistence).getLargePayloadFile(directory, 3L);
+        PowerMockito.doThrow(new IOException()).when(StorageHelper.InternalStorage.class);
+        StorageHelper.InternalStorage.writeCompressed(file3, largePayload);
+
+        /* All logs are stored at once, large payload files are written after the transaction, failures are skipped. */
+        assertEquals(2, persistence.putLogs("mock", Arrays.asList(smallLog, invalidLog, largeLog, failingLargeLog)));
+        ArgumentCaptor<List> valuesList = ArgumentCaptor.forClass(List.class);
+        verify(databaseStorage).put(valuesList.capture());
+        assertEquals(3, valuesList.getValue().size());
+        verify(databaseStorage, never()).put(any(ContentValues.class));
+        verifyStatic();
+        StorageHelper.InternalStorage.writeCompressed(file2, largePayload);
+        verify(databaseStorage).delete(3L);
+        verify(databaseStorage, never()).delete(2L);
+        verify(databaseStorage, never()).delete(1L);
+    }
+
+    @Test
+    public void largePayloadDetection() {
+        int maxSize = (int) (1.9 * 1024 * 1024);
+
+        /* Short payloads never need a file, even with multi byte characters. */
+        assertFalse(DatabasePersistence.isLargePayload(""));
+        assertFalse(DatabasePersistence.isLargePayload("{\"type\":\"\u00e9\u4e2d\"}"));
+
+        /* ASCII characters take 1 byte each. */
+        assertFalse(DatabasePersistence.isLargePayload(repeat('x', maxSize - 1)));
+        assertTrue(DatabasePersistence.isLargePayload(repeat('x', maxSize)));
+
+        /* 2 bytes characters. */
+        assertFalse(DatabasePersistence.isLargePayload(repeat('\u00e9', maxSize / 2 - 1)));
+        assertTrue(DatabasePersistence.isLargePayload(repeat('\u00e9', maxSize / 2 + 1)));
+
+        /* 3 bytes characters. */
+        assertFalse(DatabasePersistence.isLargePayload(repeat('\u4e2d', maxSize / 3 - 1)));
+        assertTrue(DatabasePersistence.isLargePayload(repeat('\u4e2d', maxSize / 3 + 1)));
+
+        /* Surrogate pairs take 4 bytes for 2 characters. */
+        StringBuilder pairs = new StringBuilder();
+        for (int i = 0; i < maxSize / 4 - 1; i++) {
+            pairs.append("\ud83d\ude00");
+        }
+        assertFalse(DatabasePersistence.isLargePayload(pairs.toString()));
+        pairs.append("\ud83d\ude00\ud83d\ude00");
+        assertTrue(DatabasePersistence.isLargePayload(pairs.toString()));
+    }
+
+    @Test
+    public void identifierChange() throws IOException {
+
+        /* Mock storage to get the listener. */
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        StorageHelper.DatabaseStorage mockDatabaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
+                anyInt(), any(String[].class), any(StorageHelper.DatabaseStorage.DatabaseErrorListener.class))).thenReturn(mockDatabaseStorage);
+        DatabasePersistence persistence = spy(new DatabasePersistence());
+        ArgumentCaptor<StorageHelper.DatabaseStorage.IdentifierChangeListener> listener = ArgumentCaptor.forClass(StorageHelper.DatabaseStorage.IdentifierChangeListener.class);
+        verify(mockDatabaseStorage).setIdentifierChangeListener(listener.capture());
+
+        /* Log with a large payload is part of a pending batch. */
+        File directory = mTemporaryFolder.newFolder("group");
+        doReturn(directory).when(persistence).getLargePayloadGroupDirectory("group");
+        File oldFile = persistence.getLargePayloadFile(directory, 5);
+        assertTrue(oldFile.createNewFile());
+        persistence.mPendingDbIdentifiers.addAll(Arrays.asList(4L, 5L));
+        persistence.mPendingDbIdentifiersGroups.put("group" + "batch", new ArrayList<>(Arrays.asList(4L, 5L)));
+
+        /* Payload file renamed and pending batch updated. */
+        persistence.changeIdentifier("group", 5, 9);
+        assertFalse(oldFile.exists());
+        assertTrue(persistence.getLargePayloadFile(directory, 9).exists());
+        assertEquals(new HashSet<>(Arrays.asList(4L, 9L)), persistence.mPendingDbIdentifiers);
+        assertEquals(Arrays.asList(4L, 9L), persistence.mPendingDbIdentifiersGroups.get("group" + "batch"));
+
+        /* Listener uses the group of the record. */
+        ContentValues values = mock(ContentValues.class);
+        when(values.getAsString(COLUMN_GROUP)).thenReturn("other");
+        listener.getValue().onIdentifierChanged(values, 4, 10);
+        assertEquals(Arrays.asList(10L, 9L), persistence.mPendingDbIdentifiersGroups.get("group" + "batch"));
+
+        /* Not pending. */
+        persistence.changeIdentifier(null, 1, 11);
+        assertEquals(new HashSet<>(Arrays.asList(10L, 9L)), persistence.mPendingDbIdentifiers);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,256 @@
+package com.microsoft.appcenter.persistence;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@SuppressWarnings("unused")
+@PrepareForTest(AppCenterLog.class)
+public class LogJournalTest {
+
+    private static final String GROUP = "group_test";
+
+    private static final String PAYLOAD = "{\"type\":\"mock\"}";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private LogSerializer mLogSerializer;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws JSONException {
+        mockStatic(AppCenterLog.class);
+        mLogSerializer = mock(LogSerializer.class);
+        when(mLogSerializer.deserializeLog(anyString())).thenReturn(mock(Log.class));
+        mFile = new File(mTemporaryFolder.getRoot(), "appcenter/log_journal");
+    }
+
+    private static AsyncPersistence mockPersistence(final Persistence.PersistenceException exception) {
+        AsyncPersistence persistence = mock(AsyncPersistence.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Runnable storedAction = (Runnable) invocation.getArguments()[3];
+                AsyncPersistence.PutLogCallback callback = (AsyncPersistence.PutLogCallback) invocation.getArguments()[4];
+                if (exception == null) {
+                    storedAction.run();
+                    callback.onSuccess(1);
+                } else {
+                    callback.onFailure(exception);
+                }
+                return null;
+            }
+        }).when(persistence).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+        return persistence;
+    }
+
+    @Test
+    public void committedLogsAreNotReplayed() throws Exception {
+        LogJournal journal = new LogJournal(mFile, mLogSerializer);
+        long token = journal.append(GROUP, PAYLOAD);
+        assertNotEquals(LogJournal.NO_ENTRY, token);
+        journal.commit(token);
+
+        /* Simulate restart. */
+        AsyncPersistence persistence = mockPersistence(null);
+        new LogJournal(mFile, mLogSerializer).replay(GROUP, persistence);
+        verify(persistence, never()).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+    }
+
+    @Test
+    public void pendingLogsAreReplayedOnce() throws Exception {
+        LogJournal journal = new LogJournal(mFile, mLogSerializer);
+        journal.commit(journal.append(GROUP, PAYLOAD));
+        journal.append(GROUP, PAYLOAD);
+        journal.append("other", PAYLOAD);
+
+        /* Simulate crash then restart: only the pending log of the group is replayed. */
+        AsyncPersistence persistence = mockPersistence(null);
+        journal = new LogJournal(mFile, mLogSerializer);
+        journal.replay(GROUP, persistence);
+        verify(persistence).putLog(eq(GROUP), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+        verify(mLogSerializer).deserializeLog(PAYLOAD);
+
+        /* Replaying again does nothing. */
+        journal.replay(GROUP, persistence);
+        verify(persistence).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+
+        /* Other group still pending after another restart. */
+        journal = new LogJournal(mFile, mLogSerializer);
+        journal.replay(GROUP, persistence);
+        journal.replay("other", persistence);
+        verify(persistence).putLog(eq("other"), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+        verify(persistence, times(2)).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+    }
+
+    @Test
+    public void discardedLogsAreNotReplayed() throws Exception {
+        new LogJournal(mFile, mLogSerializer).append(GROUP, PAYLOAD);
+        new LogJournal(mFile, mLogSerializer).discard(GROUP);
+        AsyncPersistence persistence = mockPersistence(null);
+        new LogJournal(mFile, mLogSerializer).replay(GROUP, persistence);
+        verify(persistence, never()).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+    }
+
+    @Test
+    public void replayFailureIsNotRetried() throws Exception {
+        new LogJournal(mFile, mLogSerializer).append(GROUP, PAYLOAD);
+        AsyncPersistence persistence = mockPersistence(new Persistence.PersistenceException("mock", null));
+        new LogJournal(mFile, mLogSerializer).replay(GROUP, persistence);
+        new LogJournal(mFile, mLogSerializer).replay(GROUP, persistence);
+        verify(persistence).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+    }
+
+    @Test
+    public void ringOverwritesOldestRecords() throws Exception {
+
+        /* Each record takes 7 + 10 + 15 = 32 bytes, so 3 records fit with terminator. */
+        LogJournal journal = new LogJournal(mFile, mLogSerializer, 100);
+        long first = journal.append(GROUP, PAYLOAD);
+        journal.append(GROUP, PAYLOAD);
+        journal.append(GROUP, PAYLOAD);
+        long fourth = journal.append(GROUP, PAYLOAD);
+        assertEquals(0, (int) fourth);
+
+        /* Old token is no longer valid and must not alter the new record. */
+        journal.commit(first);
+        AsyncPersistence persistence = mockPersistence(null);
+        new LogJournal(mFile, mLogSerializer, 100).replay(GROUP, persistence);
+        verify(persistence).putLog(eq(GROUP), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void batchIsJournaledAsOneRecord() throws Exception {
+        Log log = mock(Log.class);
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.asList(log, log));
+        when(mLogSerializer.deserializeContainer(anyString())).thenReturn(container);
+
+        /* Each batch record takes 7 + 10 + 42 = 59 bytes. */
+        LogJournal journal = new LogJournal(mFile, mLogSerializer, 200);
+        assertEquals(0, (int) journal.appendAll(GROUP, Arrays.asList(PAYLOAD, PAYLOAD)));
+        journal.commit(journal.appendAll(GROUP, Arrays.asList(PAYLOAD, PAYLOAD)));
+
+        /* Pending batch is replayed in a single transaction. */
+        AsyncPersistence persistence = mock(AsyncPersistence.class);
+        journal = new LogJournal(mFile, mLogSerializer, 200);
+        journal.replay(GROUP, persistence);
+        ArgumentCaptor<Runnable> storedAction = ArgumentCaptor.forClass(Runnable.class);
+        verify(persistence).putLogs(eq(GROUP), eq(Arrays.asList(log, log)), storedAction.capture(), isNull(AsyncPersistence.ResultCallback.class));
+        verify(mLogSerializer).deserializeContainer("{\"logs\":[" + PAYLOAD + "," + PAYLOAD + "]}");
+        verify(persistence, never()).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+
+        /* Committed on the persistence thread once persisted. */
+        storedAction.getValue().run();
+        new LogJournal(mFile, mLogSerializer, 200).replay(GROUP, persistence);
+        verify(persistence).putLogs(anyString(), anyList(), any(Runnable.class), any(AsyncPersistence.ResultCallback.class));
+
+        /* Batch that cannot be decoded is committed without being persisted. */
+        when(mLogSerializer.deserializeContainer(anyString())).thenThrow(new JSONException("mock"));
+        new LogJournal(mFile, mLogSerializer, 200).appendAll(GROUP, Collections.singletonList(PAYLOAD));
+        new LogJournal(mFile, mLogSerializer, 200).replay(GROUP, persistence);
+        new LogJournal(mFile, mLogSerializer, 200).replay(GROUP, persistence);
+        verify(mLogSerializer, times(2)).deserializeContainer(anyString());
+        verify(persistence).putLogs(anyString(), anyList(), any(Runnable.class), any(AsyncPersistence.ResultCallback.class));
+    }
+
+    @Test
+    public void logTooLargeIsNotJournaled() throws Exception {
+        LogJournal journal = new LogJournal(mFile, mLogSerializer, 20);
+        assertEquals(LogJournal.NO_ENTRY, journal.append(GROUP, PAYLOAD));
+        journal.commit(LogJournal.NO_ENTRY);
+    }
+
+    @Test
+    public void ringKeepsRecordsToReplay() throws Exception {
+
+        /* Previous process left a pending record for each group. */
+        LogJournal journal = new LogJournal(mFile, mLogSerializer, 100);
+        journal.append(GROUP, PAYLOAD);
+        journal.append("other", PAYLOAD);
+
+        /* Records to replay take 32 + 27 bytes, wrapping the ring writes them again before the new record. */
+        journal = new LogJournal(mFile, mLogSerializer, 100);
+        assertEquals(59, (int) journal.append(GROUP, PAYLOAD));
+        assertEquals(59, (int) journal.append(GROUP, PAYLOAD));
+
+        /* Records to replay are still replayed by this process. */
+        AsyncPersistence persistence = mockPersistence(null);
+        journal.replay("other", persistence);
+        verify(persistence).putLog(eq("other"), any(Log.class), eq(PAYLOAD), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+
+        /* And by the next one, along with the new record. */
+        persistence = mockPersistence(null);
+        journal = new LogJournal(mFile, mLogSerializer, 100);
+        journal.replay(GROUP, persistence);
+        journal.replay("other", persistence);
+        verify(persistence, times(2)).putLog(eq(GROUP), any(Log.class), eq(PAYLOAD), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+        verify(persistence, never()).putLog(eq("other"), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+    }
+
+    @Test
+    public void corruptedJournalIsIgnored() throws Exception {
+        LogJournal journal = new LogJournal(mFile, mLogSerializer);
+        journal.append(GROUP, PAYLOAD);
+
+        /* Corrupt state byte of the record. */
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.seek(4);
+        file.write(42);
+        file.close();
+        AsyncPersistence persistence = mockPersistence(null);
+        new LogJournal(mFile, mLogSerializer).replay(GROUP, persistence);
+        verify(persistence, never()).putLog(anyString(), any(Log.class), anyString(), any(Runnable.class), any(AsyncPersistence.PutLogCallback.class));
+    }
+
+    @Test
+    public void cannotOpenJournal() throws Exception {
+
+        /* Parent is a file so journal cannot be created. */
+        File parent = mTemporaryFolder.newFile();
+        LogJournal journal = new LogJournal(new File(parent, "log_journal"), mLogSerializer);
+        assertEquals(LogJournal.NO_ENTRY, journal.append(GROUP, PAYLOAD));
+        journal.commit(0);
+        journal.replay(GROUP, mock(AsyncPersistence.class));
+        journal.discard(GROUP);
+    }
+}
@@ -0,0 +1,62 @@
+package com.microsoft.appcenter.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@SuppressWarnings("unused")
+public class StringInternerTest {
+
+    private static String newString(String value) {
+        return new String(value.toCharArray());
+    }
+
+    @After
+    public void tearDown() {
+        StringInterner.clear();
+    }
+
+    @Test
+    public void init() {
+        assertNotNull(new StringInterner());
+    }
+
+    @Test
+    public void sharedInstances() {
+        String first = newString("click");
+        String second = newString("click");
+        assertNotSame(first, second);
+        assertSame(first, StringInterner.intern(first));
+        assertSame(first, StringInterner.intern(second));
+        assertNull(StringInterner.intern(null));
+    }
+
+    @Test
+    public void tooLong() {
+        char[] chars = new char[StringInterner.MAX_LENGTH + 1];
+        String first = new String(chars);
+        String second = new String(chars);
+        assertSame(first, StringInterner.intern(first));
+        assertSame(second, StringInterner.intern(second));
+    }
+
+    @Test
+    public void bounded() {
+        for (int i = 0; i < StringInterner.MAX_SIZE; i++) {
+            StringInterner.intern(String.valueOf(i));
+        }
+
+        /* Pool is full, new values are returned as is but existing ones are still shared. */
+        String value = newString("full");
+        assertSame(value, StringInterner.intern(value));
+        assertEquals("full", StringInterner.intern(newString("full")));
+        assertNotSame(value, StringInterner.intern(newString("full")));
+        String zero = StringInterner.intern("0");
+        assertSame(zero, StringInterner.intern(newString("0")));
+    }
+}
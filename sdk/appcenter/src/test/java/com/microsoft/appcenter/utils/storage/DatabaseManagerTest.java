@@ -3,9 +3,12 @@ package com.microsoft.appcenter.utils.storage;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.SystemClock;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,8 +16,11 @@ import org.mockito.internal.stubbing.answers.Returns;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import static org.junit.Assert.assertEquals;
@@ -25,18 +31,23 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
 
 @SuppressWarnings("unused")
 @RunWith(PowerMockRunner.class)
-@PrepareForTest(SQLiteUtils.class)
+@PrepareForTest({SQLiteUtils.class, SystemClock.class, DatabaseUtils.class})
 public class DatabaseManagerTest {
 
     private static DatabaseManager getDatabaseManagerMock() {
@@ -309,4 +320,301 @@ public class DatabaseManagerTest {
         assertNotNull(databaseManager.get(value2Id));
         assertNotNull(databaseManager.get(value3Id));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void inMemoryEvictionBySize() {
+
+        /* Instantiate real instance for DatabaseManager without record limit. */
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        databaseManager.switchToInMemory("test", null);
+
+        /* Each record takes more than half of the in-memory size limit. */
+        ContentValues value1 = mockLargeContentValues();
+        ContentValues value2 = mockLargeContentValues();
+        ContentValues value3 = mockLargeContentValues();
+        long value1Id = databaseManager.put(value1);
+        assertEquals(1, databaseManager.getRowCount());
+        long value2Id = databaseManager.put(value2);
+        assertEquals(1, databaseManager.getRowCount());
+        long value3Id = databaseManager.put(value3);
+        assertEquals(1, databaseManager.getRowCount());
+
+        /* Only the last one is kept. */
+        assertNull(databaseManager.get(value1Id));
+        assertNull(databaseManager.get(value2Id));
+        assertNotNull(databaseManager.get(value3Id));
+    }
+
+    @Test
+    public void inMemoryDefaultMaxRecords() {
+
+        /* Instantiate real instance for DatabaseManager without record limit. */
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        databaseManager.switchToInMemory("test", null);
+        for (int i = 0; i < DatabaseManager.IN_MEMORY_DEFAULT_MAX_RECORDS + 10; i++) {
+            databaseManager.put(mock(ContentValues.class));
+        }
+        assertEquals(DatabaseManager.IN_MEMORY_DEFAULT_MAX_RECORDS, databaseManager.getRowCount());
+    }
+
+    @Test
+    public void putListInTransaction() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.insertOrThrow(anyString(), anyString(), any(ContentValues.class))).thenReturn(3L, 4L);
+        doReturn(database).when(databaseManager).getDatabase();
+        long[] ids = databaseManager.put(Arrays.asList(mock(ContentValues.class), mock(ContentValues.class)));
+        assertEquals(3L, ids[0]);
+        assertEquals(4L, ids[1]);
+        verify(database).beginTransaction();
+        verify(database).setTransactionSuccessful();
+        verify(database).endTransaction();
+        verify(database, times(2)).insertOrThrow(eq("table"), isNull(String.class), any(ContentValues.class));
+    }
+
+    @Test
+    public void putListFailure() {
+
+        /* Second insert fails, transaction is rolled back and all records are stored in memory. */
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.insertOrThrow(anyString(), anyString(), any(ContentValues.class))).thenReturn(3L).thenThrow(new RuntimeException());
+        doReturn(database).when(databaseManager).getDatabase();
+        long[] ids = databaseManager.put(Arrays.asList(mock(ContentValues.class), mock(ContentValues.class)));
+        assertEquals(2, ids.length);
+        assertEquals(ids[0] + 1, ids[1]);
+        verify(database, never()).setTransactionSuccessful();
+        verify(database).endTransaction();
+        verify(databaseManager).switchToInMemory(eq("put"), any(RuntimeException.class));
+        assertEquals(2, databaseManager.getRowCount());
+    }
+
+    @Test
+    public void recoverFromInMemory() {
+
+        /* Switch to in-memory database. */
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        databaseManager.switchToInMemory("test", null);
+
+        /* SQLite still fails when we try again. */
+        SQLiteOpenHelper helper = mock(SQLiteOpenHelper.class);
+        when(helper.getWritableDatabase()).thenThrow(new RuntimeException());
+        databaseManager.setSQLiteOpenHelper(helper);
+        long value1Id = databaseManager.put(mock(ContentValues.class));
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + DatabaseManager.SQLITE_RECOVERY_INTERVAL);
+        long value2Id = databaseManager.put(mock(ContentValues.class));
+        assertEquals(value1Id + 1, value2Id);
+        assertEquals(2, databaseManager.getRowCount());
+        verify(helper).getWritableDatabase();
+
+        /* Not trying again before interval elapsed. */
+        databaseManager.put(mock(ContentValues.class));
+        verify(helper).getWritableDatabase();
+        assertEquals(3, databaseManager.getRowCount());
+
+        /* SQLite works again. */
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.insertOrThrow(anyString(), anyString(), any(ContentValues.class))).thenReturn(value1Id, value2Id, value2Id + 1, value2Id + 2);
+        helper = mock(SQLiteOpenHelper.class);
+        when(helper.getWritableDatabase()).thenReturn(database);
+        databaseManager.setSQLiteOpenHelper(helper);
+        doReturn(database).when(databaseManager).getDatabase();
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + 2 * DatabaseManager.SQLITE_RECOVERY_INTERVAL);
+        long value4Id = databaseManager.put(mock(ContentValues.class));
+
+        /* Verify 3 records were moved back in a transaction then new one stored in SQLite. */
+        verify(database).beginTransaction();
+        verify(database).setTransactionSuccessful();
+        verify(database).endTransaction();
+        verify(database, times(4)).insertOrThrow(eq("table"), isNull(String.class), any(ContentValues.class));
+        assertEquals(value2Id + 2, value4Id);
+    }
+
+    @Test
+    public void inMemoryIdentifiersFollowSQLite() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.insertOrThrow(anyString(), anyString(), any(ContentValues.class))).thenReturn(41L);
+        doReturn(database).when(databaseManager).getDatabase();
+        assertEquals(41, databaseManager.put(mock(ContentValues.class)));
+
+        /* In-memory identifiers continue after the last SQLite one. */
+        databaseManager.switchToInMemory("test", null);
+        assertEquals(42, databaseManager.put(mock(ContentValues.class)));
+        assertEquals(43, databaseManager.put(mock(ContentValues.class)));
+    }
+
+    @Test
+    public void recoverFromInMemoryWithConflictingIdentifier() {
+
+        /* Switch to in-memory database before knowing SQLite identifiers. */
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        DatabaseManager.IdentifierChangeListener listener = mock(DatabaseManager.IdentifierChangeListener.class);
+        databaseManager.setIdentifierChangeListener(listener);
+        databaseManager.switchToInMemory("test", null);
+        assertEquals(1, databaseManager.put(mock(ContentValues.class)));
+        assertEquals(2, databaseManager.put(mock(ContentValues.class)));
+
+        /* First identifier is already used in SQLite, it gets a new one after the others are inserted. */
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.insertOrThrow(anyString(), anyString(), any(ContentValues.class)))
+                .thenThrow(new SQLiteConstraintException())
+                .thenReturn(2L, 3L);
+        SQLiteOpenHelper helper = mock(SQLiteOpenHelper.class);
+        when(helper.getWritableDatabase()).thenReturn(database);
+        databaseManager.setSQLiteOpenHelper(helper);
+        doReturn(database).when(databaseManager).getDatabase();
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + DatabaseManager.SQLITE_RECOVERY_INTERVAL);
+        databaseManager.recoverFromInMemory();
+        verify(database).setTransactionSuccessful();
+        verify(listener).onIdentifierChanged(any(ContentValues.class), eq(1L), eq(3L));
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void noIdentifierChangeNotifiedIfRecoveryFails() {
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        DatabaseManager.IdentifierChangeListener listener = mock(DatabaseManager.IdentifierChangeListener.class);
+        databaseManager.setIdentifierChangeListener(listener);
+        databaseManager.switchToInMemory("test", null);
+        databaseManager.put(mock(ContentValues.class));
+        databaseManager.put(mock(ContentValues.class));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.insertOrThrow(anyString(), anyString(), any(ContentValues.class)))
+                .thenThrow(new SQLiteConstraintException())
+                .thenReturn(2L)
+                .thenThrow(new RuntimeException());
+        SQLiteOpenHelper helper = mock(SQLiteOpenHelper.class);
+        when(helper.getWritableDatabase()).thenReturn(database);
+        databaseManager.setSQLiteOpenHelper(helper);
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + DatabaseManager.SQLITE_RECOVERY_INTERVAL);
+        databaseManager.recoverFromInMemory();
+
+        /* Transaction rolled back, records stay in memory with their identifiers. */
+        verify(database, never()).setTransactionSuccessful();
+        verify(database).endTransaction();
+        verifyZeroInteractions(listener);
+        assertEquals(2, databaseManager.getRowCount());
+    }
+
+    @Test
+    public void compactIncrementalVacuum() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        doReturn(database).when(databaseManager).getDatabase();
+        Cursor cursor = mock(Cursor.class);
+        when(database.rawQuery("PRAGMA incremental_vacuum", null)).thenReturn(cursor);
+        mockStatic(DatabaseUtils.class);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null)).thenReturn(10L, 10L, 1L);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA page_size", null)).thenReturn(4096L);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null)).thenReturn(2L);
+
+        /* Not enough free pages. */
+        assertEquals(0, databaseManager.compact(20));
+        verify(database, never()).rawQuery(anyString(), any(String[].class));
+
+        /* Free pages reclaimed. */
+        assertEquals(9 * 4096, databaseManager.compact(10));
+        verify(cursor).getCount();
+        verify(cursor).close();
+        verify(database, never()).execSQL("VACUUM");
+    }
+
+    @Test
+    public void compactEnablesIncrementalVacuum() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        doReturn(database).when(databaseManager).getDatabase();
+        mockStatic(DatabaseUtils.class);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null)).thenReturn(10L, 0L);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA page_size", null)).thenReturn(1024L);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null)).thenReturn(0L);
+        assertEquals(10 * 1024, databaseManager.compact(1));
+        verify(database).execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        verify(database).execSQL("VACUUM");
+    }
+
+    @Test
+    public void compactFailure() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        doReturn(database).when(databaseManager).getDatabase();
+        mockStatic(DatabaseUtils.class);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null)).thenReturn(10L);
+        when(DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null)).thenReturn(0L);
+        doThrow(new RuntimeException()).when(database).execSQL("VACUUM");
+
+        /* Failing to compact does not switch to in-memory database. */
+        assertEquals(0, databaseManager.compact(1));
+        verify(databaseManager, never()).switchToInMemory(anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void compactInMemory() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        databaseManager.switchToInMemory("test", null);
+        assertEquals(0, databaseManager.compact(0));
+        verify(databaseManager, never()).getDatabase();
+    }
+
+    @Test
+    public void scannerLessThanSQLite() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        doReturn(database).when(databaseManager).getDatabase();
+        SQLiteQueryBuilder builder = mock(SQLiteQueryBuilder.class);
+        mockStatic(SQLiteUtils.class);
+        when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(builder);
+        when(builder.query(any(SQLiteDatabase.class), any(String[].class), anyString(), any(String[].class), anyString(), anyString(), anyString())).thenReturn(mock(Cursor.class));
+        databaseManager.getScanner("group", "a", "timestamp", 2, true).iterator();
+        verify(builder).appendWhere("group = ?");
+        verify(builder).appendWhere(" AND ");
+        verify(builder).appendWhere("timestamp < 2");
+        verify(builder).query(eq(database), eq(new String[]{DatabaseManager.PRIMARY_KEY}), isNull(String.class), eq(new String[]{"a"}), isNull(String.class), isNull(String.class), eq(DatabaseManager.PRIMARY_KEY));
+    }
+
+    @Test
+    public void getFloorSQLite() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        doReturn(database).when(databaseManager).getDatabase();
+        SQLiteQueryBuilder builder = mock(SQLiteQueryBuilder.class);
+        mockStatic(SQLiteUtils.class);
+        when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(builder);
+        Cursor cursor = mock(Cursor.class);
+        when(builder.query(any(SQLiteDatabase.class), any(String[].class), anyString(), any(String[].class), anyString(), anyString(), anyString(), anyString())).thenReturn(cursor);
+        assertNull(databaseManager.getFloor("timestamp", 2));
+        verify(builder).appendWhere("timestamp <= 2");
+        verify(builder).query(eq(database), isNull(String[].class), isNull(String.class), isNull(String[].class), isNull(String.class), isNull(String.class), eq("timestamp DESC, oid DESC"), eq("1"));
+        verify(cursor).close();
+    }
+
+    @Test
+    public void getFloorInMemory() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(mock(Context.class), "database", "table", 1, null, null));
+        when(databaseManager.getDatabase()).thenThrow(new RuntimeException());
+        databaseManager.switchToInMemory("test", null);
+        databaseManager.put(mock(ContentValues.class));
+
+        /* Records without the column are ignored. */
+        assertNull(databaseManager.getFloor("timestamp", 5));
+
+        /* Switch to in memory on failure. */
+        databaseManager = getDatabaseManagerMock();
+        assertNull(databaseManager.getFloor("timestamp", 5));
+        verify(databaseManager).switchToInMemory(eq("getFloor"), any(RuntimeException.class));
+    }
+
+    private static ContentValues mockLargeContentValues() {
+        ContentValues values = mock(ContentValues.class);
+        Map.Entry<String, Object> entry = new AbstractMap.SimpleEntry<String, Object>("large", new byte[DatabaseManager.IN_MEMORY_MAX_SIZE / 2]);
+        when(values.valueSet()).thenReturn(Collections.singleton(entry));
+        return values;
+    }
+}